@@ -0,0 +1,128 @@
+package com.google.ar.sceneform;
+
+import androidx.annotation.Nullable;
+
+import com.google.ar.core.Frame;
+import com.google.ar.core.LightEstimate;
+import com.google.ar.core.Pose;
+import com.google.ar.core.Trackable;
+import com.google.ar.core.TrackingState;
+
+import java.util.Collection;
+
+/**
+ * The state of an ARCore frame, captured on the AR thread right after {@code Session.update()}.
+ *
+ * <p>Everything the render thread needs is copied at capture time, so a snapshot stays consistent
+ * while the AR thread moves on to the next frame.
+ *
+ * @see ArSceneView#setArThreadEnabled(boolean)
+ */
+public final class ArFrameSnapshot {
+    private final Frame frame;
+    private final long timestamp;
+    private final TrackingState cameraTrackingState;
+    private final Pose displayOrientedPose;
+    private final float[] projectionMatrix;
+    private final float[] viewMatrix;
+    private final int[] textureDimensions;
+    private final float[] transformedCameraUvs;
+    @Nullable
+    private final Collection<Trackable> allTrackables;
+    private final Collection<Trackable> updatedTrackables;
+    @Nullable
+    private final LightEstimate lightEstimate;
+
+    ArFrameSnapshot(
+            Frame frame,
+            TrackingState cameraTrackingState,
+            Pose displayOrientedPose,
+            float[] projectionMatrix,
+            float[] viewMatrix,
+            int[] textureDimensions,
+            float[] transformedCameraUvs,
+            @Nullable Collection<Trackable> allTrackables,
+            Collection<Trackable> updatedTrackables,
+            @Nullable LightEstimate lightEstimate) {
+        this.frame = frame;
+        this.timestamp = frame.getTimestamp();
+        this.cameraTrackingState = cameraTrackingState;
+        this.displayOrientedPose = displayOrientedPose;
+        this.projectionMatrix = projectionMatrix;
+        this.viewMatrix = viewMatrix;
+        this.textureDimensions = textureDimensions;
+        this.transformedCameraUvs = transformedCameraUvs;
+        this.allTrackables = allTrackables;
+        this.updatedTrackables = updatedTrackables;
+        this.lightEstimate = lightEstimate;
+    }
+
+    /**
+     * Returns the ARCore frame the snapshot was captured from, with the same restrictions as
+     * {@link ArSceneView#getArFrame()}.
+     */
+    public Frame getFrame() {
+        return frame;
+    }
+
+    /** Returns the timestamp of the camera image, in nanoseconds. */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public TrackingState getCameraTrackingState() {
+        return cameraTrackingState;
+    }
+
+    /** Returns the pose of the camera, oriented to the display. */
+    public Pose getDisplayOrientedPose() {
+        return displayOrientedPose;
+    }
+
+    /** Copies the 4x4 column-major projection matrix of the camera into the given array. */
+    public void getProjectionMatrix(float[] dest) {
+        System.arraycopy(projectionMatrix, 0, dest, 0, projectionMatrix.length);
+    }
+
+    /** Copies the 4x4 column-major view matrix of the camera into the given array. */
+    public void getViewMatrix(float[] dest) {
+        System.arraycopy(viewMatrix, 0, dest, 0, viewMatrix.length);
+    }
+
+    /** Returns the width and height of the camera texture. */
+    int[] getTextureDimensions() {
+        return textureDimensions;
+    }
+
+    /** Returns the transformed camera UVs, the same array until the display geometry changes. */
+    float[] getTransformedCameraUvs() {
+        return transformedCameraUvs;
+    }
+
+    /**
+     * Returns all the trackables of the session, unmodifiable, for the first snapshot after the AR
+     * thread started. Null for the next ones, which only carry the updated trackables.
+     *
+     * @see TrackableIndex#reset(Collection)
+     */
+    @Nullable
+    public Collection<Trackable> getAllTrackables() {
+        return allTrackables;
+    }
+
+    /**
+     * Returns the trackables updated since the previous snapshot consumed by the main thread,
+     * unmodifiable. The ones updated by dropped snapshots are included.
+     *
+     * @see TrackableIndex#update(Collection)
+     */
+    public Collection<Trackable> getUpdatedTrackables() {
+        return updatedTrackables;
+    }
+
+    /** Returns the light estimate of the frame, or null if light estimation is disabled. */
+    @Nullable
+    public LightEstimate getLightEstimate() {
+        return lightEstimate;
+    }
+}
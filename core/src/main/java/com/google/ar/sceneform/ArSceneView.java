@@ -17,6 +17,7 @@ import com.google.ar.core.Camera;
 import com.google.ar.core.CameraConfig.FacingDirection;
 import com.google.ar.core.Config;
 import com.google.ar.core.Frame;
+import com.google.ar.core.LightEstimate;
 import com.google.ar.core.Plane;
 import com.google.ar.core.Session;
 import com.google.ar.core.Trackable;
@@ -26,11 +27,13 @@ import com.google.ar.core.exceptions.DeadlineExceededException;
 import com.google.ar.core.exceptions.FatalException;
 import com.google.ar.core.exceptions.NotYetAvailableException;
 import com.google.ar.sceneform.rendering.CameraStream;
+import com.google.ar.sceneform.rendering.EngineInstance;
 import com.google.ar.sceneform.rendering.GLHelper;
 import com.google.ar.sceneform.rendering.PlaneRenderer;
 import com.google.ar.sceneform.rendering.Renderer;
 import com.google.ar.sceneform.rendering.ThreadPools;
 import com.google.ar.sceneform.utilities.AndroidPreconditions;
+import com.google.ar.sceneform.utilities.FrameProfiler;
 import com.google.ar.sceneform.utilities.Preconditions;
 import com.gorisse.thomas.sceneform.ArSceneViewKt;
 import com.gorisse.thomas.sceneform.light.EnvironmentLightsEstimate;
@@ -73,8 +76,19 @@ public class ArSceneView extends SceneView {
     @Nullable
     private Frame currentFrame;
     private Long currentFrameTimestamp = 0L;
-    private Collection<Trackable> allTrackables = new ArrayList<>();
-    private Collection<Trackable> updatedTrackables = new ArrayList<>();
+    private final TrackableIndex trackableIndex = new TrackableIndex();
+    // Whether the index holds all the trackables of the session, the frames only carrying updates.
+    private boolean isTrackableIndexSynced = false;
+    private volatile boolean isArThreadEnabled = false;
+    private volatile boolean isSessionResumed = false;
+    // Started on resume and stopped on pause while the AR thread is enabled.
+    @Nullable
+    private volatile ArUpdateThread arUpdateThread;
+    // The update mode the session had before the AR thread switched it to the blocking one.
+    @Nullable
+    private Config.UpdateMode arThreadRestoredUpdateMode;
+    @Nullable
+    private float[] appliedCameraUvs;
     private Display display;
     private CameraStream cameraStream;
     private PlaneRenderer planeRenderer;
@@ -176,6 +190,7 @@ public class ArSceneView extends SceneView {
         // Filament and the Main thread each have their own gl context that share resources for this.
         // Reset the hasSetTextureNames variable so that the texture name is set during the first call to onBeginFrame.
         hasSetTextureNames = false;
+        isTrackableIndexSynced = false;
 
         // Set max frames per seconds here.
         int fpsBound = session.getCameraConfig().getFpsRange().getUpper();
@@ -212,6 +227,11 @@ public class ArSceneView extends SceneView {
     public void setSessionConfig(Config config, boolean configureSession) {
         if (getSession() != null) {
             if (configureSession) {
+                if (arUpdateThread != null && config.getUpdateMode() != Config.UpdateMode.BLOCKING) {
+                    // Keep the AR thread waiting for the camera, restored once it stops.
+                    arThreadRestoredUpdateMode = config.getUpdateMode();
+                    config.setUpdateMode(Config.UpdateMode.BLOCKING);
+                }
                 getSession().configure(config);
             }
             // Set the correct Texture configuration on the camera stream
@@ -248,6 +268,7 @@ public class ArSceneView extends SceneView {
     protected void resumeSession() throws CameraNotAvailableException {
         if (this.session != null) {
             this.session.resume();
+            isSessionResumed = true;
 
             Renderer renderer = Preconditions.checkNotNull(getRenderer());
             int width = renderer.getDesiredWidth();
@@ -255,6 +276,10 @@ public class ArSceneView extends SceneView {
             if (width != 0 && height != 0) {
                 session.setDisplayGeometry(display.getRotation(), width, height);
             }
+
+            if (isArThreadEnabled) {
+                startArThread();
+            }
         }
     }
 
@@ -315,9 +340,11 @@ public class ArSceneView extends SceneView {
      * Pause the session without touching the scene
      */
     protected void pauseSession() {
+        stopArThread();
         if (session != null) {
             session.pause();
         }
+        isSessionResumed = false;
     }
 
     /**
@@ -381,6 +408,8 @@ public class ArSceneView extends SceneView {
      * Destroy the session without touching the scene
      */
     public void destroySession() {
+        stopArThread();
+        isSessionResumed = false;
         if (session != null) {
             session.pause();
             session.close();
@@ -406,6 +435,10 @@ public class ArSceneView extends SceneView {
      * Returns the most recent ARCore Frame if it is available. The frame is updated at the beginning
      * of each drawing frame. Callers of this method should not retain a reference to the return
      * value, since it will be invalid to use the ARCore frame starting with the next frame.
+     *
+     * <p>While the AR thread is enabled, this is the frame of the last consumed snapshot, which the
+     * AR thread may already have superseded: calls that require the latest frame, such as hit
+     * tests, can then throw a {@link DeadlineExceededException}.
      */
     @Nullable
     @UiThread
@@ -413,6 +446,78 @@ public class ArSceneView extends SceneView {
         return currentFrame;
     }
 
+    /**
+     * Runs {@code Session.update()} and the extraction of the trackables on a dedicated thread
+     * instead of the main thread. Disabled by default.
+     *
+     * <p>The AR thread publishes an {@link ArFrameSnapshot} for every new camera image, and each
+     * drawing frame consumes the latest one, so a slow ARCore update no longer delays rendering.
+     * Snapshots the main thread didn't consume in time are dropped. While the AR thread runs, the
+     * session uses the {@link Config.UpdateMode#BLOCKING} update mode so that the thread waits for
+     * the camera rather than polls it. Its previous update mode is restored when the thread stops.
+     *
+     * <p>The camera texture may show a more recent image than the snapshot being rendered, and the
+     * depth occlusion and plane hit tests, which require the latest ARCore frame, are skipped when
+     * the AR thread has already moved on.
+     */
+    @UiThread
+    public void setArThreadEnabled(boolean enabled) {
+        if (isArThreadEnabled == enabled) {
+            return;
+        }
+        isArThreadEnabled = enabled;
+        if (!enabled) {
+            stopArThread();
+        } else if (isSessionResumed) {
+            startArThread();
+        }
+    }
+
+    public boolean isArThreadEnabled() {
+        return isArThreadEnabled;
+    }
+
+    private void startArThread() {
+        if (arUpdateThread != null || session == null) {
+            return;
+        }
+        Config config = session.getConfig();
+        if (config.getUpdateMode() != Config.UpdateMode.BLOCKING) {
+            arThreadRestoredUpdateMode = config.getUpdateMode();
+            config.setUpdateMode(Config.UpdateMode.BLOCKING);
+            session.configure(config);
+        }
+
+        com.google.ar.sceneform.Camera camera = getScene().getCamera();
+        ArUpdateThread thread = new ArUpdateThread(
+                session,
+                cameraTextureId,
+                Preconditions.checkNotNull(EngineInstance.getGlContext()),
+                camera.getNearClipPlane(),
+                camera.getFarClipPlane());
+        thread.start();
+        arUpdateThread = thread;
+    }
+
+    private void stopArThread() {
+        ArUpdateThread thread = arUpdateThread;
+        if (thread != null) {
+            arUpdateThread = null;
+            thread.quit();
+            // The main thread sets the camera texture name again if it updates the session.
+            hasSetTextureNames = false;
+            isTrackableIndexSynced = false;
+
+            Config.UpdateMode restoredUpdateMode = arThreadRestoredUpdateMode;
+            arThreadRestoredUpdateMode = null;
+            if (restoredUpdateMode != null && session != null) {
+                Config config = session.getConfig();
+                config.setUpdateMode(restoredUpdateMode);
+                session.configure(config);
+            }
+        }
+    }
+
     /**
      * Returns the CameraStream, used to control if the occlusion should be enabled or disabled.
      */
@@ -442,13 +547,32 @@ public class ArSceneView extends SceneView {
             return false;
 
         isProcessingFrame.set(true);
+        try {
+            return updateArFrame();
+        } finally {
+            // Reset even if an update throws, otherwise no later frame would be processed.
+            isProcessingFrame.set(false);
+        }
+    }
 
+    /**
+     * Updates the ARCore frame, or consumes the latest snapshot of the AR thread, and everything
+     * that depends on it.
+     *
+     * @return true if a new frame was obtained
+     */
+    private boolean updateArFrame() {
         // No session, no drawing.
         if (session == null || !pauseResumeTask.isDone()) {
-            isProcessingFrame.set(false);
             return false;
         }
 
+        FrameProfiler profiler = getFrameProfiler();
+        ArUpdateThread arUpdateThread = this.arUpdateThread;
+        if (arUpdateThread != null) {
+            return onBeginArThreadFrame(arUpdateThread, profiler);
+        }
+
         // Before doing anything update the Frame from ARCore.
         boolean arFrameUpdated = true;
         try {
@@ -460,10 +584,11 @@ public class ArSceneView extends SceneView {
                 hasSetTextureNames = true;
             }
 
+            profiler.begin(FrameProfiler.Stage.AR_SESSION_UPDATE);
             Frame frame = session.update();
+            profiler.end(FrameProfiler.Stage.AR_SESSION_UPDATE);
             // No frame, no drawing.
             if (frame == null) {
-                isProcessingFrame.set(false);
                 return false;
             }
 
@@ -475,14 +600,12 @@ public class ArSceneView extends SceneView {
             currentFrameTimestamp = frame.getTimestamp();
         } catch (CameraNotAvailableException | DeadlineExceededException | FatalException e) {
             Log.w(TAG, "Exception updating ARCore session", e);
-            isProcessingFrame.set(false);
             return false;
         }
 
         // No camera, no drawing.
         Camera currentArCamera = currentFrame.getCamera();
         if (currentArCamera == null) {
-            isProcessingFrame.set(false);
             return false;
         }
 
@@ -499,52 +622,103 @@ public class ArSceneView extends SceneView {
         // If ARCore session has changed, update listeners.
         if (arFrameUpdated) {
             // Update Trackables
-            allTrackables = session.getAllTrackables(Trackable.class);
-            if (currentFrame != null) {
-                updatedTrackables = currentFrame.getUpdatedTrackables(Trackable.class);
+            profiler.begin(FrameProfiler.Stage.TRACKABLES);
+            if (!isTrackableIndexSynced) {
+                trackableIndex.reset(session.getAllTrackables(Trackable.class));
+                isTrackableIndexSynced = true;
             }
+            trackableIndex.update(currentFrame.getUpdatedTrackables(Trackable.class));
+            profiler.end(FrameProfiler.Stage.TRACKABLES);
 
             // At the start of the frame, update the tracked pose of the camera
             // to use in any calculations during the frame.
             getScene().getCamera().updateTrackedPose(currentArCamera);
 
-            if (cameraStream.getDepthOcclusionMode() == CameraStream.DepthOcclusionMode.DEPTH_OCCLUSION_ENABLED) {
-                if (cameraStream.getDepthMode() == CameraStream.DepthMode.DEPTH) {
-                    try (Image depthImage = currentFrame.acquireDepthImage()) {
-                        cameraStream.recalculateOcclusion(depthImage);
-                    } catch (NotYetAvailableException | DeadlineExceededException ignored) {
-                    }
-                } else if (cameraStream.getDepthMode() == CameraStream.DepthMode.RAW_DEPTH) {
-                    try (Image depthImage = currentFrame.acquireRawDepthImage()) {
-                        cameraStream.recalculateOcclusion(depthImage);
-                    } catch (NotYetAvailableException | DeadlineExceededException ignored) {
-                    }
-                }
-            }
+            updateFrameDependents(currentFrame, currentFrame.getLightEstimate(), profiler);
+        }
 
-            // Update the light estimate.
-            if (_lightEstimationConfig.getMode() != Config.LightEstimationMode.DISABLED) {
-                EnvironmentLightsEstimate environmentLightsEstimate = LightEstimationKt.environmentLightsEstimate(currentFrame,
-                        _lightEstimationConfig,
-                        _estimatedEnvironmentLights,
-                        _environment,
-                        _mainLight,
-                        CameraKt.getExposureFactor(getRenderer().getCamera()));
-                ArSceneViewKt.setEstimatedEnvironmentLights(this, environmentLightsEstimate);
-            }
+        return arFrameUpdated;
+    }
 
-            try {
-                // Update the plane renderer.
-                if (planeRenderer.isEnabled()) {
-                    planeRenderer.update(currentFrame, getUpdatedPlanes(),
-                            getWidth(), getHeight());
+    /**
+     * Consumes the latest snapshot published by the AR thread.
+     *
+     * @return true if there was a new snapshot
+     */
+    private boolean onBeginArThreadFrame(ArUpdateThread arUpdateThread, FrameProfiler profiler) {
+        com.google.ar.sceneform.Camera camera = getScene().getCamera();
+        arUpdateThread.setClipPlanes(camera.getNearClipPlane(), camera.getFarClipPlane());
+
+        ArFrameSnapshot snapshot = arUpdateThread.takeLatestSnapshot();
+        if (snapshot == null) {
+            return false;
+        }
+        currentFrame = snapshot.getFrame();
+        currentFrameTimestamp = snapshot.getTimestamp();
+
+        if (!cameraStream.isTextureInitialized()) {
+            cameraStream.initializeTexture(snapshot.getTextureDimensions());
+        }
+
+        // The AR thread keeps the same UVs array until the display geometry changes.
+        float[] cameraUvs = snapshot.getTransformedCameraUvs();
+        if (cameraUvs != appliedCameraUvs) {
+            cameraStream.recalculateCameraUvs(cameraUvs);
+            appliedCameraUvs = cameraUvs;
+        }
+
+        Collection<Trackable> allTrackables = snapshot.getAllTrackables();
+        if (allTrackables != null) {
+            trackableIndex.reset(allTrackables);
+        }
+        trackableIndex.update(snapshot.getUpdatedTrackables());
+        camera.updateTrackedPose(snapshot);
+
+        updateFrameDependents(currentFrame, snapshot.getLightEstimate(), profiler);
+        return true;
+    }
+
+    /** Updates the occlusion, light estimation and planes from a new ARCore frame. */
+    private void updateFrameDependents(
+            Frame frame, @Nullable LightEstimate lightEstimate, FrameProfiler profiler) {
+        if (cameraStream.getDepthOcclusionMode() == CameraStream.DepthOcclusionMode.DEPTH_OCCLUSION_ENABLED) {
+            if (cameraStream.getDepthMode() == CameraStream.DepthMode.DEPTH) {
+                try (Image depthImage = frame.acquireDepthImage()) {
+                    cameraStream.recalculateOcclusion(depthImage);
+                } catch (NotYetAvailableException | DeadlineExceededException ignored) {
+                }
+            } else if (cameraStream.getDepthMode() == CameraStream.DepthMode.RAW_DEPTH) {
+                try (Image depthImage = frame.acquireRawDepthImage()) {
+                    cameraStream.recalculateOcclusion(depthImage);
+                } catch (NotYetAvailableException | DeadlineExceededException ignored) {
                 }
-            } catch (DeadlineExceededException ignored) {
             }
         }
 
-        isProcessingFrame.set(false);
-        return arFrameUpdated;
+        // Update the light estimate.
+        if (_lightEstimationConfig.getMode() != Config.LightEstimationMode.DISABLED) {
+            profiler.begin(FrameProfiler.Stage.LIGHT_ESTIMATION);
+            EnvironmentLightsEstimate environmentLightsEstimate = LightEstimationKt.environmentLightsEstimate(lightEstimate,
+                    _lightEstimationConfig,
+                    _estimatedEnvironmentLights,
+                    _environment,
+                    _mainLight,
+                    CameraKt.getExposureFactor(getRenderer().getCamera()));
+            ArSceneViewKt.setEstimatedEnvironmentLights(this, environmentLightsEstimate);
+            profiler.end(FrameProfiler.Stage.LIGHT_ESTIMATION);
+        }
+
+        try {
+            // Update the plane renderer.
+            if (planeRenderer.isEnabled()) {
+                profiler.begin(FrameProfiler.Stage.PLANES);
+                planeRenderer.update(frame,
+                        trackableIndex.getUpdated(Plane.class, (TrackingState) null),
+                        getWidth(), getHeight());
+                profiler.end(FrameProfiler.Stage.PLANES);
+            }
+        } catch (DeadlineExceededException ignored) {
+        }
     }
 
     @Override
@@ -552,6 +726,16 @@ public class ArSceneView extends SceneView {
         super.doFrame(frameTimeNanos);
     }
 
+    /**
+     * The camera image changes every frame, so rendering on demand doesn't apply.
+     *
+     * @hide
+     */
+    @Override
+    protected boolean isRenderRequired() {
+        return true;
+    }
+
     private void initializeAr() {
         display = getContext().getSystemService(WindowManager.class).getDefaultDisplay();
 
@@ -579,7 +763,7 @@ public class ArSceneView extends SceneView {
      * @return true if the current frame is tracking at least one plane.
      */
     public boolean isTrackingPlane() {
-        return getUpdatedPlanes(TrackingState.TRACKING).size() > 0;
+        return !trackableIndex.getUpdated(Plane.class, TrackingState.TRACKING).isEmpty();
     }
 
     /**
@@ -588,7 +772,8 @@ public class ArSceneView extends SceneView {
      * @return true if the current frame has tracked at least one plane.
      */
     public boolean hasTrackedPlane() {
-        return getAllPlanes(TrackingState.TRACKING, TrackingState.PAUSED).size() > 0;
+        return !trackableIndex.getAll(Plane.class, TrackingState.TRACKING).isEmpty()
+                || !trackableIndex.getAll(Plane.class, TrackingState.PAUSED).isEmpty();
     }
 
     /**
@@ -604,7 +789,7 @@ public class ArSceneView extends SceneView {
      * @param trackingStates the trackable tracking states or null for no states filter
      */
     public Collection<Plane> getAllPlanes(@Nullable TrackingState... trackingStates) {
-        return Trackables.getPlanes(allTrackables, trackingStates);
+        return new ArrayList<>(trackableIndex.getAll(Plane.class, trackingStates));
     }
 
     /**
@@ -620,7 +805,7 @@ public class ArSceneView extends SceneView {
      * @param trackingStates the trackable tracking states or null for no states filter
      */
     public Collection<Plane> getUpdatedPlanes(@Nullable TrackingState... trackingStates) {
-        return Trackables.getPlanes(updatedTrackables, trackingStates);
+        return new ArrayList<>(trackableIndex.getUpdated(Plane.class, trackingStates));
     }
 
     /**
@@ -629,7 +814,8 @@ public class ArSceneView extends SceneView {
      * @return true if the current frame is fully tracking at least one Augmented.
      */
     public boolean isTrackingAugmentedImage() {
-        return getUpdatedAugmentedImages(TrackingState.TRACKING, AugmentedImage.TrackingMethod.FULL_TRACKING).size() > 0;
+        return hasTrackingMethod(trackableIndex.getUpdated(AugmentedImage.class, TrackingState.TRACKING),
+                AugmentedImage.TrackingMethod.FULL_TRACKING);
     }
 
     /**
@@ -638,8 +824,10 @@ public class ArSceneView extends SceneView {
      * @return true if the current frame has tracked at least one Augmented Image.
      */
     public boolean hasTrackedAugmentedImage() {
-        return getAllAugmentedImages(TrackingState.TRACKING, AugmentedImage.TrackingMethod.FULL_TRACKING).size() > 0
-                && getAllAugmentedImages(TrackingState.PAUSED, AugmentedImage.TrackingMethod.FULL_TRACKING).size() > 0;
+        return hasTrackingMethod(trackableIndex.getAll(AugmentedImage.class, TrackingState.TRACKING),
+                AugmentedImage.TrackingMethod.FULL_TRACKING)
+                && hasTrackingMethod(trackableIndex.getAll(AugmentedImage.class, TrackingState.PAUSED),
+                AugmentedImage.TrackingMethod.FULL_TRACKING);
     }
 
     /**
@@ -657,7 +845,8 @@ public class ArSceneView extends SceneView {
      */
     public Collection<AugmentedImage> getAllAugmentedImages(@Nullable TrackingState trackingState
             , @Nullable AugmentedImage.TrackingMethod trackingMethod) {
-        return Trackables.getAugmentedImages(allTrackables, trackingState, trackingMethod);
+        return filterTrackingMethod(trackableIndex.getAll(AugmentedImage.class, trackingState),
+                trackingMethod);
     }
 
     /**
@@ -675,7 +864,8 @@ public class ArSceneView extends SceneView {
      */
     public Collection<AugmentedImage> getUpdatedAugmentedImages(@Nullable TrackingState trackingState
             , @Nullable AugmentedImage.TrackingMethod trackingMethod) {
-        return Trackables.getAugmentedImages(updatedTrackables, trackingState, trackingMethod);
+        return filterTrackingMethod(trackableIndex.getUpdated(AugmentedImage.class, trackingState),
+                trackingMethod);
     }
 
     /**
@@ -684,7 +874,7 @@ public class ArSceneView extends SceneView {
      * @return true if the current frame is fully tracking at least one Augmented.
      */
     public boolean isTrackingAugmentedFaces() {
-        return getUpdatedAugmentedFaces(TrackingState.TRACKING).size() > 0;
+        return !trackableIndex.getUpdated(AugmentedFace.class, TrackingState.TRACKING).isEmpty();
     }
 
     /**
@@ -693,7 +883,7 @@ public class ArSceneView extends SceneView {
      * @return true if the current frame has tracked at least one Augmented Image.
      */
     public boolean hasTrackedAugmentedFaces() {
-        return getAllAugmentedFaces(TrackingState.TRACKING).size() > 0;
+        return !trackableIndex.getAll(AugmentedFace.class, TrackingState.TRACKING).isEmpty();
     }
 
     /**
@@ -709,7 +899,7 @@ public class ArSceneView extends SceneView {
      * @param trackingState  the trackable tracking state or null for no states filter
      */
     public Collection<AugmentedFace> getAllAugmentedFaces(@Nullable TrackingState trackingState) {
-        return Trackables.getAugmentedFaces(allTrackables, trackingState);
+        return new ArrayList<>(trackableIndex.getAll(AugmentedFace.class, trackingState));
     }
 
     /**
@@ -725,7 +915,45 @@ public class ArSceneView extends SceneView {
      * @param trackingState  the trackable tracking state or null for no states filter
      */
     public Collection<AugmentedFace> getUpdatedAugmentedFaces(@Nullable TrackingState trackingState) {
-        return Trackables.getAugmentedFaces(updatedTrackables, trackingState);
+        return new ArrayList<>(trackableIndex.getUpdated(AugmentedFace.class, trackingState));
+    }
+
+    /**
+     * Returns the index of the session trackables by type and tracking state, updated at the
+     * beginning of each drawing frame.
+     *
+     * <p>The collections it returns for a single tracking state are live views, cheap enough to
+     * query every frame. The plane, Augmented Image and Augmented Face getters of this view copy
+     * them, so that their results can be kept across frames.
+     */
+    @UiThread
+    public TrackableIndex getTrackableIndex() {
+        return trackableIndex;
+    }
+
+    private static boolean hasTrackingMethod(Collection<AugmentedImage> augmentedImages,
+                                             AugmentedImage.TrackingMethod trackingMethod) {
+        for (AugmentedImage augmentedImage : augmentedImages) {
+            if (augmentedImage.getTrackingMethod() == trackingMethod) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Collection<AugmentedImage> filterTrackingMethod(
+            Collection<AugmentedImage> augmentedImages,
+            @Nullable AugmentedImage.TrackingMethod trackingMethod) {
+        if (trackingMethod == null) {
+            return new ArrayList<>(augmentedImages);
+        }
+        Collection<AugmentedImage> result = new ArrayList<>();
+        for (AugmentedImage augmentedImage : augmentedImages) {
+            if (augmentedImage.getTrackingMethod() == trackingMethod) {
+                result.add(augmentedImage);
+            }
+        }
+        return result;
     }
 
     /**
@@ -0,0 +1,204 @@
+package com.google.ar.sceneform;
+
+import android.opengl.EGLContext;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.ar.core.Camera;
+import com.google.ar.core.Frame;
+import com.google.ar.core.Session;
+import com.google.ar.core.Trackable;
+import com.google.ar.core.exceptions.CameraNotAvailableException;
+import com.google.ar.core.exceptions.DeadlineExceededException;
+import com.google.ar.core.exceptions.FatalException;
+import com.google.ar.sceneform.rendering.CameraStream;
+import com.google.ar.sceneform.rendering.GLHelper;
+import com.google.ar.sceneform.utilities.FrameProfiler;
+import com.google.ar.sceneform.utilities.Tracing;
+
+import java.nio.FloatBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs {@code Session.update()} on a dedicated thread and hands the latest {@link ArFrameSnapshot}
+ * over to the main thread.
+ *
+ * <p>The handoff is a single atomic reference: the AR thread replaces the pending snapshot and the
+ * main thread takes it, so a snapshot the main thread was too slow to consume is dropped rather
+ * than queued.
+ *
+ * <p>ARCore writes the camera image from this thread, so it owns a GL context sharing the
+ * resources of the {@link com.google.ar.sceneform.rendering.EngineInstance} one.
+ */
+class ArUpdateThread extends Thread {
+    private static final String TAG = ArUpdateThread.class.getSimpleName();
+
+    private final Session session;
+    private final int cameraTextureId;
+    private final EGLContext shareContext;
+    // Wait before updating again when ARCore returned the same camera image, half a camera frame.
+    // The session normally blocks until the next image, see ArSceneView#setArThreadEnabled.
+    private final long idleMillis;
+    private final AtomicReference<ArFrameSnapshot> latestSnapshot = new AtomicReference<>();
+    private volatile boolean isRunning = true;
+    private volatile float nearPlane;
+    private volatile float farPlane;
+
+    // Only accessed from the AR thread.
+    private final FloatBuffer cameraUvs = CameraStream.createCameraUVBuffer();
+    private final FloatBuffer transformedCameraUvs = CameraStream.createCameraUVBuffer();
+    @Nullable
+    private float[] lastTransformedCameraUvs;
+    @Nullable
+    private int[] textureDimensions;
+    private long lastTimestamp;
+    private boolean hasPublishedAllTrackables = false;
+
+    ArUpdateThread(
+            Session session,
+            int cameraTextureId,
+            EGLContext shareContext,
+            float nearPlane,
+            float farPlane) {
+        super("SceneformArUpdate");
+        this.session = session;
+        this.cameraTextureId = cameraTextureId;
+        this.shareContext = shareContext;
+        int cameraFps = Math.max(1, session.getCameraConfig().getFpsRange().getUpper());
+        this.idleMillis = Math.max(1, 500 / cameraFps);
+        this.nearPlane = nearPlane;
+        this.farPlane = farPlane;
+    }
+
+    /** Sets the clip planes used to compute the projection matrix of the next snapshots. */
+    void setClipPlanes(float nearPlane, float farPlane) {
+        this.nearPlane = nearPlane;
+        this.farPlane = farPlane;
+    }
+
+    /** Returns the snapshot published since the last call, or null if there is none. */
+    @Nullable
+    ArFrameSnapshot takeLatestSnapshot() {
+        return latestSnapshot.getAndSet(null);
+    }
+
+    /** Stops the thread and waits for its current update to finish. */
+    void quit() {
+        isRunning = false;
+        boolean isInterrupted = false;
+        while (isAlive()) {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        EGLContext context = GLHelper.makeContext(shareContext);
+        try {
+            session.setCameraTextureName(cameraTextureId);
+            while (isRunning) {
+                Frame frame = update();
+                if (frame == null || frame.getTimestamp() == lastTimestamp) {
+                    try {
+                        Thread.sleep(idleMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                lastTimestamp = frame.getTimestamp();
+
+                // The render thread samples the camera texture from another context.
+                GLES30.glFinish();
+
+                // Take back a snapshot the main thread missed, so that the next one carries its
+                // trackables.
+                latestSnapshot.set(capture(frame, latestSnapshot.getAndSet(null)));
+            }
+        } finally {
+            latestSnapshot.set(null);
+            GLHelper.releaseCurrentContext();
+            GLHelper.destroyContext(context);
+        }
+    }
+
+    @Nullable
+    private Frame update() {
+        Tracing.beginSection(FrameProfiler.Stage.AR_SESSION_UPDATE.getTraceName());
+        try {
+            return session.update();
+        } catch (CameraNotAvailableException | DeadlineExceededException | FatalException e) {
+            Log.w(TAG, "Exception updating ARCore session", e);
+            return null;
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    private ArFrameSnapshot capture(Frame frame, @Nullable ArFrameSnapshot droppedSnapshot) {
+        Tracing.beginSection(FrameProfiler.Stage.TRACKABLES.getTraceName());
+        try {
+            Camera camera = frame.getCamera();
+            float[] projectionMatrix = new float[16];
+            camera.getProjectionMatrix(projectionMatrix, 0, nearPlane, farPlane);
+            float[] viewMatrix = new float[16];
+            camera.getViewMatrix(viewMatrix, 0);
+
+            if (textureDimensions == null) {
+                textureDimensions = camera.getTextureIntrinsics().getImageDimensions();
+            }
+
+            // Keep the same array until the geometry changes, so the main thread can skip the
+            // upload and still catch up with a change carried by a dropped snapshot.
+            if (frame.hasDisplayGeometryChanged() || lastTransformedCameraUvs == null) {
+                frame.transformDisplayUvCoords(cameraUvs, transformedCameraUvs);
+                float[] uvs = new float[transformedCameraUvs.capacity()];
+                transformedCameraUvs.get(uvs);
+                transformedCameraUvs.rewind();
+                lastTransformedCameraUvs = uvs;
+            }
+
+            Collection<Trackable> allTrackables = null;
+            Collection<Trackable> updatedTrackables = frame.getUpdatedTrackables(Trackable.class);
+            if (!hasPublishedAllTrackables) {
+                allTrackables =
+                        Collections.unmodifiableCollection(session.getAllTrackables(Trackable.class));
+                hasPublishedAllTrackables = true;
+            } else if (droppedSnapshot != null) {
+                allTrackables = droppedSnapshot.getAllTrackables();
+                if (!droppedSnapshot.getUpdatedTrackables().isEmpty()) {
+                    LinkedHashSet<Trackable> mergedTrackables =
+                            new LinkedHashSet<>(droppedSnapshot.getUpdatedTrackables());
+                    mergedTrackables.addAll(updatedTrackables);
+                    updatedTrackables = mergedTrackables;
+                }
+            }
+
+            return new ArFrameSnapshot(
+                    frame,
+                    camera.getTrackingState(),
+                    camera.getDisplayOrientedPose(),
+                    projectionMatrix,
+                    viewMatrix,
+                    textureDimensions,
+                    lastTransformedCameraUvs,
+                    allTrackables,
+                    Collections.unmodifiableCollection(updatedTrackables),
+                    frame.getLightEstimate());
+        } finally {
+            Tracing.endSection();
+        }
+    }
+}
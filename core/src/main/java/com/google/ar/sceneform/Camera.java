@@ -200,6 +200,20 @@ public class Camera extends Node implements CameraProvider {
     areMatricesInitialized = true;
   }
 
+  /** Same as {@link #updateTrackedPose(com.google.ar.core.Camera)} from a frame of the AR thread. */
+  void updateTrackedPose(ArFrameSnapshot snapshot) {
+    Preconditions.checkNotNull(snapshot, "Parameter \"snapshot\" was null.");
+
+    snapshot.getProjectionMatrix(projectionMatrix.data);
+    snapshot.getViewMatrix(viewMatrix.data);
+
+    Pose pose = snapshot.getDisplayOrientedPose();
+    super.setWorldPosition(ArHelpers.extractPositionFromPose(pose));
+    super.setWorldRotation(ArHelpers.extractRotationFromPose(pose));
+
+    areMatricesInitialized = true;
+  }
+
   Ray motionEventToRay(MotionEvent motionEvent) {
     Preconditions.checkNotNull(motionEvent, "Parameter \"motionEvent\" was null.");
     int index = motionEvent.getActionIndex();
@@ -357,6 +371,7 @@ public class Camera extends Node implements CameraProvider {
   @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
   public void setProjectionMatrix(Matrix matrix) {
     projectionMatrix.set(matrix.data);
+    requestRender();
   }
 
   private boolean unproject(float x, float y, float z, final Vector3 dest) {
@@ -426,6 +441,14 @@ public class Camera extends Node implements CameraProvider {
 
     float aspect = (float) width / (float) height;
     setPerspective(verticalFov, aspect, nearPlane, farPlane);
+    requestRender();
+  }
+
+  private void requestRender() {
+    Scene scene = getScene();
+    if (scene != null) {
+      scene.requestRender();
+    }
   }
 
   /**
@@ -572,6 +572,10 @@ public class Node extends NodeParent implements TransformProvider {
     private final void markTransformChangedRecursively(int flagsToMark, Node originatingNode) {
         boolean needsRecursion = false;
 
+        if (originatingNode == this && scene != null) {
+            scene.requestRender();
+        }
+
         if ((dirtyTransformFlags & flagsToMark) != flagsToMark) {
             dirtyTransformFlags |= flagsToMark;
 
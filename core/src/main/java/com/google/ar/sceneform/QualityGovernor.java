@@ -0,0 +1,430 @@
+package com.google.ar.sceneform;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.google.ar.sceneform.rendering.Renderer;
+import com.google.ar.sceneform.utilities.MovingAverage;
+import com.google.ar.sceneform.utilities.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Adjusts the rendering quality of a {@link SceneView} to hold a target frame time.
+ *
+ * <p>The governor walks down a ladder of {@link Level}, from the best quality to the cheapest one,
+ * while the average frame time is over the target and walks back up once it stays well under it.
+ * Stepping down reacts within a fraction of a second while stepping up waits several seconds, and
+ * no step is taken right after another one, so the quality doesn't oscillate. Frames that Filament
+ * had to skip because the GPU was behind count as twice the target.
+ *
+ * <p>On Android Q and later, the device thermal status also caps the quality: each status above
+ * {@link PowerManager#THERMAL_STATUS_LIGHT} removes the best remaining level.
+ *
+ * <p>Set it with {@link SceneView#setQualityGovernor(QualityGovernor)}. Must be used on the main
+ * thread.
+ */
+public class QualityGovernor {
+    private static final float DEFAULT_TARGET_FRAME_TIME_MILLIS = 1000.0f / 60.0f;
+    // The average must be under this fraction of the target to step up.
+    private static final float STEP_UP_THRESHOLD = 0.7f;
+    // Consecutive frames over the target before stepping down, about half a second.
+    private static final int STEP_DOWN_FRAME_COUNT = 30;
+    // Consecutive frames under the threshold before stepping up, about 4 seconds.
+    private static final int STEP_UP_FRAME_COUNT = 240;
+    // Frames ignored after a change, while the new settings settle.
+    private static final int COOLDOWN_FRAME_COUNT = 30;
+
+    /**
+     * Why the quality level changed.
+     */
+    public enum Reason {
+        /** The frame time stayed over the target. */
+        FRAME_TIME_OVER_TARGET,
+        /** The frame time stayed well under the target. */
+        FRAME_TIME_UNDER_TARGET,
+        /** The device thermal status changed. */
+        THERMAL_STATUS,
+        /** The governor was attached to a view or its levels changed. */
+        RESET
+    }
+
+    /**
+     * Interface definition for a callback invoked when the governor changes the quality.
+     */
+    public interface OnQualityChangedListener {
+        /**
+         * Called after the level was applied to the view.
+         *
+         * @param level      the level now in use
+         * @param levelIndex the index of the level in the ladder, 0 being the best quality
+         * @param reason     why the level changed
+         */
+        void onQualityChanged(Level level, int levelIndex, Reason reason);
+    }
+
+    /**
+     * A step of the quality ladder.
+     */
+    public static final class Level {
+        private final float resolutionScale;
+        private final int multiSampleCount;
+        private final com.google.android.filament.View.AntiAliasing antiAliasing;
+        private final boolean isPostProcessingEnabled;
+        private final boolean isShadowingEnabled;
+        private final SceneView.FrameRate frameRate;
+
+        private Level(Builder builder) {
+            resolutionScale = builder.resolutionScale;
+            multiSampleCount = builder.multiSampleCount;
+            antiAliasing = builder.antiAliasing;
+            isPostProcessingEnabled = builder.isPostProcessingEnabled;
+            isShadowingEnabled = builder.isShadowingEnabled;
+            frameRate = builder.frameRate;
+        }
+
+        public float getResolutionScale() {
+            return resolutionScale;
+        }
+
+        public int getMultiSampleCount() {
+            return multiSampleCount;
+        }
+
+        public com.google.android.filament.View.AntiAliasing getAntiAliasing() {
+            return antiAliasing;
+        }
+
+        public boolean isPostProcessingEnabled() {
+            return isPostProcessingEnabled;
+        }
+
+        public boolean isShadowingEnabled() {
+            return isShadowingEnabled;
+        }
+
+        public SceneView.FrameRate getFrameRate() {
+            return frameRate;
+        }
+
+        @Override
+        public String toString() {
+            return "Level{resolutionScale=" + resolutionScale
+                    + ", multiSampleCount=" + multiSampleCount
+                    + ", antiAliasing=" + antiAliasing
+                    + ", postProcessing=" + isPostProcessingEnabled
+                    + ", shadowing=" + isShadowingEnabled
+                    + ", frameRate=" + frameRate + "}";
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        /**
+         * Factory class for {@link Level}. The defaults are the view defaults.
+         */
+        public static final class Builder {
+            private float resolutionScale = 1.0f;
+            private int multiSampleCount = 1;
+            private com.google.android.filament.View.AntiAliasing antiAliasing =
+                    com.google.android.filament.View.AntiAliasing.FXAA;
+            private boolean isPostProcessingEnabled = true;
+            private boolean isShadowingEnabled = true;
+            private SceneView.FrameRate frameRate = SceneView.FrameRate.FULL;
+
+            private Builder() {
+            }
+
+            /**
+             * @param resolutionScale the scale of the rendering resolution, between 0.25 and 1
+             */
+            public Builder setResolutionScale(float resolutionScale) {
+                this.resolutionScale = resolutionScale;
+                return this;
+            }
+
+            /**
+             * @param multiSampleCount the MSAA sample count, 1 to disable it
+             */
+            public Builder setMultiSampleCount(int multiSampleCount) {
+                this.multiSampleCount = multiSampleCount;
+                return this;
+            }
+
+            /**
+             * @param antiAliasing the post-processing anti-aliasing, such as FXAA
+             */
+            public Builder setAntiAliasing(com.google.android.filament.View.AntiAliasing antiAliasing) {
+                this.antiAliasing = antiAliasing;
+                return this;
+            }
+
+            /**
+             * @param enabled false to skip post-processing, which also disables FXAA
+             */
+            public Builder setPostProcessingEnabled(boolean enabled) {
+                this.isPostProcessingEnabled = enabled;
+                return this;
+            }
+
+            /**
+             * @param enabled false to stop rendering the shadows
+             */
+            public Builder setShadowingEnabled(boolean enabled) {
+                this.isShadowingEnabled = enabled;
+                return this;
+            }
+
+            /**
+             * @param frameRate the factor applied to the maximal frame rate
+             */
+            public Builder setFrameRate(SceneView.FrameRate frameRate) {
+                this.frameRate = frameRate;
+                return this;
+            }
+
+            public Level build() {
+                if (resolutionScale < 0.25f || resolutionScale > 1.0f) {
+                    throw new IllegalArgumentException(
+                            "resolutionScale must be between 0.25 and 1.");
+                }
+                if (multiSampleCount < 1) {
+                    throw new IllegalArgumentException("multiSampleCount must be at least 1.");
+                }
+                Preconditions.checkNotNull(antiAliasing, "Parameter \"antiAliasing\" was null.");
+                Preconditions.checkNotNull(frameRate, "Parameter \"frameRate\" was null.");
+                return new Level(this);
+            }
+        }
+    }
+
+    private final PowerManager powerManager;
+    private List<Level> levels = getDefaultLevels();
+    private float targetFrameTimeMillis = DEFAULT_TARGET_FRAME_TIME_MILLIS;
+    @Nullable
+    private OnQualityChangedListener onQualityChangedListener = null;
+
+    @Nullable
+    private SceneView sceneView = null;
+    @Nullable
+    private Object thermalStatusListener = null;
+    private int thermalStatus = 0;
+    private int levelIndex = 0;
+    private MovingAverage frameTimeMillis = new MovingAverage(DEFAULT_TARGET_FRAME_TIME_MILLIS);
+    private int framesSinceChange = 0;
+    private int framesOverTarget = 0;
+    private int framesUnderTarget = 0;
+
+    /**
+     * @param context used to get the {@link PowerManager} for the thermal status
+     */
+    public QualityGovernor(Context context) {
+        Preconditions.checkNotNull(context, "Parameter \"context\" was null.");
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * Returns the default ladder. It starts from the view defaults and successively lowers the
+     * resolution, turns off the shadows, the anti-aliasing and the post-processing and finally
+     * halves the frame rate.
+     */
+    public static List<Level> getDefaultLevels() {
+        return Collections.unmodifiableList(Arrays.asList(
+                Level.builder().build(),
+                Level.builder()
+                        .setResolutionScale(0.85f)
+                        .build(),
+                Level.builder()
+                        .setResolutionScale(0.7f)
+                        .setShadowingEnabled(false)
+                        .build(),
+                Level.builder()
+                        .setResolutionScale(0.7f)
+                        .setShadowingEnabled(false)
+                        .setAntiAliasing(com.google.android.filament.View.AntiAliasing.NONE)
+                        .setPostProcessingEnabled(false)
+                        .build(),
+                Level.builder()
+                        .setResolutionScale(0.5f)
+                        .setShadowingEnabled(false)
+                        .setAntiAliasing(com.google.android.filament.View.AntiAliasing.NONE)
+                        .setPostProcessingEnabled(false)
+                        .setFrameRate(SceneView.FrameRate.HALF)
+                        .build()));
+    }
+
+    /**
+     * Sets the quality ladder, from the best quality to the cheapest one, and goes back to the
+     * first level.
+     */
+    public void setLevels(List<Level> levels) {
+        Preconditions.checkNotNull(levels, "Parameter \"levels\" was null.");
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("levels must not be empty.");
+        }
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+        setLevel(getBestAllowedLevelIndex(), Reason.RESET);
+    }
+
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    /**
+     * Sets the frame time to hold, 16.7 milliseconds (60 fps) by default.
+     */
+    public void setTargetFrameTimeMillis(float targetFrameTimeMillis) {
+        if (targetFrameTimeMillis <= 0.0f) {
+            throw new IllegalArgumentException("targetFrameTimeMillis must be greater than 0.");
+        }
+        this.targetFrameTimeMillis = targetFrameTimeMillis;
+        resetFrameTimes();
+    }
+
+    public float getTargetFrameTimeMillis() {
+        return targetFrameTimeMillis;
+    }
+
+    public void setOnQualityChangedListener(@Nullable OnQualityChangedListener listener) {
+        onQualityChangedListener = listener;
+    }
+
+    /**
+     * Returns the level in use.
+     */
+    public Level getLevel() {
+        return levels.get(levelIndex);
+    }
+
+    /**
+     * Returns the index of the level in use, 0 being the best quality.
+     */
+    public int getLevelIndex() {
+        return levelIndex;
+    }
+
+    /**
+     * Returns the smoothed frame time the decisions are based on.
+     */
+    public double getAverageFrameTimeMillis() {
+        return frameTimeMillis.getAverage();
+    }
+
+    /**
+     * Starts governing the view with the best level allowed by the thermal status.
+     */
+    void attach(SceneView sceneView) {
+        this.sceneView = sceneView;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            addThermalStatusListener();
+        }
+        setLevel(getBestAllowedLevelIndex(), Reason.RESET);
+    }
+
+    /**
+     * Stops governing the view. The view keeps the settings of the last level.
+     */
+    void detach() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalStatusListener != null) {
+            powerManager.removeThermalStatusListener(
+                    (PowerManager.OnThermalStatusChangedListener) thermalStatusListener);
+            thermalStatusListener = null;
+        }
+        sceneView = null;
+    }
+
+    /**
+     * Accounts a frame.
+     *
+     * @param frameDurationNanos the time spent updating and rendering the frame
+     * @param isSkipped          true if Filament skipped the frame
+     */
+    void onFrame(long frameDurationNanos, boolean isSkipped) {
+        double sampleMillis = isSkipped
+                ? 2.0 * targetFrameTimeMillis
+                : frameDurationNanos * 0.000001;
+        frameTimeMillis.addSample(sampleMillis);
+
+        if (++framesSinceChange < COOLDOWN_FRAME_COUNT) {
+            return;
+        }
+
+        double averageMillis = frameTimeMillis.getAverage();
+        if (averageMillis > targetFrameTimeMillis) {
+            framesOverTarget++;
+            framesUnderTarget = 0;
+        } else if (averageMillis < targetFrameTimeMillis * STEP_UP_THRESHOLD) {
+            framesUnderTarget++;
+            framesOverTarget = 0;
+        } else {
+            framesOverTarget = 0;
+            framesUnderTarget = 0;
+        }
+
+        if (framesOverTarget >= STEP_DOWN_FRAME_COUNT && levelIndex < levels.size() - 1) {
+            setLevel(levelIndex + 1, Reason.FRAME_TIME_OVER_TARGET);
+        } else if (framesUnderTarget >= STEP_UP_FRAME_COUNT
+                && levelIndex > getBestAllowedLevelIndex()) {
+            setLevel(levelIndex - 1, Reason.FRAME_TIME_UNDER_TARGET);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    private void addThermalStatusListener() {
+        thermalStatus = powerManager.getCurrentThermalStatus();
+        PowerManager.OnThermalStatusChangedListener listener = status -> {
+            thermalStatus = status;
+            int bestAllowedLevelIndex = getBestAllowedLevelIndex();
+            if (sceneView != null && levelIndex < bestAllowedLevelIndex) {
+                setLevel(bestAllowedLevelIndex, Reason.THERMAL_STATUS);
+            }
+        };
+        // Called on the main thread.
+        powerManager.addThermalStatusListener(listener);
+        thermalStatusListener = listener;
+    }
+
+    private int getBestAllowedLevelIndex() {
+        // PowerManager.THERMAL_STATUS_LIGHT is 1.
+        return Math.max(0, Math.min(levels.size() - 1, thermalStatus - 1));
+    }
+
+    private void setLevel(int levelIndex, Reason reason) {
+        this.levelIndex = levelIndex;
+        resetFrameTimes();
+
+        SceneView sceneView = this.sceneView;
+        if (sceneView == null) {
+            return;
+        }
+        Level level = levels.get(levelIndex);
+        Renderer renderer = sceneView.getRenderer();
+        if (renderer != null) {
+            renderer.setResolutionScale(level.resolutionScale);
+            renderer.setMultiSampleCount(level.multiSampleCount);
+            renderer.setAntiAliasing(level.antiAliasing);
+            renderer.setPostProcessingEnabled(level.isPostProcessingEnabled);
+            renderer.setShadowingEnabled(level.isShadowingEnabled);
+        }
+        sceneView.setFrameRateFactor(level.frameRate);
+
+        if (onQualityChangedListener != null) {
+            onQualityChangedListener.onQualityChanged(level, levelIndex, reason);
+        }
+    }
+
+    private void resetFrameTimes() {
+        frameTimeMillis = new MovingAverage(targetFrameTimeMillis);
+        framesSinceChange = 0;
+        framesOverTarget = 0;
+        framesUnderTarget = 0;
+    }
+}
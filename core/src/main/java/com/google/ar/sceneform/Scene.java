@@ -349,6 +349,15 @@ public class Scene extends NodeParent {
         touchEventSystem.onTouchEvent(hitTestResult, motionEvent);
     }
 
+    /**
+     * Wakes up the view if it renders on demand.
+     */
+    void requestRender() {
+        if (view != null) {
+            view.requestRender();
+        }
+    }
+
     void dispatchUpdate(FrameTime frameTime) {
         for (OnUpdateListener onUpdateListener : onUpdateListeners) {
             onUpdateListener.onUpdate(frameTime);
@@ -23,13 +23,15 @@ import com.google.android.filament.utils.KTXLoader;
 import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.EngineInstance;
 import com.google.ar.sceneform.rendering.Renderer;
+import com.google.ar.sceneform.rendering.ResourceManager;
 import com.google.ar.sceneform.utilities.AndroidPreconditions;
-import com.google.ar.sceneform.utilities.MovingAverageMillisecondsTracker;
+import com.google.ar.sceneform.utilities.FrameProfiler;
 import com.google.ar.sceneform.utilities.Preconditions;
 import com.gorisse.thomas.sceneform.SceneViewKt;
 import com.gorisse.thomas.sceneform.environment.Environment;
 import com.gorisse.thomas.sceneform.environment.KTXEnvironmentKt;
 import com.gorisse.thomas.sceneform.light.LightKt;
+import com.gorisse.thomas.sceneform.util.ResourceLoader;
 import com.gorisse.thomas.sceneform.util.ResourceLoaderKt;
 
 import java.io.IOException;
@@ -51,6 +53,11 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
     private FrameRate frameRate = FrameRate.FULL;
     private int maxFramesPerSeconds = DEFAULT_MAX_FRAMES_PER_SECONDS;
     private Long lastTick = 0L;
+    private boolean isRenderOnDemand = false;
+    private boolean isRenderRequested = true;
+    private int renderedContentGeneration = 0;
+    @Nullable
+    private QualityGovernor qualityGovernor = null;
 
     @Nullable
     private Renderer renderer = null;
@@ -71,12 +78,7 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
     private Color backgroundColor;
 
     // Used to track high-level performance metrics for Sceneform
-    private final MovingAverageMillisecondsTracker frameTotalTracker =
-            new MovingAverageMillisecondsTracker();
-    private final MovingAverageMillisecondsTracker frameUpdateTracker =
-            new MovingAverageMillisecondsTracker();
-    private final MovingAverageMillisecondsTracker frameRenderTracker =
-            new MovingAverageMillisecondsTracker();
+    private final FrameProfiler frameProfiler = new FrameProfiler();
 
 
     /**
@@ -180,6 +182,55 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
         this.frameRate = frameRateFactor;
     }
 
+    /**
+     * Only updates and renders the scene when something changed, instead of every frame.
+     *
+     * <p>A new frame is drawn when a node moves, a renderable or a light is added or removed, a
+     * material parameter or a light changes, a model animation advances, a texture is loading, a
+     * view renderable or an external texture is drawn to or the view is resized. Changes made from
+     * a node {@code onUpdate()} or a {@link Scene.OnUpdateListener} keep the scene rendering, but
+     * the listeners are not called while the scene is idle. The first update after an idle period
+     * gets the delta time of a single frame. Call {@link #requestRender()} for the changes that
+     * can't be detected, such as a filament entity modified directly.
+     *
+     * <p>Ignored by {@link ArSceneView}, which renders the camera image every frame. Disabled by
+     * default.
+     */
+    public void setRenderOnDemand(boolean renderOnDemand) {
+        isRenderOnDemand = renderOnDemand;
+        requestRender();
+    }
+
+    public boolean isRenderOnDemand() {
+        return isRenderOnDemand;
+    }
+
+    /**
+     * Updates and renders the scene on the next frame when rendering on demand.
+     */
+    public void requestRender() {
+        isRenderRequested = true;
+    }
+
+    /**
+     * Sets the governor adjusting the rendering quality to the frame time, or null to keep the
+     * quality settings as they are. Disabled by default.
+     */
+    public void setQualityGovernor(@Nullable QualityGovernor qualityGovernor) {
+        if (this.qualityGovernor != null) {
+            this.qualityGovernor.detach();
+        }
+        this.qualityGovernor = qualityGovernor;
+        if (qualityGovernor != null) {
+            qualityGovernor.attach(this);
+        }
+    }
+
+    @Nullable
+    public QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
     /**
      * @hide
      */
@@ -209,6 +260,7 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
             throw new IllegalStateException("Sceneform requires Android N or later");
         }
         renderer.onResume();
+        requestRender();
         // Start the drawing when the renderer is resumed.  Remove and re-add the callback
         // to avoid getting called twice.
         Choreographer.getInstance().removeFrameCallback(this);
@@ -248,6 +300,7 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
      */
     protected void destroyScene() {
         Choreographer.getInstance().removeFrameCallback(this);
+        setQualityGovernor(null);
         if (renderer != null) {
             renderer.onPause();
         }
@@ -293,6 +346,7 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
      */
     public void enableDebug(boolean enable) {
         debugEnabled = enable;
+        frameProfiler.setEnabled(enable);
     }
 
     /**
@@ -302,6 +356,17 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
         return debugEnabled;
     }
 
+    /**
+     * Returns the profiler timing the stages of each frame.
+     *
+     * <p>It is enabled with {@link #enableDebug(boolean)} or
+     * {@link FrameProfiler#setEnabled(boolean)}. By default its reports are logged while debugging
+     * is enabled, setting a {@link FrameProfiler.OnReportListener} replaces the logging.
+     */
+    public FrameProfiler getFrameProfiler() {
+        return frameProfiler;
+    }
+
     /**
      * Returns the renderer used for this view, or null if the renderer is not setup.
      *
@@ -371,6 +436,12 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
             renderer = null;
         } else {
             renderer = new Renderer(this);
+            renderer.setFrameProfiler(frameProfiler);
+            frameProfiler.setOnReportListener(profiler -> {
+                if (debugEnabled) {
+                    Log.d(TAG, " PERF COUNTER:\n" + profiler);
+                }
+            });
             if (backgroundColor != null) {
                 renderer.setClearColor(backgroundColor);
             }
@@ -406,10 +477,18 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
 //            return null;
 //        });
         try {
-            SceneViewKt.setEnvironment(SceneView.this,
-                    ResourceLoaderKt.useBuffer(getContext().getAssets().open(DEFAULT_IBL_LOCATION),
-                            (Function1<ByteBuffer, Environment>) buffer ->
-                                    KTXEnvironmentKt.createEnvironment(KTXLoader.INSTANCE, buffer)));
+            // Mapped when the asset is stored uncompressed, like other KTX environments.
+            ByteBuffer mappedBuffer =
+                    ResourceLoader.mappedFileBuffer(getContext(), DEFAULT_IBL_LOCATION);
+            if (mappedBuffer != null) {
+                SceneViewKt.setEnvironment(SceneView.this,
+                        KTXEnvironmentKt.createEnvironment(KTXLoader.INSTANCE, mappedBuffer));
+            } else {
+                SceneViewKt.setEnvironment(SceneView.this,
+                        ResourceLoaderKt.useBuffer(getContext().getAssets().open(DEFAULT_IBL_LOCATION),
+                                (Function1<ByteBuffer, Environment>) buffer ->
+                                        KTXEnvironmentKt.createEnvironment(KTXLoader.INSTANCE, buffer)));
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -427,6 +506,23 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
         return true;
     }
 
+    /**
+     * Returns true if the scene must be updated and rendered on the next frame. Always true unless
+     * rendering on demand.
+     *
+     * @hide
+     */
+    protected boolean isRenderRequired() {
+        if (!isRenderOnDemand || isRenderRequested) {
+            return true;
+        }
+        ResourceManager resourceManager = ResourceManager.getInstance();
+        Renderer renderer = this.renderer;
+        return resourceManager.getSceneContentGeneration() != renderedContentGeneration
+                || resourceManager.getPendingTextureUploadCount() > 0
+                || (renderer != null && renderer.isRedrawNeeded());
+    }
+
     /**
      * Callback that occurs for each display frame. Updates the scene and reposts itself to be called
      * by the choreographer on the next frame.
@@ -447,6 +543,13 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
 
         lastTick = tick;
 
+        if (!isRenderRequired()) {
+            // Keep the frame time going, so that the frame that wakes the scene up doesn't get the
+            // whole idle period as its delta time.
+            frameTime.update(frameTimeNanos);
+            return;
+        }
+
         doFrameNoRepost(frameTimeNanos);
     }
 
@@ -458,38 +561,38 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
      * @hide
      */
     public void doFrameNoRepost(long frameTimeNanos) {
-        // TODO: Display the tracked performance metrics in debug mode.
-        if (debugEnabled) {
-            frameTotalTracker.beginSample();
+        frameProfiler.begin(FrameProfiler.Stage.FRAME);
+        long startNanos = System.nanoTime();
+
+        // Changes made from here on, by the scene update for instance, trigger the next frame.
+        isRenderRequested = false;
+        renderedContentGeneration = ResourceManager.getInstance().getSceneContentGeneration();
+        if (isRenderOnDemand && renderer != null) {
+            // Try again on the next frame if Filament skips this one.
+            renderer.requestRedraw();
         }
 
         if (onBeginFrame(frameTimeNanos)) {
             doUpdate(frameTimeNanos);
             doRender(frameTimeNanos);
-        }
 
-        if (debugEnabled) {
-            frameTotalTracker.endSample();
-            if ((System.currentTimeMillis() / 1000) % 60 == 0) {
-                Log.d(TAG, " PERF COUNTER: frameRender: " + frameRenderTracker.getAverage());
-                Log.d(TAG, " PERF COUNTER: frameTotal: " + frameTotalTracker.getAverage());
-                Log.d(TAG, " PERF COUNTER: frameUpdate: " + frameUpdateTracker.getAverage());
+            if (qualityGovernor != null && renderer != null) {
+                qualityGovernor.onFrame(
+                        System.nanoTime() - startNanos, renderer.isLastFrameSkipped());
             }
         }
+
+        frameProfiler.end(FrameProfiler.Stage.FRAME);
     }
 
     private void doUpdate(long frameTimeNanos) {
-        if (debugEnabled) {
-            frameUpdateTracker.beginSample();
-        }
+        frameProfiler.begin(FrameProfiler.Stage.SCENE_UPDATE);
 
         frameTime.update(frameTimeNanos);
 
         scene.dispatchUpdate(frameTime);
 
-        if (debugEnabled) {
-            frameUpdateTracker.endSample();
-        }
+        frameProfiler.end(FrameProfiler.Stage.SCENE_UPDATE);
     }
 
     private void doRender(long frameTimeNanos) {
@@ -498,15 +601,11 @@ public class SceneView extends SurfaceView implements Choreographer.FrameCallbac
             return;
         }
 
-        if (debugEnabled) {
-            frameRenderTracker.beginSample();
-        }
+        frameProfiler.begin(FrameProfiler.Stage.RENDER);
 
         renderer.render(frameTimeNanos, debugEnabled);
 
-        if (debugEnabled) {
-            frameRenderTracker.endSample();
-        }
+        frameProfiler.end(FrameProfiler.Stage.RENDER);
     }
 
     /**
@@ -0,0 +1,216 @@
+package com.google.ar.sceneform;
+
+import androidx.annotation.Nullable;
+
+import com.google.ar.core.Frame;
+import com.google.ar.core.Trackable;
+import com.google.ar.core.TrackingState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The trackables of an ARCore session indexed by type and tracking state, kept up to date from the
+ * trackables updated by each frame.
+ *
+ * <p>An update costs in proportion to the number of trackables the frame updated, and the queries
+ * for a single tracking state return live unmodifiable views, so neither the whole session nor a
+ * stream is walked each frame. Unlike the {@link Trackables} helpers, the trackable types are the
+ * exact ARCore classes, for instance {@link com.google.ar.core.Plane}.
+ *
+ * <p>Trackables leave the index once they reach {@link TrackingState#STOPPED}, after being
+ * reported as updated one last time. Must be used on the main thread.
+ */
+public class TrackableIndex {
+    private static final TrackingState[] TRACKING_STATES = TrackingState.values();
+
+    /** The trackables of a type, split by tracking state. */
+    private static final class Bucket {
+        private final List<LinkedHashSet<Trackable>> byState = new ArrayList<>();
+        private final List<Collection<Trackable>> byStateViews = new ArrayList<>();
+        private final LinkedHashSet<Trackable> any = new LinkedHashSet<>();
+        private final Collection<Trackable> anyView = Collections.unmodifiableCollection(any);
+
+        Bucket() {
+            for (int i = 0; i < TRACKING_STATES.length; i++) {
+                LinkedHashSet<Trackable> trackables = new LinkedHashSet<>();
+                byState.add(trackables);
+                byStateViews.add(Collections.unmodifiableCollection(trackables));
+            }
+        }
+
+        void add(Trackable trackable, TrackingState trackingState) {
+            byState.get(trackingState.ordinal()).add(trackable);
+            any.add(trackable);
+        }
+
+        void remove(Trackable trackable, TrackingState trackingState) {
+            byState.get(trackingState.ordinal()).remove(trackable);
+            any.remove(trackable);
+        }
+
+        void clear() {
+            if (any.isEmpty()) {
+                return;
+            }
+            for (LinkedHashSet<Trackable> trackables : byState) {
+                trackables.clear();
+            }
+            any.clear();
+        }
+
+        Collection<Trackable> get(@Nullable TrackingState trackingState) {
+            return trackingState == null ? anyView : byStateViews.get(trackingState.ordinal());
+        }
+    }
+
+    private final Map<Class<?>, Bucket> all = new HashMap<>();
+    private final Map<Class<?>, Bucket> updated = new HashMap<>();
+    // The tracking state each indexed trackable was filed under.
+    private final Map<Trackable, TrackingState> trackingStates = new HashMap<>();
+
+    /**
+     * Rebuilds the index from all the trackables of the session, for instance from {@link
+     * com.google.ar.core.Session#getAllTrackables(Class)}. No trackable is considered updated.
+     */
+    public void reset(Collection<? extends Trackable> trackables) {
+        clear();
+        for (Trackable trackable : trackables) {
+            TrackingState trackingState = trackable.getTrackingState();
+            if (trackingState != TrackingState.STOPPED) {
+                getBucket(all, trackable).add(trackable, trackingState);
+                trackingStates.put(trackable, trackingState);
+            }
+        }
+    }
+
+    /**
+     * Applies the trackables updated by a frame, from {@link Frame#getUpdatedTrackables(Class)}.
+     * They replace the updated trackables of the previous frame.
+     */
+    public void update(Collection<? extends Trackable> updatedTrackables) {
+        for (Bucket bucket : updated.values()) {
+            bucket.clear();
+        }
+
+        for (Trackable trackable : updatedTrackables) {
+            TrackingState trackingState = trackable.getTrackingState();
+            Bucket bucket = getBucket(all, trackable);
+            TrackingState previousTrackingState = trackingStates.get(trackable);
+            if (previousTrackingState != null) {
+                bucket.remove(trackable, previousTrackingState);
+            }
+            if (trackingState != TrackingState.STOPPED) {
+                bucket.add(trackable, trackingState);
+                trackingStates.put(trackable, trackingState);
+            } else {
+                trackingStates.remove(trackable);
+            }
+            getBucket(updated, trackable).add(trackable, trackingState);
+        }
+    }
+
+    /** Removes all the trackables. */
+    public void clear() {
+        for (Bucket bucket : all.values()) {
+            bucket.clear();
+        }
+        for (Bucket bucket : updated.values()) {
+            bucket.clear();
+        }
+        trackingStates.clear();
+    }
+
+    /**
+     * Returns the trackables of the given type with the given tracking state, as a live view.
+     *
+     * @param trackingState the tracking state or null for no states filter
+     */
+    public <T extends Trackable> Collection<T> getAll(
+            Class<T> type, @Nullable TrackingState trackingState) {
+        return get(all, type, trackingState);
+    }
+
+    /**
+     * Returns the trackables of the given type with one of the given tracking states. A single
+     * tracking state returns a live view, several a new collection.
+     *
+     * @param trackingStates the tracking states or null for no states filter
+     */
+    public <T extends Trackable> Collection<T> getAll(
+            Class<T> type, @Nullable TrackingState... trackingStates) {
+        return get(all, type, trackingStates);
+    }
+
+    /**
+     * Returns the trackables of the given type updated by the last frame with the given tracking
+     * state, as a live view.
+     *
+     * @param trackingState the tracking state or null for no states filter
+     */
+    public <T extends Trackable> Collection<T> getUpdated(
+            Class<T> type, @Nullable TrackingState trackingState) {
+        return get(updated, type, trackingState);
+    }
+
+    /**
+     * Returns the trackables of the given type updated by the last frame with one of the given
+     * tracking states. A single tracking state returns a live view, several a new collection.
+     *
+     * @param trackingStates the tracking states or null for no states filter
+     */
+    public <T extends Trackable> Collection<T> getUpdated(
+            Class<T> type, @Nullable TrackingState... trackingStates) {
+        return get(updated, type, trackingStates);
+    }
+
+    private static Bucket getBucket(Map<Class<?>, Bucket> buckets, Trackable trackable) {
+        Bucket bucket = buckets.get(trackable.getClass());
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(trackable.getClass(), bucket);
+        }
+        return bucket;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Trackable> Collection<T> get(
+            Map<Class<?>, Bucket> buckets, Class<T> type, @Nullable TrackingState trackingState) {
+        Bucket bucket = buckets.get(type);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        return (Collection<T>) bucket.get(trackingState);
+    }
+
+    private static <T extends Trackable> Collection<T> get(
+            Map<Class<?>, Bucket> buckets, Class<T> type, @Nullable TrackingState[] trackingStates) {
+        if (trackingStates == null) {
+            return get(buckets, type, (TrackingState) null);
+        }
+        for (TrackingState trackingState : trackingStates) {
+            // Same as the Trackables helpers, a null state matches any.
+            if (trackingState == null) {
+                return get(buckets, type, (TrackingState) null);
+            }
+        }
+        if (trackingStates.length == 1) {
+            return get(buckets, type, trackingStates[0]);
+        }
+
+        List<T> result = new ArrayList<>();
+        boolean[] isAdded = new boolean[TRACKING_STATES.length];
+        for (TrackingState trackingState : trackingStates) {
+            if (!isAdded[trackingState.ordinal()]) {
+                isAdded[trackingState.ordinal()] = true;
+                result.addAll(get(buckets, type, trackingState));
+            }
+        }
+        return result;
+    }
+}
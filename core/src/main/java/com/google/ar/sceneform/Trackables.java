@@ -15,6 +15,9 @@ import java.util.stream.Stream;
 
 /**
  * Collection of Trackables extensions
+ * <p>
+ * These filter the given trackables on each call. To query the trackables of an
+ * {@link ArSceneView} every frame, prefer its {@link TrackableIndex}.
  */
 public class Trackables {
 
@@ -6,6 +6,7 @@ import android.util.IntProperty;
 import android.util.Property;
 
 import com.google.android.filament.gltfio.Animator;
+import com.google.ar.sceneform.rendering.ResourceManager;
 
 import java.util.concurrent.TimeUnit;
 
@@ -224,6 +225,7 @@ public class ModelAnimation {
     public void setDirty(boolean isDirty) {
         this.isDirty = isDirty;
         if (isDirty) {
+            ResourceManager.getInstance().markSceneContentChanged();
             model.onModelAnimationChanged(this);
         }
     }
@@ -23,8 +23,6 @@ import com.google.ar.core.Session;
 import com.google.ar.sceneform.utilities.AndroidPreconditions;
 import com.google.ar.sceneform.utilities.Preconditions;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import java.util.concurrent.CompletableFuture;
@@ -66,7 +64,7 @@ public class CameraStream {
     private final IndexBuffer cameraIndexBuffer;
     private final VertexBuffer cameraVertexBuffer;
     private final FloatBuffer cameraUvCoords;
-    private final FloatBuffer transformedCameraUvCoords;
+    private final CameraUvBuffers transformedCameraUvCoords = new CameraUvBuffers(CAMERA_UVS);
     private final IEngine engine;
     public int cameraStreamRenderable = UNINITIALIZED_FILAMENT_RENDERABLE;
 
@@ -115,7 +113,6 @@ public class CameraStream {
 
         // Note: ARCore expects the UV buffers to be direct or will assert in transformDisplayUvCoords.
         cameraUvCoords = createCameraUVBuffer();
-        transformedCameraUvCoords = createCameraUVBuffer();
 
 
         // VERTEXTBUFFER
@@ -128,23 +125,22 @@ public class CameraStream {
         Preconditions.checkNotNull(cameraVertexBuffer)
                 .setBufferAt(engine.getFilamentEngine(), POSITION_BUFFER_INDEX, vertexBufferData);
 
-        adjustCameraUvsForOpenGL();
-        cameraVertexBuffer.setBufferAt(
-                engine.getFilamentEngine(), UV_BUFFER_INDEX, transformedCameraUvCoords);
+        uploadCameraUvs(transformedCameraUvCoords.getCurrent());
 
+        // Both materials are loaded up front, switching the depth occlusion mode then only swaps
+        // the material instance of the renderable.
         setupStandardCameraMaterial(renderer);
         setupOcclusionCameraMaterial(renderer);
     }
 
-    private FloatBuffer createCameraUVBuffer() {
-        FloatBuffer buffer =
-                ByteBuffer.allocateDirect(CAMERA_UVS.length * FLOAT_SIZE_IN_BYTES)
-                        .order(ByteOrder.nativeOrder())
-                        .asFloatBuffer();
-        buffer.put(CAMERA_UVS);
-        buffer.rewind();
-
-        return buffer;
+    /**
+     * Creates a direct buffer holding the untransformed camera UVs, to be passed to
+     * {@link Frame#transformDisplayUvCoords(FloatBuffer, FloatBuffer)}.
+     *
+     * @hide
+     */
+    public static FloatBuffer createCameraUVBuffer() {
+        return CameraUvBuffers.createBuffer(CAMERA_UVS);
     }
 
     private IndexBuffer createIndexBuffer(int indexCount) {
@@ -198,6 +194,7 @@ public class CameraStream {
                             // Only set the camera material if it hasn't already been set to a custom material.
                             if (cameraMaterial == null) {
                                 cameraMaterial = material;
+                                onMaterialLoaded(material);
                             }
                         })
                 .exceptionally(
@@ -231,6 +228,7 @@ public class CameraStream {
                             // Only set the occlusion material if it hasn't already been set to a custom material.
                             if (occlusionCameraMaterial == null) {
                                 occlusionCameraMaterial = material;
+                                onMaterialLoaded(material);
                             }
                         })
                 .exceptionally(
@@ -240,40 +238,44 @@ public class CameraStream {
                         });
     }
 
-    private void setCameraMaterial(Material material) {
-        cameraMaterial = material;
-        if (cameraMaterial == null)
-            return;
-
-        // The ExternalTexture can't be created until we receive the first AR Core Frame so that we
-        // can access the width and height of the camera texture. Return early if the ExternalTexture
-        // hasn't been created yet so we don't start rendering until we have a valid texture. This will
-        // be called again when the ExternalTexture is created.
+    private void onMaterialLoaded(Material material) {
+        bindCameraTexture(material);
         if (!isTextureInitialized()) {
-            return;
+            updateActiveMaterial();
         }
+    }
 
-        cameraMaterial.setExternalTexture(
-                MATERIAL_CAMERA_TEXTURE,
-                Preconditions.checkNotNull(cameraTexture));
+    /**
+     * The ExternalTexture can't be created until we receive the first AR Core Frame so that we can
+     * access the width and height of the camera texture. Each material is bound to it once both
+     * are available, whichever comes last.
+     */
+    private void bindCameraTexture(Material material) {
+        if (cameraTexture != null) {
+            material.setExternalTexture(MATERIAL_CAMERA_TEXTURE, cameraTexture);
+        }
     }
 
-    private void setOcclusionMaterial(Material material) {
-        occlusionCameraMaterial = material;
-        if (occlusionCameraMaterial == null)
-            return;
+    @Nullable
+    private Material getActiveMaterial() {
+        if (depthOcclusionMode == DepthOcclusionMode.DEPTH_OCCLUSION_ENABLED
+                && isDepthOcclusionModeSupported(depthOcclusionMode)) {
+            return occlusionCameraMaterial;
+        }
+        return cameraMaterial;
+    }
 
-        // The ExternalTexture can't be created until we receive the first AR Core Frame so that we
-        // can access the width and height of the camera texture. Return early if the ExternalTexture
-        // hasn't been created yet so we don't start rendering until we have a valid texture. This will
-        // be called again when the ExternalTexture is created.
-        if (!isTextureInitialized()) {
+    /**
+     * Renders the camera stream with the material of the current depth occlusion mode. Rendering
+     * only starts once the camera texture and that material are both ready.
+     */
+    private void updateActiveMaterial() {
+        Material material = getActiveMaterial();
+        if (cameraTexture == null || material == null) {
             return;
         }
-
-        occlusionCameraMaterial.setExternalTexture(
-                MATERIAL_CAMERA_TEXTURE,
-                Preconditions.checkNotNull(cameraTexture));
+        isTextureInitialized = true;
+        initOrUpdateRenderableMaterial(material);
     }
 
 
@@ -313,12 +315,18 @@ public class CameraStream {
         // add to the scene
         scene.addEntity(cameraStreamRenderable);
 
+        int vertexSizeInBytes =
+                ((CAMERA_VERTICES.length + CAMERA_UVS.length) / VERTEX_COUNT) * FLOAT_SIZE_IN_BYTES;
         ResourceManager.getInstance()
                 .getCameraStreamCleanupRegistry()
                 .register(
                         this,
                         new CleanupCallback(
-                                scene, cameraStreamRenderable, cameraIndexBuffer, cameraVertexBuffer));
+                                scene, cameraStreamRenderable, cameraIndexBuffer, cameraVertexBuffer),
+                        ResourceSizeEstimator.estimateIndexBuffer(
+                                        cameraIndexBuffer, IndexType.USHORT)
+                                + ResourceSizeEstimator.estimateVertexBuffer(
+                                        cameraVertexBuffer, vertexSizeInBytes));
     }
 
 
@@ -341,6 +349,9 @@ public class CameraStream {
             if (config.getDepthMode() == Config.DepthMode.RAW_DEPTH_ONLY) {
                 depthMode = DepthMode.RAW_DEPTH;
             }
+
+        // The occlusion material may no longer apply, or apply now.
+        updateActiveMaterial();
     }
 
     public boolean isTextureInitialized() {
@@ -348,37 +359,40 @@ public class CameraStream {
     }
 
     public void initializeTexture(Frame frame) {
-        if (isTextureInitialized()) {
+        // Once the texture exists, the loading of the materials completes the initialization.
+        if (cameraTexture != null) {
             return;
         }
 
-        // External Camera Texture
-        if (cameraTexture == null) {
-            Camera arCamera = frame.getCamera();
-            CameraIntrinsics intrinsics = arCamera.getTextureIntrinsics();
-            int[] dimensions = intrinsics.getImageDimensions();
-
-            cameraTexture = new ExternalTexture(
-                    cameraTextureId,
-                    dimensions[0],
-                    dimensions[1]);
+        Camera arCamera = frame.getCamera();
+        CameraIntrinsics intrinsics = arCamera.getTextureIntrinsics();
+        initializeTexture(intrinsics.getImageDimensions());
+    }
+
+    /**
+     * Same as {@link #initializeTexture(Frame)} from the camera texture dimensions retrieved
+     * beforehand, for instance on the AR thread.
+     *
+     * @param textureDimensions the width and height of the camera texture
+     */
+    public void initializeTexture(int[] textureDimensions) {
+        if (cameraTexture != null) {
+            return;
         }
 
-        if (depthOcclusionMode == DepthOcclusionMode.DEPTH_OCCLUSION_ENABLED && (
-                depthMode == DepthMode.DEPTH ||
-                        depthMode == DepthMode.RAW_DEPTH)) {
-            if (occlusionCameraMaterial != null) {
-                isTextureInitialized = true;
-                setOcclusionMaterial(occlusionCameraMaterial);
-                initOrUpdateRenderableMaterial(occlusionCameraMaterial);
-            }
-        } else {
-            if (cameraMaterial != null) {
-                isTextureInitialized = true;
-                setCameraMaterial(cameraMaterial);
-                initOrUpdateRenderableMaterial(cameraMaterial);
-            }
+        // External Camera Texture
+        cameraTexture = new ExternalTexture(
+                cameraTextureId,
+                textureDimensions[0],
+                textureDimensions[1]);
+
+        if (cameraMaterial != null) {
+            bindCameraTexture(cameraMaterial);
         }
+        if (occlusionCameraMaterial != null) {
+            bindCameraTexture(occlusionCameraMaterial);
+        }
+        updateActiveMaterial();
     }
 
 
@@ -412,21 +426,29 @@ public class CameraStream {
 
 
     public void recalculateCameraUvs(Frame frame) {
-        FloatBuffer cameraUvCoords = this.cameraUvCoords;
-        FloatBuffer transformedCameraUvCoords = this.transformedCameraUvCoords;
-        VertexBuffer cameraVertexBuffer = this.cameraVertexBuffer;
+        FloatBuffer transformedCameraUvCoords = this.transformedCameraUvCoords.next();
         frame.transformDisplayUvCoords(cameraUvCoords, transformedCameraUvCoords);
-        adjustCameraUvsForOpenGL();
-        cameraVertexBuffer.setBufferAt(
-                engine.getFilamentEngine(), UV_BUFFER_INDEX, transformedCameraUvCoords);
+        uploadCameraUvs(transformedCameraUvCoords);
+    }
+
+
+    /**
+     * Same as {@link #recalculateCameraUvs(Frame)} from UVs already transformed by
+     * {@link Frame#transformDisplayUvCoords(FloatBuffer, FloatBuffer)}, for instance on the AR
+     * thread.
+     *
+     * @param transformedUvs the transformed UVs, as many as {@link #createCameraUVBuffer()} holds
+     */
+    public void recalculateCameraUvs(float[] transformedUvs) {
+        uploadCameraUvs(transformedCameraUvCoords.next(transformedUvs));
     }
 
 
-    private void adjustCameraUvsForOpenGL() {
+    private void uploadCameraUvs(FloatBuffer transformedCameraUvCoords) {
         // Correct for vertical coordinates to match OpenGL
-        for (int i = 1; i < VERTEX_COUNT * 2; i += 2) {
-            transformedCameraUvCoords.put(i, 1.0f - transformedCameraUvCoords.get(i));
-        }
+        CameraUvBuffers.flipVertically(transformedCameraUvCoords);
+        cameraVertexBuffer.setBufferAt(
+                engine.getFilamentEngine(), UV_BUFFER_INDEX, transformedCameraUvCoords);
     }
 
 
@@ -523,22 +545,11 @@ public class CameraStream {
      * @param depthOcclusionMode {@link DepthOcclusionMode}
      */
     public void setDepthOcclusionMode(DepthOcclusionMode depthOcclusionMode) {
-        // Only set the occlusion material if the session config
-        // has set the DepthMode to AUTOMATIC or RAW_DEPTH_ONLY,
-        // otherwise set the standard camera material.
-        if (isDepthOcclusionModeSupported(depthOcclusionMode)) {
-            if (occlusionCameraMaterial != null) {
-                setOcclusionMaterial(occlusionCameraMaterial);
-                initOrUpdateRenderableMaterial(occlusionCameraMaterial);
-            }
-        } else {
-            if (cameraMaterial != null) {
-                setCameraMaterial(cameraMaterial);
-                initOrUpdateRenderableMaterial(cameraMaterial);
-            }
-        }
-
         this.depthOcclusionMode = depthOcclusionMode;
+        // Only use the occlusion material if the session config
+        // has set the DepthMode to AUTOMATIC or RAW_DEPTH_ONLY,
+        // otherwise use the standard camera material.
+        updateActiveMaterial();
     }
 
 
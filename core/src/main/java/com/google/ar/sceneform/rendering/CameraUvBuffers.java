@@ -0,0 +1,63 @@
+package com.google.ar.sceneform.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * The transformed UVs of the camera stream. Filament reads an uploaded buffer asynchronously, so
+ * the UVs alternate between two buffers rather than overwrite the one of the previous upload.
+ *
+ * <p>The buffers are direct since ARCore asserts in {@code Frame.transformDisplayUvCoords} on
+ * heap buffers.
+ */
+final class CameraUvBuffers {
+  private static final int FLOAT_SIZE_IN_BYTES = Float.SIZE / 8;
+
+  private final FloatBuffer[] buffers = new FloatBuffer[2];
+  private int index = 0;
+
+  /** @param uvs the initial UVs of both buffers */
+  CameraUvBuffers(float[] uvs) {
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = createBuffer(uvs);
+    }
+  }
+
+  /** Creates a direct buffer in native order holding the UVs. */
+  static FloatBuffer createBuffer(float[] uvs) {
+    FloatBuffer buffer =
+        ByteBuffer.allocateDirect(uvs.length * FLOAT_SIZE_IN_BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    buffer.put(uvs);
+    buffer.rewind();
+    return buffer;
+  }
+
+  /** Returns the buffer of the last upload. */
+  FloatBuffer getCurrent() {
+    return buffers[index];
+  }
+
+  /** Switches to the other buffer and returns it, to be filled for the next upload. */
+  FloatBuffer next() {
+    index = (index + 1) % buffers.length;
+    return buffers[index];
+  }
+
+  /** Switches to the other buffer and fills it with the UVs. */
+  FloatBuffer next(float[] uvs) {
+    FloatBuffer buffer = next();
+    buffer.put(uvs);
+    buffer.rewind();
+    return buffer;
+  }
+
+  /** Flips the v coordinates of the UVs, ARCore and OpenGL disagree on their direction. */
+  static void flipVertically(FloatBuffer uvs) {
+    for (int i = 1; i < uvs.capacity(); i += 2) {
+      uvs.put(i, 1.0f - uvs.get(i));
+    }
+  }
+}
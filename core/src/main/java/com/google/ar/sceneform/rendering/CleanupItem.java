@@ -9,16 +9,32 @@ package com.google.ar.sceneform.rendering;
  */
 class CleanupItem<T> extends java.lang.ref.PhantomReference<T> {
   private final Runnable cleanupCallback;
+  // Updated on the main thread, read by the memory accounting getters from any thread.
+  private volatile long sizeInBytes;
 
   /**
    * @param trackedObject The object to be tracked until garbage collection
    * @param referenceQueue The getFilamentEngine reference tracking mechanism
    * @param cleanupCallback {@link Runnable} to be called once {@code trackedObject} is disposed.
+   * @param sizeInBytes Estimated memory released by {@code cleanupCallback}.
    */
   CleanupItem(
-      T trackedObject, java.lang.ref.ReferenceQueue<T> referenceQueue, Runnable cleanupCallback) {
+      T trackedObject,
+      java.lang.ref.ReferenceQueue<T> referenceQueue,
+      Runnable cleanupCallback,
+      long sizeInBytes) {
     super(trackedObject, referenceQueue);
     this.cleanupCallback = cleanupCallback;
+    this.sizeInBytes = sizeInBytes;
+  }
+
+  /** Returns the estimated memory released once the tracked object is disposed. */
+  long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  void setSizeInBytes(long sizeInBytes) {
+    this.sizeInBytes = sizeInBytes;
   }
 
   /** Executes the {@link Runnable}. */
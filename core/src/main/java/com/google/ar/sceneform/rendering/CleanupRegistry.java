@@ -1,7 +1,9 @@
 package com.google.ar.sceneform.rendering;
 
+import com.google.ar.sceneform.resources.ReclaimBudget;
 import com.google.ar.sceneform.resources.ResourceHolder;
 import java.lang.ref.ReferenceQueue;
+import java.util.ArrayDeque;
 import java.util.HashSet;
 import java.util.Iterator;
 
@@ -13,6 +15,10 @@ public class CleanupRegistry<T> implements ResourceHolder {
 
   private final java.util.HashSet<CleanupItem<T>> cleanupItemHashSet;
   private final ReferenceQueue<T> referenceQueue;
+  // Garbage collected objects whose cleanup was deferred by a ReclaimBudget.
+  private final ArrayDeque<CleanupItem<T>> pendingCleanups = new ArrayDeque<>();
+  // Written on the main thread, read by the public getter from any thread.
+  private volatile long estimatedSizeInBytes = 0;
 
   public CleanupRegistry() {
     this(new HashSet<>(), new ReferenceQueue<>());
@@ -31,7 +37,45 @@ public class CleanupRegistry<T> implements ResourceHolder {
    * @param cleanupCallback Will be called after {@code trackedOBject} is disposed.
    */
   public void register(T trackedObject, Runnable cleanupCallback) {
-    cleanupItemHashSet.add(new CleanupItem<T>(trackedObject, referenceQueue, cleanupCallback));
+    register(trackedObject, cleanupCallback, 0);
+  }
+
+  /**
+   * Adds {@code trackedOBject} to the {@link ReferenceQueue} and accounts for the memory it holds
+   * until it is disposed.
+   *
+   * @param trackedObject The target to be tracked.
+   * @param cleanupCallback Will be called after {@code trackedOBject} is disposed.
+   * @param sizeInBytes Estimated GPU memory released by {@code cleanupCallback}.
+   */
+  public void register(T trackedObject, Runnable cleanupCallback, long sizeInBytes) {
+    track(trackedObject, cleanupCallback, sizeInBytes);
+  }
+
+  /**
+   * Same as {@link #register(Object, Runnable, long)}, returns the item so that its size can be
+   * updated with {@link #updateSize(CleanupItem, long)}.
+   */
+  CleanupItem<T> track(T trackedObject, Runnable cleanupCallback, long sizeInBytes) {
+    CleanupItem<T> item =
+        new CleanupItem<T>(trackedObject, referenceQueue, cleanupCallback, sizeInBytes);
+    if (cleanupItemHashSet.add(item)) {
+      estimatedSizeInBytes += sizeInBytes;
+    }
+    return item;
+  }
+
+  /** Updates the estimated memory of an object whose resources were replaced. */
+  void updateSize(CleanupItem<T> item, long sizeInBytes) {
+    if (cleanupItemHashSet.contains(item)) {
+      estimatedSizeInBytes += sizeInBytes - item.getSizeInBytes();
+    }
+    item.setSizeInBytes(sizeInBytes);
+  }
+
+  /** Returns the estimated memory held by the objects that haven't been disposed yet. */
+  public long getEstimatedSizeInBytes() {
+    return estimatedSizeInBytes;
   }
 
   /**
@@ -41,19 +85,44 @@ public class CleanupRegistry<T> implements ResourceHolder {
    * @return count of resources remaining.
    */
   @Override
-  @SuppressWarnings("unchecked") // safe cast from Reference to a CleanupItem
   public long reclaimReleasedResources() {
+    return reclaimReleasedResources(ReclaimBudget.unlimited());
+  }
+
+  /**
+   * Polls the {@link ReferenceQueue} for garbage collected objects and runs the associated {@link
+   * Runnable} for as many of them as the budget allows. The others are run by later calls, oldest
+   * first.
+   *
+   * @return count of resources remaining, including the ones pending cleanup.
+   */
+  @Override
+  @SuppressWarnings("unchecked") // safe cast from Reference to a CleanupItem
+  public long reclaimReleasedResources(ReclaimBudget budget) {
     CleanupItem<T> ref = (CleanupItem<T>) referenceQueue.poll();
     while (ref != null) {
       if (cleanupItemHashSet.contains(ref)) {
-        ref.run();
-        cleanupItemHashSet.remove(ref);
+        pendingCleanups.add(ref);
       }
       ref = (CleanupItem<T>) referenceQueue.poll();
     }
+
+    while (!pendingCleanups.isEmpty() && budget.tryAcquire()) {
+      CleanupItem<T> pendingRef = pendingCleanups.poll();
+      // Skip items that were already cleaned up by destroyAllResources.
+      if (cleanupItemHashSet.remove(pendingRef)) {
+        pendingRef.run();
+        estimatedSizeInBytes -= pendingRef.getSizeInBytes();
+      }
+    }
     return cleanupItemHashSet.size();
   }
 
+  @Override
+  public int getPendingDisposalCount() {
+    return pendingCleanups.size();
+  }
+
   /** Ignores reference count and releases any associated resources */
   @Override
   public void destroyAllResources() {
@@ -63,5 +132,7 @@ public class CleanupRegistry<T> implements ResourceHolder {
       iterator.remove();
       ref.run();
     }
+    pendingCleanups.clear();
+    estimatedSizeInBytes = 0;
   }
 }
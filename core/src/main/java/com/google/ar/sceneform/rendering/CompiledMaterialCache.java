@@ -0,0 +1,142 @@
+package com.google.ar.sceneform.rendering;
+
+import androidx.annotation.Nullable;
+import com.google.ar.sceneform.resources.ResourceHolder;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Builds each compiled material package into a Filament material once, however many models or
+ * {@link Material.Builder}s supply the same bytes.
+ *
+ * <p>Packages are identified by a SHA-256 digest of their content, so identical materials embedded
+ * in different models share one Filament material, and different packages never collide. Entries
+ * stay in the cache for as long as a {@link Material} uses them. Must be used on the main thread,
+ * except for creating {@link Source}s.
+ */
+final class CompiledMaterialCache implements ResourceHolder {
+  private final HashMap<Key, MaterialInternalDataImpl> entries = new HashMap<>();
+  private long hitCount = 0;
+  private long missCount = 0;
+
+  /** Content digest of a compiled material package. */
+  static final class Key {
+    private final byte[] digest;
+    private final int hashCode;
+
+    private Key(byte[] digest) {
+      this.digest = digest;
+      this.hashCode = Arrays.hashCode(digest);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      return Arrays.equals(digest, ((Key) other).digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * A compiled material package and its digest, which can be computed on a worker thread. The
+   * package spans the buffer's position to its limit.
+   */
+  static final class Source {
+    private final Key key;
+    private final ByteBuffer buffer;
+
+    Source(ByteBuffer buffer) {
+      this.key = computeKey(buffer);
+      this.buffer = buffer;
+    }
+  }
+
+  private static Key computeKey(ByteBuffer source) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(source.duplicate());
+    return new Key(digest.digest());
+  }
+
+  /**
+   * Returns the material data for the package, building the Filament material if it isn't in the
+   * cache yet.
+   */
+  MaterialInternalDataImpl getOrCreate(Source source) {
+    Key key = source.key;
+    MaterialInternalDataImpl materialData = entries.get(key);
+    if (materialData != null) {
+      hitCount++;
+      return materialData;
+    }
+
+    missCount++;
+    materialData = new MaterialInternalDataImpl(createFilamentMaterial(source.buffer), key);
+    entries.put(key, materialData);
+    return materialData;
+  }
+
+  /** Called when the last {@link Material} using the data is released. */
+  void remove(Key key, MaterialInternalDataImpl materialData) {
+    if (entries.get(key) == materialData) {
+      entries.remove(key);
+    }
+  }
+
+  long getHitCount() {
+    return hitCount;
+  }
+
+  long getMissCount() {
+    return missCount;
+  }
+
+  int getEntryCount() {
+    return entries.size();
+  }
+
+  @Override
+  public long reclaimReleasedResources() {
+    return entries.size();
+  }
+
+  @Override
+  public void destroyAllResources() {
+    // The Filament materials are destroyed with the Materials that use them.
+    entries.clear();
+  }
+
+  private static com.google.android.filament.Material createFilamentMaterial(ByteBuffer source) {
+    // Filament reads the payload from the start of the buffer, which may be a view into a larger
+    // model file.
+    ByteBuffer payload = source;
+    if (source.position() != 0) {
+      payload = ByteBuffer.allocateDirect(source.remaining());
+      payload.put(source.duplicate());
+      payload.flip();
+    }
+    try {
+      return new com.google.android.filament.Material.Builder()
+          .payload(payload, payload.limit())
+          .build(EngineInstance.getEngine().getFilamentEngine());
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Unable to create material from source byte buffer.", e);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.google.ar.sceneform.rendering;
+
+import androidx.annotation.Nullable;
+import com.google.android.filament.Texture;
+import java.nio.ByteBuffer;
+
+/**
+ * The buffers the depth images are copied into before they are uploaded, so that the image can be
+ * closed right away. Filament reads an uploaded buffer asynchronously, a buffer and its descriptor
+ * are reused once Filament released them.
+ */
+final class DepthImageBuffers {
+  private static final int BUFFER_COUNT = 3;
+
+  @Nullable private final Object handler;
+  private final ByteBuffer[] buffers = new ByteBuffer[BUFFER_COUNT];
+  private final Texture.PixelBufferDescriptor[] pixelBufferDescriptors =
+      new Texture.PixelBufferDescriptor[BUFFER_COUNT];
+  private final Runnable[] releaseCallbacks = new Runnable[BUFFER_COUNT];
+  private final boolean[] isBufferInUse = new boolean[BUFFER_COUNT];
+
+  /**
+   * @param handler the {@link android.os.Handler} or {@link java.util.concurrent.Executor} the
+   *     release callbacks run on, which must be the thread calling {@link #copy(ByteBuffer)}
+   */
+  DepthImageBuffers(@Nullable Object handler) {
+    this.handler = handler;
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      final int index = i;
+      releaseCallbacks[i] = () -> isBufferInUse[index] = false;
+    }
+  }
+
+  /**
+   * Copies the image into a buffer Filament doesn't hold.
+   *
+   * @return the descriptor to upload, which releases the buffer once Filament consumed it, or null
+   *     if Filament holds all of them and the image must be skipped
+   */
+  @Nullable
+  Texture.PixelBufferDescriptor copy(ByteBuffer source) {
+    int index = 0;
+    while (index < BUFFER_COUNT && isBufferInUse[index]) {
+      index++;
+    }
+    if (index == BUFFER_COUNT) {
+      return null;
+    }
+
+    ByteBuffer buffer = buffers[index];
+    if (buffer == null || buffer.capacity() < source.capacity()) {
+      buffer = ByteBuffer.allocateDirect(source.capacity());
+      buffers[index] = buffer;
+      pixelBufferDescriptors[index] =
+          new Texture.PixelBufferDescriptor(
+              buffer,
+              Texture.Format.RG,
+              Texture.Type.UBYTE,
+              1,
+              0,
+              0,
+              0,
+              handler,
+              releaseCallbacks[index]);
+    }
+    buffer.clear();
+    source.rewind();
+    buffer.put(source);
+    source.rewind();
+    buffer.flip();
+
+    isBufferInUse[index] = true;
+    return pixelBufferDescriptors[index];
+  }
+}
@@ -8,11 +8,8 @@ import androidx.annotation.Nullable;
 
 import com.google.android.filament.Texture;
 import com.google.ar.sceneform.utilities.AndroidPreconditions;
-import com.google.ar.sceneform.utilities.BufferHelper;
 import com.google.ar.sceneform.utilities.Preconditions;
 
-import java.nio.ByteBuffer;
-
 /**
  * <pre>
  *     The DepthTexture class holds a special Texture to store
@@ -22,7 +19,8 @@ import java.nio.ByteBuffer;
  */
 public class DepthTexture {
     @Nullable private final Texture filamentTexture;
-    private final Handler handler = new Handler(Looper.myLooper());
+    private final DepthImageBuffers buffers =
+            new DepthImageBuffers(new Handler(Looper.myLooper()));
 
     /**
      * <pre>
@@ -44,7 +42,10 @@ public class DepthTexture {
 
         ResourceManager.getInstance()
                 .getDepthTextureCleanupRegistry()
-                .register(this, new CleanupCallback(filamentTexture));
+                .register(
+                        this,
+                        new CleanupCallback(filamentTexture),
+                        ResourceSizeEstimator.estimateTexture(width, height, Texture.InternalFormat.RG8));
     }
     public Texture getFilamentTexture() {
         return Preconditions.checkNotNull(filamentTexture);
@@ -55,9 +56,13 @@ public class DepthTexture {
      *     The Filament Texture is updated based on the newest
      *     DepthImage. To solve a problem with a to early
      *     released DepthImage the ByteBuffer which holds all
-     *     necessary data is cloned. The cloned ByteBuffer is unaffected
+     *     necessary data is copied. The copied ByteBuffer is unaffected
      *     of a released DepthImage and therefore produces not
      *     a flickering result.
+     *
+     *     The copies are made into reused buffers. If Filament still
+     *     holds all of them, the DepthImage is skipped and the texture
+     *     keeps the previous one.
      * </pre>
      *
      * @param depthImage {@link Image}
@@ -67,27 +72,14 @@ public class DepthTexture {
             return;
         }
 
-        IEngine engine = EngineInstance.getEngine();
-
-        Image.Plane plane = depthImage.getPlanes()[0];
-
-        ByteBuffer buffer = plane.getBuffer();
-        ByteBuffer clonedBuffer = BufferHelper.cloneByteBuffer(buffer);
-
-        Texture.PixelBufferDescriptor pixelBufferDescriptor = new Texture.PixelBufferDescriptor(
-                clonedBuffer,
-                Texture.Format.RG,
-                Texture.Type.UBYTE,
-                1,
-                0,
-                0,
-                0,
-                handler,
-                null
-        );
+        Texture.PixelBufferDescriptor pixelBufferDescriptor =
+                buffers.copy(depthImage.getPlanes()[0].getBuffer());
+        if (pixelBufferDescriptor == null) {
+            return;
+        }
 
         filamentTexture.setImage(
-                engine.getFilamentEngine(),
+                EngineInstance.getEngine().getFilamentEngine(),
                 0,
                 pixelBufferDescriptor
         );
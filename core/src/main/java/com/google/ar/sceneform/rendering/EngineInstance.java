@@ -33,6 +33,15 @@ public class EngineInstance {
     return headlessEngine;
   }
 
+  /**
+   * Returns the GL context created along the engine, to share its resources with another thread.
+   * Null until the engine is created.
+   */
+  @Nullable
+  public static EGLContext getGlContext() {
+    return glContext;
+  }
+
   /**
    * Get the Filament Engine instance, creating it if necessary.
    *
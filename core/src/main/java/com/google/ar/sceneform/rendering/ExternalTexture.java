@@ -1,6 +1,8 @@
 package com.google.ar.sceneform.rendering;
 
 import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Surface;
 
 import androidx.annotation.Nullable;
@@ -40,6 +42,10 @@ public class ExternalTexture {
     public ExternalTexture() {
         SurfaceTexture surfaceTexture = new SurfaceTexture(0);
         surfaceTexture.detachFromGLContext();
+        // Wake up the views rendering on demand when a new image is drawn.
+        surfaceTexture.setOnFrameAvailableListener(
+                texture -> ResourceManager.getInstance().markSceneContentChanged(),
+                new Handler(Looper.getMainLooper()));
         this.surfaceTexture = surfaceTexture;
 
         // Create the Android surface.
@@ -50,7 +56,8 @@ public class ExternalTexture {
                 new Stream.Builder()
                         .stream(surfaceTexture).build(EngineInstance.getEngine().getFilamentEngine());
 
-        initialize(stream);
+        // The size of the images drawn to the surface isn't known up front.
+        initialize(stream, 0);
     }
 
     /**
@@ -97,12 +104,12 @@ public class ExternalTexture {
                         .height(height)
                         .build(EngineInstance.getEngine().getFilamentEngine());
 
-        initialize(stream);
+        initialize(stream, ResourceSizeEstimator.estimateCameraImage(width, height));
     }
 
 
     @SuppressWarnings("initialization")
-    private void initialize(Stream filamentStream) {
+    private void initialize(Stream filamentStream, long sizeInBytes) {
         if (filamentTexture != null) {
             throw new AssertionError("Stream was initialized twice");
         }
@@ -123,7 +130,7 @@ public class ExternalTexture {
                 filamentStream);
         ResourceManager.getInstance()
                 .getExternalTextureCleanupRegistry()
-                .register(this, new CleanupCallback(filamentTexture, filamentStream));
+                .register(this, new CleanupCallback(filamentTexture, filamentStream), sizeInBytes);
     }
 
     /**
@@ -65,6 +65,13 @@ public class GLHelper {
     return result;
   }
 
+  /** Detaches the current GL context from the calling thread, for instance before destroying it. */
+  public static void releaseCurrentContext() {
+    EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+    EGL14.eglMakeCurrent(
+        display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+  }
+
   public static void destroyContext(EGLContext context) {
     EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
     if (!EGL14.eglDestroyContext(display, context)) {
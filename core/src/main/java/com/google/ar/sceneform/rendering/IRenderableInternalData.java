@@ -39,12 +39,19 @@ interface IRenderableInternalData {
 
   ArrayList<MeshData> getMeshes();
 
-  void setIndexBuffer(@Nullable IndexBuffer indexBuffer);
+  /**
+   * @param indexType the type the buffer was built with, which sizes it in the memory accounting
+   */
+  void setIndexBuffer(@Nullable IndexBuffer indexBuffer, IndexBuffer.Builder.IndexType indexType);
 
   @Nullable
   IndexBuffer getIndexBuffer();
 
-  void setVertexBuffer(@Nullable VertexBuffer vertexBuffer);
+  /**
+   * @param vertexSizeInBytes the summed size of the attributes the buffer was built with, which
+   *     sizes it in the memory accounting
+   */
+  void setVertexBuffer(@Nullable VertexBuffer vertexBuffer, int vertexSizeInBytes);
 
   @Nullable
   VertexBuffer getVertexBuffer();
@@ -0,0 +1,144 @@
+package com.google.ar.sceneform.rendering;
+
+import androidx.annotation.Nullable;
+import com.google.android.filament.Texture.InternalFormat;
+import com.google.android.filament.utils.KTXLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Creates Filament textures from KTX (version 1) containers, uploading the compressed payload and
+ * its mip chain as stored in the file.
+ *
+ * <p>Only the header is read here, to find out whether the device can sample the container's
+ * format before anything is uploaded.
+ */
+final class KtxTextureLoader {
+  private static final byte[] KTX_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final int HEADER_SIZE = 64;
+  private static final int ENDIANNESS_OFFSET = 12;
+  private static final int GL_INTERNAL_FORMAT_OFFSET = 28;
+  private static final int ENDIANNESS_REFERENCE = 0x04030201;
+
+  // OpenGL ES compressed format enums, see the KHR_texture_compression_astc_ldr and ES 3.0 specs.
+  private static final int GL_COMPRESSED_R11_EAC = 0x9270;
+  private static final int GL_COMPRESSED_SIGNED_R11_EAC = 0x9271;
+  private static final int GL_COMPRESSED_RG11_EAC = 0x9272;
+  private static final int GL_COMPRESSED_SIGNED_RG11_EAC = 0x9273;
+  private static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+  private static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+  private static final int GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9276;
+  private static final int GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9277;
+  private static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+  private static final int GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC = 0x9279;
+  private static final int GL_COMPRESSED_RGBA_ASTC_4x4 = 0x93B0;
+  private static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4 = 0x93D0;
+
+  // Block sizes in the order of the GL ASTC enums.
+  private static final InternalFormat[] ASTC_FORMATS = {
+    InternalFormat.RGBA_ASTC_4x4, InternalFormat.RGBA_ASTC_5x4, InternalFormat.RGBA_ASTC_5x5,
+    InternalFormat.RGBA_ASTC_6x5, InternalFormat.RGBA_ASTC_6x6, InternalFormat.RGBA_ASTC_8x5,
+    InternalFormat.RGBA_ASTC_8x6, InternalFormat.RGBA_ASTC_8x8, InternalFormat.RGBA_ASTC_10x5,
+    InternalFormat.RGBA_ASTC_10x6, InternalFormat.RGBA_ASTC_10x8, InternalFormat.RGBA_ASTC_10x10,
+    InternalFormat.RGBA_ASTC_12x10, InternalFormat.RGBA_ASTC_12x12
+  };
+  private static final InternalFormat[] SRGB_ASTC_FORMATS = {
+    InternalFormat.SRGB8_ALPHA8_ASTC_4x4, InternalFormat.SRGB8_ALPHA8_ASTC_5x4,
+    InternalFormat.SRGB8_ALPHA8_ASTC_5x5, InternalFormat.SRGB8_ALPHA8_ASTC_6x5,
+    InternalFormat.SRGB8_ALPHA8_ASTC_6x6, InternalFormat.SRGB8_ALPHA8_ASTC_8x5,
+    InternalFormat.SRGB8_ALPHA8_ASTC_8x6, InternalFormat.SRGB8_ALPHA8_ASTC_8x8,
+    InternalFormat.SRGB8_ALPHA8_ASTC_10x5, InternalFormat.SRGB8_ALPHA8_ASTC_10x6,
+    InternalFormat.SRGB8_ALPHA8_ASTC_10x8, InternalFormat.SRGB8_ALPHA8_ASTC_10x10,
+    InternalFormat.SRGB8_ALPHA8_ASTC_12x10, InternalFormat.SRGB8_ALPHA8_ASTC_12x12
+  };
+
+  private KtxTextureLoader() {}
+
+  /** Returns true if the buffer starts with a KTX 1 header. */
+  static boolean isKtx(ByteBuffer buffer) {
+    if (buffer.remaining() < HEADER_SIZE) {
+      return false;
+    }
+    int start = buffer.position();
+    for (int i = 0; i < KTX_IDENTIFIER.length; i++) {
+      if (buffer.get(start + i) != KTX_IDENTIFIER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the Filament format of a compressed KTX payload, or null if the container isn't a
+   * compressed format known to Sceneform.
+   */
+  @Nullable
+  static InternalFormat getCompressedFormat(ByteBuffer buffer) {
+    if (!isKtx(buffer)) {
+      return null;
+    }
+    ByteBuffer header = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int start = buffer.position();
+    if (header.getInt(start + ENDIANNESS_OFFSET) != ENDIANNESS_REFERENCE) {
+      header.order(ByteOrder.BIG_ENDIAN);
+    }
+    return toInternalFormat(header.getInt(start + GL_INTERNAL_FORMAT_OFFSET));
+  }
+
+  /** Returns true if the device can sample textures in the format of the KTX payload. */
+  static boolean isSupported(ByteBuffer buffer) {
+    InternalFormat format = getCompressedFormat(buffer);
+    return format != null
+        && com.google.android.filament.Texture.isTextureFormatSupported(
+            EngineInstance.getEngine().getFilamentEngine(), format);
+  }
+
+  /** Creates the texture with every mip level stored in the container. */
+  static com.google.android.filament.Texture createTexture(ByteBuffer buffer) {
+    KTXLoader.Options options = new KTXLoader.Options();
+    // The color space is part of the compressed format stored in the file.
+    options.setSrgb(false);
+    return KTXLoader.INSTANCE.createTexture(
+        EngineInstance.getEngine().getFilamentEngine(), buffer, options);
+  }
+
+  @Nullable
+  private static InternalFormat toInternalFormat(int glInternalFormat) {
+    switch (glInternalFormat) {
+      case GL_COMPRESSED_R11_EAC:
+        return InternalFormat.EAC_R11;
+      case GL_COMPRESSED_SIGNED_R11_EAC:
+        return InternalFormat.EAC_R11_SIGNED;
+      case GL_COMPRESSED_RG11_EAC:
+        return InternalFormat.EAC_RG11;
+      case GL_COMPRESSED_SIGNED_RG11_EAC:
+        return InternalFormat.EAC_RG11_SIGNED;
+      case GL_COMPRESSED_RGB8_ETC2:
+        return InternalFormat.ETC2_RGB8;
+      case GL_COMPRESSED_SRGB8_ETC2:
+        return InternalFormat.ETC2_SRGB8;
+      case GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2:
+        return InternalFormat.ETC2_RGB8_A1;
+      case GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2:
+        return InternalFormat.ETC2_SRGB8_A1;
+      case GL_COMPRESSED_RGBA8_ETC2_EAC:
+        return InternalFormat.ETC2_EAC_RGBA8;
+      case GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC:
+        return InternalFormat.ETC2_EAC_SRGBA8;
+      default:
+        break;
+    }
+
+    int astcIndex = glInternalFormat - GL_COMPRESSED_RGBA_ASTC_4x4;
+    if (astcIndex >= 0 && astcIndex < ASTC_FORMATS.length) {
+      return ASTC_FORMATS[astcIndex];
+    }
+    int srgbAstcIndex = glInternalFormat - GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4;
+    if (srgbAstcIndex >= 0 && srgbAstcIndex < SRGB_ASTC_FORMATS.length) {
+      return SRGB_ASTC_FORMATS[srgbAstcIndex];
+    }
+    return null;
+  }
+}
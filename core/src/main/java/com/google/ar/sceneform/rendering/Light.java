@@ -341,6 +341,7 @@ public class Light {
   }
 
   private void fireChangedListeners() {
+    ResourceManager.getInstance().markSceneContentChanged();
     for (LightChangedListener listener : changedListeners) {
       listener.onChange();
     }
@@ -7,6 +7,7 @@ import androidx.annotation.Nullable;
 import com.google.android.filament.gltfio.ResourceLoader;
 import com.google.ar.sceneform.utilities.Preconditions;
 import com.google.ar.sceneform.utilities.SceneformBufferUtils;
+import com.google.ar.sceneform.utilities.Tracing;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
@@ -48,10 +49,13 @@ public class LoadRenderableFromFilamentGltfTask<T extends Renderable> {
     return CompletableFuture.supplyAsync(
             // Download byte buffer via thread pool
             () -> {
+              Tracing.beginSection("Sceneform.downloadModel");
               try {
                 return SceneformBufferUtils.inputStreamCallableToByteArray(inputStreamCreator);
               } catch (Exception e) {
                 throw new CompletionException(e);
+              } finally {
+                Tracing.endSection();
               }
             },
             ThreadPools.getThreadPoolExecutor())
@@ -11,6 +11,7 @@ import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.SceneformBundle.VersionException;
 import com.google.ar.sceneform.utilities.Preconditions;
 import com.google.ar.sceneform.utilities.SceneformBufferUtils;
+import com.google.ar.sceneform.utilities.Tracing;
 import com.google.ar.schemas.lull.ModelDef;
 import com.google.ar.schemas.lull.ModelIndexRange;
 import com.google.ar.schemas.lull.ModelInstanceDef;
@@ -83,6 +84,8 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
   private ByteBuffer indexBufferData;
 
   private final ArrayList<ModelTexture> textures = new ArrayList<>();
+  private final ArrayList<CompiledMaterialCache.Source> compiledMaterialSources =
+      new ArrayList<>();
   private final ArrayList<Material> compiledMaterials = new ArrayList<>();
   private final ArrayList<Integer> compiledMaterialIndex = new ArrayList<>();
   private final ArrayList<MaterialParameters> materialParameters = new ArrayList<>();
@@ -114,15 +117,20 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
         CompletableFuture.supplyAsync(
                 // Download byte buffer via thread pool
                 () -> {
-                  ByteBuffer assetData =
-                      SceneformBufferUtils.inputStreamToByteBuffer(inputStreamCreator);
-
-                  // Parse byte buffer via thread pool
-                  SceneformBundleDef sfb = byteBufferToSfb(assetData);
-                  setCollisionShape(sfb);
-                  // Create sub-assets including material parameters, textures and geometry
-                  loadModel(sfb);
-                  return sfb;
+                  Tracing.beginSection("Sceneform.loadSfb");
+                  try {
+                    ByteBuffer assetData =
+                        SceneformBufferUtils.inputStreamToByteBuffer(inputStreamCreator);
+
+                    // Parse byte buffer via thread pool
+                    SceneformBundleDef sfb = byteBufferToSfb(assetData);
+                    setCollisionShape(sfb);
+                    // Create sub-assets including material parameters, textures and geometry
+                    loadModel(sfb);
+                    return sfb;
+                  } finally {
+                    Tracing.endSection();
+                  }
                 },
                 ThreadPools.getThreadPoolExecutor())
             .thenComposeAsync(
@@ -137,8 +145,13 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
                 sfb -> {
                   // Fill in the material parameters. could be done on another thread, but kept here
                   // to reduce switching.
-                  buildMaterialParameters(sfb);
-                  return setupFilament(sfb);
+                  Tracing.beginSection("Sceneform.setupFilament");
+                  try {
+                    buildMaterialParameters(sfb);
+                    return setupFilament(sfb);
+                  } finally {
+                    Tracing.endSection();
+                  }
                 },
                 ThreadPools.getMainExecutor());
 
@@ -212,13 +225,24 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
     // The data buffers for Geometry have to stick around anyway, so go ahead and load them
     // now. The Filament buffers will be created in createAssetFromBuffer()
     buildGeometry();
+    digestCompiledMaterials(sfb);
     return sfb;
   }
 
+  private void digestCompiledMaterials(SceneformBundleDef sfb) {
+    int compiledMaterialLength = sfb.compiledMaterialsLength();
+    for (int i = 0; i < compiledMaterialLength; ++i) {
+      CompiledMaterialDef compiledMaterial = sfb.compiledMaterials(i);
+      // The digest is O(size) and would otherwise run on the main thread, even on cache hits.
+      compiledMaterialSources.add(
+          new CompiledMaterialCache.Source(compiledMaterial.compiledMaterialAsByteBuffer()));
+    }
+  }
+
   private T setupFilament(SceneformBundleDef sfb) {
     Preconditions.checkNotNull(sfb);
     setupFilamentGeometryBuffers();
-    setupFilamentMaterials(sfb);
+    setupFilamentMaterials();
     setupRenderableData();
     renderable.getId().update();
     return renderable;
@@ -233,7 +257,7 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
             .bufferType(indexType)
             .build(engine.getFilamentEngine());
     indexBuffer.setBuffer(engine.getFilamentEngine(), indexBufferData);
-    renderableData.setIndexBuffer(indexBuffer);
+    renderableData.setIndexBuffer(indexBuffer, indexType);
 
     VertexBuffer.Builder vertexBufferBuilder =
         new VertexBuffer.Builder().vertexCount(vertexCount).bufferCount(1);
@@ -261,7 +285,8 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
 
     VertexBuffer vertexBuffer = vertexBufferBuilder.build(engine.getFilamentEngine());
     vertexBuffer.setBufferAt(engine.getFilamentEngine(), 0, vertexBufferData);
-    renderableData.setVertexBuffer(vertexBuffer);
+    // The stride is the summed size of every attribute of the model, including the skipped ones.
+    renderableData.setVertexBuffer(vertexBuffer, vertexStride);
 
     setupAnimation();
   }
@@ -277,26 +302,12 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
 
 
 
-  private void setupFilamentMaterials(SceneformBundleDef sfb) {
-    int compiledMaterialLength = sfb.compiledMaterialsLength();
-
-    for (int i = 0; i < compiledMaterialLength; ++i) {
-      CompiledMaterialDef compiledMaterial = sfb.compiledMaterials(i);
-
-      // If the same material buffer exists in multiple places this will ensure we
-      // only load it into graphics memory once.
-      int materialId = compiledMaterial.compiledMaterialAsByteBuffer().hashCode();
-
-      // use the registry to get the material or create it if needed
-      ByteBuffer copy;
-      try {
-        copy = SceneformBufferUtils.copyByteBuffer(compiledMaterial.compiledMaterialAsByteBuffer());
-      } catch (IOException e) {
-        throw new CompletionException("Failed to create material", e);
-      }
-
+  private void setupFilamentMaterials() {
+    for (CompiledMaterialCache.Source compiledMaterialSource : compiledMaterialSources) {
+      // Identical material packages, in this model or others, are only loaded into graphics
+      // memory once: the CompiledMaterialCache keys them by a digest of their content.
       CompletableFuture<Material> materialFuture =
-          Material.builder().setSource(copy).setRegistryId(materialId).build();
+          Material.builder().setSource(compiledMaterialSource).build();
 
       @SuppressWarnings("nullness")
       Material material = materialFuture.getNow(null);
@@ -435,6 +446,8 @@ class LoadRenderableFromSfbTask<T extends Renderable> {
                 .setUsage(usage)
                 .setSampler(samplerDefToSampler(samplerDef))
                 .setPremultiplied(premultiplyAlpha)
+                .setProgressive(
+                    ResourceManager.getInstance().isProgressiveTextureLoadingEnabled())
                 .setSource(
                     () -> {
                       Preconditions.checkNotNull(wrappedInputStream);
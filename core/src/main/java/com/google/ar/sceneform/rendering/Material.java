@@ -17,9 +17,11 @@ import com.google.ar.sceneform.utilities.SceneformBufferUtils;
 
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * Represents a reference to a material.
@@ -33,6 +35,11 @@ public class Material {
     @Nullable
     private final MaterialInternalData materialData;
     final IMaterialInstance internalMaterialInstance;
+    private int editDepth = 0;
+    // Set once the Filament instance was bound where it isn't re-bound when the material switches
+    // instances, such as a glTF entity. The material then keeps its own instance.
+    private boolean isInstancePinned = false;
+    private final HashMap<String, ParameterHandle> parameterHandles = new HashMap<>();
 
     /**
      * Creates a new instance of this Material.
@@ -46,114 +53,156 @@ public class Material {
     }
 
     public void setBoolean(String name, boolean x) {
-        materialParameters.setBoolean(name, x);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setBoolean(getParameterHandle(name), x);
     }
 
     public void setBoolean2(String name, boolean x, boolean y) {
-        materialParameters.setBoolean2(name, x, y);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setBoolean2(getParameterHandle(name), x, y);
     }
 
     public void setBoolean3(String name, boolean x, boolean y, boolean z) {
-        materialParameters.setBoolean3(name, x, y, z);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setBoolean3(getParameterHandle(name), x, y, z);
     }
 
     public void setBoolean4(String name, boolean x, boolean y, boolean z, boolean w) {
-        materialParameters.setBoolean4(name, x, y, z, w);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setBoolean4(getParameterHandle(name), x, y, z, w);
     }
 
     public void setFloat(String name, float x) {
-        materialParameters.setFloat(name, x);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setFloat(getParameterHandle(name), x);
     }
 
     public void setFloat2(String name, float x, float y) {
-        materialParameters.setFloat2(name, x, y);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setFloat2(getParameterHandle(name), x, y);
     }
 
     public void setFloat3(String name, float x, float y, float z) {
-        materialParameters.setFloat3(name, x, y, z);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setFloat3(getParameterHandle(name), x, y, z);
     }
 
     public void setFloat3(String name, Vector3 value) {
-        materialParameters.setFloat3(name, value);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setFloat3(getParameterHandle(name), value);
     }
 
     public void setFloat3(String name, Color color) {
-        materialParameters.setFloat3(name, color.r, color.g, color.b);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setFloat3(getParameterHandle(name), color);
     }
 
     public void setFloat4(String name, float x, float y, float z, float w) {
-        materialParameters.setFloat4(name, x, y, z, w);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setFloat4(getParameterHandle(name), x, y, z, w);
     }
 
     public void setFloat4(String name, Color color) {
-        materialParameters.setFloat4(name, color.r, color.g, color.b, color.a);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setFloat4(getParameterHandle(name), color);
     }
 
     public void setInt(String name, int x) {
-        materialParameters.setInt(name, x);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setInt(getParameterHandle(name), x);
     }
 
     public void setInt2(String name, int x, int y) {
-        materialParameters.setInt2(name, x, y);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setInt2(getParameterHandle(name), x, y);
     }
 
     public void setInt3(String name, int x, int y, int z) {
-        materialParameters.setInt3(name, x, y, z);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setInt3(getParameterHandle(name), x, y, z);
     }
 
     public void setInt4(String name, int x, int y, int z, int w) {
-        materialParameters.setInt4(name, x, y, z, w);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        setInt4(getParameterHandle(name), x, y, z, w);
     }
 
     public void setTexture(String name, Texture texture) {
-        materialParameters.setTexture(name, texture);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
+        setTexture(getParameterHandle(name), texture);
+    }
+
+    public void setBoolean(ParameterHandle handle, boolean x) {
+        if (materialParameters.setBoolean(handle.getName(), getHolder(handle), x)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setBoolean2(ParameterHandle handle, boolean x, boolean y) {
+        if (materialParameters.setBoolean2(handle.getName(), getHolder(handle), x, y)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setBoolean3(ParameterHandle handle, boolean x, boolean y, boolean z) {
+        if (materialParameters.setBoolean3(handle.getName(), getHolder(handle), x, y, z)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setBoolean4(ParameterHandle handle, boolean x, boolean y, boolean z, boolean w) {
+        if (materialParameters.setBoolean4(handle.getName(), getHolder(handle), x, y, z, w)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setFloat(ParameterHandle handle, float x) {
+        if (materialParameters.setFloat(handle.getName(), getHolder(handle), x)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setFloat2(ParameterHandle handle, float x, float y) {
+        if (materialParameters.setFloat2(handle.getName(), getHolder(handle), x, y)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setFloat3(ParameterHandle handle, float x, float y, float z) {
+        if (materialParameters.setFloat3(handle.getName(), getHolder(handle), x, y, z)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setFloat3(ParameterHandle handle, Vector3 value) {
+        setFloat3(handle, value.x, value.y, value.z);
+    }
+
+    public void setFloat3(ParameterHandle handle, Color color) {
+        setFloat3(handle, color.r, color.g, color.b);
+    }
+
+    public void setFloat4(ParameterHandle handle, float x, float y, float z, float w) {
+        if (materialParameters.setFloat4(handle.getName(), getHolder(handle), x, y, z, w)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setFloat4(ParameterHandle handle, Color color) {
+        setFloat4(handle, color.r, color.g, color.b, color.a);
+    }
+
+    public void setInt(ParameterHandle handle, int x) {
+        if (materialParameters.setInt(handle.getName(), getHolder(handle), x)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setInt2(ParameterHandle handle, int x, int y) {
+        if (materialParameters.setInt2(handle.getName(), getHolder(handle), x, y)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setInt3(ParameterHandle handle, int x, int y, int z) {
+        if (materialParameters.setInt3(handle.getName(), getHolder(handle), x, y, z)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setInt4(ParameterHandle handle, int x, int y, int z, int w) {
+        if (materialParameters.setInt4(handle.getName(), getHolder(handle), x, y, z, w)) {
+            applyChangedParameter(handle);
+        }
+    }
+
+    public void setTexture(ParameterHandle handle, Texture texture) {
+        if (materialParameters.setTexture(handle.getName(), getHolder(handle), texture)) {
+            applyChangedParameter(handle);
         }
     }
 
@@ -173,9 +222,7 @@ public class Material {
      */
     public void setDepthTexture(String name, DepthTexture depthTexture) {
         materialParameters.setDepthTexture(name, depthTexture);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyParameterTo(internalMaterialInstance.getInstance(), name);
-        }
+        applyDirtyParameters();
     }
 
     /**
@@ -186,9 +233,7 @@ public class Material {
      */
     public void setExternalTexture(String name, ExternalTexture externalTexture) {
         materialParameters.setExternalTexture(name, externalTexture);
-        if (internalMaterialInstance.isValidInstance()) {
-            materialParameters.applyTo(internalMaterialInstance.getInstance());
-        }
+        applyDirtyParameters();
     }
 
     @Nullable
@@ -196,6 +241,172 @@ public class Material {
         return materialParameters.getExternalTexture(name);
     }
 
+    /**
+     * Returns the handle of a parameter of this material. Resolving the handle once and passing it
+     * to the setters, for example to animate a color every frame, skips the name lookups done by
+     * the setters that take a name.
+     *
+     * <p>A handle is only valid for the material that created it, copies made with {@link
+     * #makeCopy()} resolve their own handles.
+     *
+     * @param name the name of the parameter in the material
+     */
+    public ParameterHandle getParameterHandle(String name) {
+        ParameterHandle handle = parameterHandles.get(name);
+        if (handle == null) {
+            handle = new ParameterHandle(this, name);
+            parameterHandles.put(name, handle);
+        }
+        return handle;
+    }
+
+    @Nullable
+    private MaterialParameters.Parameter getHolder(ParameterHandle handle) {
+        if (handle.material != this) {
+            throw new IllegalArgumentException(
+                    "Parameter handle '" + handle.getName() + "' belongs to another material.");
+        }
+        int structureVersion = materialParameters.getStructureVersion();
+        if (handle.holderVersion != structureVersion) {
+            handle.holder = materialParameters.get(handle.getName());
+            handle.holderVersion = structureVersion;
+        }
+        return handle.holder;
+    }
+
+    /**
+     * Applies several parameter changes at once. The parameters set by {@code editor} are sent to
+     * the renderer together when it returns instead of after each call, for example:
+     *
+     * <pre>{@code
+     * material.edit(m -> {
+     *     m.setFloat4("baseColor", color);
+     *     m.setFloat("metallic", metallic);
+     * });
+     * }</pre>
+     *
+     * @param editor sets the parameters on the material it is given
+     */
+    public void edit(Consumer<Material> editor) {
+        editDepth++;
+        try {
+            editor.accept(this);
+        } finally {
+            editDepth--;
+            applyDirtyParameters();
+        }
+    }
+
+    /**
+     * Applies a parameter that changed through its handle. Parameters the material doesn't declare
+     * are only stored, for the copies of the material, so they neither unshare the instance nor
+     * redraw the scene. The handle already resolved whether the parameter exists, the holder
+     * doesn't query the material again.
+     */
+    private void applyChangedParameter(ParameterHandle handle) {
+        if (editDepth > 0 || !internalMaterialInstance.isValidInstance()) {
+            return;
+        }
+        if (handle.resolve() == null) {
+            return;
+        }
+        MaterialParameters.Parameter holder = getHolder(handle);
+        if (holder != null && handle.resolvedMaterial != null) {
+            holder.setSupportedBy(handle.resolvedMaterial, true);
+        }
+        applyDirtyParameters();
+    }
+
+    /**
+     * Sends the parameters changed since the last update to the Filament material instance,
+     * unless an {@link #edit(Consumer)} is in progress.
+     */
+    private void applyDirtyParameters() {
+        if (editDepth == 0 && internalMaterialInstance.isValidInstance()) {
+            if (materialParameters.hasDirtyParameters()) {
+                ResourceManager.getInstance().markSceneContentChanged();
+            }
+            if (materialParameters.hasDirtyParameters() && unshareInstance()) {
+                materialParameters.applyTo(internalMaterialInstance.getInstance());
+            } else {
+                materialParameters.applyDirtyTo(internalMaterialInstance.getInstance());
+            }
+        }
+    }
+
+    /**
+     * Re-binds the textures that were streamed in at full resolution since they were applied. The
+     * texture objects themselves are unchanged, so a shared instance stays shared. Called by the
+     * textures when they are swapped, see {@link TextureInternalData}.
+     */
+    void applyStreamedTextures() {
+        if (internalMaterialInstance.isValidInstance()) {
+            materialParameters.applyReplacedTexturesTo(internalMaterialInstance.getInstance());
+        }
+    }
+
+    /**
+     * Switches to the Filament instance shared by the materials with the same parameters, if
+     * sharing is enabled in the {@link ResourceManager}. Called before the material is bound to a
+     * renderable that re-binds its instances when they change.
+     */
+    void shareInstance() {
+        if (!(internalMaterialInstance instanceof InternalMaterialInstance)
+                || materialData == null
+                || isInstancePinned
+                || editDepth > 0
+                || materialParameters.hasDirtyParameters()) {
+            return;
+        }
+        InternalMaterialInstance instance = (InternalMaterialInstance) internalMaterialInstance;
+        MaterialInstancePool pool = ResourceManager.getInstance().getMaterialInstancePool();
+        if (instance.sharedEntry == null && pool.isEnabled()) {
+            pool.share(instance, materialData, materialParameters);
+        }
+    }
+
+    /**
+     * Returns a counter that changes whenever the material switches to another Filament instance,
+     * so that the renderables using it know when to re-bind it.
+     */
+    int getInstanceGeneration() {
+        if (internalMaterialInstance instanceof InternalMaterialInstance) {
+            return ((InternalMaterialInstance) internalMaterialInstance).generation;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the Filament instance for a binding that doesn't follow instance changes, such as
+     * the entities of a glTF {@link RenderableInstance}. The material stops sharing its instance,
+     * so that the binding keeps receiving its parameter changes and the instance isn't destroyed
+     * while bound.
+     */
+    MaterialInstance pinFilamentMaterialInstance() {
+        isInstancePinned = true;
+        if (unshareInstance()) {
+            materialParameters.applyTo(internalMaterialInstance.getInstance());
+        }
+        return getFilamentMaterialInstance();
+    }
+
+    /**
+     * Gives this material its own Filament instance before its parameters diverge from the ones of
+     * the materials it shares an instance with.
+     *
+     * @return true if a new instance was created
+     */
+    private boolean unshareInstance() {
+        if (!(internalMaterialInstance instanceof InternalMaterialInstance) || materialData == null) {
+            return false;
+        }
+        InternalMaterialInstance instance = (InternalMaterialInstance) internalMaterialInstance;
+        return instance.sharedEntry != null
+                && ResourceManager.getInstance()
+                .getMaterialInstancePool()
+                .unshare(instance, materialData);
+    }
+
     /**
      * Constructs a {@link Material}
      *
@@ -210,11 +421,16 @@ public class Material {
 
     void copyMaterialParameters(MaterialParameters materialParameters) {
         this.materialParameters.copyFrom(materialParameters);
+        unshareInstance();
         if (internalMaterialInstance.isValidInstance()) {
             this.materialParameters.applyTo(internalMaterialInstance.getInstance());
         }
     }
 
+    MaterialParameters getMaterialParameters() {
+        return materialParameters;
+    }
+
     com.google.android.filament.MaterialInstance getFilamentMaterialInstance() {
         // Filament Material Instance is only set to null when it is disposed or destroyed, so any
         // usage after that point is an internal error.
@@ -228,6 +444,7 @@ public class Material {
     Material(MaterialInternalData materialData) {
         this.materialData = materialData;
         materialData.retain();
+        materialParameters.setOwner(this);
         if (materialData instanceof MaterialInternalDataImpl) {
             // Do the legacy thing.
             internalMaterialInstance =
@@ -255,6 +472,67 @@ public class Material {
         copyMaterialParameters(other.materialParameters);
     }
 
+    /**
+     * A parameter of a {@link Material} resolved by {@link #getParameterHandle(String)}. The handle
+     * caches the parameter value holder along with the parameter type and whether the Filament
+     * material declares it, so that setting it is a field write plus a single native call.
+     */
+    public static final class ParameterHandle {
+        private final Material material;
+        private final String name;
+        @Nullable
+        private com.google.android.filament.Material resolvedMaterial;
+        @Nullable
+        private com.google.android.filament.Material.Parameter.Type type;
+        @Nullable
+        private MaterialParameters.Parameter holder;
+        private int holderVersion = -1;
+
+        private ParameterHandle(Material material, String name) {
+            this.material = material;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns true if the material declares this parameter. Always false until the material
+         * has a Filament instance, which for glTF materials happens once the model is attached.
+         */
+        public boolean exists() {
+            return resolve() != null;
+        }
+
+        /** Returns the type declared by the material, or null if the parameter doesn't exist. */
+        @Nullable
+        public com.google.android.filament.Material.Parameter.Type getType() {
+            return resolve();
+        }
+
+        @Nullable
+        private com.google.android.filament.Material.Parameter.Type resolve() {
+            if (!material.internalMaterialInstance.isValidInstance()) {
+                return null;
+            }
+            com.google.android.filament.Material filamentMaterial =
+                    material.internalMaterialInstance.getInstance().getMaterial();
+            if (resolvedMaterial != filamentMaterial) {
+                resolvedMaterial = filamentMaterial;
+                type = null;
+                for (com.google.android.filament.Material.Parameter parameter :
+                        filamentMaterial.getParameters()) {
+                    if (parameter.name.equals(name)) {
+                        type = parameter.type;
+                        break;
+                    }
+                }
+            }
+            return type;
+        }
+    }
+
     /**
      * Builder for constructing a {@link Material}
      *
@@ -267,6 +545,11 @@ public class Material {
          */
         @Nullable
         ByteBuffer sourceBuffer;
+        /**
+         * The {@link Material} will be constructed from this package, digested off the main thread
+         */
+        @Nullable
+        private CompiledMaterialCache.Source compiledSource;
         /**
          * The {@link Material} will be constructed from the contents of this callable
          */
@@ -301,6 +584,22 @@ public class Material {
 
             inputStreamCreator = null;
             sourceBuffer = materialBuffer;
+            compiledSource = null;
+            return this;
+        }
+
+        /**
+         * Allows a {@link Material} to be created from a compiled material package whose digest was
+         * computed beforehand, so that only the cache lookup runs on the main thread.
+         *
+         * <p>Construction will be immediate.
+         */
+        Builder setSource(CompiledMaterialCache.Source compiledSource) {
+            Preconditions.checkNotNull(compiledSource, "Parameter \"compiledSource\" was null.");
+
+            inputStreamCreator = null;
+            sourceBuffer = null;
+            this.compiledSource = compiledSource;
             return this;
         }
 
@@ -320,6 +619,7 @@ public class Material {
             registryId = sourceUri;
             inputStreamCreator = LoadHelper.fromUri(context, sourceUri);
             sourceBuffer = null;
+            compiledSource = null;
             return this;
         }
 
@@ -337,6 +637,7 @@ public class Material {
             registryId = context.getResources().getResourceName(resource);
             inputStreamCreator = LoadHelper.fromResource(context, resource);
             sourceBuffer = null;
+            compiledSource = null;
             return this;
         }
 
@@ -352,6 +653,7 @@ public class Material {
 
             this.inputStreamCreator = inputStreamCreator;
             sourceBuffer = null;
+            compiledSource = null;
             return this;
         }
 
@@ -395,9 +697,13 @@ public class Material {
                 }
             }
 
-            if (sourceBuffer != null) {
+            if (sourceBuffer != null || compiledSource != null) {
+                CompiledMaterialCache.Source source =
+                        compiledSource != null
+                                ? compiledSource
+                                : new CompiledMaterialCache.Source(sourceBuffer);
                 MaterialInternalDataImpl materialData =
-                        new MaterialInternalDataImpl(createFilamentMaterial(sourceBuffer));
+                        ResourceManager.getInstance().getCompiledMaterialCache().getOrCreate(source);
                 Material material = new Material(materialData);
 
                 // Register the new material in the registry.
@@ -452,13 +758,16 @@ public class Material {
                                     throw new IllegalStateException("Unable to read data from input stream.");
                                 }
 
-                                return byteBuffer;
+                                // Digest the package here rather than on the main thread.
+                                return new CompiledMaterialCache.Source(byteBuffer);
                             },
                             ThreadPools.getThreadPoolExecutor())
                             .thenApplyAsync(
-                                    byteBuffer -> {
+                                    source -> {
                                         MaterialInternalDataImpl materialData =
-                                                new MaterialInternalDataImpl(createFilamentMaterial(byteBuffer));
+                                                ResourceManager.getInstance()
+                                                        .getCompiledMaterialCache()
+                                                        .getOrCreate(source);
                                         Material material = new Material(materialData);
                                         return material;
                                     },
@@ -481,17 +790,10 @@ public class Material {
         }
 
         private Boolean hasSource() {
-            return inputStreamCreator != null || sourceBuffer != null || existingMaterial != null;
-        }
-
-        private com.google.android.filament.Material createFilamentMaterial(ByteBuffer sourceBuffer) {
-            try {
-                return new com.google.android.filament.Material.Builder()
-                        .payload(sourceBuffer, sourceBuffer.limit())
-                        .build(EngineInstance.getEngine().getFilamentEngine());
-            } catch (Exception e) {
-                throw new IllegalArgumentException("Unable to create material from source byte buffer.", e);
-            }
+            return inputStreamCreator != null
+                    || sourceBuffer != null
+                    || compiledSource != null
+                    || existingMaterial != null;
         }
     }
 
@@ -506,7 +808,12 @@ public class Material {
 
     // Represents a filament material instance created in Sceneform.
     static class InternalMaterialInstance implements IMaterialInstance {
-        final MaterialInstance instance;
+        MaterialInstance instance;
+        // Set while the instance is shared through the MaterialInstancePool.
+        @Nullable
+        MaterialInstancePool.Entry sharedEntry;
+        // Incremented by the MaterialInstancePool whenever it switches the instance.
+        int generation = 0;
 
         public InternalMaterialInstance(MaterialInstance instance) {
             this.instance = instance;
@@ -524,6 +831,12 @@ public class Material {
 
         @Override
         public void dispose() {
+            MaterialInstancePool.Entry entry = sharedEntry;
+            if (entry != null) {
+                sharedEntry = null;
+                ResourceManager.getInstance().getMaterialInstancePool().release(entry);
+                return;
+            }
             IEngine engine = EngineInstance.getEngine();
             if (engine != null && engine.isValid()) {
                 engine.destroyMaterialInstance(instance);
@@ -0,0 +1,241 @@
+package com.google.ar.sceneform.rendering;
+
+import androidx.annotation.Nullable;
+import com.google.android.filament.MaterialInstance;
+import com.google.ar.sceneform.resources.ResourceHolder;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Shares one Filament {@link MaterialInstance} between {@link Material}s that use the same
+ * material with identical parameters, which keeps uniform buffers small and lets Filament batch
+ * their draws.
+ *
+ * <p>A material joins the pool when it is first bound to a renderable. When one of the sharing
+ * materials changes a parameter it gets a new instance of its own (copy-on-write) and the others
+ * keep the shared one. Each switch bumps the generation of the material's instance, see {@link
+ * Material#getInstanceGeneration()}, so that the renderables using it re-bind it.
+ *
+ * <p>Instances that a material stops using may still be bound to a renderable that hasn't been
+ * updated yet, so they are destroyed a couple of frames later. Until then they hold a reference on
+ * their {@link MaterialInternalData}, since Filament can't destroy a material that still has
+ * instances. Must be used on the main thread.
+ */
+final class MaterialInstancePool implements ResourceHolder {
+  // Frames to wait before destroying an instance that was replaced, so that every renderable had
+  // the chance to re-bind.
+  private static final int RETIRE_FRAME_DELAY = 2;
+
+  private final HashMap<Key, Entry> entries = new HashMap<>();
+  private final ArrayList<RetiredInstance> retiredInstances = new ArrayList<>();
+  private boolean isEnabled = false;
+  private long frameNumber = 0;
+  private int savedInstanceCount = 0;
+  private long copyOnWriteCount = 0;
+
+  /** A Filament instance shared by materials with the same parameters. */
+  static final class Entry {
+    private final Key key;
+    private final MaterialInstance instance;
+    private int refCount = 0;
+
+    private Entry(Key key, MaterialInstance instance) {
+      this.key = key;
+      this.instance = instance;
+    }
+  }
+
+  private static final class Key {
+    private final MaterialInternalData materialData;
+    private final MaterialParameters.Snapshot parameters;
+
+    Key(MaterialInternalData materialData, MaterialParameters.Snapshot parameters) {
+      this.materialData = materialData;
+      this.parameters = parameters;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key otherKey = (Key) other;
+      return materialData == otherKey.materialData && parameters.equals(otherKey.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(materialData) + parameters.hashCode();
+    }
+  }
+
+  private static final class RetiredInstance {
+    private final MaterialInstance instance;
+    private final MaterialInternalData materialData;
+    private final long frameNumber;
+
+    RetiredInstance(MaterialInstance instance, MaterialInternalData materialData, long frameNumber) {
+      this.instance = instance;
+      this.materialData = materialData;
+      this.frameNumber = frameNumber;
+    }
+
+    void destroy() {
+      MaterialInstancePool.destroy(instance);
+      materialData.release();
+    }
+  }
+
+  boolean isEnabled() {
+    return isEnabled;
+  }
+
+  /**
+   * Enables sharing for materials bound from now on. Materials already sharing an instance keep it
+   * until they change.
+   */
+  void setEnabled(boolean enabled) {
+    isEnabled = enabled;
+  }
+
+  /** Returns the number of Filament instances shared by more than one material. */
+  int getSharedInstanceCount() {
+    int sharedInstanceCount = 0;
+    for (Entry entry : entries.values()) {
+      if (entry.refCount > 1) {
+        sharedInstanceCount++;
+      }
+    }
+    return sharedInstanceCount;
+  }
+
+  /** Returns how many Filament instances sharing currently avoids. */
+  int getSavedInstanceCount() {
+    return savedInstanceCount;
+  }
+
+  /** Returns how many times a material stopped sharing because one of its parameters changed. */
+  long getCopyOnWriteCount() {
+    return copyOnWriteCount;
+  }
+
+  /**
+   * Switches the material to the shared instance for its parameters, or makes its own instance
+   * the shared one if there is none yet.
+   */
+  void share(
+      Material.InternalMaterialInstance materialInstance,
+      MaterialInternalData materialData,
+      MaterialParameters materialParameters) {
+    Key key = new Key(materialData, materialParameters.snapshot());
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry(key, materialInstance.instance);
+      entries.put(key, entry);
+    } else {
+      retire(materialInstance.instance, materialData);
+      materialInstance.instance = entry.instance;
+      materialInstance.generation++;
+      savedInstanceCount++;
+    }
+    entry.refCount++;
+    materialInstance.sharedEntry = entry;
+  }
+
+  /**
+   * Gives the material an instance of its own before one of its parameters changes.
+   *
+   * @return true if a new instance was created and all the parameters must be applied to it
+   */
+  boolean unshare(
+      Material.InternalMaterialInstance materialInstance, MaterialInternalData materialData) {
+    Entry entry = materialInstance.sharedEntry;
+    if (entry == null) {
+      return false;
+    }
+    materialInstance.sharedEntry = null;
+
+    if (entry.refCount == 1) {
+      // Nobody else uses the instance, take it back instead of copying it.
+      entry.refCount = 0;
+      entries.remove(entry.key);
+      return false;
+    }
+
+    entry.refCount--;
+    savedInstanceCount--;
+    copyOnWriteCount++;
+    materialInstance.instance = materialData.getFilamentMaterial().createInstance();
+    materialInstance.generation++;
+    return true;
+  }
+
+  /** Called when a material sharing the entry is destroyed. */
+  void release(Entry entry) {
+    if (entries.get(entry.key) != entry) {
+      // Already destroyed by destroyAllResources().
+      return;
+    }
+    entry.refCount--;
+    if (entry.refCount > 0) {
+      savedInstanceCount--;
+    } else {
+      entries.remove(entry.key);
+      retire(entry.instance, entry.key.materialData);
+    }
+  }
+
+  /** Advances the frame count used to delay the destruction of replaced instances. */
+  void onFrameEnd() {
+    frameNumber++;
+  }
+
+  private void retire(MaterialInstance instance, MaterialInternalData materialData) {
+    // Released once the instance is destroyed.
+    materialData.retain();
+    retiredInstances.add(new RetiredInstance(instance, materialData, frameNumber));
+  }
+
+  @Override
+  public long reclaimReleasedResources() {
+    int retainedCount = 0;
+    for (int i = 0; i < retiredInstances.size(); i++) {
+      RetiredInstance retiredInstance = retiredInstances.get(i);
+      if (frameNumber - retiredInstance.frameNumber >= RETIRE_FRAME_DELAY) {
+        retiredInstance.destroy();
+      } else {
+        retiredInstances.set(retainedCount++, retiredInstance);
+      }
+    }
+    retiredInstances.subList(retainedCount, retiredInstances.size()).clear();
+    return entries.size() + retiredInstances.size();
+  }
+
+  @Override
+  public int getPendingDisposalCount() {
+    return retiredInstances.size();
+  }
+
+  @Override
+  public void destroyAllResources() {
+    for (RetiredInstance retiredInstance : retiredInstances) {
+      retiredInstance.destroy();
+    }
+    retiredInstances.clear();
+    for (Entry entry : entries.values()) {
+      destroy(entry.instance);
+    }
+    entries.clear();
+    savedInstanceCount = 0;
+  }
+
+  private static void destroy(MaterialInstance instance) {
+    IEngine engine = EngineInstance.getEngine();
+    if (engine != null && engine.isValid()) {
+      engine.destroyMaterialInstance(instance);
+    }
+  }
+}
@@ -9,9 +9,14 @@ import com.google.ar.sceneform.utilities.AndroidPreconditions;
  */
 class MaterialInternalDataImpl extends MaterialInternalData {
   @Nullable private com.google.android.filament.Material filamentMaterial;
+  // Set when the data is shared through the CompiledMaterialCache.
+  @Nullable private final CompiledMaterialCache.Key cacheKey;
 
-  MaterialInternalDataImpl(com.google.android.filament.Material filamentMaterial) {
+  MaterialInternalDataImpl(
+      com.google.android.filament.Material filamentMaterial,
+      @Nullable CompiledMaterialCache.Key cacheKey) {
     this.filamentMaterial = filamentMaterial;
+    this.cacheKey = cacheKey;
   }
 
   @Override
@@ -26,6 +31,10 @@ class MaterialInternalDataImpl extends MaterialInternalData {
   protected void onDispose() {
     AndroidPreconditions.checkUiThread();
 
+    if (cacheKey != null) {
+      ResourceManager.getInstance().getCompiledMaterialCache().remove(cacheKey, this);
+    }
+
     IEngine engine = EngineInstance.getEngine();
     com.google.android.filament.Material material = this.filamentMaterial;
     this.filamentMaterial = null;
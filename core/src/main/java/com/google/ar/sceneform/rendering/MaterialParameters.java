@@ -7,18 +7,41 @@ import com.google.android.filament.TextureSampler;
 
 import com.google.ar.core.annotations.UsedByNative;
 import com.google.ar.sceneform.math.Vector3;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Optional;
+import java.util.List;
+import java.util.Map;
 
 /** Material property store. */
 @UsedByNative("material_java_wrappers.h")
 final class MaterialParameters {
   private final HashMap<String, MaterialParameters.Parameter> namedParameters = new HashMap<>();
+  // Parameters changed since they were last applied, so only those are sent to Filament.
+  private final ArrayList<MaterialParameters.Parameter> dirtyParameters = new ArrayList<>();
+  private int structureVersion = 0;
+  // The material whose Filament instance the parameters are applied to. Textures record it so
+  // that they can re-bind it when their Filament texture is replaced.
+  @Nullable private Material owner;
 
 
   @UsedByNative("material_java_wrappers.h")
   void setBoolean(String name, boolean x) {
-    namedParameters.put(name, new MaterialParameters.BooleanParameter(name, x));
+    setBoolean(name, namedParameters.get(name), x);
+  }
+
+  boolean setBoolean(String name, @Nullable Parameter existing, boolean x) {
+    if (existing instanceof BooleanParameter) {
+      BooleanParameter param = (BooleanParameter) existing;
+      if (param.x != x) {
+        param.x = x;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new BooleanParameter(name, x));
+    return true;
   }
 
   boolean getBoolean(String name) {
@@ -33,7 +56,22 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setBoolean2(String name, boolean x, boolean y) {
-    namedParameters.put(name, new MaterialParameters.Boolean2Parameter(name, x, y));
+    setBoolean2(name, namedParameters.get(name), x, y);
+  }
+
+  boolean setBoolean2(String name, @Nullable Parameter existing, boolean x, boolean y) {
+    if (existing instanceof Boolean2Parameter) {
+      Boolean2Parameter param = (Boolean2Parameter) existing;
+      if (param.x != x || param.y != y) {
+        param.x = x;
+        param.y = y;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Boolean2Parameter(name, x, y));
+    return true;
   }
 
   @Nullable
@@ -49,7 +87,23 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setBoolean3(String name, boolean x, boolean y, boolean z) {
-    namedParameters.put(name, new MaterialParameters.Boolean3Parameter(name, x, y, z));
+    setBoolean3(name, namedParameters.get(name), x, y, z);
+  }
+
+  boolean setBoolean3(String name, @Nullable Parameter existing, boolean x, boolean y, boolean z) {
+    if (existing instanceof Boolean3Parameter) {
+      Boolean3Parameter param = (Boolean3Parameter) existing;
+      if (param.x != x || param.y != y || param.z != z) {
+        param.x = x;
+        param.y = y;
+        param.z = z;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Boolean3Parameter(name, x, y, z));
+    return true;
   }
 
   @Nullable
@@ -65,7 +119,25 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setBoolean4(String name, boolean x, boolean y, boolean z, boolean w) {
-    namedParameters.put(name, new MaterialParameters.Boolean4Parameter(name, x, y, z, w));
+    setBoolean4(name, namedParameters.get(name), x, y, z, w);
+  }
+
+  boolean setBoolean4(
+      String name, @Nullable Parameter existing, boolean x, boolean y, boolean z, boolean w) {
+    if (existing instanceof Boolean4Parameter) {
+      Boolean4Parameter param = (Boolean4Parameter) existing;
+      if (param.x != x || param.y != y || param.z != z || param.w != w) {
+        param.x = x;
+        param.y = y;
+        param.z = z;
+        param.w = w;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Boolean4Parameter(name, x, y, z, w));
+    return true;
   }
 
   @Nullable
@@ -81,7 +153,21 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setFloat(String name, float x) {
-    namedParameters.put(name, new MaterialParameters.FloatParameter(name, x));
+    setFloat(name, namedParameters.get(name), x);
+  }
+
+  boolean setFloat(String name, @Nullable Parameter existing, float x) {
+    if (existing instanceof FloatParameter) {
+      FloatParameter param = (FloatParameter) existing;
+      if (param.x != x) {
+        param.x = x;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new FloatParameter(name, x));
+    return true;
   }
 
   float getFloat(String name) {
@@ -96,7 +182,22 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setFloat2(String name, float x, float y) {
-    namedParameters.put(name, new MaterialParameters.Float2Parameter(name, x, y));
+    setFloat2(name, namedParameters.get(name), x, y);
+  }
+
+  boolean setFloat2(String name, @Nullable Parameter existing, float x, float y) {
+    if (existing instanceof Float2Parameter) {
+      Float2Parameter param = (Float2Parameter) existing;
+      if (param.x != x || param.y != y) {
+        param.x = x;
+        param.y = y;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Float2Parameter(name, x, y));
+    return true;
   }
 
   @Nullable
@@ -112,12 +213,27 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setFloat3(String name, float x, float y, float z) {
-    namedParameters.put(name, new MaterialParameters.Float3Parameter(name, x, y, z));
+    setFloat3(name, namedParameters.get(name), x, y, z);
+  }
+
+  boolean setFloat3(String name, @Nullable Parameter existing, float x, float y, float z) {
+    if (existing instanceof Float3Parameter) {
+      Float3Parameter param = (Float3Parameter) existing;
+      if (param.x != x || param.y != y || param.z != z) {
+        param.x = x;
+        param.y = y;
+        param.z = z;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Float3Parameter(name, x, y, z));
+    return true;
   }
 
   void setFloat3(String name, Vector3 value) {
-    namedParameters.put(
-        name, new MaterialParameters.Float3Parameter(name, value.x, value.y, value.z));
+    setFloat3(name, value.x, value.y, value.z);
   }
 
   @Nullable
@@ -133,7 +249,24 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setFloat4(String name, float x, float y, float z, float w) {
-    namedParameters.put(name, new MaterialParameters.Float4Parameter(name, x, y, z, w));
+    setFloat4(name, namedParameters.get(name), x, y, z, w);
+  }
+
+  boolean setFloat4(String name, @Nullable Parameter existing, float x, float y, float z, float w) {
+    if (existing instanceof Float4Parameter) {
+      Float4Parameter param = (Float4Parameter) existing;
+      if (param.x != x || param.y != y || param.z != z || param.w != w) {
+        param.x = x;
+        param.y = y;
+        param.z = z;
+        param.w = w;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Float4Parameter(name, x, y, z, w));
+    return true;
   }
 
   @Nullable
@@ -149,7 +282,21 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setInt(String name, int x) {
-    namedParameters.put(name, new MaterialParameters.IntParameter(name, x));
+    setInt(name, namedParameters.get(name), x);
+  }
+
+  boolean setInt(String name, @Nullable Parameter existing, int x) {
+    if (existing instanceof IntParameter) {
+      IntParameter param = (IntParameter) existing;
+      if (param.x != x) {
+        param.x = x;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new IntParameter(name, x));
+    return true;
   }
 
   int getInt(String name) {
@@ -164,7 +311,22 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setInt2(String name, int x, int y) {
-    namedParameters.put(name, new MaterialParameters.Int2Parameter(name, x, y));
+    setInt2(name, namedParameters.get(name), x, y);
+  }
+
+  boolean setInt2(String name, @Nullable Parameter existing, int x, int y) {
+    if (existing instanceof Int2Parameter) {
+      Int2Parameter param = (Int2Parameter) existing;
+      if (param.x != x || param.y != y) {
+        param.x = x;
+        param.y = y;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Int2Parameter(name, x, y));
+    return true;
   }
 
   @Nullable
@@ -180,7 +342,23 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setInt3(String name, int x, int y, int z) {
-    namedParameters.put(name, new MaterialParameters.Int3Parameter(name, x, y, z));
+    setInt3(name, namedParameters.get(name), x, y, z);
+  }
+
+  boolean setInt3(String name, @Nullable Parameter existing, int x, int y, int z) {
+    if (existing instanceof Int3Parameter) {
+      Int3Parameter param = (Int3Parameter) existing;
+      if (param.x != x || param.y != y || param.z != z) {
+        param.x = x;
+        param.y = y;
+        param.z = z;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Int3Parameter(name, x, y, z));
+    return true;
   }
 
   @Nullable
@@ -196,7 +374,24 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setInt4(String name, int x, int y, int z, int w) {
-    namedParameters.put(name, new MaterialParameters.Int4Parameter(name, x, y, z, w));
+    setInt4(name, namedParameters.get(name), x, y, z, w);
+  }
+
+  boolean setInt4(String name, @Nullable Parameter existing, int x, int y, int z, int w) {
+    if (existing instanceof Int4Parameter) {
+      Int4Parameter param = (Int4Parameter) existing;
+      if (param.x != x || param.y != y || param.z != z || param.w != w) {
+        param.x = x;
+        param.y = y;
+        param.z = z;
+        param.w = w;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new Int4Parameter(name, x, y, z, w));
+    return true;
   }
 
   @Nullable
@@ -212,7 +407,21 @@ final class MaterialParameters {
 
   @UsedByNative("material_java_wrappers.h")
   void setTexture(String name, Texture texture) {
-    namedParameters.put(name, new MaterialParameters.TextureParameter(name, texture));
+    setTexture(name, namedParameters.get(name), texture);
+  }
+
+  boolean setTexture(String name, @Nullable Parameter existing, Texture texture) {
+    if (existing instanceof TextureParameter) {
+      TextureParameter param = (TextureParameter) existing;
+      if (param.texture != texture) {
+        param.texture = texture;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new TextureParameter(name, texture));
+    return true;
   }
 
   @Nullable
@@ -225,8 +434,33 @@ final class MaterialParameters {
     return null;
   }
 
+  /** Returns the textures currently bound to a parameter. */
+  List<Texture> getTextures() {
+    ArrayList<Texture> textures = new ArrayList<>();
+    for (MaterialParameters.Parameter value : namedParameters.values()) {
+      if (value instanceof TextureParameter) {
+        textures.add(((TextureParameter) value).texture);
+      }
+    }
+    return textures;
+  }
+
   void setDepthTexture(String name, DepthTexture depthTexture) {
-    namedParameters.put(name, new MaterialParameters.DepthTextureParameter(name, depthTexture));
+    setDepthTexture(name, namedParameters.get(name), depthTexture);
+  }
+
+  boolean setDepthTexture(String name, @Nullable Parameter existing, DepthTexture depthTexture) {
+    if (existing instanceof DepthTextureParameter) {
+      DepthTextureParameter param = (DepthTextureParameter) existing;
+      if (param.depthTexture != depthTexture) {
+        param.depthTexture = depthTexture;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new DepthTextureParameter(name, depthTexture));
+    return true;
   }
 
   @Nullable
@@ -239,8 +473,22 @@ final class MaterialParameters {
   }
 
   void setExternalTexture(String name, ExternalTexture externalTexture) {
-    namedParameters.put(
-        name, new MaterialParameters.ExternalTextureParameter(name, externalTexture));
+    setExternalTexture(name, namedParameters.get(name), externalTexture);
+  }
+
+  boolean setExternalTexture(
+      String name, @Nullable Parameter existing, ExternalTexture externalTexture) {
+    if (existing instanceof ExternalTextureParameter) {
+      ExternalTextureParameter param = (ExternalTextureParameter) existing;
+      if (param.externalTexture != externalTexture) {
+        param.externalTexture = externalTexture;
+        markDirty(param);
+        return true;
+      }
+      return false;
+    }
+    putParameter(new ExternalTextureParameter(name, externalTexture));
+    return true;
   }
 
   @Nullable
@@ -253,53 +501,208 @@ final class MaterialParameters {
     return null;
   }
 
+  @Nullable
+  Parameter get(String name) {
+    return namedParameters.get(name);
+  }
+
+  /**
+   * Returns a counter that changes whenever a parameter holder is added or replaced, so that
+   * holders cached by {@link Material.ParameterHandle} can tell when to look them up again.
+   */
+  int getStructureVersion() {
+    return structureVersion;
+  }
+
+  void setOwner(Material owner) {
+    this.owner = owner;
+  }
+
+  /** Returns a copy of the current parameter values that can be compared with other copies. */
+  Snapshot snapshot() {
+    return new Snapshot(namedParameters);
+  }
+
+  /** Applies every parameter to the instance, for example after it was (re)created. */
   void applyTo(MaterialInstance materialInstance) {
     com.google.android.filament.Material material = materialInstance.getMaterial();
 
     for (MaterialParameters.Parameter value : namedParameters.values()) {
-      if (material.hasParameter(value.name)) {
+      if (value.isSupportedBy(material)) {
         value.applyTo(materialInstance);
+        onApplied(value);
       }
     }
+    clearDirty();
   }
 
-  void applyParameterTo(MaterialInstance materialInstance, String name) {
+  /** Applies only the parameters that changed since they were last applied. */
+  void applyDirtyTo(MaterialInstance materialInstance) {
+    if (dirtyParameters.isEmpty()) {
+      return;
+    }
+
     com.google.android.filament.Material material = materialInstance.getMaterial();
+    for (int i = 0; i < dirtyParameters.size(); i++) {
+      MaterialParameters.Parameter value = dirtyParameters.get(i);
+      if (value.isSupportedBy(material)) {
+        value.applyTo(materialInstance);
+        onApplied(value);
+      }
+    }
+    clearDirty();
+  }
+
+  private void onApplied(MaterialParameters.Parameter value) {
+    if (owner != null && value instanceof TextureParameter) {
+      ((TextureParameter) value).texture.addBoundMaterial(owner);
+    }
+  }
+
+  /**
+   * Re-applies the textures whose Filament texture was replaced since they were applied, such as
+   * progressive textures that received their full resolution image.
+   */
+  void applyReplacedTexturesTo(MaterialInstance materialInstance) {
+    com.google.android.filament.Material material = materialInstance.getMaterial();
+    for (MaterialParameters.Parameter value : namedParameters.values()) {
+      if (value instanceof TextureParameter
+          && ((TextureParameter) value).isFilamentTextureReplaced()
+          && value.isSupportedBy(material)) {
+        value.applyTo(materialInstance);
+      }
+    }
+  }
 
-    if(material.hasParameter(name)) {
-      Optional
-              .ofNullable(namedParameters.get(name))
-              .ifPresent(parameter -> parameter.applyTo(materialInstance));
+  /** Adds the textures referenced by the parameters to the list. */
+  void collectTextures(List<Texture> textures) {
+    for (MaterialParameters.Parameter value : namedParameters.values()) {
+      if (value instanceof TextureParameter) {
+        textures.add(((TextureParameter) value).texture);
+      }
     }
   }
 
+  boolean hasDirtyParameters() {
+    return !dirtyParameters.isEmpty();
+  }
+
   void copyFrom(MaterialParameters other) {
+    structureVersion++;
     namedParameters.clear();
+    dirtyParameters.clear();
     merge(other);
   }
 
   void merge(MaterialParameters other) {
     for (MaterialParameters.Parameter value : other.namedParameters.values()) {
-      MaterialParameters.Parameter clonedValue = value.clone();
-      namedParameters.put(clonedValue.name, clonedValue);
+      putParameter(value.clone());
     }
   }
 
   void mergeIfAbsent(MaterialParameters other) {
     for (MaterialParameters.Parameter value : other.namedParameters.values()) {
       if (!namedParameters.containsKey(value.name)) {
-        MaterialParameters.Parameter clonedValue = value.clone();
-        namedParameters.put(clonedValue.name, clonedValue);
+        putParameter(value.clone());
       }
     }
   }
 
+  private void putParameter(MaterialParameters.Parameter parameter) {
+    structureVersion++;
+    MaterialParameters.Parameter previous = namedParameters.put(parameter.name, parameter);
+    if (previous != null && previous.isDirty) {
+      dirtyParameters.remove(previous);
+    }
+    parameter.isDirty = false;
+    markDirty(parameter);
+  }
+
+  private void markDirty(MaterialParameters.Parameter parameter) {
+    if (!parameter.isDirty) {
+      parameter.isDirty = true;
+      dirtyParameters.add(parameter);
+    }
+  }
+
+  private void clearDirty() {
+    for (int i = 0; i < dirtyParameters.size(); i++) {
+      dirtyParameters.get(i).isDirty = false;
+    }
+    dirtyParameters.clear();
+  }
+
+
+  /** Immutable copy of the parameter values of a material, see {@link MaterialInstancePool}. */
+  static final class Snapshot {
+    private final HashMap<String, Object[]> values = new HashMap<>();
+    private final int hashCode;
+
+    private Snapshot(HashMap<String, MaterialParameters.Parameter> namedParameters) {
+      int hash = 0;
+      for (MaterialParameters.Parameter parameter : namedParameters.values()) {
+        Object[] parameterValues = parameter.getValues();
+        values.put(parameter.name, parameterValues);
+        hash += parameter.name.hashCode() ^ Arrays.hashCode(parameterValues);
+      }
+      hashCode = hash;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Snapshot)) {
+        return false;
+      }
+      Snapshot otherSnapshot = (Snapshot) other;
+      if (hashCode != otherSnapshot.hashCode || values.size() != otherSnapshot.values.size()) {
+        return false;
+      }
+      for (Map.Entry<String, Object[]> entry : values.entrySet()) {
+        Object[] otherValues = otherSnapshot.values.get(entry.getKey());
+        if (otherValues == null || !Arrays.equals(entry.getValue(), otherValues)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
 
   abstract static class Parameter implements Cloneable {
     String name;
+    // True while the parameter is waiting in dirtyParameters to be applied.
+    boolean isDirty;
+    // Caches the result of hasParameter so it is only queried once per Filament material.
+    @Nullable private com.google.android.filament.Material resolvedMaterial;
+    private boolean isSupported;
 
     abstract void applyTo(MaterialInstance materialInstance);
 
+    /** Returns the parameter value, textures are compared by identity. */
+    abstract Object[] getValues();
+
+    boolean isSupportedBy(com.google.android.filament.Material material) {
+      if (resolvedMaterial != material) {
+        resolvedMaterial = material;
+        isSupported = material.hasParameter(name);
+      }
+      return isSupported;
+    }
+
+    /** Records a support check already done, by a {@link Material.ParameterHandle} for instance. */
+    void setSupportedBy(com.google.android.filament.Material material, boolean isSupported) {
+      resolvedMaterial = material;
+      this.isSupported = isSupported;
+    }
+
     @Override
     public MaterialParameters.Parameter clone() {
       try {
@@ -323,6 +726,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x};
+    }
   }
 
 
@@ -340,6 +748,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y};
+    }
   }
 
 
@@ -359,6 +772,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y, z);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y, z};
+    }
   }
 
 
@@ -380,6 +798,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y, z, w);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y, z, w};
+    }
   }
 
 
@@ -395,6 +818,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x};
+    }
   }
 
 
@@ -412,6 +840,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y};
+    }
   }
 
 
@@ -431,6 +864,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y, z);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y, z};
+    }
   }
 
 
@@ -452,6 +890,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y, z, w);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y, z, w};
+    }
   }
 
 
@@ -467,6 +910,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x};
+    }
   }
 
 
@@ -484,6 +932,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y};
+    }
   }
 
 
@@ -503,6 +956,11 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y, z);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y, z};
+    }
   }
 
 
@@ -524,11 +982,18 @@ final class MaterialParameters {
     void applyTo(MaterialInstance materialInstance) {
       materialInstance.setParameter(name, x, y, z, w);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {x, y, z, w};
+    }
   }
 
 
   static class TextureParameter extends MaterialParameters.Parameter {
-    final Texture texture;
+    Texture texture;
+    // The Filament texture last applied, which changes when a progressive texture is streamed in.
+    @Nullable private com.google.android.filament.Texture appliedTexture;
 
     TextureParameter(String name, Texture texture) {
       this.name = name;
@@ -537,8 +1002,18 @@ final class MaterialParameters {
 
     @Override
     void applyTo(MaterialInstance materialInstance) {
+      appliedTexture = texture.getFilamentTexture();
       materialInstance.setParameter(
-          name, texture.getFilamentTexture(), convertTextureSampler(texture.getSampler()));
+          name, appliedTexture, convertTextureSampler(texture.getSampler()));
+    }
+
+    boolean isFilamentTextureReplaced() {
+      return appliedTexture != null && appliedTexture != texture.getFilamentTexture();
+    }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {texture};
     }
 
     @Override
@@ -549,7 +1024,7 @@ final class MaterialParameters {
 
 
   static class DepthTextureParameter extends MaterialParameters.Parameter {
-    private final DepthTexture depthTexture;
+    private DepthTexture depthTexture;
 
     DepthTextureParameter(String name, DepthTexture depthTexture) {
       this.name = name;
@@ -565,11 +1040,16 @@ final class MaterialParameters {
 
       materialInstance.setParameter(name, depthTexture.getFilamentTexture(), depthTextureSampler);
     }
+
+    @Override
+    Object[] getValues() {
+      return new Object[] {depthTexture};
+    }
   }
 
 
   static class ExternalTextureParameter extends MaterialParameters.Parameter {
-    private final ExternalTexture externalTexture;
+    private ExternalTexture externalTexture;
 
     ExternalTextureParameter(String name, ExternalTexture externalTexture) {
       this.name = name;
@@ -583,6 +1063,11 @@ final class MaterialParameters {
       materialInstance.setParameter(name, externalTexture.getFilamentTexture(), filamentSampler);
     }
 
+    @Override
+    Object[] getValues() {
+      return new Object[] {externalTexture};
+    }
+
     private com.google.android.filament.TextureSampler getExternalFilamentSampler() {
       com.google.android.filament.TextureSampler filamentSampler =
           new com.google.android.filament.TextureSampler();
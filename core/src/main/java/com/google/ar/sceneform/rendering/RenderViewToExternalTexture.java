@@ -126,6 +126,7 @@ class RenderViewToExternalTexture extends LinearLayout {
       targetSurface.unlockCanvasAndPost(surfaceCanvas);
 
       hasDrawnToSurfaceTexture = true;
+      ResourceManager.getInstance().markSceneContentChanged();
     }
 
     invalidate();
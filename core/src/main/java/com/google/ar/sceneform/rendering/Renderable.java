@@ -16,6 +16,7 @@ import com.google.ar.sceneform.utilities.AndroidPreconditions;
 import com.google.ar.sceneform.utilities.ChangeId;
 import com.google.ar.sceneform.utilities.LoadHelper;
 import com.google.ar.sceneform.utilities.Preconditions;
+import com.google.ar.sceneform.utilities.Tracing;
 
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -49,6 +50,7 @@ public abstract class Renderable {
     protected CollisionShape collisionShape;
 
     private final ChangeId changeId = new ChangeId();
+    private int materialInstanceGeneration = 0;
 
     public static final int RENDER_PRIORITY_DEFAULT = 4;
     public static final int RENDER_PRIORITY_FIRST = 0;
@@ -295,7 +297,27 @@ public abstract class Renderable {
             RenderableInternalFilamentAssetData renderableData =
                     (RenderableInternalFilamentAssetData) getRenderableData();
             // Allow the resource loader to finalize textures that have become ready.
-            renderableData.resourceLoader.asyncUpdateLoad();
+            Tracing.beginSection("Sceneform.asyncUpdateLoad");
+            try {
+                renderableData.resourceLoader.asyncUpdateLoad();
+            } finally {
+                Tracing.endSection();
+            }
+            // Keep the views rendering on demand drawing until all the textures are loaded.
+            if (renderableData.resourceLoader.asyncGetLoadProgress() < 1.0f) {
+                ResourceManager.getInstance().markSceneContentChanged();
+            }
+        } else {
+            // Re-bind the material instances if one of the materials started or stopped sharing
+            // one. The generations only grow, so their sum changes whenever one of them does.
+            int generation = 0;
+            for (int i = 0; i < materialBindings.size(); i++) {
+                generation += materialBindings.get(i).getInstanceGeneration();
+            }
+            if (generation != materialInstanceGeneration) {
+                materialInstanceGeneration = generation;
+                changeId.update();
+            }
         }
     }
 
@@ -203,7 +203,7 @@ public class RenderableDefinition {
               .indexCount(numIndices)
               .bufferType(IndexType.UINT)
               .build(engine.getFilamentEngine());
-      data.setIndexBuffer(indexBuffer);
+      data.setIndexBuffer(indexBuffer, IndexType.UINT);
     }
 
     indexBuffer.setBuffer(engine.getFilamentEngine(), rawIndexBuffer, 0, numIndices);
@@ -255,7 +255,7 @@ public class RenderableDefinition {
 
     if (createVertexBuffer) {
       vertexBuffer = createVertexBuffer(numVertices, descriptionAttributes);
-      data.setVertexBuffer(vertexBuffer);
+      data.setVertexBuffer(vertexBuffer, getVertexSizeInBytes(descriptionAttributes));
     }
 
     // Create position Buffer if needed.
@@ -452,6 +452,21 @@ public class RenderableDefinition {
     return builder.build(EngineInstance.getEngine().getFilamentEngine());
   }
 
+  /** Returns the summed size of the attributes created by {@link #createVertexBuffer}. */
+  private static int getVertexSizeInBytes(EnumSet<VertexAttribute> attributes) {
+    int size = POSITION_SIZE;
+    if (attributes.contains(VertexAttribute.TANGENTS)) {
+      size += TANGENTS_SIZE;
+    }
+    if (attributes.contains(VertexAttribute.UV0)) {
+      size += UV_SIZE;
+    }
+    if (attributes.contains(VertexAttribute.COLOR)) {
+      size += COLOR_SIZE;
+    }
+    return size * BYTES_PER_FLOAT;
+  }
+
   private static void addVector3ToBuffer(Vector3 vector3, FloatBuffer buffer) {
     buffer.put(vector3.x);
     buffer.put(vector3.y);
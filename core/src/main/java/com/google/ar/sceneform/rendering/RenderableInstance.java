@@ -29,11 +29,13 @@ import com.google.ar.sceneform.utilities.ChangeId;
 import com.google.ar.sceneform.utilities.LoadHelper;
 import com.google.ar.sceneform.utilities.Preconditions;
 import com.google.ar.sceneform.utilities.SceneformBufferUtils;
+import com.google.ar.sceneform.utilities.Tracing;
 
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.concurrent.Callable;
 import java.util.function.Function;
 
@@ -80,6 +82,8 @@ public class RenderableInstance implements AnimatableModel {
     FilamentAsset filamentAsset;
     @Nullable
     Animator filamentAnimator;
+    @Nullable
+    private ResourceSizeEstimator.GltfSize gltfSize;
 
     private ArrayList<ModelAnimation> animations = new ArrayList<>();
 
@@ -124,7 +128,7 @@ public class RenderableInstance implements AnimatableModel {
 
         ResourceManager.getInstance()
                 .getRenderableInstanceCleanupRegistry()
-                .register(this, new CleanupCallback(entity, childEntity));
+                .register(this, new CleanupCallback(entity, childEntity, gltfSize));
     }
 
     void createFilamentAssetModelInstance() {
@@ -140,8 +144,14 @@ public class RenderableInstance implements AnimatableModel {
                             RenderableInternalFilamentAssetData.getUberShaderLoader(),
                             EntityManager.get());
 
-            FilamentAsset createdAsset = renderableData.isGltfBinary ? loader.createAssetFromBinary(renderableData.gltfByteBuffer)
-                    : loader.createAssetFromJson(renderableData.gltfByteBuffer);
+            Tracing.beginSection("Sceneform.createGltfAsset");
+            FilamentAsset createdAsset;
+            try {
+                createdAsset = renderableData.isGltfBinary ? loader.createAssetFromBinary(renderableData.gltfByteBuffer)
+                        : loader.createAssetFromJson(renderableData.gltfByteBuffer);
+            } finally {
+                Tracing.endSection();
+            }
 
             if (createdAsset == null) {
                 throw new IllegalStateException("Failed to load gltf");
@@ -157,26 +167,43 @@ public class RenderableInstance implements AnimatableModel {
                                 new Vector3(center[0], center[1], center[2]));
             }
 
-            Function<String, Uri> urlResolver = renderableData.urlResolver;
-            for (String uri : createdAsset.getResourceUris()) {
-                if (urlResolver == null) {
-                    Log.e(TAG, "Failed to download uri " + uri + " no url resolver.");
-                    continue;
+            Tracing.beginSection("Sceneform.loadGltfResources");
+            try {
+                HashMap<String, ByteBuffer> resources = new HashMap<>();
+                Function<String, Uri> urlResolver = renderableData.urlResolver;
+                for (String uri : createdAsset.getResourceUris()) {
+                    if (urlResolver == null) {
+                        Log.e(TAG, "Failed to download uri " + uri + " no url resolver.");
+                        continue;
+                    }
+                    Uri dataUri = urlResolver.apply(uri);
+                    try {
+                        Callable<InputStream> callable = LoadHelper.fromUri(renderableData.context, dataUri);
+                        ByteBuffer resource = ByteBuffer.wrap(SceneformBufferUtils.inputStreamCallableToByteArray(callable));
+                        resources.put(uri, resource);
+                        renderableData.resourceLoader.addResourceData(uri, resource);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Failed to download data uri " + dataUri, e);
+                    }
                 }
-                Uri dataUri = urlResolver.apply(uri);
-                try {
-                    Callable<InputStream> callable = LoadHelper.fromUri(renderableData.context, dataUri);
-                    renderableData.resourceLoader.addResourceData(
-                            uri, ByteBuffer.wrap(SceneformBufferUtils.inputStreamCallableToByteArray(callable)));
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to download data uri " + dataUri, e);
+
+                if(renderable.asyncLoadEnabled) {
+                    renderableData.resourceLoader.asyncBeginLoad(createdAsset);
+                } else {
+                    renderableData.resourceLoader.loadResources(createdAsset);
                 }
-            }
 
-            if(renderable.asyncLoadEnabled) {
-                renderableData.resourceLoader.asyncBeginLoad(createdAsset);
-            } else {
-                renderableData.resourceLoader.loadResources(createdAsset);
+                // gltfio doesn't expose the buffers and textures it creates, estimate them from
+                // the source so that they count towards the memory usage. Asynchronous loads are
+                // counted before their textures are ready.
+                if (renderableData.gltfSize == null) {
+                    renderableData.gltfSize = ResourceSizeEstimator.estimateGltf(
+                            renderableData.gltfByteBuffer, renderableData.isGltfBinary, resources);
+                }
+                gltfSize = renderableData.gltfSize;
+                ResourceManager.getInstance().addGltfSize(gltfSize);
+            } finally {
+                Tracing.endSection();
             }
 
             RenderableManager renderableManager = EngineInstance.getEngine().getRenderableManager();
@@ -453,7 +480,7 @@ public class RenderableInstance implements AnimatableModel {
         @EntityInstance int renderableInstance = renderableManager.getInstance(entities[entityIndex]);
         if (renderableInstance != 0) {
             renderableManager.setMaterialInstanceAt(renderableInstance, primitiveIndex,
-                    material.getFilamentMaterialInstance());
+                    material.pinFilamentMaterialInstance());
         }
     }
 
@@ -646,7 +673,12 @@ public class RenderableInstance implements AnimatableModel {
             ModelAnimation animation = getAnimation(i);
             if (force || animation.isDirty()) {
                 if (getFilamentAnimator() != null) {
-                    getFilamentAnimator().applyAnimation(i, animation.getTimePosition());
+                    Tracing.beginSection("Sceneform.applyAnimation");
+                    try {
+                        getFilamentAnimator().applyAnimation(i, animation.getTimePosition());
+                    } finally {
+                        Tracing.endSection();
+                    }
                 }
                 animation.setDirty(false);
                 hasUpdate = true;
@@ -664,7 +696,12 @@ public class RenderableInstance implements AnimatableModel {
      */
     private void updateSkinning() {
         if (getFilamentAnimator() != null) {
-            getFilamentAnimator().updateBoneMatrices();
+            Tracing.beginSection("Sceneform.updateBoneMatrices");
+            try {
+                getFilamentAnimator().updateBoneMatrices();
+            } finally {
+                Tracing.endSection();
+            }
         }
     }
 
@@ -700,16 +737,24 @@ public class RenderableInstance implements AnimatableModel {
     private static final class CleanupCallback implements Runnable {
         private final int childEntity;
         private final int entity;
+        @Nullable
+        private final ResourceSizeEstimator.GltfSize gltfSize;
 
-        CleanupCallback(int childEntity, int entity) {
+        CleanupCallback(
+                int childEntity, int entity, @Nullable ResourceSizeEstimator.GltfSize gltfSize) {
             this.childEntity = childEntity;
             this.entity = entity;
+            this.gltfSize = gltfSize;
         }
 
         @Override
         public void run() {
             AndroidPreconditions.checkUiThread();
 
+            if (gltfSize != null) {
+                ResourceManager.getInstance().removeGltfSize(gltfSize);
+            }
+
             IEngine engine = EngineInstance.getEngine();
 
             if (engine == null || !engine.isValid()) {
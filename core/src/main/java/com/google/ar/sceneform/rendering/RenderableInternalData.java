@@ -55,6 +55,10 @@ class RenderableInternalData implements IRenderableInternalData {
   @Nullable private IndexBuffer indexBuffer;
   @Nullable private VertexBuffer vertexBuffer;
 
+  // Estimated sizes of the Filament buffers, reported to the ResourceManager memory accounting.
+  private long indexBufferSizeInBytes;
+  private long vertexBufferSizeInBytes;
+
   // Represents the set of meshes to render.
   private final ArrayList<MeshData> meshes = new ArrayList<>();
 
@@ -113,8 +117,15 @@ class RenderableInternalData implements IRenderableInternalData {
   }
 
   @Override
-  public void setIndexBuffer(@Nullable IndexBuffer indexBuffer) {
+  public void setIndexBuffer(
+      @Nullable IndexBuffer indexBuffer, IndexBuffer.Builder.IndexType indexType) {
     this.indexBuffer = indexBuffer;
+    long sizeInBytes =
+        indexBuffer != null
+            ? ResourceSizeEstimator.estimateIndexBuffer(indexBuffer, indexType)
+            : 0;
+    ResourceManager.getInstance().addGeometrySize(sizeInBytes - indexBufferSizeInBytes);
+    indexBufferSizeInBytes = sizeInBytes;
   }
 
   @Override
@@ -124,8 +135,14 @@ class RenderableInternalData implements IRenderableInternalData {
   }
 
   @Override
-  public void setVertexBuffer(@Nullable VertexBuffer vertexBuffer) {
+  public void setVertexBuffer(@Nullable VertexBuffer vertexBuffer, int vertexSizeInBytes) {
     this.vertexBuffer = vertexBuffer;
+    long sizeInBytes =
+        vertexBuffer != null
+            ? ResourceSizeEstimator.estimateVertexBuffer(vertexBuffer, vertexSizeInBytes)
+            : 0;
+    ResourceManager.getInstance().addGeometrySize(sizeInBytes - vertexBufferSizeInBytes);
+    vertexBufferSizeInBytes = sizeInBytes;
   }
 
   @Override
@@ -134,6 +151,11 @@ class RenderableInternalData implements IRenderableInternalData {
     return vertexBuffer;
   }
 
+  /** Returns the estimated size of the Filament index and vertex buffers. */
+  long getGeometrySizeInBytes() {
+    return indexBufferSizeInBytes + vertexBufferSizeInBytes;
+  }
+
   @Override
   public void setRawIndexBuffer(@Nullable IntBuffer rawIndexBuffer) {
     this.rawIndexBuffer = rawIndexBuffer;
@@ -265,6 +287,7 @@ class RenderableInternalData implements IRenderableInternalData {
 
       // Update the material instances assigned to the filament renderable.
       Material material = materialBindings.get(mesh);
+      material.shareInstance();
       renderableManager.setMaterialInstanceAt(
               renderableInstance, mesh, material.getFilamentMaterialInstance());
     }
@@ -331,5 +354,10 @@ class RenderableInternalData implements IRenderableInternalData {
       engine.destroyIndexBuffer(indexBuffer);
       indexBuffer = null;
     }
+
+    ResourceManager.getInstance()
+        .addGeometrySize(-(vertexBufferSizeInBytes + indexBufferSizeInBytes));
+    vertexBufferSizeInBytes = 0;
+    indexBufferSizeInBytes = 0;
   }
 }
@@ -29,6 +29,8 @@ public class RenderableInternalFilamentAssetData implements IRenderableInternalD
   boolean isGltfBinary;
   ResourceLoader resourceLoader;
   @Nullable Function<String, Uri> urlResolver;
+  // Estimated memory gltfio allocates for each instance, computed with the first one.
+  @Nullable ResourceSizeEstimator.GltfSize gltfSize;
   static UbershaderLoader ubershaderLoader;
 
   static UbershaderLoader getUberShaderLoader() {
@@ -99,7 +101,8 @@ public class RenderableInternalFilamentAssetData implements IRenderableInternalD
   }
 
   @Override
-  public void setIndexBuffer(@Nullable IndexBuffer indexBuffer) {
+  public void setIndexBuffer(
+      @Nullable IndexBuffer indexBuffer, IndexBuffer.Builder.IndexType indexType) {
     // Not Implemented
   }
 
@@ -111,7 +114,7 @@ public class RenderableInternalFilamentAssetData implements IRenderableInternalD
   }
 
   @Override
-  public void setVertexBuffer(@Nullable VertexBuffer vertexBuffer) {
+  public void setVertexBuffer(@Nullable VertexBuffer vertexBuffer, int vertexSizeInBytes) {
     // Not Implemented
   }
 
@@ -21,7 +21,9 @@ import com.google.android.filament.View.DynamicResolutionOptions;
 import com.google.android.filament.Viewport;
 import com.google.android.filament.android.UiHelper;
 import com.google.ar.sceneform.utilities.AndroidPreconditions;
+import com.google.ar.sceneform.utilities.FrameProfiler;
 import com.google.ar.sceneform.utilities.Preconditions;
+import com.google.ar.sceneform.utilities.Tracing;
 import com.gorisse.thomas.sceneform.environment.Environment;
 import com.gorisse.thomas.sceneform.scene.CameraKt;
 import com.gorisse.thomas.sceneform.scene.SceneKt;
@@ -43,6 +45,7 @@ public class Renderer implements UiHelper.RendererCallback {
 
     // Limit resolution to 1080p for the minor edge. This is enough for Filament.
     private static final int MAXIMUM_RESOLUTION = 1080;
+    private static final float MINIMUM_RESOLUTION_SCALE = 0.25f;
     private final SurfaceView surfaceView;
     private final ViewAttachmentManager viewAttachmentManager;
     private final ArrayList<RenderableInstance> renderableInstances = new ArrayList<>();
@@ -70,6 +73,12 @@ public class Renderer implements UiHelper.RendererCallback {
     private Runnable onFrameRenderDebugCallback = null;
     @Nullable
     private PreRenderCallback preRenderCallback;
+    private FrameProfiler frameProfiler = new FrameProfiler();
+    // True until a frame is rendered after the surface or the view settings changed.
+    private boolean isRedrawNeeded = true;
+    private boolean isLastFrameSkipped = false;
+    private boolean isDynamicResolutionEnabled = false;
+    private float resolutionScale = 1.0f;
 
     /**
      * @hide
@@ -168,6 +177,7 @@ public class Renderer implements UiHelper.RendererCallback {
             options.clearColor[3] = color.a;
         }
         renderer.setClearOptions(options);
+        requestRedraw();
     }
 
     /**
@@ -195,6 +205,7 @@ public class Renderer implements UiHelper.RendererCallback {
 
     public void setFrontFaceWindingInverted(Boolean inverted) {
         view.setFrontFaceWindingInverted(inverted);
+        requestRedraw();
     }
 
     /**
@@ -202,6 +213,7 @@ public class Renderer implements UiHelper.RendererCallback {
      */
     public void setCameraProvider(@Nullable CameraProvider cameraProvider) {
         this.cameraProvider = cameraProvider;
+        requestRedraw();
     }
 
     /**
@@ -216,6 +228,35 @@ public class Renderer implements UiHelper.RendererCallback {
      */
     public void onResume() {
         viewAttachmentManager.onResume();
+        requestRedraw();
+    }
+
+    /**
+     * Returns true if the surface or the view settings changed since the last rendered frame.
+     *
+     * @hide Used by SceneView to render on demand
+     */
+    public boolean isRedrawNeeded() {
+        return isRedrawNeeded;
+    }
+
+    /**
+     * Forces the next frame to be rendered, even if it was skipped.
+     *
+     * @hide Used by SceneView to render on demand
+     */
+    public void requestRedraw() {
+        isRedrawNeeded = true;
+    }
+
+    /**
+     * Returns true if the last call to {@link #render(long, boolean)} didn't draw a frame, because
+     * the GPU is behind or the surface isn't ready.
+     *
+     * @hide
+     */
+    public boolean isLastFrameSkipped() {
+        return isLastFrameSkipped;
     }
 
     /**
@@ -248,6 +289,16 @@ public class Renderer implements UiHelper.RendererCallback {
         this.preRenderCallback = preRenderCallback;
     }
 
+    /**
+     * Sets the profiler timing the render stages of each frame.
+     *
+     * @hide
+     */
+    public void setFrameProfiler(FrameProfiler frameProfiler) {
+        this.frameProfiler =
+                Preconditions.checkNotNull(frameProfiler, "Parameter \"frameProfiler\" was null.");
+    }
+
     private void doRecreationOfSwapChain() {
         synchronized (this) {
             if (recreateSwapChain) {
@@ -310,12 +361,36 @@ public class Renderer implements UiHelper.RendererCallback {
 
         // Render the scene, unless the renderer wants to skip the frame.
         // This means you are sending frames too quickly to the GPU
+        isLastFrameSkipped = true;
         if ((filamentHelper.isReadyToRender() &&
                 renderer.beginFrame(swapChainLocal, frameTimeNanos)) ||
                 EngineInstance.isHeadlessMode()) {
-
+            isLastFrameSkipped = false;
+
+            // Swap in the full resolution textures before the renderables are prepared.
+            Tracing.beginSection("Sceneform.uploadTextures");
+            try {
+                ResourceManager.getInstance().getTextureStreamer().uploadPendingTextures();
+            } finally {
+                Tracing.endSection();
+            }
+            frameProfiler.begin(FrameProfiler.Stage.TRANSFORMS);
             updateInstances();
-            updateLights();
+            frameProfiler.end(FrameProfiler.Stage.TRANSFORMS);
+            Tracing.beginSection("Sceneform.textureResidency");
+            try {
+                ResourceManager.getInstance()
+                        .getTextureResidencyManager()
+                        .update(renderableInstances, cameraProvider, view.getViewport().height);
+            } finally {
+                Tracing.endSection();
+            }
+            Tracing.beginSection("Sceneform.updateLights");
+            try {
+                updateLights();
+            } finally {
+                Tracing.endSection();
+            }
 
             CameraProvider cameraProvider = this.cameraProvider;
             if (cameraProvider != null) {
@@ -343,6 +418,7 @@ public class Renderer implements UiHelper.RendererCallback {
                 // views pointing to the same scene.
                 com.google.android.filament.View currentView =
                         cameraProvider.isActive() ? view : emptyView;
+                frameProfiler.begin(FrameProfiler.Stage.FILAMENT_RENDER);
                 renderer.render(currentView);
 
                 renderToMirror(currentView);
@@ -351,8 +427,12 @@ public class Renderer implements UiHelper.RendererCallback {
                     onFrameRenderDebugCallback.run();
                 }
                 renderer.endFrame();
+                isRedrawNeeded = false;
+                frameProfiler.end(FrameProfiler.Stage.FILAMENT_RENDER);
 
-                reclaimReleasedResources();
+                frameProfiler.begin(FrameProfiler.Stage.CLEANUP);
+                ResourceManager.getInstance().reclaimReleasedResourcesWithinBudget();
+                frameProfiler.end(FrameProfiler.Stage.CLEANUP);
             }
         }
     }
@@ -397,6 +477,7 @@ public class Renderer implements UiHelper.RendererCallback {
     public void setEnvironment(Environment environment) {
         this.environment = environment;
         SceneKt.setEnvironment(scene, environment);
+        requestRedraw();
     }
 
     /**
@@ -431,6 +512,7 @@ public class Renderer implements UiHelper.RendererCallback {
      */
     public void setIndirectLight(IndirectLight indirectLight) {
         scene.setIndirectLight(indirectLight);
+        requestRedraw();
     }
 
     /**
@@ -440,6 +522,7 @@ public class Renderer implements UiHelper.RendererCallback {
      */
     public void setSkybox(Skybox skybox) {
         scene.setSkybox(skybox);
+        requestRedraw();
     }
 
     public void setDesiredSize(int width, int height) {
@@ -456,6 +539,7 @@ public class Renderer implements UiHelper.RendererCallback {
         }
 
         filamentHelper.setDesiredSize(major, minor);
+        requestRedraw();
     }
 
     /**
@@ -481,6 +565,7 @@ public class Renderer implements UiHelper.RendererCallback {
             this.surface = surface;
             recreateSwapChain = true;
         }
+        requestRedraw();
     }
 
     /**
@@ -508,9 +593,61 @@ public class Renderer implements UiHelper.RendererCallback {
         // (i.e.: 50% on each axis, e.g.: reducing a 1080p image down to 720p).
         // This can be changed in the options below.
         // TODO: This functionality should probably be exposed to the developer eventually.
+        this.isDynamicResolutionEnabled = isEnabled;
+        updateDynamicResolutionOptions();
+    }
+
+    /**
+     * Scales the resolution the scene is rendered at, before it is upscaled to the surface.
+     *
+     * <p>With dynamic resolution enabled, the scale is the upper bound of the resolution picked by
+     * Filament.
+     *
+     * @param scale between 0.25 and 1, 1 by default
+     */
+    public void setResolutionScale(float scale) {
+        if (scale < MINIMUM_RESOLUTION_SCALE || scale > 1.0f) {
+            throw new IllegalArgumentException(
+                    "Parameter \"scale\" must be between " + MINIMUM_RESOLUTION_SCALE + " and 1.");
+        }
+        this.resolutionScale = scale;
+        updateDynamicResolutionOptions();
+    }
+
+    public float getResolutionScale() {
+        return resolutionScale;
+    }
+
+    private void updateDynamicResolutionOptions() {
         DynamicResolutionOptions options = new DynamicResolutionOptions();
-        options.enabled = isEnabled;
+        if (isDynamicResolutionEnabled) {
+            options.enabled = true;
+            options.maxScale = resolutionScale;
+            options.minScale = Math.min(options.minScale, resolutionScale);
+        } else {
+            // A fixed scale is a dynamic resolution that can't move.
+            options.enabled = resolutionScale < 1.0f;
+            options.minScale = resolutionScale;
+            options.maxScale = resolutionScale;
+        }
         view.setDynamicResolutionOptions(options);
+        requestRedraw();
+    }
+
+    /**
+     * Sets the number of samples used for multi-sample anti-aliasing, 1 to disable it.
+     */
+    public void setMultiSampleCount(int sampleCount) {
+        view.setSampleCount(sampleCount);
+        requestRedraw();
+    }
+
+    /**
+     * Enables or disables the shadows of the view, without changing the shadow casters.
+     */
+    public void setShadowingEnabled(boolean enabled) {
+        view.setShadowingEnabled(enabled);
+        requestRedraw();
     }
 
     /**
@@ -519,6 +656,7 @@ public class Renderer implements UiHelper.RendererCallback {
     @VisibleForTesting
     public void setAntiAliasing(com.google.android.filament.View.AntiAliasing antiAliasing) {
         view.setAntiAliasing(antiAliasing);
+        requestRedraw();
     }
 
     /**
@@ -527,6 +665,7 @@ public class Renderer implements UiHelper.RendererCallback {
     @VisibleForTesting
     public void setDithering(com.google.android.filament.View.Dithering dithering) {
         view.setDithering(dithering);
+        requestRedraw();
     }
 
     /**
@@ -534,7 +673,8 @@ public class Renderer implements UiHelper.RendererCallback {
      */
 
     public void setPostProcessingEnabled(boolean enablePostProcessing) {
-        return;
+        view.setPostProcessingEnabled(enablePostProcessing);
+        requestRedraw();
     }
 
 
@@ -565,14 +705,17 @@ public class Renderer implements UiHelper.RendererCallback {
     public void onResized(int width, int height) {
         view.setViewport(new Viewport(0, 0, width, height));
         emptyView.setViewport(new Viewport(0, 0, width, height));
+        requestRedraw();
     }
 
     public void addEntity(@Entity int entity) {
         scene.addEntity(entity);
+        requestRedraw();
     }
 
     public void removeEntity(@Entity int entity) {
         scene.removeEntity(entity);
+        requestRedraw();
     }
 
     public void addLight(@Entity int entity) {
@@ -2,9 +2,13 @@ package com.google.ar.sceneform.rendering;
 
 import androidx.annotation.Nullable;
 
+import com.google.ar.sceneform.resources.ReclaimBudget;
 import com.google.ar.sceneform.resources.ResourceHolder;
 import com.google.ar.sceneform.resources.ResourceRegistry;
+import com.google.ar.sceneform.utilities.ProcessedAssetCache;
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Minimal resource manager. Maintains mappings from ids to created resources and a task executor
@@ -16,6 +20,53 @@ import java.util.ArrayList;
 public class ResourceManager {
   @Nullable private static ResourceManager instance = null;
 
+  // Destroying Filament objects is cheap individually, but a scene clear can release hundreds of
+  // them at once. Spread that work over several frames.
+  private static final long DEFAULT_RECLAIM_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+  /** Kinds of resources whose GPU memory usage is estimated by the {@link ResourceManager}. */
+  public enum MemoryCategory {
+    /** Textures loaded from images, bitmaps or models. */
+    TEXTURE,
+    /** External textures, such as the AR camera image or video surfaces. */
+    EXTERNAL_TEXTURE,
+    /** Depth textures used for occlusion. */
+    DEPTH_TEXTURE,
+    /** Geometry used to draw the camera stream. */
+    CAMERA_STREAM,
+    /** Vertex and index buffers of renderables. */
+    GEOMETRY
+  }
+
+  /** Notified on the main thread when a texture image was uploaded, with its load timings. */
+  public interface OnTextureLoadedListener {
+    /**
+     * Called for textures created through the upload queue, see {@link
+     * #setMaxTextureUploadBytesPerFrame(long)}, and for each full resolution image swapped into a
+     * progressively loaded texture.
+     *
+     * @param texture the texture that received the image
+     * @param decodeNanos time spent reading and decoding the image on a worker thread
+     * @param mipGenerationNanos time spent computing the mip levels on a worker thread, zero when
+     *     they are generated by the GPU
+     * @param uploadNanos time spent creating the texture and uploading the image on the main thread
+     */
+    void onTextureLoaded(
+        Texture texture, long decodeNanos, long mipGenerationNanos, long uploadNanos);
+  }
+
+  /** Notified when the estimated memory usage rises above the configured high-water mark. */
+  public interface OnMemoryHighWaterMarkListener {
+    /**
+     * Called once each time the estimated usage crosses the high-water mark. It is called again
+     * only after the usage has dropped back below the mark.
+     *
+     * @param estimatedSizeInBytes the estimated memory currently used by all categories
+     * @param highWaterMarkBytes the configured high-water mark
+     */
+    void onMemoryHighWaterMark(long estimatedSizeInBytes, long highWaterMarkBytes);
+  }
+
   private final ArrayList<ResourceHolder> resourceHolders = new ArrayList<>();
   private final ResourceRegistry<Texture> textureRegistry = new ResourceRegistry<>();
   private final ResourceRegistry<Material> materialRegistry = new ResourceRegistry<>();
@@ -30,9 +81,33 @@ public class ResourceManager {
       new CleanupRegistry<>();
   private final CleanupRegistry<DepthTexture> depthTextureCleanupRegistry = new CleanupRegistry<>();
   private final CleanupRegistry<Material> materialCleanupRegistry = new CleanupRegistry<>();
+  private final CompiledMaterialCache compiledMaterialCache = new CompiledMaterialCache();
+  private final MaterialInstancePool materialInstancePool = new MaterialInstancePool();
   private final CleanupRegistry<RenderableInstance> renderableInstanceCleanupRegistry =
       new CleanupRegistry<>();
   private final CleanupRegistry<Texture> textureCleanupRegistry = new CleanupRegistry<>();
+  private final TextureStreamer textureStreamer = new TextureStreamer();
+  private final TextureResidencyManager textureResidencyManager = new TextureResidencyManager();
+
+  private final AtomicLong geometrySizeInBytes = new AtomicLong();
+  private final AtomicLong gltfTextureSizeInBytes = new AtomicLong();
+  private long peakMemoryUsage = 0;
+  private long memoryHighWaterMark = 0;
+  private boolean isAboveMemoryHighWaterMark = false;
+  @Nullable private OnMemoryHighWaterMarkListener onMemoryHighWaterMarkListener = null;
+
+  private int maxDisposalsPerFrame = Integer.MAX_VALUE;
+  private long maxReclaimNanosPerFrame = DEFAULT_RECLAIM_BUDGET_NANOS;
+  private int lastFrameDisposalCount = 0;
+  // Reset at the start of each budgeted reclaim.
+  private final ReclaimBudget frameReclaimBudget = new ReclaimBudget(0, 0);
+  private long totalDisposalCount = 0;
+  private int peakPendingDisposalCount = 0;
+  @Nullable private volatile ProcessedAssetCache processedAssetCache = null;
+  private volatile TextureQualityTier textureQualityTier = TextureQualityTier.FULL;
+  private volatile boolean isCpuMipGenerationEnabled = false;
+  @Nullable private OnTextureLoadedListener onTextureLoadedListener = null;
+  private int sceneContentGeneration = 0;
 
   ResourceRegistry<Texture> getTextureRegistry() {
     return textureRegistry;
@@ -67,6 +142,14 @@ public class ResourceManager {
     return materialCleanupRegistry;
   }
 
+  CompiledMaterialCache getCompiledMaterialCache() {
+    return compiledMaterialCache;
+  }
+
+  MaterialInstancePool getMaterialInstancePool() {
+    return materialInstancePool;
+  }
+
   CleanupRegistry<RenderableInstance> getRenderableInstanceCleanupRegistry() {
     return renderableInstanceCleanupRegistry;
   }
@@ -75,14 +158,440 @@ public class ResourceManager {
     return textureCleanupRegistry;
   }
 
+  TextureStreamer getTextureStreamer() {
+    return textureStreamer;
+  }
+
+  TextureResidencyManager getTextureResidencyManager() {
+    return textureResidencyManager;
+  }
+
+  /**
+   * Keeps up to {@code maxBytes} of recently used {@link Texture}s alive after the last reference
+   * to them is dropped, so that they can be re-used without being reloaded. Zero, the default,
+   * disables the strong cache and textures are only weakly referenced.
+   */
+  public void setTextureCacheBudget(long maxBytes) {
+    textureRegistry.setStrongCacheBudget(
+        maxBytes, ResourceSizeEstimator::estimateTexture, ThreadPools.getMainExecutor());
+  }
+
+  /**
+   * Keeps up to {@code maxBytes} of recently used {@link Material}s alive after the last reference
+   * to them is dropped. Zero, the default, disables the strong cache.
+   */
+  public void setMaterialCacheBudget(long maxBytes) {
+    materialRegistry.setStrongCacheBudget(
+        maxBytes, ResourceSizeEstimator::estimateMaterial, ThreadPools.getMainExecutor());
+  }
+
+  /**
+   * Keeps up to {@code maxBytes} of recently used {@link ModelRenderable}s alive after the last
+   * reference to them is dropped, so placing the same model again doesn't reload it. Zero, the
+   * default, disables the strong cache.
+   */
+  public void setModelRenderableCacheBudget(long maxBytes) {
+    modelRenderableRegistry.setStrongCacheBudget(
+        maxBytes, ResourceSizeEstimator::estimateRenderable, ThreadPools.getMainExecutor());
+  }
+
+  /** Returns the hit, miss and eviction counters of the {@link Texture} registry. */
+  public ResourceRegistry.Statistics getTextureCacheStatistics() {
+    return textureRegistry.getStatistics();
+  }
+
+  /** Returns the hit, miss and eviction counters of the {@link Material} registry. */
+  public ResourceRegistry.Statistics getMaterialCacheStatistics() {
+    return materialRegistry.getStatistics();
+  }
+
+  /** Returns the hit, miss and eviction counters of the {@link ModelRenderable} registry. */
+  public ResourceRegistry.Statistics getModelRenderableCacheStatistics() {
+    return modelRenderableRegistry.getStatistics();
+  }
+
+  /** Drops every strongly cached resource, for example when the app receives a trim callback. */
+  public void trimCaches() {
+    textureRegistry.trimStrongCache(0);
+    materialRegistry.trimStrongCache(0);
+    modelRenderableRegistry.trimStrongCache(0);
+  }
+
+  /**
+   * Sets the disk cache used to store processed asset payloads, such as decoded texture pixels, so
+   * that later loads of the same source skip decoding. Null, the default, disables the cache.
+   *
+   * <p>Only textures are cached. Entries hold the decoded pixels at the resolution of the current
+   * {@link TextureQualityTier}, about 4 bytes per pixel, so size the cache for the textures that
+   * are slow to decode. glTF geometry, bounds and collision shapes are not cached.
+   */
+  public void setProcessedAssetCache(@Nullable ProcessedAssetCache processedAssetCache) {
+    this.processedAssetCache = processedAssetCache;
+  }
+
+  /** Returns the disk cache of processed asset payloads, or null if it is disabled. */
+  @Nullable
+  public ProcessedAssetCache getProcessedAssetCache() {
+    return processedAssetCache;
+  }
+
+  /** Returns the number of compiled material packages currently loaded as Filament materials. */
+  public int getCompiledMaterialCount() {
+    return compiledMaterialCache.getEntryCount();
+  }
+
+  /** Returns how many material builds re-used an already loaded compiled material package. */
+  public long getCompiledMaterialCacheHitCount() {
+    return compiledMaterialCache.getHitCount();
+  }
+
+  /** Returns how many material builds had to load their compiled material package. */
+  public long getCompiledMaterialCacheMissCount() {
+    return compiledMaterialCache.getMissCount();
+  }
+
+  /**
+   * Lets {@link Material}s of the same kind with identical parameters share one Filament material
+   * instance, for example the many copies made by {@link MaterialFactory#makeOpaqueWithColor}. A
+   * material gets its own instance again as soon as one of its parameters changes. Disabled by
+   * default.
+   */
+  public void setMaterialInstanceSharingEnabled(boolean enabled) {
+    materialInstancePool.setEnabled(enabled);
+  }
+
+  /** Returns the number of Filament material instances shared by more than one material. */
+  public int getSharedMaterialInstanceCount() {
+    return materialInstancePool.getSharedInstanceCount();
+  }
+
+  /** Returns how many Filament material instances are currently saved by sharing them. */
+  public int getSavedMaterialInstanceCount() {
+    return materialInstancePool.getSavedInstanceCount();
+  }
+
+  /** Returns how many times a material stopped sharing its instance because it changed. */
+  public long getMaterialInstanceCopyOnWriteCount() {
+    return materialInstancePool.getCopyOnWriteCount();
+  }
+
+  /**
+   * Sets the resolution limits applied when textures are decoded, for example {@link
+   * TextureQualityTier#forDevice(android.content.Context)}. Textures that are already loaded keep
+   * their resolution, the strongly cached ones are dropped so that they are reloaded at the new
+   * tier when requested again.
+   */
+  public void setTextureQualityTier(TextureQualityTier tier) {
+    if (tier != textureQualityTier) {
+      textureQualityTier = tier;
+      textureRegistry.trimStrongCache(0);
+    }
+  }
+
+  public TextureQualityTier getTextureQualityTier() {
+    return textureQualityTier;
+  }
+
+  /**
+   * Loads the textures of models progressively: each texture is first shown at a low resolution
+   * and its full resolution image is swapped in once decoded, see {@link
+   * Texture.Builder#setProgressive(boolean)}. Disabled by default.
+   */
+  public void setProgressiveTextureLoadingEnabled(boolean enabled) {
+    textureStreamer.setProgressiveLoadingEnabled(enabled);
+  }
+
+  public boolean isProgressiveTextureLoadingEnabled() {
+    return textureStreamer.isProgressiveLoadingEnabled();
+  }
+
+  /**
+   * Limits how many full resolution images of progressively loaded textures are swapped in per
+   * frame. Defaults to one.
+   */
+  public void setMaxTextureUploadsPerFrame(int maxUploadsPerFrame) {
+    textureStreamer.setMaxSwapsPerFrame(maxUploadsPerFrame);
+  }
+
+  /**
+   * Limits the texture data uploaded per frame. Once set, new textures are no longer created as
+   * soon as they are decoded but queued, and the queue is drained within this budget at the start
+   * of each frame, at least one texture per frame. Unlimited by default.
+   */
+  public void setMaxTextureUploadBytesPerFrame(long maxBytesPerFrame) {
+    textureStreamer.setMaxUploadBytesPerFrame(maxBytesPerFrame);
+  }
+
+  /** Returns the number of texture bytes uploaded by the last frame. */
+  public long getLastFrameTextureUploadBytes() {
+    return textureStreamer.getLastFrameUploadBytes();
+  }
+
+  /**
+   * Computes the mip levels of textures decoded from images on worker threads instead of having
+   * the GPU generate them during the upload, which takes that work off the main thread. Textures
+   * are then created through the upload queue, see {@link
+   * #setMaxTextureUploadBytesPerFrame(long)}. Disabled by default.
+   */
+  public void setCpuMipGenerationEnabled(boolean enabled) {
+    isCpuMipGenerationEnabled = enabled;
+  }
+
+  public boolean isCpuMipGenerationEnabled() {
+    return isCpuMipGenerationEnabled;
+  }
+
+  /** Sets a listener notified with the decode, mip and upload timings of each texture. */
+  public void setOnTextureLoadedListener(@Nullable OnTextureLoadedListener listener) {
+    onTextureLoadedListener = listener;
+  }
+
+  void notifyTextureLoaded(Texture texture, TextureMipChain mipChain) {
+    OnTextureLoadedListener listener = onTextureLoadedListener;
+    if (listener != null) {
+      listener.onTextureLoaded(
+          texture,
+          mipChain.getDecodeNanos(),
+          mipChain.getMipGenerationNanos(),
+          mipChain.getUploadNanos());
+    }
+  }
+
+  /**
+   * Marks the content shared between the scenes, such as materials, lights and animations, as
+   * changed so that the views rendering on demand draw a new frame.
+   *
+   * @hide
+   */
+  public void markSceneContentChanged() {
+    sceneContentGeneration++;
+  }
+
+  /**
+   * Returns a number incremented each time the shared scene content changes.
+   *
+   * @hide
+   */
+  public int getSceneContentGeneration() {
+    return sceneContentGeneration;
+  }
+
+  /** Returns the number of texture images waiting to be uploaded. */
+  public int getPendingTextureUploadCount() {
+    return textureStreamer.getPendingUploadCount();
+  }
+
+  /** Returns the number of texture images uploaded through the queue since start up. */
+  public long getStreamedTextureUploadCount() {
+    return textureStreamer.getUploadCount();
+  }
+
+  /**
+   * Manages the resolution of color and normal map textures loaded from images under a global
+   * memory budget. Each texture is kept at the resolution needed for the largest size its
+   * renderables cover on screen, and the largest textures are reduced further while the total
+   * exceeds the budget. Textures are reloaded at a higher resolution as renderables come closer.
+   *
+   * <p>Applies to textures loaded after the call with {@link
+   * Texture.Builder#setProgressive(boolean)}, other textures keep the resolution they were loaded
+   * at. Zero, the default, disables the management.
+   *
+   * <p>Each managed texture keeps its encoded source (the PNG or JPEG file) on the Java heap for
+   * as long as the texture is alive, so that it can be reloaded at another resolution. That memory
+   * isn't part of the budget, which only covers the GPU textures, see {@link
+   * #getManagedTextureSourceSizeInBytes()}.
+   */
+  public void setTextureResidencyBudget(long maxBytes) {
+    textureResidencyManager.setBudget(maxBytes);
+  }
+
+  public long getTextureResidencyBudget() {
+    return textureResidencyManager.getBudget();
+  }
+
+  /** Returns the estimated memory used by the managed textures at their current resolution. */
+  public long getResidentTextureSizeInBytes() {
+    return textureResidencyManager.getResidentSizeInBytes();
+  }
+
+  /** Returns the number of textures whose resolution is managed. */
+  public int getManagedTextureCount() {
+    return textureResidencyManager.getManagedTextureCount();
+  }
+
+  /** Returns the heap memory held by the encoded sources kept for the managed textures. */
+  public long getManagedTextureSourceSizeInBytes() {
+    return textureResidencyManager.getSourceSizeInBytes();
+  }
+
+  void addGeometrySize(long sizeInBytes) {
+    geometrySizeInBytes.addAndGet(sizeInBytes);
+  }
+
+  /** Accounts for the buffers and textures gltfio created for a model instance. */
+  void addGltfSize(ResourceSizeEstimator.GltfSize gltfSize) {
+    geometrySizeInBytes.addAndGet(gltfSize.geometrySizeInBytes);
+    gltfTextureSizeInBytes.addAndGet(gltfSize.textureSizeInBytes);
+  }
+
+  void removeGltfSize(ResourceSizeEstimator.GltfSize gltfSize) {
+    geometrySizeInBytes.addAndGet(-gltfSize.geometrySizeInBytes);
+    gltfTextureSizeInBytes.addAndGet(-gltfSize.textureSizeInBytes);
+  }
+
+  /**
+   * Returns the estimated GPU memory used by the resources of the given category, in bytes.
+   *
+   * <p>gltfio doesn't expose the buffers and textures it creates for glTF models, so they are
+   * estimated from the model source when each instance is created. Images it can't measure, such
+   * as KTX2, and buffers embedded as data uris are not included.
+   */
+  public long getEstimatedMemoryUsage(MemoryCategory category) {
+    switch (category) {
+      case TEXTURE:
+        return textureCleanupRegistry.getEstimatedSizeInBytes() + gltfTextureSizeInBytes.get();
+      case EXTERNAL_TEXTURE:
+        return externalTextureCleanupRegistry.getEstimatedSizeInBytes();
+      case DEPTH_TEXTURE:
+        return depthTextureCleanupRegistry.getEstimatedSizeInBytes();
+      case CAMERA_STREAM:
+        return cameraStreamCleanupRegistry.getEstimatedSizeInBytes();
+      case GEOMETRY:
+        return geometrySizeInBytes.get();
+      default:
+        throw new IllegalArgumentException("Unknown memory category: " + category);
+    }
+  }
+
+  /** Returns the estimated GPU memory used by all tracked resources, in bytes. */
+  public long getEstimatedMemoryUsage() {
+    long sizeInBytes = 0;
+    for (MemoryCategory category : MemoryCategory.values()) {
+      sizeInBytes += getEstimatedMemoryUsage(category);
+    }
+    return sizeInBytes;
+  }
+
+  /** Returns the highest estimated memory usage observed since the last reset. */
+  public long getPeakMemoryUsage() {
+    return Math.max(peakMemoryUsage, getEstimatedMemoryUsage());
+  }
+
+  /** Restarts the peak memory usage tracking from the current usage. */
+  public void resetPeakMemoryUsage() {
+    peakMemoryUsage = getEstimatedMemoryUsage();
+  }
+
+  /**
+   * Sets a listener notified when the estimated memory usage rises above {@code highWaterMarkBytes}
+   * so that the app can shed detail, for example by trimming the caches or unloading models. The
+   * usage is checked once per frame, after released resources have been reclaimed.
+   *
+   * @param highWaterMarkBytes the threshold, zero disables the notification
+   * @param listener the listener to notify, or null to remove it
+   */
+  public void setOnMemoryHighWaterMarkListener(
+      long highWaterMarkBytes, @Nullable OnMemoryHighWaterMarkListener listener) {
+    memoryHighWaterMark = highWaterMarkBytes;
+    onMemoryHighWaterMarkListener = listener;
+    isAboveMemoryHighWaterMark = false;
+  }
+
+  /**
+   * Limits the cleanup work done by {@link #reclaimReleasedResourcesWithinBudget()} each frame.
+   * Released resources that don't fit in the budget are destroyed during the following frames. At
+   * least one resource is destroyed per frame whatever the budget.
+   *
+   * @param maxDisposals maximum number of resources destroyed per frame
+   * @param maxDurationMillis maximum time spent destroying resources per frame
+   */
+  public void setReclaimBudget(int maxDisposals, long maxDurationMillis) {
+    if (maxDisposals < 1 || maxDurationMillis < 0) {
+      throw new IllegalArgumentException("Invalid reclaim budget.");
+    }
+    maxDisposalsPerFrame = maxDisposals;
+    maxReclaimNanosPerFrame = TimeUnit.MILLISECONDS.toNanos(maxDurationMillis);
+  }
+
+  /** Returns the number of released resources waiting to be destroyed. */
+  public int getPendingDisposalCount() {
+    int pendingDisposalCount = 0;
+    for (ResourceHolder resourceHolder : resourceHolders) {
+      pendingDisposalCount += resourceHolder.getPendingDisposalCount();
+    }
+    return pendingDisposalCount;
+  }
+
+  /** Returns the highest number of released resources that were waiting to be destroyed. */
+  public int getPeakPendingDisposalCount() {
+    return peakPendingDisposalCount;
+  }
+
+  /** Returns the number of resources destroyed by the last budgeted reclaim. */
+  public int getLastFrameDisposalCount() {
+    return lastFrameDisposalCount;
+  }
+
+  /** Returns the number of resources destroyed by budgeted reclaims since start up. */
+  public long getTotalDisposalCount() {
+    return totalDisposalCount;
+  }
+
+  /**
+   * Destroys every released resource immediately, ignoring the per frame budget.
+   *
+   * @return Count of resources currently in use
+   */
   public long reclaimReleasedResources() {
+    return reclaimReleasedResources(ReclaimBudget.unlimited());
+  }
+
+  /**
+   * Destroys released resources within the budget set by {@link #setReclaimBudget(int, long)}.
+   * Called once per frame by the {@link Renderer}.
+   *
+   * @return Count of resources currently in use, including the ones pending destruction
+   */
+  public long reclaimReleasedResourcesWithinBudget() {
+    materialInstancePool.onFrameEnd();
+    frameReclaimBudget.reset(maxDisposalsPerFrame, maxReclaimNanosPerFrame);
+    long resourcesInUse = reclaimReleasedResources(frameReclaimBudget);
+    lastFrameDisposalCount = frameReclaimBudget.getDisposalCount();
+    totalDisposalCount += lastFrameDisposalCount;
+    return resourcesInUse;
+  }
+
+  private long reclaimReleasedResources(ReclaimBudget budget) {
     long resourcesInUse = 0;
+    int pendingDisposalCount = 0;
     for (ResourceHolder registry : resourceHolders) {
-      resourcesInUse += registry.reclaimReleasedResources();
+      resourcesInUse += registry.reclaimReleasedResources(budget);
+      pendingDisposalCount += registry.getPendingDisposalCount();
     }
+    peakPendingDisposalCount = Math.max(peakPendingDisposalCount, pendingDisposalCount);
+    checkMemoryHighWaterMark();
     return resourcesInUse;
   }
 
+  private void checkMemoryHighWaterMark() {
+    long estimatedSizeInBytes = getEstimatedMemoryUsage();
+    peakMemoryUsage = Math.max(peakMemoryUsage, estimatedSizeInBytes);
+
+    OnMemoryHighWaterMarkListener listener = onMemoryHighWaterMarkListener;
+    if (listener == null || memoryHighWaterMark <= 0) {
+      return;
+    }
+
+    if (estimatedSizeInBytes > memoryHighWaterMark) {
+      if (!isAboveMemoryHighWaterMark) {
+        isAboveMemoryHighWaterMark = true;
+        listener.onMemoryHighWaterMark(estimatedSizeInBytes, memoryHighWaterMark);
+      }
+    } else {
+      isAboveMemoryHighWaterMark = false;
+    }
+  }
+
   /** Forcibly deletes all tracked references */
   public void destroyAllResources() {
     for (ResourceHolder resourceHolder : resourceHolders) {
@@ -104,6 +613,8 @@ public class ResourceManager {
 
   private ResourceManager() {
     addResourceHolder(textureRegistry);
+    // Before the materials, so that the instances are gone when the materials are destroyed.
+    addResourceHolder(materialInstancePool);
     addResourceHolder(materialRegistry);
     addResourceHolder(modelRenderableRegistry);
     addViewRenderableRegistry();
@@ -111,8 +622,11 @@ public class ResourceManager {
     addResourceHolder(externalTextureCleanupRegistry);
     addResourceHolder(depthTextureCleanupRegistry);
     addResourceHolder(materialCleanupRegistry);
+    addResourceHolder(compiledMaterialCache);
     addResourceHolder(renderableInstanceCleanupRegistry);
     addResourceHolder(textureCleanupRegistry);
+    addResourceHolder(textureStreamer);
+    addResourceHolder(textureResidencyManager);
   }
 
   
@@ -0,0 +1,334 @@
+package com.google.ar.sceneform.rendering;
+
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.filament.IndexBuffer;
+import com.google.android.filament.VertexBuffer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Estimates how much GPU and CPU memory Sceneform resources hold. The estimates back the memory
+ * accounting and the byte budgets of the {@link ResourceManager} caches, they are not exact
+ * allocation sizes.
+ *
+ * @hide
+ */
+final class ResourceSizeEstimator {
+  private static final String TAG = ResourceSizeEstimator.class.getSimpleName();
+  // Rough size of the uniform block of a material instance.
+  private static final int MATERIAL_INSTANCE_SIZE_IN_BYTES = 1024;
+  // Camera images are backed by YUV 4:2:0 buffers.
+  private static final int CAMERA_IMAGE_BITS_PER_PIXEL = 12;
+  // Binary glTF header: magic, version and length, followed by the JSON chunk length and type.
+  private static final int GLB_HEADER_SIZE = 20;
+  private static final int GLB_CHUNK_HEADER_SIZE = 8;
+
+  /** Estimated memory of the buffers and textures gltfio creates for one instance of a model. */
+  static final class GltfSize {
+    static final GltfSize EMPTY = new GltfSize(0, 0);
+
+    final long geometrySizeInBytes;
+    final long textureSizeInBytes;
+
+    GltfSize(long geometrySizeInBytes, long textureSizeInBytes) {
+      this.geometrySizeInBytes = geometrySizeInBytes;
+      this.textureSizeInBytes = textureSizeInBytes;
+    }
+  }
+
+  private ResourceSizeEstimator() {}
+
+  static long estimateTexture(Texture texture) {
+    com.google.android.filament.Texture filamentTexture;
+    try {
+      filamentTexture = texture.getFilamentTexture();
+    } catch (IllegalStateException e) {
+      // Already disposed.
+      return 0;
+    }
+    return estimateTexture(filamentTexture);
+  }
+
+  /** Estimates the size of every level of the mip chain of a texture, based on its format. */
+  static long estimateTexture(com.google.android.filament.Texture filamentTexture) {
+    int bitsPerPixel = getBitsPerPixel(filamentTexture.getFormat());
+    long size = 0;
+    int levels = filamentTexture.getLevels();
+    for (int level = 0; level < levels; level++) {
+      size +=
+          estimateImage(
+              filamentTexture.getWidth(level),
+              filamentTexture.getHeight(level) * filamentTexture.getDepth(level),
+              bitsPerPixel);
+    }
+    return size;
+  }
+
+  /** Estimates the size of a single level texture. */
+  static long estimateTexture(
+      int width, int height, com.google.android.filament.Texture.InternalFormat format) {
+    return estimateImage(width, height, getBitsPerPixel(format));
+  }
+
+  /** Estimates the size of the image streamed by the camera into an external texture. */
+  static long estimateCameraImage(int width, int height) {
+    return estimateImage(width, height, CAMERA_IMAGE_BITS_PER_PIXEL);
+  }
+
+  /**
+   * Estimates the size of a vertex buffer. Filament doesn't expose the attributes of a built
+   * buffer, so the size of a vertex comes from the attributes it was built with.
+   *
+   * @param vertexSizeInBytes the summed size of the attributes of a vertex
+   */
+  static long estimateVertexBuffer(VertexBuffer vertexBuffer, int vertexSizeInBytes) {
+    return (long) vertexBuffer.getVertexCount() * vertexSizeInBytes;
+  }
+
+  static long estimateIndexBuffer(IndexBuffer indexBuffer, IndexBuffer.Builder.IndexType type) {
+    int indexSizeInBytes =
+        type == IndexBuffer.Builder.IndexType.USHORT ? Short.BYTES : Integer.BYTES;
+    return (long) indexBuffer.getIndexCount() * indexSizeInBytes;
+  }
+
+  static long estimateMaterial(Material material) {
+    return estimateMaterial(material, new IdentityHashMap<>());
+  }
+
+  static long estimateRenderable(Renderable renderable) {
+    IRenderableInternalData data = renderable.getRenderableData();
+
+    long size = 0;
+    if (data instanceof RenderableInternalData) {
+      size += ((RenderableInternalData) data).getGeometrySizeInBytes();
+    }
+    size += estimateBuffer(data.getRawIndexBuffer());
+    size += estimateBuffer(data.getRawPositionBuffer());
+    size += estimateBuffer(data.getRawTangentsBuffer());
+    size += estimateBuffer(data.getRawUvBuffer());
+    size += estimateBuffer(data.getRawColorBuffer());
+    if (data instanceof RenderableInternalFilamentAssetData) {
+      size += estimateBuffer(((RenderableInternalFilamentAssetData) data).gltfByteBuffer);
+    }
+
+    // Submeshes frequently share textures, only count each of them once.
+    IdentityHashMap<Texture, Boolean> countedTextures = new IdentityHashMap<>();
+    for (Material material : renderable.getMaterialBindings()) {
+      size += estimateMaterial(material, countedTextures);
+    }
+    return size;
+  }
+
+  /**
+   * Estimates the memory gltfio allocates for a model from its source, since the buffers and
+   * textures it creates aren't exposed. Buffer views are uploaded as they are and images are
+   * decoded to RGBA8 with a full mip chain. Images BitmapFactory can't read, such as KTX2, and
+   * buffers that aren't in {@code resources}, such as data uris, are not counted.
+   *
+   * @param gltfBuffer the glTF JSON or binary glTF container
+   * @param resources the external resources given to the resource loader, by uri
+   */
+  static GltfSize estimateGltf(
+      Buffer gltfBuffer, boolean isBinary, Map<String, ByteBuffer> resources) {
+    if (!(gltfBuffer instanceof ByteBuffer)) {
+      return GltfSize.EMPTY;
+    }
+    ByteBuffer data = ((ByteBuffer) gltfBuffer).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    data.rewind();
+
+    ByteBuffer json = data;
+    @Nullable ByteBuffer binaryChunk = null;
+    if (isBinary) {
+      if (data.limit() < GLB_HEADER_SIZE) {
+        return GltfSize.EMPTY;
+      }
+      int jsonLength = data.getInt(GLB_HEADER_SIZE - GLB_CHUNK_HEADER_SIZE);
+      json = slice(data, GLB_HEADER_SIZE, jsonLength);
+      int binaryChunkOffset = GLB_HEADER_SIZE + jsonLength;
+      if (json != null && binaryChunkOffset + GLB_CHUNK_HEADER_SIZE <= data.limit()) {
+        binaryChunk =
+            slice(
+                data,
+                binaryChunkOffset + GLB_CHUNK_HEADER_SIZE,
+                data.getInt(binaryChunkOffset));
+      }
+    }
+    if (json == null) {
+      return GltfSize.EMPTY;
+    }
+
+    try {
+      byte[] jsonBytes = new byte[json.remaining()];
+      json.get(jsonBytes);
+      return estimateGltf(
+          new JSONObject(new String(jsonBytes, StandardCharsets.UTF_8)), binaryChunk, resources);
+    } catch (JSONException e) {
+      Log.w(TAG, "Unable to estimate the size of the glTF asset", e);
+      return GltfSize.EMPTY;
+    }
+  }
+
+  private static GltfSize estimateGltf(
+      JSONObject root, @Nullable ByteBuffer binaryChunk, Map<String, ByteBuffer> resources)
+      throws JSONException {
+    JSONArray buffers = root.optJSONArray("buffers");
+    JSONArray bufferViews = root.optJSONArray("bufferViews");
+    JSONArray images = root.optJSONArray("images");
+    int bufferViewCount = bufferViews != null ? bufferViews.length() : 0;
+
+    boolean[] isImageView = new boolean[bufferViewCount];
+    long textureSize = 0;
+    for (int i = 0; images != null && i < images.length(); i++) {
+      JSONObject image = images.getJSONObject(i);
+      @Nullable ByteBuffer imageData = null;
+      if (image.has("bufferView")) {
+        int bufferViewIndex = image.getInt("bufferView");
+        if (bufferViews != null && bufferViewIndex >= 0 && bufferViewIndex < bufferViewCount) {
+          isImageView[bufferViewIndex] = true;
+          imageData =
+              getBufferView(
+                  bufferViews.getJSONObject(bufferViewIndex), buffers, binaryChunk, resources);
+        }
+      } else if (image.has("uri")) {
+        imageData = resources.get(image.getString("uri"));
+      }
+      if (imageData != null) {
+        textureSize += estimateEncodedImage(imageData);
+      }
+    }
+
+    // Everything but the images ends up in vertex and index buffers, or in animation data.
+    long geometrySize = 0;
+    for (int i = 0; i < bufferViewCount; i++) {
+      if (!isImageView[i]) {
+        geometrySize += bufferViews.getJSONObject(i).optLong("byteLength", 0);
+      }
+    }
+    return new GltfSize(geometrySize, textureSize);
+  }
+
+  @Nullable
+  private static ByteBuffer getBufferView(
+      JSONObject bufferView,
+      @Nullable JSONArray buffers,
+      @Nullable ByteBuffer binaryChunk,
+      Map<String, ByteBuffer> resources)
+      throws JSONException {
+    int bufferIndex = bufferView.getInt("buffer");
+    if (buffers == null || bufferIndex < 0 || bufferIndex >= buffers.length()) {
+      return null;
+    }
+    JSONObject buffer = buffers.getJSONObject(bufferIndex);
+    // The buffer without a uri is the binary chunk of a binary glTF.
+    @Nullable
+    ByteBuffer bufferData =
+        buffer.has("uri") ? resources.get(buffer.getString("uri")) : binaryChunk;
+    if (bufferData == null) {
+      return null;
+    }
+    ByteBuffer data = bufferData.duplicate();
+    data.rewind();
+    return slice(data, bufferView.optInt("byteOffset", 0), bufferView.getInt("byteLength"));
+  }
+
+  @Nullable
+  private static ByteBuffer slice(ByteBuffer data, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > data.limit()) {
+      return null;
+    }
+    ByteBuffer slice = data.duplicate();
+    slice.position(offset);
+    slice.limit(offset + length);
+    return slice.slice();
+  }
+
+  /** Estimates the size of an encoded image once decoded to RGBA8 with a full mip chain. */
+  private static long estimateEncodedImage(ByteBuffer imageData) {
+    byte[] bytes;
+    int offset;
+    if (imageData.hasArray()) {
+      bytes = imageData.array();
+      offset = imageData.arrayOffset() + imageData.position();
+    } else {
+      bytes = new byte[imageData.remaining()];
+      imageData.duplicate().get(bytes);
+      offset = 0;
+    }
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(bytes, offset, imageData.remaining(), options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return 0;
+    }
+    // The mip chain adds a third of the base level.
+    return estimateImage(options.outWidth, options.outHeight, 32) * 4 / 3;
+  }
+
+  private static long estimateMaterial(
+      Material material, IdentityHashMap<Texture, Boolean> countedTextures) {
+    long size = MATERIAL_INSTANCE_SIZE_IN_BYTES;
+    for (Texture texture : material.getMaterialParameters().getTextures()) {
+      if (countedTextures.put(texture, Boolean.TRUE) == null) {
+        size += estimateTexture(texture);
+      }
+    }
+    return size;
+  }
+
+  private static long estimateImage(int width, int height, int bitsPerPixel) {
+    return ((long) width * height * bitsPerPixel + 7) / 8;
+  }
+
+  private static int getBitsPerPixel(com.google.android.filament.Texture.InternalFormat format) {
+    switch (format) {
+      case R8:
+        return 8;
+      case RG8:
+      case R16F:
+        return 16;
+      case RGB16F:
+      case RGBA16F:
+        return 64;
+      case RGBA32F:
+        return 128;
+      case ETC2_RGB8:
+      case ETC2_SRGB8:
+      case ETC2_RGB8_A1:
+      case ETC2_SRGB8_A1:
+        return 4;
+      case ETC2_EAC_RGBA8:
+      case ETC2_EAC_SRGBA8:
+      case RGBA_ASTC_4x4:
+      case SRGB8_ALPHA8_ASTC_4x4:
+        return 8;
+      case RGBA_ASTC_6x6:
+      case SRGB8_ALPHA8_ASTC_6x6:
+        // 128 bits per 36 texels.
+        return 4;
+      case RGBA_ASTC_8x8:
+      case SRGB8_ALPHA8_ASTC_8x8:
+        return 2;
+      default:
+        // RGB8 is padded to 32 bits by most drivers, like RGBA8, R11F_G11F_B10F and DEPTH24.
+        return 32;
+    }
+  }
+
+  private static long estimateBuffer(@Nullable Buffer buffer) {
+    if (buffer == null) {
+      return 0;
+    }
+    // All the raw buffers hold 4 byte elements, ByteBuffers report their capacity in bytes.
+    return buffer instanceof ByteBuffer ? buffer.capacity() : buffer.capacity() * 4L;
+  }
+}
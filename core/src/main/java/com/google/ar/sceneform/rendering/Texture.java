@@ -14,9 +14,17 @@ import com.google.ar.sceneform.resources.ResourceRegistry;
 import com.google.ar.sceneform.utilities.AndroidPreconditions;
 import com.google.ar.sceneform.utilities.LoadHelper;
 import com.google.ar.sceneform.utilities.Preconditions;
+import com.google.ar.sceneform.utilities.ProcessedAssetCache;
+import com.google.ar.sceneform.utilities.SceneformBufferUtils;
+import com.google.ar.sceneform.utilities.Tracing;
+import com.gorisse.thomas.sceneform.util.ResourceLoader;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 /** Represents a reference to a texture. */
 @SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"}) // CompletableFuture
@@ -41,6 +49,7 @@ public class Texture {
   private static final int MIP_LEVELS_TO_GENERATE = 0xff;
 
   @Nullable private final TextureInternalData textureData;
+  private final CleanupItem<Texture> cleanupItem;
 
   /** Constructs a default texture, if nothing else is set */
   public static Builder builder() {
@@ -51,12 +60,16 @@ public class Texture {
 
   @SuppressWarnings({"initialization"})
   @UsedByNative("material_java_wrappers.h")
-  private Texture(TextureInternalData textureData) {
+  Texture(TextureInternalData textureData) {
     this.textureData = textureData;
     textureData.retain();
-    ResourceManager.getInstance()
-            .getTextureCleanupRegistry()
-            .register(this, new CleanupCallback(textureData));
+    cleanupItem =
+            ResourceManager.getInstance()
+                    .getTextureCleanupRegistry()
+                    .track(
+                            this,
+                            new CleanupCallback(textureData),
+                            ResourceSizeEstimator.estimateTexture(textureData.getFilamentTexture()));
   }
 
   Sampler getSampler() {
@@ -72,7 +85,66 @@ public class Texture {
     return Preconditions.checkNotNull(textureData).getFilamentTexture();
   }
 
-  private static com.google.android.filament.Texture.InternalFormat getInternalFormatForUsage(
+  /**
+   * Swaps in the full resolution Filament texture of a progressively loaded texture. The materials
+   * the texture was applied to are re-bound to the new texture before this returns.
+   *
+   * @return the replaced Filament texture, to be destroyed by the caller
+   */
+  com.google.android.filament.Texture replaceFilamentTexture(
+          com.google.android.filament.Texture filamentTexture) {
+    com.google.android.filament.Texture replaced =
+            Preconditions.checkNotNull(textureData).replaceFilamentTexture(filamentTexture);
+    if (replaced != filamentTexture) {
+      ResourceManager.getInstance()
+              .getTextureCleanupRegistry()
+              .updateSize(cleanupItem, ResourceSizeEstimator.estimateTexture(filamentTexture));
+    }
+    return replaced;
+  }
+
+  /** Called when the texture was applied to the Filament instance of the material. */
+  void addBoundMaterial(Material material) {
+    Preconditions.checkNotNull(textureData).addBoundMaterial(material);
+  }
+
+  /** Creates a Filament texture holding the bitmap and its generated mip levels. */
+  static com.google.android.filament.Texture createFilamentTexture(Bitmap bitmap, Usage usage) {
+    return createFilamentTexture(bitmap, usage, MIP_LEVELS_TO_GENERATE);
+  }
+
+  private static com.google.android.filament.Texture createFilamentTexture(
+          Bitmap bitmap, Usage usage, int mipLevels) {
+    IEngine engine = EngineInstance.getEngine();
+
+    // Due to fun ambiguities between Texture (RenderCore) and Texture (Filament)
+    // Texture references must be fully qualified giving rise to the following monstrosity
+    // of verbosity.
+    final com.google.android.filament.Texture.InternalFormat textureInternalFormat =
+            getInternalFormatForUsage(usage);
+    final com.google.android.filament.Texture.Sampler textureSampler =
+            com.google.android.filament.Texture.Sampler.SAMPLER_2D;
+
+    com.google.android.filament.Texture filamentTexture =
+            new com.google.android.filament.Texture.Builder()
+                    .width(bitmap.getWidth())
+                    .height(bitmap.getHeight())
+                    .depth(1)
+                    .levels(mipLevels)
+                    .sampler(textureSampler)
+                    .format(textureInternalFormat)
+                    .build(engine.getFilamentEngine());
+
+    TextureHelper.setBitmap(engine.getFilamentEngine(), filamentTexture, 0, bitmap);
+
+    if (mipLevels > 1) {
+      filamentTexture.generateMipmaps(engine.getFilamentEngine());
+    }
+
+    return filamentTexture;
+  }
+
+  static com.google.android.filament.Texture.InternalFormat getInternalFormatForUsage(
           Usage usage) {
     com.google.android.filament.Texture.InternalFormat format;
 
@@ -93,6 +165,12 @@ public class Texture {
   public static final class Builder {
     /** The {@link Texture} will be constructed from the contents of this callable */
     @Nullable private Callable<InputStream> inputStreamCreator = null;
+    /** Optional KTX container used instead of the source when the device supports its format */
+    @Nullable private Callable<InputStream> compressedInputStreamCreator = null;
+    /** Maps the KTX container without a heap copy, returns null when it can't be mapped */
+    @Nullable private Supplier<ByteBuffer> compressedBufferMapper = null;
+    /** Identifies a local source in the processed asset cache without reading it */
+    @Nullable private String cacheSourceId = null;
 
     @Nullable private Bitmap bitmap = null;
     @Nullable private TextureInternalData textureInternalData = null;
@@ -102,10 +180,16 @@ public class Texture {
     @Nullable private Object registryId = null;
 
     private boolean inPremultiplied = true;
+    private boolean isProgressive = false;
 
     private Sampler sampler = Sampler.builder().build();
 
     private static final int MAX_BITMAP_SIZE = 4096;
+    // Largest dimension of the placeholder shown while a progressive texture loads.
+    private static final int PLACEHOLDER_MAX_DIMENSION = 64;
+    private static final String CACHE_KIND_BITMAP = "bitmap";
+    // Width, height and alpha flag stored before the pixels of a cached bitmap.
+    private static final int CACHE_HEADER_SIZE = 3 * 4;
 
     /** Constructor for asynchronous building. The sourceBuffer will be read later. */
     private Builder() {}
@@ -124,6 +208,7 @@ public class Texture {
 
       registryId = sourceUri;
       setSource(LoadHelper.fromUri(context, sourceUri));
+      cacheSourceId = ProcessedAssetCache.getSourceId(context, sourceUri);
       return this;
     }
 
@@ -137,6 +222,7 @@ public class Texture {
       Preconditions.checkNotNull(inputStreamCreator, "Parameter \"inputStreamCreator\" was null.");
 
       this.inputStreamCreator = inputStreamCreator;
+      cacheSourceId = null;
       bitmap = null;
       return this;
     }
@@ -152,6 +238,8 @@ public class Texture {
     public Builder setSource(Context context, int resource) {
       setSource(LoadHelper.fromResource(context, resource));
       registryId = context.getResources().getResourceName(resource);
+      cacheSourceId =
+              ProcessedAssetCache.getSourceId(context, LoadHelper.resourceToUri(context, resource));
       return this;
     }
 
@@ -198,6 +286,49 @@ public class Texture {
       // TODO: don't overwrite calls to setRegistryId
       registryId = null;
       inputStreamCreator = null;
+      cacheSourceId = null;
+      return this;
+    }
+
+    /**
+     * Allows a {@link Texture} to be constructed from a KTX container holding a compressed payload
+     * (ETC2, EAC or ASTC) and its mip chain. The levels are uploaded as stored in the file, which
+     * takes 4 to 8 times less memory than an uncompressed texture.
+     *
+     * <p>If the device can't sample the container's format, the texture is decoded from the source
+     * set with {@link #setSource(Context, Uri)} or its overloads instead, so setting both gives a
+     * fallback for devices without ETC2 or ASTC support. Construction will be asynchronous.
+     *
+     * <p>Local files and assets stored uncompressed in the APK are memory-mapped rather than read
+     * into the heap.
+     *
+     * @param sourceUri Uri of the KTX container. Like {@link #setSource(Context, Uri)}, the texture
+     *     will be added to the registry using the Uri.
+     * @param context Sets the {@link Context} used to resolve sourceUri
+     * @return {@link Builder} for chaining setup calls.
+     */
+    public Builder setCompressedSource(Context context, Uri sourceUri) {
+      Preconditions.checkNotNull(sourceUri, "Parameter \"sourceUri\" was null.");
+
+      registryId = sourceUri;
+      setCompressedSource(LoadHelper.fromUri(context, sourceUri));
+      compressedBufferMapper =
+              () -> ResourceLoader.mappedFileBuffer(context, sourceUri.toString());
+      return this;
+    }
+
+    /**
+     * Allows a {@link Texture} to be constructed from a KTX container supplied by a callable
+     * function, see {@link #setCompressedSource(Context, Uri)}.
+     *
+     * @param inputStreamCreator Supplies an {@link InputStream} with the KTX data.
+     * @return {@link Builder} for chaining setup calls.
+     */
+    public Builder setCompressedSource(Callable<InputStream> inputStreamCreator) {
+      Preconditions.checkNotNull(inputStreamCreator, "Parameter \"inputStreamCreator\" was null.");
+
+      compressedInputStreamCreator = inputStreamCreator;
+      compressedBufferMapper = null;
       return this;
     }
 
@@ -224,6 +355,26 @@ public class Texture {
       return this;
     }
 
+    /**
+     * Loads the texture progressively: a low resolution version is decoded first and the texture
+     * completes with it, then the full resolution image replaces it once decoded. The full
+     * resolution uploads are spread over several frames, see {@link
+     * ResourceManager#setMaxTextureUploadsPerFrame(int)}.
+     *
+     * <p>Only applies to textures loaded from a {@link Uri}, resource or callable source. Off by
+     * default.
+     *
+     * <p>When a texture residency budget is set, progressive textures also have their resolution
+     * managed, see {@link ResourceManager#setTextureResidencyBudget(long)}. Their encoded source
+     * then stays on the heap for as long as the texture is alive.
+     *
+     * @return {@link Builder} for chaining setup calls.
+     */
+    public Builder setProgressive(boolean isProgressive) {
+      this.isProgressive = isProgressive;
+      return this;
+    }
+
     /**
      * Allows a {@link Texture} to be reused. If registryId is non-null it will be saved in a
      * registry and the registry will be checked for this id before construction.
@@ -283,24 +434,36 @@ public class Texture {
       CompletableFuture<Texture> result;
       if (this.textureInternalData != null) {
         result = CompletableFuture.completedFuture(new Texture(this.textureInternalData));
+      } else if (compressedInputStreamCreator != null) {
+        result = makeCompressedTexture(compressedInputStreamCreator, compressedBufferMapper);
+      } else if (inputStreamCreator != null && isProgressive) {
+        result = makeProgressiveTexture(inputStreamCreator);
       } else {
-        CompletableFuture<Bitmap> bitmapFuture;
-        if (inputStreamCreator != null) {
-          bitmapFuture = makeBitmap(inputStreamCreator, inPremultiplied);
-        } else if (bitmap != null) {
-          bitmapFuture = CompletableFuture.completedFuture(bitmap);
+        ResourceManager resourceManager = ResourceManager.getInstance();
+        if (resourceManager.getTextureStreamer().isUploadBudgeted()
+                || resourceManager.isCpuMipGenerationEnabled()) {
+          result = makeQueuedTexture();
         } else {
-          throw new IllegalStateException("Texture must have a source.");
+          CompletableFuture<Bitmap> bitmapFuture;
+          if (inputStreamCreator != null) {
+            bitmapFuture =
+                    makeBitmap(inputStreamCreator, cacheSourceId, inPremultiplied, usage);
+          } else if (bitmap != null) {
+            bitmapFuture = CompletableFuture.completedFuture(bitmap);
+          } else {
+            throw new IllegalStateException("Texture must have a source.");
+          }
+
+          result =
+                  bitmapFuture.thenApplyAsync(
+                          loadedBitmap -> {
+                            TextureInternalData textureData =
+                                    makeTextureData(
+                                            loadedBitmap, sampler, usage, MIP_LEVELS_TO_GENERATE);
+                            return new Texture(textureData);
+                          },
+                          ThreadPools.getMainExecutor());
         }
-
-        result =
-                bitmapFuture.thenApplyAsync(
-                        loadedBitmap -> {
-                          TextureInternalData textureData =
-                                  makeTextureData(loadedBitmap, sampler, usage, MIP_LEVELS_TO_GENERATE);
-                          return new Texture(textureData);
-                        },
-                        ThreadPools.getMainExecutor());
       }
 
       if (registryId != null) {
@@ -313,66 +476,413 @@ public class Texture {
       return result;
     }
 
-    private static CompletableFuture<Bitmap> makeBitmap(
-            Callable<InputStream> inputStreamCreator, boolean inPremultiplied) {
+    private CompletableFuture<Texture> makeCompressedTexture(
+            Callable<InputStream> compressedInputStreamCreator,
+            @Nullable Supplier<ByteBuffer> compressedBufferMapper) {
+      @Nullable Callable<InputStream> fallbackInputStreamCreator = inputStreamCreator;
+      @Nullable Bitmap fallbackBitmap = bitmap;
+      @Nullable String cacheSourceId = this.cacheSourceId;
+      Sampler sampler = this.sampler;
+      Usage usage = this.usage;
+      boolean inPremultiplied = this.inPremultiplied;
+
       return CompletableFuture.supplyAsync(
               () -> {
-                // Read the texture file.
-                final BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inScaled = false;
-                options.inPremultiplied = inPremultiplied;
-                Bitmap bitmap;
-
-                // Open and read the texture file.
-                try (InputStream inputStream = inputStreamCreator.call()) {
-                  bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+                try {
+                  @Nullable
+                  ByteBuffer mappedBuffer =
+                          compressedBufferMapper != null ? compressedBufferMapper.get() : null;
+                  if (mappedBuffer != null) {
+                    return mappedBuffer;
+                  }
+                  return ByteBuffer.wrap(
+                          SceneformBufferUtils.inputStreamCallableToByteArray(
+                                  compressedInputStreamCreator));
                 } catch (Exception e) {
-                  throw new IllegalStateException(e);
+                  throw new CompletionException(e);
                 }
+              },
+              ThreadPools.getThreadPoolExecutor())
+              .thenComposeAsync(
+                      ktxBuffer -> {
+                        if (KtxTextureLoader.isSupported(ktxBuffer)) {
+                          com.google.android.filament.Texture filamentTexture =
+                                  KtxTextureLoader.createTexture(ktxBuffer);
+                          return CompletableFuture.completedFuture(
+                                  new Texture(new TextureInternalData(filamentTexture, sampler)));
+                        }
+
+                        // Decode the uncompressed fallback instead.
+                        CompletableFuture<Bitmap> bitmapFuture;
+                        if (fallbackInputStreamCreator != null) {
+                          bitmapFuture =
+                                  makeBitmap(
+                                          fallbackInputStreamCreator,
+                                          cacheSourceId,
+                                          inPremultiplied,
+                                          usage);
+                        } else if (fallbackBitmap != null) {
+                          bitmapFuture = CompletableFuture.completedFuture(fallbackBitmap);
+                        } else {
+                          throw new IllegalStateException(
+                                  "The device doesn't support the compressed texture format "
+                                          + KtxTextureLoader.getCompressedFormat(ktxBuffer)
+                                          + " and no fallback source was set.");
+                        }
+                        return bitmapFuture.thenApplyAsync(
+                                loadedBitmap ->
+                                        new Texture(
+                                                makeTextureData(
+                                                        loadedBitmap, sampler, usage,
+                                                        MIP_LEVELS_TO_GENERATE)),
+                                ThreadPools.getMainExecutor());
+                      },
+                      ThreadPools.getMainExecutor());
+    }
 
-                if (bitmap == null) {
-                  throw new IllegalStateException(
-                          "Failed to decode the texture bitmap. The InputStream was not a valid bitmap.");
-                }
+    /**
+     * Completes with a texture holding a small placeholder, then hands the full resolution image
+     * to the {@link TextureStreamer} once it is decoded.
+     */
+    private CompletableFuture<Texture> makeProgressiveTexture(
+            Callable<InputStream> inputStreamCreator) {
+      Sampler sampler = this.sampler;
+      Usage usage = this.usage;
+      boolean inPremultiplied = this.inPremultiplied;
+      @Nullable String cacheSourceId = this.cacheSourceId;
+
+      // The source is read once, some callables hand out a single use stream.
+      CompletableFuture<byte[]> sourceFuture =
+              CompletableFuture.supplyAsync(
+                      () -> {
+                        try {
+                          return SceneformBufferUtils.inputStreamCallableToByteArray(
+                                  inputStreamCreator);
+                        } catch (Exception e) {
+                          throw new CompletionException(e);
+                        }
+                      },
+                      ThreadPools.getThreadPoolExecutor());
+
+      CompletableFuture<Texture> placeholderFuture =
+              sourceFuture
+                      .thenApplyAsync(
+                              sourceBytes ->
+                                      decodeBitmap(
+                                              sourceBytes,
+                                              inPremultiplied,
+                                              PLACEHOLDER_MAX_DIMENSION),
+                              ThreadPools.getThreadPoolExecutor())
+                      .thenApplyAsync(
+                              placeholder ->
+                                      new Texture(
+                                              makeTextureData(
+                                                      placeholder, sampler, usage,
+                                                      MIP_LEVELS_TO_GENERATE)),
+                              ThreadPools.getMainExecutor());
+
+      TextureResidencyManager residencyManager =
+              ResourceManager.getInstance().getTextureResidencyManager();
+      if (residencyManager.manages(usage)) {
+        // The residency manager picks the resolution from the size the texture covers on screen.
+        return placeholderFuture.thenApplyAsync(
+                texture -> {
+                  residencyManager.register(
+                          texture,
+                          sourceFuture.join(),
+                          usage,
+                          inPremultiplied,
+                          PLACEHOLDER_MAX_DIMENSION);
+                  return texture;
+                },
+                ThreadPools.getMainExecutor());
+      }
 
-                if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
-                  throw new IllegalStateException("Texture must use ARGB8 format.");
-                }
+      CompletableFuture<TextureMipChain> fullMipChainFuture =
+              sourceFuture.thenApplyAsync(
+                      sourceBytes -> {
+                        ResourceManager resourceManager = ResourceManager.getInstance();
+                        long startNanos = System.nanoTime();
+                        Bitmap fullBitmap =
+                                decodeBitmap(
+                                        sourceBytes,
+                                        inPremultiplied,
+                                        resourceManager.getTextureQualityTier().getMaxDimension(usage),
+                                        resourceManager.getProcessedAssetCache(),
+                                        cacheSourceId);
+                        // Small images are already complete, the placeholder is the full image.
+                        if (fullBitmap.getWidth() <= PLACEHOLDER_MAX_DIMENSION
+                                && fullBitmap.getHeight() <= PLACEHOLDER_MAX_DIMENSION) {
+                          return null;
+                        }
+                        return TextureMipChain.create(
+                                fullBitmap, usage, System.nanoTime() - startNanos);
+                      },
+                      ThreadPools.getThreadPoolExecutor());
+
+      CompletableFuture<Void> streamFuture =
+              placeholderFuture.thenAcceptBothAsync(
+                      fullMipChainFuture,
+                      (texture, fullMipChain) -> {
+                        if (fullMipChain != null) {
+                          ResourceManager.getInstance()
+                                  .getTextureStreamer()
+                                  .enqueue(texture, fullMipChain);
+                        }
+                      },
+                      ThreadPools.getMainExecutor());
+      FutureHelper.logOnException(
+              TAG, streamFuture, "Unable to load the full resolution texture");
+
+      return placeholderFuture;
+    }
+
+    /**
+     * Decodes the image and prepares its mip chain on a worker thread, then creates the texture
+     * when the {@link TextureStreamer} gets to it within the per frame upload budget.
+     */
+    private CompletableFuture<Texture> makeQueuedTexture() {
+      @Nullable Callable<InputStream> inputStreamCreator = this.inputStreamCreator;
+      @Nullable Bitmap bitmap = this.bitmap;
+      if (inputStreamCreator == null && bitmap == null) {
+        throw new IllegalStateException("Texture must have a source.");
+      }
+      Sampler sampler = this.sampler;
+      Usage usage = this.usage;
+      boolean inPremultiplied = this.inPremultiplied;
+      @Nullable String cacheSourceId = this.cacheSourceId;
 
-                return bitmap;
+      CompletableFuture<Texture> result = new CompletableFuture<>();
+      CompletableFuture.supplyAsync(
+              () -> {
+                long startNanos = System.nanoTime();
+                Bitmap loadedBitmap =
+                        inputStreamCreator != null
+                                ? loadBitmap(
+                                        inputStreamCreator, cacheSourceId, inPremultiplied, usage)
+                                : Preconditions.checkNotNull(bitmap);
+                return TextureMipChain.create(
+                        loadedBitmap, usage, System.nanoTime() - startNanos);
               },
+              ThreadPools.getThreadPoolExecutor())
+              .thenAcceptAsync(
+                      mipChain ->
+                              ResourceManager.getInstance()
+                                      .getTextureStreamer()
+                                      .enqueueUpload(
+                                              mipChain,
+                                              () -> {
+                                                Texture texture =
+                                                        new Texture(
+                                                                new TextureInternalData(
+                                                                        mipChain.createTexture(),
+                                                                        sampler));
+                                                ResourceManager.getInstance()
+                                                        .notifyTextureLoaded(texture, mipChain);
+                                                result.complete(texture);
+                                              }),
+                      ThreadPools.getMainExecutor())
+              .exceptionally(
+                      throwable -> {
+                        result.completeExceptionally(throwable);
+                        return null;
+                      });
+      return result;
+    }
+
+    private static CompletableFuture<Bitmap> makeBitmap(
+            Callable<InputStream> inputStreamCreator,
+            @Nullable String cacheSourceId,
+            boolean inPremultiplied,
+            Usage usage) {
+      return CompletableFuture.supplyAsync(
+              () -> loadBitmap(inputStreamCreator, cacheSourceId, inPremultiplied, usage),
               ThreadPools.getThreadPoolExecutor());
     }
 
-    private static TextureInternalData makeTextureData(
-            Bitmap bitmap, Sampler sampler, Usage usage, int mipLevels) {
-      IEngine engine = EngineInstance.getEngine();
-
-      // Due to fun ambiguities between Texture (RenderCore) and Texture (Filament)
-      // Texture references must be fully qualified giving rise to the following monstrosity
-      // of verbosity.
-      final com.google.android.filament.Texture.InternalFormat textureInternalFormat =
-              getInternalFormatForUsage(usage);
-      final com.google.android.filament.Texture.Sampler textureSampler =
-              com.google.android.filament.Texture.Sampler.SAMPLER_2D;
-
-      com.google.android.filament.Texture filamentTexture =
-              new com.google.android.filament.Texture.Builder()
-                      .width(bitmap.getWidth())
-                      .height(bitmap.getHeight())
-                      .depth(1)
-                      .levels(mipLevels)
-                      .sampler(textureSampler)
-                      .format(textureInternalFormat)
-                      .build(engine.getFilamentEngine());
-
-      TextureHelper.setBitmap(engine.getFilamentEngine(), filamentTexture, 0, bitmap);
-
-      if (mipLevels > 1) {
-        filamentTexture.generateMipmaps(engine.getFilamentEngine());
+    /** Reads and decodes the texture source. Called on a worker thread. */
+    private static Bitmap loadBitmap(
+            Callable<InputStream> inputStreamCreator,
+            @Nullable String cacheSourceId,
+            boolean inPremultiplied,
+            Usage usage) {
+      Tracing.beginSection("Sceneform.loadBitmap");
+      try {
+        return readBitmap(inputStreamCreator, cacheSourceId, inPremultiplied, usage);
+      } finally {
+        Tracing.endSection();
+      }
+    }
+
+    private static Bitmap readBitmap(
+            Callable<InputStream> inputStreamCreator,
+            @Nullable String cacheSourceId,
+            boolean inPremultiplied,
+            Usage usage) {
+      int maxDimension =
+              ResourceManager.getInstance().getTextureQualityTier().getMaxDimension(usage);
+      ProcessedAssetCache cache = ResourceManager.getInstance().getProcessedAssetCache();
+      if (cache != null && cacheSourceId != null) {
+        // Local sources are looked up by their id, a cache hit doesn't read them at all.
+        return decodeWithCache(
+                cache,
+                ProcessedAssetCache.computeKey(
+                        CACHE_KIND_BITMAP,
+                        getCacheOptions(inPremultiplied, maxDimension),
+                        cacheSourceId),
+                inPremultiplied,
+                () -> decodeBitmap(readSource(inputStreamCreator), inPremultiplied, maxDimension));
+      }
+
+      if (cache == null && maxDimension == Integer.MAX_VALUE) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inPremultiplied = inPremultiplied;
+
+        // Open and read the texture file.
+        try (InputStream inputStream = inputStreamCreator.call()) {
+          return checkBitmap(BitmapFactory.decodeStream(inputStream, null, options));
+        } catch (IllegalStateException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+
+      // The source is read once since it is decoded twice when downsampling.
+      return decodeBitmap(
+              readSource(inputStreamCreator), inPremultiplied, maxDimension, cache, null);
+    }
+
+    private static byte[] readSource(Callable<InputStream> inputStreamCreator) {
+      try {
+        return SceneformBufferUtils.inputStreamCallableToByteArray(inputStreamCreator);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * Decodes the image, re-using the pixels of a previous decode when the cache has them.
+     *
+     * @param cacheSourceId identifies a local source, otherwise the cache is looked up by the
+     *     digest of the source bytes
+     */
+    private static Bitmap decodeBitmap(
+            byte[] sourceBytes,
+            boolean inPremultiplied,
+            int maxDimension,
+            @Nullable ProcessedAssetCache cache,
+            @Nullable String cacheSourceId) {
+      if (cache == null) {
+        return decodeBitmap(sourceBytes, inPremultiplied, maxDimension);
       }
 
-      return new TextureInternalData(filamentTexture, sampler);
+      String options = getCacheOptions(inPremultiplied, maxDimension);
+      String key =
+              cacheSourceId != null
+                      ? ProcessedAssetCache.computeKey(CACHE_KIND_BITMAP, options, cacheSourceId)
+                      : ProcessedAssetCache.computeKey(CACHE_KIND_BITMAP, options, sourceBytes);
+      return decodeWithCache(
+              cache,
+              key,
+              inPremultiplied,
+              () -> decodeBitmap(sourceBytes, inPremultiplied, maxDimension));
+    }
+
+    /** Decodes the image, downsampled to fit within {@code maxDimension}. */
+    static Bitmap decodeBitmap(byte[] sourceBytes, boolean inPremultiplied, int maxDimension) {
+      final BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inScaled = false;
+      options.inPremultiplied = inPremultiplied;
+
+      if (maxDimension != Integer.MAX_VALUE) {
+        BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(sourceBytes, 0, sourceBytes.length, boundsOptions);
+        options.inSampleSize =
+                TextureQualityTier.computeSampleSize(
+                        boundsOptions.outWidth, boundsOptions.outHeight, maxDimension);
+      }
+
+      return checkBitmap(
+              BitmapFactory.decodeByteArray(sourceBytes, 0, sourceBytes.length, options));
+    }
+
+    private static Bitmap checkBitmap(@Nullable Bitmap bitmap) {
+      if (bitmap == null) {
+        throw new IllegalStateException(
+                "Failed to decode the texture bitmap. The InputStream was not a valid bitmap.");
+      }
+
+      if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+        throw new IllegalStateException("Texture must use ARGB8 format.");
+      }
+
+      return bitmap;
+    }
+
+    // The sample size follows from the source and the maximum dimension, so the latter is part of
+    // the key instead, which doesn't need the source to be read.
+    private static String getCacheOptions(boolean inPremultiplied, int maxDimension) {
+      return "premultiplied=" + inPremultiplied + ",maxDimension=" + maxDimension;
+    }
+
+    /**
+     * Copies the pixels cached under the key into a new bitmap, or decodes the source and caches
+     * its pixels if there is no entry.
+     */
+    private static Bitmap decodeWithCache(
+            ProcessedAssetCache cache,
+            String key,
+            boolean inPremultiplied,
+            Supplier<Bitmap> decoder) {
+      @Nullable ByteBuffer cached = cache.map(key);
+      if (cached != null) {
+        @Nullable Bitmap bitmap = decodeCachedBitmap(cached, inPremultiplied);
+        if (bitmap != null) {
+          return bitmap;
+        }
+      }
+
+      Bitmap bitmap = decoder.get();
+      cache.put(
+              key,
+              CACHE_HEADER_SIZE + bitmap.getByteCount(),
+              buffer -> {
+                buffer.order(ByteOrder.nativeOrder());
+                buffer.putInt(bitmap.getWidth());
+                buffer.putInt(bitmap.getHeight());
+                buffer.putInt(bitmap.hasAlpha() ? 1 : 0);
+                bitmap.copyPixelsToBuffer(buffer);
+              });
+      return bitmap;
+    }
+
+    @Nullable
+    private static Bitmap decodeCachedBitmap(ByteBuffer buffer, boolean inPremultiplied) {
+      buffer.order(ByteOrder.nativeOrder());
+      if (buffer.remaining() < CACHE_HEADER_SIZE) {
+        return null;
+      }
+      int width = buffer.getInt();
+      int height = buffer.getInt();
+      boolean hasAlpha = buffer.getInt() != 0;
+      if (width <= 0 || height <= 0 || buffer.remaining() != width * height * 4) {
+        return null;
+      }
+
+      // The pixels are copied straight from the mapped entry.
+      Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      bitmap.setHasAlpha(hasAlpha);
+      bitmap.setPremultiplied(inPremultiplied);
+      bitmap.copyPixelsFromBuffer(buffer);
+      return bitmap;
+    }
+
+    private static TextureInternalData makeTextureData(
+            Bitmap bitmap, Sampler sampler, Usage usage, int mipLevels) {
+      return new TextureInternalData(createFilamentTexture(bitmap, usage, mipLevels), sampler);
     }
   }
 
@@ -0,0 +1,616 @@
+package com.google.ar.sceneform.rendering;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import com.google.android.filament.Texture.PixelBufferDescriptor;
+import com.google.ar.sceneform.utilities.AndroidPreconditions;
+import com.google.ar.sceneform.utilities.Preconditions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Packs many small bitmaps, such as labels and icons, into a few shared texture pages.
+ *
+ * <p>Each bitmap added to the atlas becomes a {@link Region} of a page. Use {@link
+ * Region#getTexture()} with {@link MaterialFactory#makeOpaqueWithTexture} or {@link
+ * MaterialFactory#makeTransparentWithTexture}, and {@link Region#toAtlasUv(Vertex.UvCoordinate)}
+ * to map the texture coordinates of a {@link RenderableDefinition} into the region. Renderables
+ * using regions of the same page can then share one material.
+ *
+ * <p>The pages never use more than the memory budget. When a bitmap doesn't fit in the existing
+ * pages and no page can be added, the live regions are repacked to reclaim the space of released
+ * ones, and the {@link OnRepackListener} is notified since regions may have moved. Pages left
+ * without regions are dropped. Must be used on the main thread.
+ */
+@RequiresApi(api = Build.VERSION_CODES.N)
+public class TextureAtlas {
+  private static final int BYTES_PER_PIXEL = 4;
+  private static final int DEFAULT_PAGE_SIZE = 1024;
+  private static final int DEFAULT_PADDING = 1;
+  private static final long DEFAULT_MEMORY_BUDGET = 16 * 1024 * 1024;
+
+  private final int pageSize;
+  private final int padding;
+  private final Texture.Usage usage;
+  private final Texture.Sampler sampler;
+  private final ArrayList<Page> pages = new ArrayList<>();
+  private long memoryBudget;
+  private int regionCount = 0;
+  private long repackCount = 0;
+  @Nullable private OnRepackListener onRepackListener = null;
+
+  /** Interface definition for a callback invoked when the regions of the atlas are repacked. */
+  public interface OnRepackListener {
+    /**
+     * Called after the regions were repacked. Regions may be on a different page or at a different
+     * offset, so texture coordinates and materials built from them must be updated.
+     *
+     * @param atlas the atlas that was repacked
+     */
+    void onRepack(TextureAtlas atlas);
+  }
+
+  /** The area of a page holding one bitmap. */
+  public static final class Region {
+    private final TextureAtlas atlas;
+    @Nullable private Bitmap bitmap;
+    @Nullable private Page page;
+    private final int width;
+    private final int height;
+    private int x;
+    private int y;
+
+    private Region(TextureAtlas atlas, Bitmap bitmap) {
+      this.atlas = atlas;
+      this.bitmap = bitmap;
+      this.width = bitmap.getWidth();
+      this.height = bitmap.getHeight();
+    }
+
+    /** Returns the page texture holding this region. */
+    public Texture getTexture() {
+      return getPage().texture;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public float getMinU() {
+      return x / (float) atlas.pageSize;
+    }
+
+    public float getMinV() {
+      return y / (float) atlas.pageSize;
+    }
+
+    public float getMaxU() {
+      return (x + width) / (float) atlas.pageSize;
+    }
+
+    public float getMaxV() {
+      return (y + height) / (float) atlas.pageSize;
+    }
+
+    /**
+     * Maps a texture coordinate of the original bitmap, from 0 to 1, to the page texture.
+     *
+     * @param uvCoordinate the texture coordinate relative to the bitmap
+     * @return a new texture coordinate relative to the page
+     */
+    public Vertex.UvCoordinate toAtlasUv(Vertex.UvCoordinate uvCoordinate) {
+      Preconditions.checkNotNull(uvCoordinate, "Parameter \"uvCoordinate\" was null.");
+      float minU = getMinU();
+      float minV = getMinV();
+      return new Vertex.UvCoordinate(
+          minU + uvCoordinate.x * (getMaxU() - minU), minV + uvCoordinate.y * (getMaxV() - minV));
+    }
+
+    /** Returns true once the region was released. */
+    public boolean isReleased() {
+      return page == null;
+    }
+
+    /** Frees the area of the page used by this region. */
+    public void release() {
+      AndroidPreconditions.checkUiThread();
+      if (page != null) {
+        atlas.release(this);
+      }
+    }
+
+    private Page getPage() {
+      if (page == null) {
+        throw new IllegalStateException("Region was released.");
+      }
+      return page;
+    }
+  }
+
+  private static final class Page {
+    private final Texture texture;
+    private final Skyline skyline;
+    private final ArrayList<Region> regions = new ArrayList<>();
+
+    Page(Texture texture, int size) {
+      this.texture = texture;
+      this.skyline = new Skyline(size);
+    }
+  }
+
+  /** Constructs a default atlas builder. */
+  public static Builder builder() {
+    AndroidPreconditions.checkMinAndroidApiLevel();
+
+    return new Builder();
+  }
+
+  private TextureAtlas(Builder builder) {
+    this.pageSize = builder.pageSize;
+    this.padding = builder.padding;
+    this.usage = builder.usage;
+    this.sampler = builder.sampler;
+    this.memoryBudget = builder.memoryBudget;
+  }
+
+  /**
+   * Adds a bitmap to the atlas. The atlas keeps a reference to the bitmap to repack it later, so
+   * it must not be recycled before the region is released.
+   *
+   * @throws IllegalArgumentException if the bitmap is larger than a page
+   * @throws IllegalStateException if the bitmap doesn't fit within the memory budget
+   */
+  public Region add(Bitmap bitmap) {
+    AndroidPreconditions.checkUiThread();
+    Preconditions.checkNotNull(bitmap, "Parameter \"bitmap\" was null.");
+    if (bitmap.getWidth() + 2 * padding > pageSize || bitmap.getHeight() + 2 * padding > pageSize) {
+      throw new IllegalArgumentException(
+          "Bitmap of "
+              + bitmap.getWidth()
+              + "x"
+              + bitmap.getHeight()
+              + " doesn't fit in an atlas page of "
+              + pageSize
+              + "x"
+              + pageSize
+              + ".");
+    }
+
+    if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+      bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+    }
+    Region region = new Region(this, bitmap);
+
+    if (!placeInExistingPage(region)) {
+      if (pages.size() < getMaxPageCount()) {
+        Page page = createPage();
+        pages.add(page);
+        place(region, page);
+      } else if (!repack(region)) {
+        throw new IllegalStateException("Texture atlas memory budget exceeded.");
+      }
+    }
+    regionCount++;
+    return region;
+  }
+
+  /**
+   * Repacks the live regions to reclaim the space of released ones, dropping the pages that are
+   * no longer needed.
+   */
+  public void compact() {
+    AndroidPreconditions.checkUiThread();
+    repack(null);
+  }
+
+  /**
+   * Sets the maximum number of bytes used by the pages, at least one page is always allowed. If
+   * the pages already exceed the new budget they are repacked when the live regions fit.
+   */
+  public void setMemoryBudget(long maxBytes) {
+    AndroidPreconditions.checkUiThread();
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("maxBytes must be positive.");
+    }
+    memoryBudget = maxBytes;
+    if (pages.size() > getMaxPageCount()) {
+      repack(null);
+    }
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  public void setOnRepackListener(@Nullable OnRepackListener listener) {
+    onRepackListener = listener;
+  }
+
+  /** Returns the number of bytes used by the pages. */
+  public long getSizeInBytes() {
+    return pages.size() * getPageSizeInBytes();
+  }
+
+  public int getPageCount() {
+    return pages.size();
+  }
+
+  /** Returns the number of regions that weren't released. */
+  public int getRegionCount() {
+    return regionCount;
+  }
+
+  public long getRepackCount() {
+    return repackCount;
+  }
+
+  private long getPageSizeInBytes() {
+    return (long) pageSize * pageSize * BYTES_PER_PIXEL;
+  }
+
+  private int getMaxPageCount() {
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / getPageSizeInBytes()));
+  }
+
+  private boolean placeInExistingPage(Region region) {
+    for (int i = 0; i < pages.size(); i++) {
+      if (tryPlace(region, pages.get(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void place(Region region, Page page) {
+    if (!tryPlace(region, page)) {
+      throw new IllegalStateException("Region doesn't fit in an empty page.");
+    }
+  }
+
+  private boolean tryPlace(Region region, Page page) {
+    if (!page.skyline.insert(region.width + 2 * padding, region.height + 2 * padding)) {
+      return false;
+    }
+    region.x = page.skyline.getLastX() + padding;
+    region.y = page.skyline.getLastY() + padding;
+    region.page = page;
+    page.regions.add(region);
+    upload(region);
+    return true;
+  }
+
+  private void release(Region region) {
+    Page page = Preconditions.checkNotNull(region.page);
+    page.regions.remove(region);
+    region.page = null;
+    region.bitmap = null;
+    regionCount--;
+
+    if (page.regions.isEmpty()) {
+      // Keep one page around for the next bitmap, the others are destroyed once the materials
+      // that reference them are released.
+      if (pages.size() > 1) {
+        pages.remove(page);
+      } else {
+        page.skyline.reset();
+      }
+    }
+  }
+
+  /**
+   * Packs every live region, and {@code extra} if set, into as few pages as possible.
+   *
+   * @return false if they don't fit within the memory budget, in which case nothing changed
+   */
+  private boolean repack(@Nullable Region extra) {
+    ArrayList<Region> regions = new ArrayList<>();
+    for (int i = 0; i < pages.size(); i++) {
+      regions.addAll(pages.get(i).regions);
+    }
+    if (extra != null) {
+      regions.add(extra);
+    }
+    // Placing the tallest regions first leaves fewer gaps under the skyline.
+    Collections.sort(
+        regions,
+        (a, b) -> a.height != b.height ? Integer.compare(b.height, a.height) : b.width - a.width);
+
+    int maxPageCount = getMaxPageCount();
+    ArrayList<Skyline> skylines = new ArrayList<>();
+    int[] pageIndices = new int[regions.size()];
+    int[] offsets = new int[regions.size() * 2];
+    for (int i = 0; i < regions.size(); i++) {
+      Region region = regions.get(i);
+      int paddedWidth = region.width + 2 * padding;
+      int paddedHeight = region.height + 2 * padding;
+      int pageIndex = 0;
+      while (pageIndex < skylines.size()
+          && !skylines.get(pageIndex).insert(paddedWidth, paddedHeight)) {
+        pageIndex++;
+      }
+      if (pageIndex == skylines.size()) {
+        if (skylines.size() == maxPageCount) {
+          return false;
+        }
+        Skyline skyline = new Skyline(pageSize);
+        skyline.insert(paddedWidth, paddedHeight);
+        skylines.add(skyline);
+      }
+      pageIndices[i] = pageIndex;
+      offsets[2 * i] = skylines.get(pageIndex).getLastX() + padding;
+      offsets[2 * i + 1] = skylines.get(pageIndex).getLastY() + padding;
+    }
+
+    // Reuse the existing textures so that materials bound to them stay valid where possible.
+    ArrayList<Page> newPages = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, skylines.size()); i++) {
+      Texture texture = i < pages.size() ? pages.get(i).texture : createPageTexture();
+      Page page = new Page(texture, pageSize);
+      if (i < skylines.size()) {
+        page.skyline.copyFrom(skylines.get(i));
+      }
+      newPages.add(page);
+    }
+    pages.clear();
+    pages.addAll(newPages);
+
+    for (int i = 0; i < regions.size(); i++) {
+      Region region = regions.get(i);
+      Page page = pages.get(pageIndices[i]);
+      region.x = offsets[2 * i];
+      region.y = offsets[2 * i + 1];
+      region.page = page;
+      page.regions.add(region);
+      upload(region);
+    }
+
+    repackCount++;
+    if (onRepackListener != null) {
+      onRepackListener.onRepack(this);
+    }
+    return true;
+  }
+
+  private Page createPage() {
+    return new Page(createPageTexture(), pageSize);
+  }
+
+  private Texture createPageTexture() {
+    IEngine engine = EngineInstance.getEngine();
+    // Regions are packed next to each other, so the pages have no mip levels for the filtering
+    // to bleed across.
+    com.google.android.filament.Texture filamentTexture =
+        new com.google.android.filament.Texture.Builder()
+            .width(pageSize)
+            .height(pageSize)
+            .depth(1)
+            .levels(1)
+            .sampler(com.google.android.filament.Texture.Sampler.SAMPLER_2D)
+            .format(Texture.getInternalFormatForUsage(usage))
+            .build(engine.getFilamentEngine());
+    return new Texture(new TextureInternalData(filamentTexture, sampler));
+  }
+
+  /** Copies the bitmap to its region, repeating the edge pixels into the padding. */
+  private void upload(Region region) {
+    Bitmap bitmap = Preconditions.checkNotNull(region.bitmap);
+    int width = region.width;
+    int height = region.height;
+    int paddedWidth = width + 2 * padding;
+    int paddedHeight = height + 2 * padding;
+
+    ByteBuffer pixels = ByteBuffer.allocate(width * height * BYTES_PER_PIXEL);
+    pixels.order(ByteOrder.nativeOrder());
+    bitmap.copyPixelsToBuffer(pixels);
+    IntBuffer source = ((ByteBuffer) pixels.rewind()).asIntBuffer();
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(paddedWidth * paddedHeight * BYTES_PER_PIXEL);
+    buffer.order(ByteOrder.nativeOrder());
+    IntBuffer destination = buffer.asIntBuffer();
+    for (int y = 0; y < paddedHeight; y++) {
+      int sourceRow = Math.min(Math.max(y - padding, 0), height - 1) * width;
+      for (int x = 0; x < paddedWidth; x++) {
+        int sourceColumn = Math.min(Math.max(x - padding, 0), width - 1);
+        destination.put(y * paddedWidth + x, source.get(sourceRow + sourceColumn));
+      }
+    }
+
+    com.google.android.filament.Engine engine = EngineInstance.getEngine().getFilamentEngine();
+    region
+        .getPage()
+        .texture
+        .getFilamentTexture()
+        .setImage(
+            engine,
+            0,
+            region.x - padding,
+            region.y - padding,
+            paddedWidth,
+            paddedHeight,
+            new PixelBufferDescriptor(
+                buffer,
+                com.google.android.filament.Texture.Format.RGBA,
+                com.google.android.filament.Texture.Type.UBYTE));
+  }
+
+  /**
+   * Skyline bottom-left packer. The skyline is the top edge of the packed rectangles, stored as
+   * horizontal segments from left to right.
+   */
+  private static final class Skyline {
+    private final int size;
+    private final ArrayList<int[]> segments = new ArrayList<>();
+    private int lastX;
+    private int lastY;
+
+    Skyline(int size) {
+      this.size = size;
+      reset();
+    }
+
+    void reset() {
+      segments.clear();
+      segments.add(new int[] {0, 0, size});
+    }
+
+    void copyFrom(Skyline other) {
+      segments.clear();
+      for (int[] segment : other.segments) {
+        segments.add(segment.clone());
+      }
+    }
+
+    int getLastX() {
+      return lastX;
+    }
+
+    int getLastY() {
+      return lastY;
+    }
+
+    /** Places a rectangle as low as possible, returns false if it doesn't fit. */
+    boolean insert(int width, int height) {
+      int bestIndex = -1;
+      int bestY = Integer.MAX_VALUE;
+      int bestSegmentWidth = Integer.MAX_VALUE;
+      for (int i = 0; i < segments.size(); i++) {
+        int y = fit(i, width, height);
+        int segmentWidth = segments.get(i)[2];
+        if (y >= 0 && (y < bestY || (y == bestY && segmentWidth < bestSegmentWidth))) {
+          bestIndex = i;
+          bestY = y;
+          bestSegmentWidth = segmentWidth;
+        }
+      }
+      if (bestIndex < 0) {
+        return false;
+      }
+
+      lastX = segments.get(bestIndex)[0];
+      lastY = bestY;
+      segments.add(bestIndex, new int[] {lastX, bestY + height, width});
+
+      // Trim the segments now covered by the new one.
+      int right = lastX + width;
+      int i = bestIndex + 1;
+      while (i < segments.size()) {
+        int[] segment = segments.get(i);
+        if (segment[0] >= right) {
+          break;
+        }
+        int overlap = right - segment[0];
+        if (overlap >= segment[2]) {
+          segments.remove(i);
+        } else {
+          segment[0] += overlap;
+          segment[2] -= overlap;
+          break;
+        }
+      }
+
+      // Merge neighbouring segments of the same height.
+      for (i = 0; i < segments.size() - 1; ) {
+        int[] segment = segments.get(i);
+        int[] next = segments.get(i + 1);
+        if (segment[1] == next[1]) {
+          segment[2] += next[2];
+          segments.remove(i + 1);
+        } else {
+          i++;
+        }
+      }
+      return true;
+    }
+
+    /** Returns the height at which the rectangle fits starting on the segment, or -1. */
+    private int fit(int index, int width, int height) {
+      int x = segments.get(index)[0];
+      if (x + width > size) {
+        return -1;
+      }
+      int y = 0;
+      int remainingWidth = width;
+      for (int i = index; remainingWidth > 0; i++) {
+        int[] segment = segments.get(i);
+        y = Math.max(y, segment[1]);
+        if (y + height > size) {
+          return -1;
+        }
+        remainingWidth -= segment[2];
+      }
+      return y;
+    }
+  }
+
+  /** Factory class for {@link TextureAtlas}. */
+  public static final class Builder {
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int padding = DEFAULT_PADDING;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private Texture.Usage usage = Texture.Usage.COLOR_MAP;
+    private Texture.Sampler sampler =
+        Texture.Sampler.builder()
+            .setMinFilter(Texture.Sampler.MinFilter.LINEAR)
+            .setMagFilter(Texture.Sampler.MagFilter.LINEAR)
+            .setWrapMode(Texture.Sampler.WrapMode.CLAMP_TO_EDGE)
+            .build();
+
+    private Builder() {}
+
+    /** Sets the width and height of the pages in pixels, 1024 by default. */
+    public Builder setPageSize(int pageSize) {
+      if (pageSize < 1) {
+        throw new IllegalArgumentException("pageSize must be positive.");
+      }
+      this.pageSize = pageSize;
+      return this;
+    }
+
+    /**
+     * Sets the number of pixels around each region filled with its edge pixels, so that linear
+     * filtering doesn't sample the neighbouring regions. 1 by default.
+     */
+    public Builder setPadding(int padding) {
+      if (padding < 0) {
+        throw new IllegalArgumentException("padding must not be negative.");
+      }
+      this.padding = padding;
+      return this;
+    }
+
+    /** Sets the maximum number of bytes used by the pages, 16 MB by default. */
+    public Builder setMemoryBudget(long maxBytes) {
+      if (maxBytes < 1) {
+        throw new IllegalArgumentException("maxBytes must be positive.");
+      }
+      this.memoryBudget = maxBytes;
+      return this;
+    }
+
+    /** Sets the usage of the page textures, {@link Texture.Usage#COLOR_MAP} by default. */
+    public Builder setUsage(Texture.Usage usage) {
+      this.usage = Preconditions.checkNotNull(usage, "Parameter \"usage\" was null.");
+      return this;
+    }
+
+    /** Sets the sampler of the page textures. Mipmapped minification filters are not supported. */
+    public Builder setSampler(Texture.Sampler sampler) {
+      this.sampler = Preconditions.checkNotNull(sampler, "Parameter \"sampler\" was null.");
+      return this;
+    }
+
+    /** Creates the atlas, the pages are allocated as bitmaps are added. */
+    public TextureAtlas build() {
+      return new TextureAtlas(this);
+    }
+  }
+}
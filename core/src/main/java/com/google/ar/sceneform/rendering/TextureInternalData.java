@@ -4,6 +4,10 @@ import androidx.annotation.Nullable;
 import com.google.ar.core.annotations.UsedByNative;
 import com.google.ar.sceneform.resources.SharedReference;
 import com.google.ar.sceneform.utilities.AndroidPreconditions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Represents shared data used by {@link Texture}s for rendering. The data will be released when all
@@ -16,6 +20,8 @@ public class TextureInternalData extends SharedReference {
   @Nullable private com.google.android.filament.Texture filamentTexture;
 
   private final Texture.Sampler sampler;
+  // Materials the texture was applied to, which are re-bound when the Filament texture is replaced.
+  private final Set<Material> boundMaterials = Collections.newSetFromMap(new WeakHashMap<>());
 
   @UsedByNative("material_java_wrappers.h")
   public TextureInternalData(
@@ -32,6 +38,33 @@ public class TextureInternalData extends SharedReference {
     return filamentTexture;
   }
 
+  /**
+   * Replaces the Filament texture, used when a progressively loaded texture gets its full
+   * resolution image.
+   *
+   * @return the previous Filament texture, or the new one if this data was already disposed. The
+   *     caller is responsible for destroying it.
+   */
+  com.google.android.filament.Texture replaceFilamentTexture(
+      com.google.android.filament.Texture filamentTexture) {
+    com.google.android.filament.Texture previous = this.filamentTexture;
+    if (previous == null) {
+      return filamentTexture;
+    }
+    this.filamentTexture = filamentTexture;
+
+    // Re-bind right away, the previous texture is destroyed once no instance samples it.
+    for (Material material : new ArrayList<>(boundMaterials)) {
+      material.applyStreamedTextures();
+    }
+    return previous;
+  }
+
+  /** Records that the texture was applied to the material's Filament instance. */
+  void addBoundMaterial(Material material) {
+    boundMaterials.add(material);
+  }
+
   Texture.Sampler getSampler() {
     return sampler;
   }
@@ -43,6 +76,7 @@ public class TextureInternalData extends SharedReference {
     IEngine engine = EngineInstance.getEngine();
     com.google.android.filament.Texture filamentTexture = this.filamentTexture;
     this.filamentTexture = null;
+    boundMaterials.clear();
     if (filamentTexture != null && engine != null && engine.isValid()) {
       engine.destroyTexture(filamentTexture);
     }
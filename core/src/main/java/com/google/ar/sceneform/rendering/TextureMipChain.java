@@ -0,0 +1,244 @@
+package com.google.ar.sceneform.rendering;
+
+import android.graphics.Bitmap;
+import androidx.annotation.Nullable;
+import com.google.android.filament.Texture.PixelBufferDescriptor;
+import com.google.ar.sceneform.utilities.Preconditions;
+import com.google.ar.sceneform.utilities.Tracing;
+import java.nio.ByteBuffer;
+
+/**
+ * The image of a texture prepared on a worker thread so that the main thread only has to upload
+ * it.
+ *
+ * <p>When CPU mip generation is enabled with {@link
+ * ResourceManager#setCpuMipGenerationEnabled(boolean)}, every level down to 1x1 is computed here
+ * with a 2x2 box filter and uploaded as is. Color maps are filtered in linear space, as the GPU
+ * does for sRGB textures. Otherwise only the bitmap is kept and Filament generates the levels
+ * during the upload.
+ */
+final class TextureMipChain {
+  private static final int BYTES_PER_PIXEL = 4;
+  // Resolution of the table used to encode linear values back to sRGB.
+  private static final int LINEAR_TO_SRGB_TABLE_SIZE = 4096;
+
+  @Nullable private static float[] srgbToLinearTable = null;
+  @Nullable private static byte[] linearToSrgbTable = null;
+
+  private final Texture.Usage usage;
+  private final int width;
+  private final int height;
+  @Nullable private final Bitmap bitmap;
+  @Nullable private final ByteBuffer[] levels;
+  private final long sizeInBytes;
+  private final long decodeNanos;
+  private final long mipGenerationNanos;
+  private long uploadNanos = 0;
+
+  private TextureMipChain(
+      Texture.Usage usage,
+      int width,
+      int height,
+      @Nullable Bitmap bitmap,
+      @Nullable ByteBuffer[] levels,
+      long sizeInBytes,
+      long decodeNanos,
+      long mipGenerationNanos) {
+    this.usage = usage;
+    this.width = width;
+    this.height = height;
+    this.bitmap = bitmap;
+    this.levels = levels;
+    this.sizeInBytes = sizeInBytes;
+    this.decodeNanos = decodeNanos;
+    this.mipGenerationNanos = mipGenerationNanos;
+  }
+
+  /**
+   * Prepares a decoded bitmap for upload, computing its mip levels if CPU mip generation is
+   * enabled. Called on a worker thread.
+   *
+   * @param decodeNanos the time it took to decode the bitmap, reported to the listener
+   */
+  static TextureMipChain create(Bitmap bitmap, Texture.Usage usage, long decodeNanos) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    if (!ResourceManager.getInstance().isCpuMipGenerationEnabled()) {
+      return new TextureMipChain(
+          usage, width, height, bitmap, null, bitmap.getByteCount(), decodeNanos, 0);
+    }
+
+    Tracing.beginSection("Sceneform.generateMips");
+    try {
+      long startNanos = System.nanoTime();
+      ByteBuffer[] levels = new ByteBuffer[getLevelCount(width, height)];
+      levels[0] = ByteBuffer.allocateDirect(width * height * BYTES_PER_PIXEL);
+      bitmap.copyPixelsToBuffer(levels[0]);
+      levels[0].rewind();
+      long sizeInBytes = levels[0].capacity();
+
+      boolean isSrgb = usage == Texture.Usage.COLOR_MAP;
+      int levelWidth = width;
+      int levelHeight = height;
+      for (int level = 1; level < levels.length; level++) {
+        int nextWidth = Math.max(1, levelWidth / 2);
+        int nextHeight = Math.max(1, levelHeight / 2);
+        levels[level] = ByteBuffer.allocateDirect(nextWidth * nextHeight * BYTES_PER_PIXEL);
+        downsample(
+            levels[level - 1],
+            levelWidth,
+            levelHeight,
+            levels[level],
+            nextWidth,
+            nextHeight,
+            isSrgb);
+        sizeInBytes += levels[level].capacity();
+        levelWidth = nextWidth;
+        levelHeight = nextHeight;
+      }
+
+      return new TextureMipChain(
+          usage,
+          width,
+          height,
+          null,
+          levels,
+          sizeInBytes,
+          decodeNanos,
+          System.nanoTime() - startNanos);
+    } finally {
+      Tracing.endSection();
+    }
+  }
+
+  /** Returns the number of bytes uploaded, used for the per frame upload budget. */
+  long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  long getDecodeNanos() {
+    return decodeNanos;
+  }
+
+  long getMipGenerationNanos() {
+    return mipGenerationNanos;
+  }
+
+  /** Returns the time spent by {@link #createTexture()}. */
+  long getUploadNanos() {
+    return uploadNanos;
+  }
+
+  /** Creates the Filament texture and uploads the levels. Must be called on the main thread. */
+  com.google.android.filament.Texture createTexture() {
+    long startNanos = System.nanoTime();
+    com.google.android.filament.Texture filamentTexture;
+    if (levels == null) {
+      filamentTexture = Texture.createFilamentTexture(Preconditions.checkNotNull(bitmap), usage);
+    } else {
+      com.google.android.filament.Engine engine = EngineInstance.getEngine().getFilamentEngine();
+      filamentTexture =
+          new com.google.android.filament.Texture.Builder()
+              .width(width)
+              .height(height)
+              .depth(1)
+              .levels(levels.length)
+              .sampler(com.google.android.filament.Texture.Sampler.SAMPLER_2D)
+              .format(Texture.getInternalFormatForUsage(usage))
+              .build(engine);
+      for (int level = 0; level < levels.length; level++) {
+        filamentTexture.setImage(
+            engine,
+            level,
+            new PixelBufferDescriptor(
+                levels[level],
+                com.google.android.filament.Texture.Format.RGBA,
+                com.google.android.filament.Texture.Type.UBYTE));
+      }
+    }
+    uploadNanos = System.nanoTime() - startNanos;
+    return filamentTexture;
+  }
+
+  private static int getLevelCount(int width, int height) {
+    int levelCount = 1;
+    int size = Math.max(width, height);
+    while (size > 1) {
+      size /= 2;
+      levelCount++;
+    }
+    return levelCount;
+  }
+
+  /** Averages each 2x2 block of the source, clamping at the edges of odd sized levels. */
+  private static void downsample(
+      ByteBuffer source,
+      int sourceWidth,
+      int sourceHeight,
+      ByteBuffer destination,
+      int destinationWidth,
+      int destinationHeight,
+      boolean isSrgb) {
+    float[] toLinear = isSrgb ? getSrgbToLinearTable() : null;
+    byte[] toSrgb = isSrgb ? getLinearToSrgbTable() : null;
+
+    for (int y = 0; y < destinationHeight; y++) {
+      int y0 = Math.min(2 * y, sourceHeight - 1);
+      int y1 = Math.min(2 * y + 1, sourceHeight - 1);
+      for (int x = 0; x < destinationWidth; x++) {
+        int x0 = Math.min(2 * x, sourceWidth - 1);
+        int x1 = Math.min(2 * x + 1, sourceWidth - 1);
+        int p00 = (y0 * sourceWidth + x0) * BYTES_PER_PIXEL;
+        int p01 = (y0 * sourceWidth + x1) * BYTES_PER_PIXEL;
+        int p10 = (y1 * sourceWidth + x0) * BYTES_PER_PIXEL;
+        int p11 = (y1 * sourceWidth + x1) * BYTES_PER_PIXEL;
+        int out = (y * destinationWidth + x) * BYTES_PER_PIXEL;
+
+        for (int channel = 0; channel < BYTES_PER_PIXEL; channel++) {
+          int c00 = source.get(p00 + channel) & 0xFF;
+          int c01 = source.get(p01 + channel) & 0xFF;
+          int c10 = source.get(p10 + channel) & 0xFF;
+          int c11 = source.get(p11 + channel) & 0xFF;
+          byte value;
+          // Alpha is always linear.
+          if (toLinear != null && channel != 3) {
+            float linear = (toLinear[c00] + toLinear[c01] + toLinear[c10] + toLinear[c11]) * 0.25f;
+            value = toSrgb[(int) (linear * (LINEAR_TO_SRGB_TABLE_SIZE - 1) + 0.5f)];
+          } else {
+            value = (byte) ((c00 + c01 + c10 + c11 + 2) >> 2);
+          }
+          destination.put(out + channel, value);
+        }
+      }
+    }
+  }
+
+  private static synchronized float[] getSrgbToLinearTable() {
+    if (srgbToLinearTable == null) {
+      float[] table = new float[256];
+      for (int i = 0; i < table.length; i++) {
+        float c = i / 255f;
+        table[i] =
+            c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055f) / 1.055f, 2.4f);
+      }
+      srgbToLinearTable = table;
+    }
+    return srgbToLinearTable;
+  }
+
+  private static synchronized byte[] getLinearToSrgbTable() {
+    if (linearToSrgbTable == null) {
+      byte[] table = new byte[LINEAR_TO_SRGB_TABLE_SIZE];
+      for (int i = 0; i < table.length; i++) {
+        float linear = i / (float) (LINEAR_TO_SRGB_TABLE_SIZE - 1);
+        float c =
+            linear <= 0.0031308f
+                ? linear * 12.92f
+                : 1.055f * (float) Math.pow(linear, 1f / 2.4f) - 0.055f;
+        table[i] = (byte) Math.round(c * 255f);
+      }
+      linearToSrgbTable = table;
+    }
+    return linearToSrgbTable;
+  }
+}
@@ -0,0 +1,77 @@
+package com.google.ar.sceneform.rendering;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * Limits the resolution textures are decoded at, set for the whole app with {@link
+ * ResourceManager#setTextureQualityTier(TextureQualityTier)}.
+ *
+ * <p>Images larger than the tier's maximum dimension for their {@link Texture.Usage} are
+ * downsampled by a power of two while they are decoded, which also cuts decode time and memory.
+ * {@link Texture.Usage#DATA} textures hold arbitrary values and are never downsampled.
+ */
+public enum TextureQualityTier {
+  /** For devices with little memory: color and normal maps up to 512 pixels. */
+  LOW(512, 512),
+  /** Color maps up to 1024 pixels and normal maps up to 512 pixels. */
+  MEDIUM(1024, 512),
+  /** Color and normal maps up to 2048 pixels. */
+  HIGH(2048, 2048),
+  /** Textures are decoded at their full resolution. This is the default. */
+  FULL(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+  // Total memory thresholds used by forDevice().
+  private static final long LOW_MEMORY_BYTES = 2L << 30;
+  private static final long MEDIUM_MEMORY_BYTES = 4L << 30;
+
+  private final int maxColorMapDimension;
+  private final int maxNormalMapDimension;
+
+  TextureQualityTier(int maxColorMapDimension, int maxNormalMapDimension) {
+    this.maxColorMapDimension = maxColorMapDimension;
+    this.maxNormalMapDimension = maxNormalMapDimension;
+  }
+
+  /** Returns the largest width or height a texture of the given usage is decoded at. */
+  public int getMaxDimension(Texture.Usage usage) {
+    switch (usage) {
+      case COLOR_MAP:
+        return maxColorMapDimension;
+      case NORMAL_MAP:
+        return maxNormalMapDimension;
+      default:
+        return Integer.MAX_VALUE;
+    }
+  }
+
+  /** Picks a tier from the memory available on the device. */
+  public static TextureQualityTier forDevice(Context context) {
+    ActivityManager activityManager =
+        (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    if (activityManager == null) {
+      return HIGH;
+    }
+    if (activityManager.isLowRamDevice()) {
+      return LOW;
+    }
+
+    ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    activityManager.getMemoryInfo(memoryInfo);
+    if (memoryInfo.totalMem < LOW_MEMORY_BYTES) {
+      return LOW;
+    } else if (memoryInfo.totalMem < MEDIUM_MEMORY_BYTES) {
+      return MEDIUM;
+    }
+    return HIGH;
+  }
+
+  /** Returns the power of two sample size that fits the image within {@code maxDimension}. */
+  static int computeSampleSize(int width, int height, int maxDimension) {
+    int sampleSize = 1;
+    while (Math.max(width, height) / sampleSize > maxDimension) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+}
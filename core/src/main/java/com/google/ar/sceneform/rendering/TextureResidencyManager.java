@@ -0,0 +1,342 @@
+package com.google.ar.sceneform.rendering;
+
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.ar.sceneform.collision.Box;
+import com.google.ar.sceneform.collision.CollisionShape;
+import com.google.ar.sceneform.collision.Sphere;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.resources.ResourceHolder;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the resolution of textures in line with the size their renderables cover on screen, under
+ * a global memory budget.
+ *
+ * <p>Every few frames the projected height in pixels of each {@link RenderableInstance} is
+ * estimated from its bounds and distance to the camera. A texture needs at most as many texels as
+ * the largest projection of the renderables that use it, so its top mip levels are dropped by
+ * reloading it at a lower power of two resolution, and reloaded at a higher one when a renderable
+ * comes closer. When the textures still don't fit in the budget, the largest ones are reduced
+ * first.
+ *
+ * <p>Filament textures can't drop levels in place, so the textures are rebuilt from their encoded
+ * source, which the manager keeps on the heap, and swapped in through the {@link TextureStreamer}.
+ * A swap re-binds the materials the texture was applied to. Only textures loaded progressively
+ * from an image source are managed, see {@link Texture.Builder#setProgressive(boolean)}. Must be
+ * used on the main thread.
+ */
+@SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"}) // CompletableFuture
+final class TextureResidencyManager implements ResourceHolder {
+  private static final String TAG = TextureResidencyManager.class.getSimpleName();
+  // Textures are never reduced below this dimension.
+  private static final int MIN_DIMENSION = 64;
+  // Projected sizes are re-evaluated at this interval rather than each frame.
+  private static final int UPDATE_INTERVAL_FRAMES = 15;
+  // Extra memory used by the mip chain below the top level.
+  private static final float MIP_CHAIN_FACTOR = 4f / 3f;
+
+  private final WeakHashMap<Texture, ResidentTexture> residentTextures = new WeakHashMap<>();
+  private final ArrayList<Texture> materialTextures = new ArrayList<>();
+  private long budgetInBytes = 0;
+  private int framesUntilUpdate = 0;
+
+  /** A managed texture, with the sample sizes relative to its full resolution. */
+  private static final class ResidentTexture {
+    private final byte[] sourceBytes;
+    private final Texture.Usage usage;
+    private final boolean inPremultiplied;
+    private final int fullWidth;
+    private final int fullHeight;
+    private final int maxSampleSize;
+    private int residentSampleSize;
+    private int targetSampleSize;
+    private float requiredPixels;
+    private boolean isLoading = false;
+
+    ResidentTexture(
+        byte[] sourceBytes,
+        Texture.Usage usage,
+        boolean inPremultiplied,
+        int fullWidth,
+        int fullHeight,
+        int residentSampleSize) {
+      this.sourceBytes = sourceBytes;
+      this.usage = usage;
+      this.inPremultiplied = inPremultiplied;
+      this.fullWidth = fullWidth;
+      this.fullHeight = fullHeight;
+      this.maxSampleSize =
+          TextureQualityTier.computeSampleSize(fullWidth, fullHeight, MIN_DIMENSION);
+      this.residentSampleSize = residentSampleSize;
+      this.targetSampleSize = residentSampleSize;
+    }
+
+    long getSizeInBytes(int sampleSize) {
+      long width = Math.max(1, fullWidth / sampleSize);
+      long height = Math.max(1, fullHeight / sampleSize);
+      return (long) (width * height * 4 * MIP_CHAIN_FACTOR);
+    }
+
+    int getMaxDimension(int sampleSize) {
+      return Math.max(1, Math.max(fullWidth, fullHeight) / sampleSize);
+    }
+  }
+
+  boolean isEnabled() {
+    return budgetInBytes > 0;
+  }
+
+  /** Returns true if progressive textures of the given usage loaded from now on are managed. */
+  boolean manages(Texture.Usage usage) {
+    // Data textures can't be downsampled without changing their meaning.
+    return isEnabled() && usage != Texture.Usage.DATA;
+  }
+
+  void setBudget(long budgetInBytes) {
+    if (budgetInBytes < 0) {
+      throw new IllegalArgumentException("budgetInBytes must not be negative.");
+    }
+    this.budgetInBytes = budgetInBytes;
+    framesUntilUpdate = 0;
+  }
+
+  long getBudget() {
+    return budgetInBytes;
+  }
+
+  /** Returns the estimated memory of the managed textures at their current resolution. */
+  long getResidentSizeInBytes() {
+    long sizeInBytes = 0;
+    for (ResidentTexture residentTexture : residentTextures.values()) {
+      sizeInBytes += residentTexture.getSizeInBytes(residentTexture.residentSampleSize);
+    }
+    return sizeInBytes;
+  }
+
+  int getManagedTextureCount() {
+    return residentTextures.size();
+  }
+
+  /** Returns the size of the encoded sources kept to reload the managed textures. */
+  long getSourceSizeInBytes() {
+    long sizeInBytes = 0;
+    for (ResidentTexture residentTexture : residentTextures.values()) {
+      sizeInBytes += residentTexture.sourceBytes.length;
+    }
+    return sizeInBytes;
+  }
+
+  /**
+   * Starts managing a texture that currently holds a low resolution placeholder. Its resolution
+   * is picked by the next update.
+   */
+  void register(
+      Texture texture,
+      byte[] sourceBytes,
+      Texture.Usage usage,
+      boolean inPremultiplied,
+      int placeholderMaxDimension) {
+    BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+    boundsOptions.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(sourceBytes, 0, sourceBytes.length, boundsOptions);
+    if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+      return;
+    }
+
+    // The full resolution is the one allowed by the quality tier.
+    int tierSampleSize =
+        TextureQualityTier.computeSampleSize(
+            boundsOptions.outWidth,
+            boundsOptions.outHeight,
+            ResourceManager.getInstance().getTextureQualityTier().getMaxDimension(usage));
+    int fullWidth = boundsOptions.outWidth / tierSampleSize;
+    int fullHeight = boundsOptions.outHeight / tierSampleSize;
+    int placeholderSampleSize =
+        TextureQualityTier.computeSampleSize(fullWidth, fullHeight, placeholderMaxDimension);
+
+    residentTextures.put(
+        texture,
+        new ResidentTexture(
+            sourceBytes, usage, inPremultiplied, fullWidth, fullHeight, placeholderSampleSize));
+    framesUntilUpdate = 0;
+  }
+
+  /**
+   * Re-evaluates the resolution of the managed textures every few frames. Called by the {@link
+   * Renderer} once the renderables were prepared for drawing.
+   */
+  void update(
+      ArrayList<RenderableInstance> renderableInstances,
+      @Nullable CameraProvider cameraProvider,
+      int viewportHeight) {
+    if (!isEnabled() || residentTextures.isEmpty() || --framesUntilUpdate > 0) {
+      return;
+    }
+    framesUntilUpdate = UPDATE_INTERVAL_FRAMES;
+    if (cameraProvider == null || !cameraProvider.isActive() || viewportHeight <= 0) {
+      return;
+    }
+
+    for (ResidentTexture residentTexture : residentTextures.values()) {
+      residentTexture.requiredPixels = 0;
+    }
+    collectRequiredPixels(renderableInstances, cameraProvider, viewportHeight);
+    pickTargetResolutions();
+
+    for (Map.Entry<Texture, ResidentTexture> entry : residentTextures.entrySet()) {
+      ResidentTexture residentTexture = entry.getValue();
+      if (!residentTexture.isLoading
+          && residentTexture.targetSampleSize != residentTexture.residentSampleSize) {
+        reload(entry.getKey(), residentTexture, residentTexture.targetSampleSize);
+      }
+    }
+  }
+
+  private void collectRequiredPixels(
+      ArrayList<RenderableInstance> renderableInstances,
+      CameraProvider cameraProvider,
+      int viewportHeight) {
+    float[] cameraTransform = cameraProvider.getWorldModelMatrix().data;
+    // Focal length in pixels, from the vertical scale of the projection.
+    float focalLengthPixels =
+        cameraProvider.getProjectionMatrix().data[5] * viewportHeight * 0.5f;
+
+    for (int i = 0; i < renderableInstances.size(); i++) {
+      RenderableInstance renderableInstance = renderableInstances.get(i);
+      float radius = getBoundingRadius(renderableInstance.getRenderable().getCollisionShape());
+      if (radius <= 0) {
+        continue;
+      }
+
+      float[] transform = renderableInstance.getWorldModelMatrix().data;
+      float scale =
+          Math.max(
+              columnLength(transform, 0),
+              Math.max(columnLength(transform, 4), columnLength(transform, 8)));
+      float dx = transform[12] - cameraTransform[12];
+      float dy = transform[13] - cameraTransform[13];
+      float dz = transform[14] - cameraTransform[14];
+      float distance = Math.max((float) Math.sqrt(dx * dx + dy * dy + dz * dz), 1e-3f);
+      float projectedPixels = 2f * radius * scale * focalLengthPixels / distance;
+
+      materialTextures.clear();
+      for (int m = 0; m < renderableInstance.getMaterialsCount(); m++) {
+        Material material = renderableInstance.getMaterial(m);
+        // Materials without a Filament instance don't draw and have nothing to re-bind.
+        if (material != null && material.internalMaterialInstance.isValidInstance()) {
+          material.getMaterialParameters().collectTextures(materialTextures);
+        }
+      }
+      for (int t = 0; t < materialTextures.size(); t++) {
+        ResidentTexture residentTexture = residentTextures.get(materialTextures.get(t));
+        if (residentTexture != null) {
+          residentTexture.requiredPixels =
+              Math.max(residentTexture.requiredPixels, projectedPixels);
+        }
+      }
+    }
+    materialTextures.clear();
+  }
+
+  /** Picks the resolution each texture needs, then reduces the largest ones to fit the budget. */
+  private void pickTargetResolutions() {
+    long totalSizeInBytes = 0;
+    PriorityQueue<ResidentTexture> reducible =
+        new PriorityQueue<>(
+            Math.max(1, residentTextures.size()),
+            (a, b) ->
+                Long.compare(
+                    b.getSizeInBytes(b.targetSampleSize), a.getSizeInBytes(a.targetSampleSize)));
+
+    for (ResidentTexture residentTexture : residentTextures.values()) {
+      int requiredDimension =
+          Math.max(MIN_DIMENSION, (int) Math.ceil(residentTexture.requiredPixels));
+      residentTexture.targetSampleSize =
+          Math.min(
+              residentTexture.maxSampleSize,
+              TextureQualityTier.computeSampleSize(
+                  residentTexture.fullWidth, residentTexture.fullHeight, requiredDimension));
+      totalSizeInBytes += residentTexture.getSizeInBytes(residentTexture.targetSampleSize);
+      if (residentTexture.targetSampleSize < residentTexture.maxSampleSize) {
+        reducible.add(residentTexture);
+      }
+    }
+
+    while (totalSizeInBytes > budgetInBytes && !reducible.isEmpty()) {
+      ResidentTexture largest = reducible.poll();
+      totalSizeInBytes -= largest.getSizeInBytes(largest.targetSampleSize);
+      largest.targetSampleSize *= 2;
+      totalSizeInBytes += largest.getSizeInBytes(largest.targetSampleSize);
+      if (largest.targetSampleSize < largest.maxSampleSize) {
+        reducible.add(largest);
+      }
+    }
+  }
+
+  private void reload(Texture texture, ResidentTexture residentTexture, int sampleSize) {
+    residentTexture.isLoading = true;
+    int maxDimension = residentTexture.getMaxDimension(sampleSize);
+    CompletableFuture.supplyAsync(
+            () -> {
+              long startNanos = System.nanoTime();
+              return TextureMipChain.create(
+                  Texture.Builder.decodeBitmap(
+                      residentTexture.sourceBytes,
+                      residentTexture.inPremultiplied,
+                      maxDimension),
+                  residentTexture.usage,
+                  System.nanoTime() - startNanos);
+            },
+            ThreadPools.getThreadPoolExecutor())
+        .whenCompleteAsync(
+            (mipChain, throwable) -> {
+              residentTexture.isLoading = false;
+              if (throwable != null) {
+                Log.e(TAG, "Unable to change the resolution of a texture", throwable);
+                return;
+              }
+              // Skip the upload if the texture was released while decoding.
+              if (residentTextures.get(texture) == residentTexture) {
+                residentTexture.residentSampleSize = sampleSize;
+                ResourceManager.getInstance()
+                    .getTextureStreamer()
+                    .enqueue(texture, mipChain);
+              }
+            },
+            ThreadPools.getMainExecutor());
+  }
+
+  @Override
+  public long reclaimReleasedResources() {
+    // Released textures are dropped by the weak map, their sources with them.
+    return residentTextures.size();
+  }
+
+  @Override
+  public void destroyAllResources() {
+    residentTextures.clear();
+  }
+
+  private static float getBoundingRadius(@Nullable CollisionShape collisionShape) {
+    if (collisionShape instanceof Box) {
+      Vector3 size = ((Box) collisionShape).getSize();
+      return size.length() * 0.5f;
+    } else if (collisionShape instanceof Sphere) {
+      return ((Sphere) collisionShape).getRadius();
+    }
+    return 0;
+  }
+
+  private static float columnLength(float[] matrix, int offset) {
+    float x = matrix[offset];
+    float y = matrix[offset + 1];
+    float z = matrix[offset + 2];
+    return (float) Math.sqrt(x * x + y * y + z * z);
+  }
+}
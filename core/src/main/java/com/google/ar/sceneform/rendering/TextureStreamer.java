@@ -0,0 +1,183 @@
+package com.google.ar.sceneform.rendering;
+
+import com.google.ar.sceneform.resources.ResourceHolder;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Uploads texture images prepared on worker threads within a per frame budget, so that a model
+ * with many large textures doesn't stall the frame it finishes loading on.
+ *
+ * <p>Two kinds of uploads are queued: new textures when upload budgeting or CPU mip generation is
+ * enabled, and the full resolution images of progressively loaded {@link Texture}s, which are
+ * swapped in place of their low resolution placeholders.
+ *
+ * <p>A swap re-binds every material the texture was applied to, see {@link
+ * Texture#replaceFilamentTexture}, and the placeholders are destroyed a couple of frames later.
+ * Must be used on the main thread.
+ */
+final class TextureStreamer implements ResourceHolder {
+  // Frames to wait before destroying a replaced placeholder, so that the frames already submitted
+  // with it are done.
+  private static final int RETIRE_FRAME_DELAY = 2;
+
+  private final ArrayDeque<PendingUpload> pendingUploads = new ArrayDeque<>();
+  private final ArrayList<RetiredTexture> retiredTextures = new ArrayList<>();
+  private boolean isProgressiveLoadingEnabled = false;
+  private int maxSwapsPerFrame = 1;
+  private long maxUploadBytesPerFrame = Long.MAX_VALUE;
+  private long frameNumber = 0;
+  private long uploadCount = 0;
+  private long lastFrameUploadBytes = 0;
+
+  private static final class PendingUpload {
+    private final long sizeInBytes;
+    private final boolean isSwap;
+    private final Runnable upload;
+
+    PendingUpload(long sizeInBytes, boolean isSwap, Runnable upload) {
+      this.sizeInBytes = sizeInBytes;
+      this.isSwap = isSwap;
+      this.upload = upload;
+    }
+  }
+
+  private static final class RetiredTexture {
+    private final com.google.android.filament.Texture texture;
+    private final long frameNumber;
+
+    RetiredTexture(com.google.android.filament.Texture texture, long frameNumber) {
+      this.texture = texture;
+      this.frameNumber = frameNumber;
+    }
+  }
+
+  boolean isProgressiveLoadingEnabled() {
+    return isProgressiveLoadingEnabled;
+  }
+
+  void setProgressiveLoadingEnabled(boolean enabled) {
+    isProgressiveLoadingEnabled = enabled;
+  }
+
+  void setMaxSwapsPerFrame(int maxSwapsPerFrame) {
+    if (maxSwapsPerFrame < 1) {
+      throw new IllegalArgumentException("maxUploadsPerFrame must be at least 1.");
+    }
+    this.maxSwapsPerFrame = maxSwapsPerFrame;
+  }
+
+  void setMaxUploadBytesPerFrame(long maxUploadBytesPerFrame) {
+    if (maxUploadBytesPerFrame < 1) {
+      throw new IllegalArgumentException("maxBytesPerFrame must be positive.");
+    }
+    this.maxUploadBytesPerFrame = maxUploadBytesPerFrame;
+  }
+
+  /** Returns true if new textures are uploaded through the queue rather than immediately. */
+  boolean isUploadBudgeted() {
+    return maxUploadBytesPerFrame != Long.MAX_VALUE;
+  }
+
+  int getPendingUploadCount() {
+    return pendingUploads.size();
+  }
+
+  long getUploadCount() {
+    return uploadCount;
+  }
+
+  long getLastFrameUploadBytes() {
+    return lastFrameUploadBytes;
+  }
+
+  /** Queues the full resolution image of a texture that currently holds a placeholder. */
+  void enqueue(Texture texture, TextureMipChain mipChain) {
+    // The texture may be garbage collected before its turn comes.
+    WeakReference<Texture> textureReference = new WeakReference<>(texture);
+    pendingUploads.add(
+        new PendingUpload(
+            mipChain.getSizeInBytes(),
+            /* isSwap= */ true,
+            () -> {
+              Texture target = textureReference.get();
+              if (target == null) {
+                return;
+              }
+              com.google.android.filament.Texture replaced =
+                  target.replaceFilamentTexture(mipChain.createTexture());
+              retiredTextures.add(new RetiredTexture(replaced, frameNumber));
+              ResourceManager.getInstance().notifyTextureLoaded(target, mipChain);
+            }));
+  }
+
+  /** Queues the upload of a new texture, {@code upload} creates it from the mip chain. */
+  void enqueueUpload(TextureMipChain mipChain, Runnable upload) {
+    pendingUploads.add(new PendingUpload(mipChain.getSizeInBytes(), /* isSwap= */ false, upload));
+  }
+
+  /**
+   * Runs queued uploads until the per frame byte budget or swap count is reached, at least one per
+   * frame. Called by the {@link Renderer} before the renderables are prepared for drawing.
+   */
+  void uploadPendingTextures() {
+    frameNumber++;
+    int swaps = 0;
+    long uploadBytes = 0;
+    while (!pendingUploads.isEmpty()) {
+      PendingUpload pendingUpload = pendingUploads.peek();
+      boolean isOverBudget =
+          uploadBytes + pendingUpload.sizeInBytes > maxUploadBytesPerFrame
+              || (pendingUpload.isSwap && swaps >= maxSwapsPerFrame);
+      if (uploadBytes > 0 && isOverBudget) {
+        break;
+      }
+
+      pendingUploads.poll();
+      pendingUpload.upload.run();
+      uploadBytes += pendingUpload.sizeInBytes;
+      uploadCount++;
+      if (pendingUpload.isSwap) {
+        swaps++;
+      }
+    }
+    lastFrameUploadBytes = uploadBytes;
+  }
+
+  @Override
+  public long reclaimReleasedResources() {
+    int retainedCount = 0;
+    for (int i = 0; i < retiredTextures.size(); i++) {
+      RetiredTexture retiredTexture = retiredTextures.get(i);
+      if (frameNumber - retiredTexture.frameNumber >= RETIRE_FRAME_DELAY) {
+        destroy(retiredTexture.texture);
+      } else {
+        retiredTextures.set(retainedCount++, retiredTexture);
+      }
+    }
+    retiredTextures.subList(retainedCount, retiredTextures.size()).clear();
+    return pendingUploads.size() + retiredTextures.size();
+  }
+
+  @Override
+  public int getPendingDisposalCount() {
+    return retiredTextures.size();
+  }
+
+  @Override
+  public void destroyAllResources() {
+    pendingUploads.clear();
+    for (RetiredTexture retiredTexture : retiredTextures) {
+      destroy(retiredTexture.texture);
+    }
+    retiredTextures.clear();
+  }
+
+  private static void destroy(com.google.android.filament.Texture texture) {
+    IEngine engine = EngineInstance.getEngine();
+    if (engine != null && engine.isValid()) {
+      engine.destroyTexture(texture);
+    }
+  }
+}
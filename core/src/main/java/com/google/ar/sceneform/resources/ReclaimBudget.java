@@ -0,0 +1,66 @@
+package com.google.ar.sceneform.resources;
+
+/**
+ * Limits how much cleanup work a single call to {@link
+ * ResourceHolder#reclaimReleasedResources(ReclaimBudget)} may do. A budget is shared by all the
+ * holders reclaimed during the same frame.
+ *
+ * <p>The first disposal is always allowed so that the backlog keeps shrinking even when a single
+ * disposal exceeds the time budget.
+ *
+ * @hide
+ */
+public class ReclaimBudget {
+  private int maxDisposals;
+  private long deadlineNanos;
+  private int disposalCount;
+
+  /**
+   * @param maxDisposals maximum number of objects that may be disposed
+   * @param maxDurationNanos maximum time that may be spent disposing objects, starting now
+   */
+  public ReclaimBudget(int maxDisposals, long maxDurationNanos) {
+    reset(maxDisposals, maxDurationNanos);
+  }
+
+  /**
+   * Starts a new budget, so that a single instance can be reused every frame.
+   *
+   * @param maxDisposals maximum number of objects that may be disposed
+   * @param maxDurationNanos maximum time that may be spent disposing objects, starting now
+   */
+  public void reset(int maxDisposals, long maxDurationNanos) {
+    this.maxDisposals = maxDisposals;
+    long now = System.nanoTime();
+    // Saturate instead of overflowing when the duration is unlimited.
+    this.deadlineNanos =
+        maxDurationNanos > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + maxDurationNanos;
+    disposalCount = 0;
+  }
+
+  /** Returns a budget that never runs out. */
+  public static ReclaimBudget unlimited() {
+    return new ReclaimBudget(Integer.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Reserves one disposal.
+   *
+   * @return false if the budget is exhausted and the disposal must be deferred to a later frame.
+   */
+  public boolean tryAcquire() {
+    if (disposalCount >= maxDisposals) {
+      return false;
+    }
+    if (disposalCount > 0 && deadlineNanos != Long.MAX_VALUE && System.nanoTime() >= deadlineNanos) {
+      return false;
+    }
+    disposalCount++;
+    return true;
+  }
+
+  /** Returns the number of disposals done within this budget. */
+  public int getDisposalCount() {
+    return disposalCount;
+  }
+}
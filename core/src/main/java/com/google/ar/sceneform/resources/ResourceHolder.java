@@ -9,6 +9,21 @@ public interface ResourceHolder {
    */
   long reclaimReleasedResources();
 
+  /**
+   * Polls for garbage collected objects and disposes associated data until the budget runs out.
+   * Objects that couldn't be disposed stay pending until a later call.
+   *
+   * @return Count of resources in use, including the ones still pending disposal.
+   */
+  default long reclaimReleasedResources(ReclaimBudget budget) {
+    return reclaimReleasedResources();
+  }
+
+  /** Returns the number of garbage collected objects still waiting to be disposed. */
+  default int getPendingDisposalCount() {
+    return 0;
+  }
+
   /** Ignores reference count and disposes any associated resources. */
   void destroyAllResources();
 }
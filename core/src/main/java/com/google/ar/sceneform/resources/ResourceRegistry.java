@@ -6,13 +6,21 @@ import com.google.ar.sceneform.utilities.Preconditions;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * ResourceRegistry keeps track of resources that have been loaded and are in the process of being
- * loaded. The registry maintains only weak references and doesn't prevent resources from being
- * collected.
+ * loaded. By default the registry maintains only weak references and doesn't prevent resources from
+ * being collected.
+ *
+ * <p>An optional strong cache can be enabled with {@link #setStrongCacheBudget(long,
+ * SizeEstimator)}. It keeps the most recently used resources reachable until their estimated size
+ * exceeds the budget, at which point the least recently used ones are handed back to the weak
+ * registry. Sizes are estimated outside of the registry lock, on the executor given with the
+ * budget, and resources join the strong cache once their size is known.
  *
  * @hide
  */
@@ -29,6 +37,39 @@ public class ResourceRegistry<T> implements ResourceHolder {
   @GuardedBy("lock")
   private final Map<Object, CompletableFuture<T>> futureRegistry = new HashMap<>();
 
+  // Access ordered so that iteration starts with the least recently used entry.
+  @GuardedBy("lock")
+  private final LinkedHashMap<Object, StrongEntry<T>> strongCache =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  @GuardedBy("lock")
+  @Nullable
+  private SizeEstimator<T> sizeEstimator = null;
+
+  @GuardedBy("lock")
+  private Executor sizeEstimatorExecutor = Runnable::run;
+
+  @GuardedBy("lock")
+  private long strongCacheBudgetBytes = 0;
+
+  @GuardedBy("lock")
+  private long strongCacheSizeBytes = 0;
+
+  @GuardedBy("lock")
+  private long hitCount = 0;
+
+  @GuardedBy("lock")
+  private long missCount = 0;
+
+  @GuardedBy("lock")
+  private long evictionCount = 0;
+
+  /** Estimates the memory held by a resource, used to enforce the strong cache budget. */
+  public interface SizeEstimator<T> {
+    /** Returns the estimated GPU and CPU memory used by the resource, in bytes. */
+    long estimateSizeInBytes(T resource);
+  }
+
   /**
    * Returns a future to a resource previously registered with the same id. If resource has not yet
    * been registered or was garbage collected, returns null. The future may be to a resource that
@@ -38,22 +79,41 @@ public class ResourceRegistry<T> implements ResourceHolder {
   public CompletableFuture<T> get(Object id) {
     Preconditions.checkNotNull(id, "Parameter 'id' was null.");
 
+    T resource = null;
     synchronized (lock) {
+      // Looking the entry up marks it as the most recently used one.
+      StrongEntry<T> strongEntry = strongCache.get(id);
+      if (strongEntry != null) {
+        hitCount++;
+        return CompletableFuture.completedFuture(strongEntry.resource);
+      }
+
       // If the resource has already finished loading, return a completed future to that resource.
       WeakReference<T> reference = registry.get(id);
       if (reference != null) {
-        T resource = reference.get();
+        resource = reference.get();
         if (resource != null) {
-          return CompletableFuture.completedFuture(resource);
+          hitCount++;
         } else {
           registry.remove(id);
         }
       }
 
-      // If the resource is in the process of loading, return the future directly.
-      // If the id is not registered, this will be null.
-      return futureRegistry.get(id);
+      if (resource == null) {
+        // If the resource is in the process of loading, return the future directly.
+        // If the id is not registered, this will be null.
+        CompletableFuture<T> futureResource = futureRegistry.get(id);
+        if (futureResource != null) {
+          hitCount++;
+        } else {
+          missCount++;
+        }
+        return futureResource;
+      }
     }
+
+    putStrong(id, resource);
+    return CompletableFuture.completedFuture(resource);
   }
 
   /**
@@ -78,10 +138,13 @@ public class ResourceRegistry<T> implements ResourceHolder {
 
       synchronized (lock) {
         registry.put(id, new WeakReference<>(resource));
+        // A previous resource must not be returned while the size of this one is estimated.
+        removeStrongLocked(id);
 
         // If the id was previously registered in the futureRegistry, make sure it is removed.
         futureRegistry.remove(id);
       }
+      putStrong(id, resource);
 
       return;
     }
@@ -91,12 +154,14 @@ public class ResourceRegistry<T> implements ResourceHolder {
 
       // If the id was previously registered in the completed registry, make sure it is removed.
       registry.remove(id);
+      removeStrongLocked(id);
     }
 
     @SuppressWarnings({"FutureReturnValueIgnored", "unused"})
     CompletableFuture<Void> registerFuture =
         futureResource.handle(
             (result, throwable) -> {
+              boolean isRegistered = false;
               synchronized (this) {
                 // Check to make sure that the future in the registry is this future.
                 // Otherwise, this id has already been overwritten with another resource.
@@ -107,10 +172,15 @@ public class ResourceRegistry<T> implements ResourceHolder {
                     if (throwable == null) {
                       // Only add a reference if there was no exception.
                       registry.put(id, new WeakReference<>(result));
+                      isRegistered = true;
                     }
                   }
                 }
               }
+              // This may be a loader thread, the size is estimated on the estimator executor.
+              if (isRegistered) {
+                putStrong(id, result);
+              }
               return null;
             });
   }
@@ -134,6 +204,147 @@ public class ResourceRegistry<T> implements ResourceHolder {
       }
 
       registry.clear();
+      strongCache.clear();
+      strongCacheSizeBytes = 0;
+    }
+  }
+
+  /**
+   * Enables the strong cache for this registry. Up to {@code maxBytes} of the most recently used
+   * resources are kept reachable even when nothing else references them. Sizes are estimated on
+   * the thread that registers the resource, looks it up or completes its load.
+   *
+   * @param maxBytes the budget of the strong cache, zero disables it
+   * @param sizeEstimator estimates the size of each resource, required when maxBytes is positive
+   */
+  public void setStrongCacheBudget(long maxBytes, @Nullable SizeEstimator<T> sizeEstimator) {
+    setStrongCacheBudget(maxBytes, sizeEstimator, Runnable::run);
+  }
+
+  /**
+   * Enables the strong cache for this registry, estimating sizes on the given executor. Use it
+   * when the estimator must run on a specific thread, since loads may complete on any thread.
+   *
+   * @param maxBytes the budget of the strong cache, zero disables it
+   * @param sizeEstimator estimates the size of each resource, required when maxBytes is positive
+   * @param sizeEstimatorExecutor runs the size estimator, outside of the registry lock
+   */
+  public void setStrongCacheBudget(
+      long maxBytes, @Nullable SizeEstimator<T> sizeEstimator, Executor sizeEstimatorExecutor) {
+    Preconditions.checkNotNull(
+        sizeEstimatorExecutor, "Parameter 'sizeEstimatorExecutor' was null.");
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Parameter 'maxBytes' was negative.");
+    }
+    if (maxBytes > 0) {
+      Preconditions.checkNotNull(sizeEstimator, "Parameter 'sizeEstimator' was null.");
+    }
+
+    synchronized (lock) {
+      strongCacheBudgetBytes = maxBytes;
+      this.sizeEstimator = sizeEstimator;
+      this.sizeEstimatorExecutor = sizeEstimatorExecutor;
+      trimStrongCacheLocked(maxBytes);
+    }
+  }
+
+  /** Returns the budget of the strong cache in bytes, zero when the strong cache is disabled. */
+  public long getStrongCacheBudget() {
+    synchronized (lock) {
+      return strongCacheBudgetBytes;
+    }
+  }
+
+  /** Evicts the least recently used resources until the strong cache uses at most maxBytes. */
+  public void trimStrongCache(long maxBytes) {
+    synchronized (lock) {
+      trimStrongCacheLocked(maxBytes);
+    }
+  }
+
+  /** Returns a snapshot of the cache counters of this registry. */
+  public Statistics getStatistics() {
+    synchronized (lock) {
+      return new Statistics(
+          hitCount,
+          missCount,
+          evictionCount,
+          strongCache.size(),
+          strongCacheSizeBytes,
+          strongCacheBudgetBytes);
+    }
+  }
+
+  /** Resets the hit, miss and eviction counters. */
+  public void resetStatistics() {
+    synchronized (lock) {
+      hitCount = 0;
+      missCount = 0;
+      evictionCount = 0;
+    }
+  }
+
+  /** Adds the resource to the strong cache once its size has been estimated. */
+  private void putStrong(Object id, T resource) {
+    SizeEstimator<T> sizeEstimator;
+    Executor executor;
+    synchronized (lock) {
+      sizeEstimator = this.sizeEstimator;
+      executor = sizeEstimatorExecutor;
+      if (strongCacheBudgetBytes <= 0 || sizeEstimator == null) {
+        return;
+      }
+    }
+
+    executor.execute(
+        () -> {
+          long sizeInBytes = Math.max(0, sizeEstimator.estimateSizeInBytes(resource));
+          synchronized (lock) {
+            // The id may have been registered again, or the cache disabled, in the meantime.
+            WeakReference<T> reference = registry.get(id);
+            if (reference != null
+                && reference.get() == resource
+                && this.sizeEstimator == sizeEstimator) {
+              putStrongLocked(id, resource, sizeInBytes);
+            }
+          }
+        });
+  }
+
+  @GuardedBy("lock")
+  private void putStrongLocked(Object id, T resource, long sizeInBytes) {
+    if (strongCacheBudgetBytes <= 0) {
+      return;
+    }
+
+    removeStrongLocked(id);
+
+    // A resource that can never fit would only flush everything else out of the cache.
+    if (sizeInBytes > strongCacheBudgetBytes) {
+      return;
+    }
+
+    strongCache.put(id, new StrongEntry<>(resource, sizeInBytes));
+    strongCacheSizeBytes += sizeInBytes;
+    trimStrongCacheLocked(strongCacheBudgetBytes);
+  }
+
+  @GuardedBy("lock")
+  private void removeStrongLocked(Object id) {
+    StrongEntry<T> entry = strongCache.remove(id);
+    if (entry != null) {
+      strongCacheSizeBytes -= entry.sizeInBytes;
+    }
+  }
+
+  @GuardedBy("lock")
+  private void trimStrongCacheLocked(long maxBytes) {
+    Iterator<StrongEntry<T>> iterator = strongCache.values().iterator();
+    while (strongCacheSizeBytes > maxBytes && iterator.hasNext()) {
+      StrongEntry<T> entry = iterator.next();
+      iterator.remove();
+      strongCacheSizeBytes -= entry.sizeInBytes;
+      evictionCount++;
     }
   }
 
@@ -144,4 +355,86 @@ public class ResourceRegistry<T> implements ResourceHolder {
     // counting in the other holders.
     return 0;
   }
+
+  /** Immutable snapshot of the counters of a {@link ResourceRegistry}. */
+  public static final class Statistics {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int strongCacheCount;
+    private final long strongCacheSizeBytes;
+    private final long strongCacheBudgetBytes;
+
+    Statistics(
+        long hitCount,
+        long missCount,
+        long evictionCount,
+        int strongCacheCount,
+        long strongCacheSizeBytes,
+        long strongCacheBudgetBytes) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.strongCacheCount = strongCacheCount;
+      this.strongCacheSizeBytes = strongCacheSizeBytes;
+      this.strongCacheBudgetBytes = strongCacheBudgetBytes;
+    }
+
+    /** Number of lookups that found a loaded or loading resource. */
+    public long getHitCount() {
+      return hitCount;
+    }
+
+    /** Number of lookups that found nothing and required a new load. */
+    public long getMissCount() {
+      return missCount;
+    }
+
+    /** Number of resources dropped from the strong cache to respect its budget. */
+    public long getEvictionCount() {
+      return evictionCount;
+    }
+
+    /** Number of resources currently held by the strong cache. */
+    public int getStrongCacheCount() {
+      return strongCacheCount;
+    }
+
+    /** Estimated size of the resources currently held by the strong cache. */
+    public long getStrongCacheSizeBytes() {
+      return strongCacheSizeBytes;
+    }
+
+    /** Budget of the strong cache, zero when it is disabled. */
+    public long getStrongCacheBudgetBytes() {
+      return strongCacheBudgetBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "Statistics{hits="
+          + hitCount
+          + ", misses="
+          + missCount
+          + ", evictions="
+          + evictionCount
+          + ", cached="
+          + strongCacheCount
+          + ", cachedBytes="
+          + strongCacheSizeBytes
+          + ", budgetBytes="
+          + strongCacheBudgetBytes
+          + "}";
+    }
+  }
+
+  private static final class StrongEntry<T> {
+    final T resource;
+    final long sizeInBytes;
+
+    StrongEntry(T resource, long sizeInBytes) {
+      this.resource = resource;
+      this.sizeInBytes = sizeInBytes;
+    }
+  }
 }
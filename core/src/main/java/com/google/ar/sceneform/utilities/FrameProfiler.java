@@ -0,0 +1,273 @@
+package com.google.ar.sceneform.utilities;
+
+import androidx.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records the time spent in each stage of a frame into fixed size histograms.
+ *
+ * <p>Stages are nested: a stage begun while another one is running is accounted to both. Each
+ * stage keeps a log-linear histogram of its durations with about 6% precision, from which the
+ * percentiles are computed. Recording doesn't allocate.
+ *
+ * <p>While {@link Tracing} is enabled, each stage is also emitted as a trace section, even if the
+ * profiler itself is disabled.
+ *
+ * <p>Every {@link #setReportInterval(int)} frames, the {@link OnReportListener} can query the
+ * statistics of the frames since the previous report, after which they are reset. Must be used on
+ * the main thread.
+ */
+public class FrameProfiler {
+  /** A stage of the frame, with the stage containing it. */
+  public enum Stage {
+    /** The whole frame. */
+    FRAME(null, "Sceneform.frame"),
+    /** ARCore {@code Session.update()}. */
+    AR_SESSION_UPDATE(FRAME, "Sceneform.arSessionUpdate"),
+    /** Refresh of the trackables updated by ARCore. */
+    TRACKABLES(FRAME, "Sceneform.trackables"),
+    /** Update of the plane renderer. */
+    PLANES(FRAME, "Sceneform.planes"),
+    /** Light estimation. */
+    LIGHT_ESTIMATION(FRAME, "Sceneform.lightEstimation"),
+    /** Dispatch of the scene update to the nodes. */
+    SCENE_UPDATE(FRAME, "Sceneform.sceneUpdate"),
+    /** Rendering of the frame. */
+    RENDER(FRAME, "Sceneform.render"),
+    /** Push of the renderable transforms and materials to Filament. */
+    TRANSFORMS(RENDER, "Sceneform.transforms"),
+    /** Filament {@code Renderer.render()} up to {@code endFrame()}. */
+    FILAMENT_RENDER(RENDER, "Sceneform.filamentRender"),
+    /** Disposal of the released resources. */
+    CLEANUP(RENDER, "Sceneform.cleanup");
+
+    @Nullable private final Stage parent;
+    private final String traceName;
+
+    Stage(@Nullable Stage parent, String traceName) {
+      this.parent = parent;
+      this.traceName = traceName;
+    }
+
+    /** Returns the stage containing this one, or null for {@link #FRAME}. */
+    @Nullable
+    public Stage getParent() {
+      return parent;
+    }
+
+    /** Returns the name of the trace section emitted for this stage. */
+    public String getTraceName() {
+      return traceName;
+    }
+  }
+
+  /** Interface definition for a callback invoked with the statistics of the last frames. */
+  public interface OnReportListener {
+    /**
+     * Called every report interval. The statistics are reset after this returns.
+     *
+     * @param profiler the profiler to query the statistics of the last frames from
+     */
+    void onReport(FrameProfiler profiler);
+  }
+
+  private static final double NANOSECONDS_TO_MILLISECONDS = 0.000001;
+  private static final int DEFAULT_REPORT_INTERVAL = 60;
+  // Each power of two is split in this many buckets.
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Durations are recorded in microseconds, up to about 17 minutes.
+  private static final int MAX_EXPONENT = 30;
+  private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+  private static final Stage[] STAGES = Stage.values();
+
+  private final long[][] buckets = new long[STAGES.length][BUCKET_COUNT];
+  private final long[] counts = new long[STAGES.length];
+  private final long[] totalNanos = new long[STAGES.length];
+  private final long[] maxNanos = new long[STAGES.length];
+
+  // Stages currently running, innermost last.
+  private final int[] runningStages = new int[STAGES.length];
+  private final long[] runningStartNanos = new long[STAGES.length];
+  private final boolean[] runningTraced = new boolean[STAGES.length];
+  private int runningCount = 0;
+
+  private boolean isEnabled = false;
+  private int reportInterval = DEFAULT_REPORT_INTERVAL;
+  private int framesSinceReport = 0;
+  @Nullable private OnReportListener onReportListener = null;
+
+  public boolean isEnabled() {
+    return isEnabled;
+  }
+
+  /** Enables recording, disabled by default. */
+  public void setEnabled(boolean enabled) {
+    isEnabled = enabled;
+  }
+
+  /** Sets the number of frames between reports, 60 by default. */
+  public void setReportInterval(int frameCount) {
+    if (frameCount < 1) {
+      throw new IllegalArgumentException("frameCount must be at least 1.");
+    }
+    reportInterval = frameCount;
+  }
+
+  public void setOnReportListener(@Nullable OnReportListener listener) {
+    onReportListener = listener;
+  }
+
+  /** Starts timing a stage. */
+  public void begin(Stage stage) {
+    boolean isTracing = Tracing.isEnabled();
+    if ((!isEnabled && !isTracing) || runningCount == runningStages.length) {
+      return;
+    }
+    if (isTracing) {
+      Tracing.beginSection(stage.getTraceName());
+    }
+    runningStages[runningCount] = stage.ordinal();
+    runningTraced[runningCount] = isTracing;
+    runningStartNanos[runningCount] = System.nanoTime();
+    runningCount++;
+  }
+
+  /**
+   * Stops timing a stage and records its duration. Stages begun inside it and not ended, for
+   * instance because of an early return, are discarded.
+   */
+  public void end(Stage stage) {
+    if (runningCount == 0) {
+      return;
+    }
+    long endNanos = System.nanoTime();
+    for (int i = runningCount - 1; i >= 0; i--) {
+      if (runningStages[i] == stage.ordinal()) {
+        if (isEnabled) {
+          record(stage.ordinal(), endNanos - runningStartNanos[i]);
+        }
+        // Close the trace sections of the discarded stages as well.
+        for (int j = runningCount - 1; j >= i; j--) {
+          if (runningTraced[j]) {
+            Tracing.endSection();
+          }
+        }
+        runningCount = i;
+        break;
+      }
+    }
+
+    if (isEnabled && stage == Stage.FRAME && ++framesSinceReport >= reportInterval) {
+      framesSinceReport = 0;
+      if (onReportListener != null) {
+        onReportListener.onReport(this);
+      }
+      reset();
+    }
+  }
+
+  /** Returns the number of times the stage ran since the last report. */
+  public long getCount(Stage stage) {
+    return counts[stage.ordinal()];
+  }
+
+  public double getAverageMillis(Stage stage) {
+    long count = counts[stage.ordinal()];
+    return count == 0 ? 0.0 : totalNanos[stage.ordinal()] * NANOSECONDS_TO_MILLISECONDS / count;
+  }
+
+  public double getMaxMillis(Stage stage) {
+    return maxNanos[stage.ordinal()] * NANOSECONDS_TO_MILLISECONDS;
+  }
+
+  /**
+   * Returns the duration under which the given fraction of the stage runs fell since the last
+   * report.
+   *
+   * @param percentile the fraction of runs, between 0 and 1. For instance 0.95 for p95.
+   */
+  public double getPercentileMillis(Stage stage, double percentile) {
+    if (percentile < 0.0 || percentile > 1.0) {
+      throw new IllegalArgumentException("percentile must be between 0 and 1.");
+    }
+    int index = stage.ordinal();
+    long count = counts[index];
+    if (count == 0) {
+      return 0.0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile * count));
+    long[] stageBuckets = buckets[index];
+    long cumulativeCount = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      cumulativeCount += stageBuckets[bucket];
+      if (cumulativeCount >= rank) {
+        // The middle of the bucket, never above the largest recorded duration.
+        double micros = (getBucketLowerBound(bucket) + getBucketLowerBound(bucket + 1)) * 0.5;
+        return Math.min(micros * 0.001, getMaxMillis(stage));
+      }
+    }
+    return getMaxMillis(stage);
+  }
+
+  /** Clears the statistics. */
+  public void reset() {
+    for (int i = 0; i < STAGES.length; i++) {
+      Arrays.fill(buckets[i], 0);
+      counts[i] = 0;
+      totalNanos[i] = 0;
+      maxNanos[i] = 0;
+    }
+  }
+
+  /** Returns a summary of the statistics, one line per stage that ran. */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (Stage stage : STAGES) {
+      if (counts[stage.ordinal()] == 0) {
+        continue;
+      }
+      builder.append(
+          String.format(
+              Locale.US,
+              "%s: p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms (%d)%n",
+              stage,
+              getPercentileMillis(stage, 0.5),
+              getPercentileMillis(stage, 0.95),
+              getPercentileMillis(stage, 0.99),
+              getMaxMillis(stage),
+              counts[stage.ordinal()]));
+    }
+    return builder.toString();
+  }
+
+  private void record(int index, long durationNanos) {
+    buckets[index][getBucket(durationNanos / 1000)]++;
+    counts[index]++;
+    totalNanos[index] += durationNanos;
+    maxNanos[index] = Math.max(maxNanos[index], durationNanos);
+  }
+
+  private static int getBucket(long micros) {
+    if (micros < SUB_BUCKET_COUNT) {
+      return (int) Math.max(0, micros);
+    }
+    int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) ((micros >> shift) & (SUB_BUCKET_COUNT - 1));
+    return Math.min((shift + 1) * SUB_BUCKET_COUNT + subBucket, BUCKET_COUNT - 1);
+  }
+
+  private static long getBucketLowerBound(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKET_COUNT - 1;
+    int subBucket = bucket % SUB_BUCKET_COUNT;
+    return (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+  }
+}
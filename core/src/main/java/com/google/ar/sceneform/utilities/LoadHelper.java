@@ -21,7 +21,6 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
@@ -274,28 +273,23 @@ public class LoadHelper {
   }
 
   /**
-   * Creates an inputStream to read from remote URL
+   * Creates an inputStream to read from remote URL. The download is performed by the {@link
+   * RemoteAssetDownloader}, which shares identical in-flight requests and resumes interrupted
+   * downloads.
    *
    * @throws IllegalArgumentException for URL's that can't be loaded.
    */
   private static Callable<InputStream> remoteUriToInputStreamCreator(
       Uri sourceUri, @Nullable Map<String, String> requestProperty) {
+    String url = sourceUri.toString();
     try {
-      URL sourceURL = new URL(sourceUri.toString());
-      URLConnection conn = sourceURL.openConnection();
-      // Apply properties to the connection if they are available.
-      if (requestProperty != null) {
-        for (Map.Entry<String, String> entry : requestProperty.entrySet()) {
-          conn.addRequestProperty(entry.getKey(), entry.getValue());
-        }
-      }
-      return () -> conn.getInputStream();
+      // Validate eagerly so that malformed urls fail when the source is set.
+      new URL(url);
     } catch (MalformedURLException ex) {
       // This is rare. Most bad URL's get filtered out when the URL class is constructed.
       throw new IllegalArgumentException("Unable to parse url: \'" + sourceUri + "'", ex);
-    } catch (IOException e) {
-      throw new AssertionError("Error opening url connection: '" + sourceUri + "'", e);
     }
+    return () -> RemoteAssetDownloader.getInstance().downloadAndWait(url, requestProperty);
   }
 
   private static Uri resolve(Uri parent, Uri child) {
@@ -0,0 +1,341 @@
+package com.google.ar.sceneform.utilities;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.ar.sceneform.BuildConfig;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache for asset payloads that have already been processed by Sceneform. Only decoded
+ * texture pixels are cached, glTF geometry, bounds and collision shapes are still loaded from the
+ * source every time.
+ *
+ * <p>Entries are keyed by the kind of payload, any options that affect processing, the library
+ * version and the source. Local sources are identified by {@link #getSourceId(Context, Uri)}, so
+ * a hit doesn't read them at all, other sources by a SHA-256 digest of their bytes. A new
+ * Sceneform release or a changed source never reads a stale entry.
+ *
+ * <p>Entries are memory-mapped in both directions, so the payload is copied straight between the
+ * file and its destination, such as the pixels of a bitmap, without a heap copy. Writes go to a
+ * temporary file in a subdirectory that is renamed into place, which keeps a crash mid-write from
+ * leaving a truncated entry behind. Temporary files don't count towards the cache size and are
+ * never trimmed while being written, the ones left behind by a crash are deleted once they are
+ * old. When the total size exceeds the configured maximum the least recently used entries are
+ * deleted.
+ *
+ * <p>All methods are safe to call from worker threads.
+ *
+ * @hide
+ */
+public final class ProcessedAssetCache {
+  private static final String TAG = ProcessedAssetCache.class.getSimpleName();
+  private static final String DEFAULT_DIRECTORY_NAME = "sceneform_processed_assets";
+  private static final String TEMP_DIRECTORY_NAME = "tmp";
+  private static final String TEMP_SUFFIX = ".tmp";
+  // Temporary files older than this are left over from a crash, no write takes that long.
+  private static final long STALE_TEMP_FILE_AGE_MS = 60L * 60L * 1000L;
+  // Default cache size of 256MB.
+  private static final long DEFAULT_MAX_SIZE_BYTES = 256L << 20;
+
+  private final File directory;
+  private final File tempDirectory;
+  private final long maxSizeInBytes;
+  private final Object lock = new Object();
+
+  private long sizeInBytes = -1;
+  private long hitCount = 0;
+  private long missCount = 0;
+
+  /** Writes a payload into a new cache entry. */
+  public interface PayloadWriter {
+    /** Fills the buffer, which maps exactly the size given to {@link #put}. */
+    void write(ByteBuffer buffer);
+  }
+
+  /**
+   * Creates a cache in the application's cache directory with the default maximum size.
+   *
+   * @param context used to resolve {@link Context#getCacheDir()}
+   */
+  public ProcessedAssetCache(Context context) {
+    this(new File(context.getCacheDir(), DEFAULT_DIRECTORY_NAME), DEFAULT_MAX_SIZE_BYTES);
+  }
+
+  /**
+   * Creates a cache stored in the given directory.
+   *
+   * @param directory the directory that holds the cache entries, created if needed
+   * @param maxSizeInBytes the total size the cache is trimmed to after each write
+   */
+  public ProcessedAssetCache(File directory, long maxSizeInBytes) {
+    Preconditions.checkNotNull(directory, "Parameter \"directory\" was null.");
+    if (maxSizeInBytes <= 0) {
+      throw new IllegalArgumentException("maxSizeInBytes must be positive.");
+    }
+    this.directory = directory;
+    this.tempDirectory = new File(directory, TEMP_DIRECTORY_NAME);
+    this.maxSizeInBytes = maxSizeInBytes;
+  }
+
+  /**
+   * Computes the cache key for a processed payload.
+   *
+   * @param kind identifies the type of payload, for example {@code "texture"}
+   * @param options describes every setting that changes the processed output
+   * @param sourceBytes the unprocessed source data
+   */
+  public static String computeKey(String kind, String options, byte[] sourceBytes) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(BuildConfig.VERSION_NAME.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(kind.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(options.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(sourceBytes);
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Computes the cache key for a processed payload of a local source.
+   *
+   * @param kind identifies the type of payload, for example {@code "texture"}
+   * @param options describes every setting that changes the processed output
+   * @param sourceId the id returned by {@link #getSourceId(Context, Uri)}
+   */
+  public static String computeKey(String kind, String options, String sourceId) {
+    // The marker keeps an id from ever colliding with the bytes of a source.
+    return computeKey(kind, options + "\u0000sourceId", sourceId.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns an id that changes whenever the content of a local source may have changed, so that
+   * it can be looked up without reading the source. Files are identified by their size and
+   * modification time, assets and resources by the time the app was last updated.
+   *
+   * @return the id, or null for remote and content sources, which must be keyed by their bytes
+   */
+  @Nullable
+  public static String getSourceId(Context context, Uri sourceUri) {
+    String stamp;
+    if (LoadHelper.isFileAsset(sourceUri)) {
+      @Nullable String path = sourceUri.getPath();
+      File file = path != null ? new File(path) : null;
+      if (file != null && file.isFile()) {
+        stamp = file.length() + ":" + file.lastModified();
+      } else {
+        stamp = getAppUpdateStamp(context);
+      }
+    } else if (LoadHelper.isAndroidResource(sourceUri)) {
+      stamp = getAppUpdateStamp(context);
+    } else {
+      return null;
+    }
+    return stamp != null ? sourceUri + "@" + stamp : null;
+  }
+
+  @Nullable
+  private static String getAppUpdateStamp(Context context) {
+    try {
+      return Long.toString(
+          context
+              .getPackageManager()
+              .getPackageInfo(context.getPackageName(), 0)
+              .lastUpdateTime);
+    } catch (PackageManager.NameNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a read only memory-mapped view of the cached payload for the key, or null if there is
+   * no entry. The mapping stays valid after the entry is evicted.
+   */
+  @Nullable
+  public ByteBuffer map(String key) {
+    File file = new File(directory, key);
+    ByteBuffer buffer = null;
+    if (file.isFile()) {
+      try (FileInputStream inputStream = new FileInputStream(file);
+          FileChannel channel = inputStream.getChannel()) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        // Touch the entry so that trimming evicts the least recently used files first.
+        file.setLastModified(System.currentTimeMillis());
+      } catch (IOException e) {
+        Log.w(TAG, "Unable to read cache entry " + key, e);
+        file.delete();
+      }
+    }
+
+    synchronized (lock) {
+      if (buffer != null) {
+        hitCount++;
+      } else {
+        missCount++;
+      }
+    }
+    return buffer;
+  }
+
+  /** Stores a payload under the key, replacing any existing entry. Failures are logged. */
+  public void put(String key, byte[] data) {
+    put(key, data.length, buffer -> buffer.put(data));
+  }
+
+  /**
+   * Stores a payload under the key, replacing any existing entry. The writer fills a
+   * memory-mapped view of the new entry. Failures are logged.
+   *
+   * @param length the exact size of the payload in bytes
+   */
+  public void put(String key, int length, PayloadWriter writer) {
+    if (length > maxSizeInBytes) {
+      return;
+    }
+
+    // The payload is written outside of the lock, each write uses its own temporary file.
+    File tempFile;
+    try {
+      if (!tempDirectory.isDirectory() && !tempDirectory.mkdirs()) {
+        Log.w(TAG, "Unable to create cache directory " + tempDirectory);
+        return;
+      }
+      tempFile = File.createTempFile(key, TEMP_SUFFIX, tempDirectory);
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to create cache entry " + key, e);
+      return;
+    }
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        FileChannel channel = randomAccessFile.getChannel()) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+      writer.write(buffer);
+      buffer.force();
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Unable to write cache entry " + key, e);
+      tempFile.delete();
+      return;
+    }
+
+    synchronized (lock) {
+      File file = new File(directory, key);
+      long previousSize = file.isFile() ? file.length() : 0;
+      if (!tempFile.renameTo(file)) {
+        Log.w(TAG, "Unable to commit cache entry " + key);
+        tempFile.delete();
+        return;
+      }
+
+      if (sizeInBytes >= 0) {
+        sizeInBytes += length - previousSize;
+      }
+      trimToSizeLocked(maxSizeInBytes);
+    }
+  }
+
+  /** Deletes every entry in the cache. */
+  public void clear() {
+    synchronized (lock) {
+      trimToSizeLocked(0);
+    }
+  }
+
+  /** Returns the total size of the cache entries on disk. */
+  public long getSizeInBytes() {
+    synchronized (lock) {
+      return computeSizeLocked();
+    }
+  }
+
+  /** Returns the number of lookups that found an entry. */
+  public long getHitCount() {
+    synchronized (lock) {
+      return hitCount;
+    }
+  }
+
+  /** Returns the number of lookups that did not find an entry. */
+  public long getMissCount() {
+    synchronized (lock) {
+      return missCount;
+    }
+  }
+
+  private long computeSizeLocked() {
+    if (sizeInBytes < 0) {
+      sizeInBytes = 0;
+      File[] files = directory.listFiles(File::isFile);
+      if (files != null) {
+        for (File file : files) {
+          sizeInBytes += file.length();
+        }
+      }
+      deleteStaleTempFilesLocked();
+    }
+    return sizeInBytes;
+  }
+
+  private void deleteStaleTempFilesLocked() {
+    File[] tempFiles = tempDirectory.listFiles();
+    if (tempFiles == null) {
+      return;
+    }
+    long staleTime = System.currentTimeMillis() - STALE_TEMP_FILE_AGE_MS;
+    for (File tempFile : tempFiles) {
+      if (tempFile.lastModified() < staleTime) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private void trimToSizeLocked(long maxSize) {
+    if (computeSizeLocked() <= maxSize) {
+      return;
+    }
+
+    File[] files = directory.listFiles(File::isFile);
+    if (files == null) {
+      sizeInBytes = 0;
+      return;
+    }
+
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File file : files) {
+      if (sizeInBytes <= maxSize) {
+        break;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        sizeInBytes -= length;
+      }
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,384 @@
+package com.google.ar.sceneform.utilities;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads remote assets for {@link LoadHelper}.
+ *
+ * <ul>
+ *   <li>Downloads run on a bounded pool so that only a few connections are open at once. Fully
+ *       read responses leave the connection in the platform keep-alive pool for re-use.
+ *   <li>Requests for a url that is already being downloaded with the same request properties
+ *       share the in-flight download instead of opening a second connection.
+ *   <li>Responses are streamed to a temporary file instead of being held in memory, so large
+ *       models don't need several copies of their bytes on the heap.
+ *   <li>When a connection drops part way through a response, the download resumes with an HTTP
+ *       range request from the last received byte if the server supports it. A partial response
+ *       that doesn't start at that byte is discarded and the full body is requested instead.
+ *   <li>Registered {@link ProgressListener}s are notified as bytes arrive.
+ * </ul>
+ *
+ * <p>The downloader only relies on {@link java.net}, so it can be exercised against a local HTTP
+ * server.
+ *
+ * @hide
+ */
+@SuppressWarnings("AndroidApiChecker") // CompletableFuture
+public final class RemoteAssetDownloader {
+  private static final String TAG = RemoteAssetDownloader.class.getSimpleName();
+  private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+  private static final int DEFAULT_MAX_RESUME_ATTEMPTS = 3;
+  private static final int BUFFER_SIZE = 16 * 1024;
+  // Limits how often progress is reported for a download.
+  private static final long PROGRESS_INTERVAL_BYTES = 64 * 1024;
+
+  @Nullable private static RemoteAssetDownloader instance = null;
+
+  /** Notified as remote assets are downloaded. Called from the download threads. */
+  public interface ProgressListener {
+    /**
+     * @param url the url being downloaded
+     * @param bytesDownloaded the number of bytes received so far
+     * @param totalBytes the size of the asset, or -1 if the server didn't report it
+     */
+    void onProgress(String url, long bytesDownloaded, long totalBytes);
+  }
+
+  private final ExecutorService executor;
+  private final int maxResumeAttempts;
+  private final Map<String, CompletableFuture<File>> inFlightDownloads = new HashMap<>();
+  private final CopyOnWriteArrayList<ProgressListener> progressListeners =
+      new CopyOnWriteArrayList<>();
+  // Where responses are written while they download, the platform temporary directory if null.
+  @Nullable private volatile File downloadDirectory = null;
+
+  /**
+   * @param maxConcurrentDownloads the maximum number of connections open at once
+   * @param maxResumeAttempts how many times an interrupted download is resumed before failing
+   */
+  public RemoteAssetDownloader(int maxConcurrentDownloads, int maxResumeAttempts) {
+    if (maxConcurrentDownloads < 1 || maxResumeAttempts < 0) {
+      throw new IllegalArgumentException("Invalid downloader configuration.");
+    }
+    this.maxResumeAttempts = maxResumeAttempts;
+    ThreadPoolExecutor threadPoolExecutor =
+        new ThreadPoolExecutor(
+            maxConcurrentDownloads,
+            maxConcurrentDownloads,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new DownloadThreadFactory());
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    this.executor = threadPoolExecutor;
+  }
+
+  /** Returns the downloader used by {@link LoadHelper}. */
+  public static synchronized RemoteAssetDownloader getInstance() {
+    if (instance == null) {
+      instance =
+          new RemoteAssetDownloader(DEFAULT_MAX_CONCURRENT_DOWNLOADS, DEFAULT_MAX_RESUME_ATTEMPTS);
+    }
+    return instance;
+  }
+
+  /**
+   * Replaces the downloader used by {@link LoadHelper}, for example to change the number of
+   * concurrent connections. Downloads already in flight complete on the previous downloader.
+   */
+  public static synchronized void setInstance(RemoteAssetDownloader downloader) {
+    Preconditions.checkNotNull(downloader, "Parameter \"downloader\" was null.");
+    instance = downloader;
+  }
+
+  /**
+   * Sets the directory the responses are written to while they download, such as {@code
+   * Context.getCacheDir()}. Defaults to the platform temporary directory, which is the application
+   * cache directory on Android.
+   */
+  public void setDownloadDirectory(@Nullable File downloadDirectory) {
+    this.downloadDirectory = downloadDirectory;
+  }
+
+  public void addProgressListener(ProgressListener listener) {
+    progressListeners.add(listener);
+  }
+
+  public void removeProgressListener(ProgressListener listener) {
+    progressListeners.remove(listener);
+  }
+
+  /** Returns the number of distinct downloads currently queued or running. */
+  public int getInFlightDownloadCount() {
+    synchronized (inFlightDownloads) {
+      return inFlightDownloads.size();
+    }
+  }
+
+  /**
+   * Downloads the url, sharing the download with any identical request already in flight.
+   *
+   * <p>The response is streamed to a temporary file rather than kept in memory. The returned
+   * stream reads that file, which is deleted once every request sharing the download opened it,
+   * so the caller must close it.
+   *
+   * @param url the remote url
+   * @param requestProperty connection properties added to each request, may be null
+   * @return a future completed with a stream over the full response body
+   */
+  public CompletableFuture<InputStream> download(
+      String url, @Nullable Map<String, String> requestProperty) {
+    Map<String, String> properties =
+        requestProperty == null
+            ? Collections.emptyMap()
+            : Collections.unmodifiableMap(new TreeMap<>(requestProperty));
+    String key = url + '\n' + properties;
+
+    synchronized (inFlightDownloads) {
+      CompletableFuture<File> download = inFlightDownloads.get(key);
+      if (download == null) {
+        download = new CompletableFuture<>();
+        inFlightDownloads.put(key, download);
+        start(key, url, properties, download);
+      }
+      // Chained while the download is registered, so that the file is opened before the download
+      // thread deletes it.
+      return download.thenApply(RemoteAssetDownloader::openFile);
+    }
+  }
+
+  /**
+   * Downloads the url and blocks until it is complete. Must not be called from a download thread.
+   *
+   * @return a stream over the response body, to be closed by the caller
+   * @throws IOException if the download fails
+   */
+  public InputStream downloadAndWait(String url, @Nullable Map<String, String> requestProperty)
+      throws IOException {
+    try {
+      return download(url, requestProperty).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Unable to download '" + url + "'", cause);
+    }
+  }
+
+  private void start(
+      String key, String url, Map<String, String> properties, CompletableFuture<File> download) {
+    executor.execute(
+        () -> {
+          File file;
+          try {
+            file = File.createTempFile("download", ".tmp", downloadDirectory);
+          } catch (IOException e) {
+            fail(key, download, e);
+            return;
+          }
+
+          try {
+            downloadBlocking(url, properties, file);
+          } catch (Throwable t) {
+            deleteFile(file);
+            fail(key, download, t);
+            return;
+          }
+
+          // No request can join the download anymore, the ones that did open the file while it
+          // completes. Opened streams keep reading the deleted file.
+          synchronized (inFlightDownloads) {
+            inFlightDownloads.remove(key);
+          }
+          download.complete(file);
+          deleteFile(file);
+        });
+  }
+
+  private void fail(String key, CompletableFuture<File> download, Throwable throwable) {
+    synchronized (inFlightDownloads) {
+      inFlightDownloads.remove(key);
+    }
+    download.completeExceptionally(throwable);
+  }
+
+  private void downloadBlocking(String url, Map<String, String> requestProperty, File file)
+      throws IOException {
+    long totalBytes = -1;
+    long offset = 0;
+    @Nullable String validator = null;
+    boolean isRangeSupported = true;
+    int resumeAttempts = 0;
+
+    while (true) {
+      URLConnection connection = new URL(url).openConnection();
+      for (Map.Entry<String, String> entry : requestProperty.entrySet()) {
+        connection.addRequestProperty(entry.getKey(), entry.getValue());
+      }
+
+      boolean isResuming = offset > 0 && isRangeSupported;
+      if (isResuming) {
+        connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        if (validator != null) {
+          connection.setRequestProperty("If-Range", validator);
+        }
+      } else {
+        offset = 0;
+      }
+
+      boolean isStartingOver = false;
+      try (InputStream input = connection.getInputStream()) {
+        if (isResuming && connection instanceof HttpURLConnection) {
+          int responseCode = ((HttpURLConnection) connection).getResponseCode();
+          if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+            // The server ignored the range, the response is the full body.
+            offset = 0;
+          } else if (getContentRangeStart(connection) != offset) {
+            // Appending a misreported range would corrupt the asset, request the full body.
+            isRangeSupported = false;
+            isStartingOver = true;
+          }
+        }
+
+        if (!isStartingOver) {
+          if (offset == 0) {
+            totalBytes = connection.getContentLengthLong();
+            validator = getValidator(connection);
+          }
+
+          try (FileOutputStream output = new FileOutputStream(file, /* append= */ offset > 0)) {
+            copyWithProgress(input, output, offset, url, totalBytes);
+          }
+          return;
+        }
+      } catch (IOException e) {
+        offset = file.length();
+        // Successful connections are left open for re-use, only broken ones are dropped.
+        if (connection instanceof HttpURLConnection) {
+          ((HttpURLConnection) connection).disconnect();
+        }
+        // Only resume once part of the body was received, other failures are reported as is.
+        if (offset == 0
+            || resumeAttempts >= maxResumeAttempts
+            || !(connection instanceof HttpURLConnection)) {
+          throw e;
+        }
+        resumeAttempts++;
+        Log.w(TAG, "Download of '" + url + "' interrupted at " + offset + " bytes.", e);
+        continue;
+      }
+
+      // The body of the rejected partial response isn't read, drop the connection.
+      ((HttpURLConnection) connection).disconnect();
+      if (resumeAttempts >= maxResumeAttempts) {
+        throw new IOException("Invalid range response while downloading '" + url + "'");
+      }
+      resumeAttempts++;
+    }
+  }
+
+  private void copyWithProgress(
+      InputStream input, FileOutputStream output, long offset, String url, long totalBytes)
+      throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long size = offset;
+    long lastReported = size;
+    int n;
+    while ((n = input.read(buffer)) > 0) {
+      output.write(buffer, 0, n);
+      size += n;
+      if (size - lastReported >= PROGRESS_INTERVAL_BYTES) {
+        lastReported = size;
+        notifyProgress(url, lastReported, totalBytes);
+      }
+    }
+    if (totalBytes >= 0 && size < totalBytes) {
+      // The connection ended early, resume from what was written.
+      throw new EOFException("Response ended after " + size + " of " + totalBytes + " bytes.");
+    }
+    notifyProgress(url, size, totalBytes < 0 ? size : totalBytes);
+  }
+
+  private void notifyProgress(String url, long bytesDownloaded, long totalBytes) {
+    for (ProgressListener listener : progressListeners) {
+      listener.onProgress(url, bytesDownloaded, totalBytes);
+    }
+  }
+
+  /** Returns the first byte position of a partial response, or -1 if it isn't reported. */
+  private static long getContentRangeStart(URLConnection connection) {
+    // For example "bytes 1000-1999/2000".
+    String contentRange = connection.getHeaderField("Content-Range");
+    if (contentRange == null || !contentRange.startsWith("bytes ")) {
+      return -1;
+    }
+    int end = contentRange.indexOf('-', "bytes ".length());
+    if (end < 0) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentRange.substring("bytes ".length(), end).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static InputStream openFile(File file) {
+    try {
+      return new FileInputStream(file);
+    } catch (IOException e) {
+      throw new CompletionException(e);
+    }
+  }
+
+  private static void deleteFile(File file) {
+    if (!file.delete() && file.exists()) {
+      Log.w(TAG, "Unable to delete the downloaded file " + file);
+    }
+  }
+
+  @Nullable
+  private static String getValidator(URLConnection connection) {
+    String eTag = connection.getHeaderField("ETag");
+    // Weak validators can't be used with If-Range.
+    if (eTag != null && !eTag.startsWith("W/")) {
+      return eTag;
+    }
+    return connection.getHeaderField("Last-Modified");
+  }
+
+  private static final class DownloadThreadFactory implements ThreadFactory {
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "SceneformDownload-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.google.ar.sceneform.utilities;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link Tracing.Backend} keeping the last trace events in memory, for instance to check from a
+ * test which sections ran and in which order.
+ *
+ * <p>The events are stored in preallocated arrays, so recording doesn't allocate. Once full, the
+ * oldest events are overwritten.
+ */
+public class TraceRingBuffer implements Tracing.Backend {
+  /** A section beginning or ending. */
+  public static final class Event {
+    private final boolean isBegin;
+    @Nullable private final String name;
+    private final long threadId;
+    private final long timestampNanos;
+
+    Event(boolean isBegin, @Nullable String name, long threadId, long timestampNanos) {
+      this.isBegin = isBegin;
+      this.name = name;
+      this.threadId = threadId;
+      this.timestampNanos = timestampNanos;
+    }
+
+    /** Returns true for the beginning of a section, false for its end. */
+    public boolean isBegin() {
+      return isBegin;
+    }
+
+    /** Returns the name of the section, or null for the end of a section. */
+    @Nullable
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the id of the thread the event was recorded on. */
+    public long getThreadId() {
+      return threadId;
+    }
+
+    /** Returns the {@link System#nanoTime()} at which the event was recorded. */
+    public long getTimestampNanos() {
+      return timestampNanos;
+    }
+
+    @Override
+    public String toString() {
+      return isBegin ? "begin " + name : "end";
+    }
+  }
+
+  private final boolean[] isBegins;
+  private final String[] names;
+  private final long[] threadIds;
+  private final long[] timestampsNanos;
+  // Index of the next event to write.
+  private int head = 0;
+  private int size = 0;
+
+  /** @param capacity the number of events kept */
+  public TraceRingBuffer(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1.");
+    }
+    isBegins = new boolean[capacity];
+    names = new String[capacity];
+    threadIds = new long[capacity];
+    timestampsNanos = new long[capacity];
+  }
+
+  @Override
+  public void beginSection(String name) {
+    record(true, name);
+  }
+
+  @Override
+  public void endSection() {
+    record(false, null);
+  }
+
+  /** Returns the recorded events, oldest first. */
+  public synchronized List<Event> getEvents() {
+    List<Event> events = new ArrayList<>(size);
+    int capacity = names.length;
+    for (int i = 0; i < size; i++) {
+      int index = (head - size + i + capacity) % capacity;
+      events.add(new Event(isBegins[index], names[index], threadIds[index], timestampsNanos[index]));
+    }
+    return events;
+  }
+
+  /** Returns the number of events recorded, at most the capacity. */
+  public synchronized int size() {
+    return size;
+  }
+
+  /** Removes all the events. */
+  public synchronized void clear() {
+    Arrays.fill(names, null);
+    head = 0;
+    size = 0;
+  }
+
+  private synchronized void record(boolean isBegin, @Nullable String name) {
+    isBegins[head] = isBegin;
+    names[head] = name;
+    threadIds[head] = Thread.currentThread().getId();
+    timestampsNanos[head] = System.nanoTime();
+    head = (head + 1) % names.length;
+    size = Math.min(size + 1, names.length);
+  }
+}
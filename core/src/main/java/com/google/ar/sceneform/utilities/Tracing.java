@@ -0,0 +1,86 @@
+package com.google.ar.sceneform.utilities;
+
+import android.os.Trace;
+import androidx.annotation.Nullable;
+
+/**
+ * Emits trace sections around the frame pipeline and asset loading stages of Sceneform.
+ *
+ * <p>Tracing is disabled by default, in which case a section costs a single field read. Set
+ * {@link #ANDROID_TRACE} as the backend to see the sections in Perfetto or systrace, or a {@link
+ * TraceRingBuffer} to inspect them from the app or from tests.
+ *
+ * <p>Sections are nested per thread: every {@link #beginSection(String)} must be matched by an
+ * {@link #endSection()} on the same thread, usually from a {@code finally} block.
+ */
+public final class Tracing {
+  /** Receives the trace sections. Must be safe to call from any thread. */
+  public interface Backend {
+    /** Starts a section on the calling thread. */
+    void beginSection(String name);
+
+    /** Ends the last section started on the calling thread. */
+    void endSection();
+  }
+
+  /**
+   * Forwards the sections to {@link Trace}. Section names longer than 127 characters are
+   * truncated.
+   */
+  public static final Backend ANDROID_TRACE =
+      new Backend() {
+        private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+        @Override
+        public void beginSection(String name) {
+          Trace.beginSection(
+              name.length() > MAX_SECTION_NAME_LENGTH
+                  ? name.substring(0, MAX_SECTION_NAME_LENGTH)
+                  : name);
+        }
+
+        @Override
+        public void endSection() {
+          Trace.endSection();
+        }
+      };
+
+  @Nullable private static volatile Backend backend = null;
+
+  private Tracing() {}
+
+  /**
+   * Sets the backend receiving the trace sections, or null to disable tracing.
+   *
+   * <p>Must not be changed while sections are open, or they would be ended on the wrong backend.
+   */
+  public static void setBackend(@Nullable Backend backend) {
+    Tracing.backend = backend;
+  }
+
+  @Nullable
+  public static Backend getBackend() {
+    return backend;
+  }
+
+  /** Returns true if a backend is set. Use it to skip building dynamic section names. */
+  public static boolean isEnabled() {
+    return backend != null;
+  }
+
+  /** Starts a section on the calling thread, if tracing is enabled. */
+  public static void beginSection(String name) {
+    Backend backend = Tracing.backend;
+    if (backend != null) {
+      backend.beginSection(name);
+    }
+  }
+
+  /** Ends the last section started on the calling thread, if tracing is enabled. */
+  public static void endSection() {
+    Backend backend = Tracing.backend;
+    if (backend != null) {
+      backend.endSection();
+    }
+  }
+}
@@ -0,0 +1,354 @@
+package com.gorisse.thomas.sceneform.environment
+
+import android.util.Log
+import com.google.android.filament.RenderTarget
+import com.google.android.filament.Renderer
+import com.google.android.filament.Texture
+import com.google.android.filament.utils.HDRLoader
+import com.google.android.filament.utils.KTXLoader
+import com.google.ar.sceneform.rendering.ThreadPools
+import com.gorisse.thomas.sceneform.Filament
+import com.gorisse.thomas.sceneform.util.ResourceLoader
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.FileOutputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.security.MessageDigest
+import kotlin.math.max
+
+/**
+ * ### Persistent cache of the environments processed from HDR files
+ *
+ * Converting an HDR file to a cubemap and prefiltering its reflections run on the GPU at every
+ * load, which takes hundreds of milliseconds on mid-range devices. The first time an HDR file is
+ * processed, the resulting cubemaps are read back and saved as KTX files keyed by a digest of the
+ * file content and the filter options. Following loads map the KTX files and upload them
+ * directly, like cmgen generated environments.
+ *
+ * [HDRLoader.loadEnvironment] uses the cache once [EnvironmentCache.default] is set:
+ *
+ * `EnvironmentCache.default = EnvironmentCache(File(context.cacheDir, "environments"))`
+ *
+ * Call [destroy] once the cache isn't used anymore, before the Filament engine is destroyed.
+ *
+ * @property directory the directory holding the KTX files
+ */
+class EnvironmentCache(val directory: File) {
+
+    companion object {
+        private const val TAG = "EnvironmentCache"
+
+        // Increase when the file layout or the processing changes to invalidate existing entries.
+        private const val VERSION = 1
+
+        private val KTX_IDENTIFIER = byteArrayOf(
+            0xAB.toByte(), 0x4B, 0x54, 0x58, 0x20, 0x31, 0x31, 0xBB.toByte(), 0x0D, 0x0A, 0x1A, 0x0A
+        )
+        private const val KTX_HEADER_SIZE = 64
+        private const val GL_HALF_FLOAT = 0x140B
+        private const val GL_RGBA = 0x1908
+        private const val GL_RGBA16F = 0x881A
+
+        /**
+         * ### The cache used by [HDRLoader.loadEnvironment]
+         *
+         * `null` to disable caching.
+         */
+        @JvmStatic
+        var default: EnvironmentCache? = null
+    }
+
+    // Only used to read back the processed cubemaps, created by the first store.
+    private var renderer: Renderer? = null
+
+    // Cubemaps being read back, the renderer outlives them when the cache is destroyed.
+    private var pendingReads = 0
+    private var isDestroyed = false
+
+    private val writeScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    /**
+     * ### The cache key of an HDR file content processed with the given options
+     *
+     * Computes a digest of the whole content, call it off the main thread.
+     */
+    fun key(hdrBuffer: ByteBuffer, specularFilter: Boolean): String =
+        MessageDigest.getInstance("SHA-256").run {
+            update(hdrBuffer.duplicate().apply { rewind() })
+            update("v$VERSION specularFilter=$specularFilter".toByteArray())
+            digest().joinToString("") { "%02x".format(it) }
+        }
+
+    /**
+     * ### Loads a cached environment
+     *
+     * The KTX files are memory mapped on the IO dispatcher and the textures are created on the
+     * main thread.
+     *
+     * @return the environment or null if it isn't in the cache
+     */
+    suspend fun load(key: String): HDREnvironment? {
+        val (skyboxBuffer, reflectionsBuffer) = withContext(Dispatchers.IO) {
+            val skyboxFile = skyboxFile(key).takeIf { it.exists() } ?: return@withContext null
+            val reflectionsFile = reflectionsFile(key).takeIf { it.exists() }
+            val skyboxBuffer = ResourceLoader.mapFile(skyboxFile)
+            val reflectionsBuffer = reflectionsFile?.let { ResourceLoader.mapFile(it) }
+            if (!isValidKtx(skyboxBuffer) ||
+                (reflectionsBuffer != null && !isValidKtx(reflectionsBuffer))
+            ) {
+                Log.w(TAG, "Removing invalid cached environment $key")
+                skyboxFile.delete()
+                reflectionsFile?.delete()
+                return@withContext null
+            }
+            skyboxBuffer to reflectionsBuffer
+        } ?: return null
+
+        return withContext(Dispatchers.Main) {
+            val skybox = KTXLoader.createTexture(Filament.engine, skyboxBuffer)
+            val reflections = reflectionsBuffer?.let {
+                KTXLoader.createTexture(Filament.engine, it)
+            } ?: skybox
+            HDREnvironment(
+                cubemap = reflections,
+                irradiance = readSphericalHarmonics(reflectionsBuffer ?: skyboxBuffer),
+                skyboxEnvironment = skybox,
+                specularFilter = false
+            )
+        }
+    }
+
+    /**
+     * ### Saves an environment processed from an HDR file
+     *
+     * The cubemaps are read back from the GPU over the next frames and written on the IO
+     * dispatcher. Must be called on the main thread. Ignored once the cache is destroyed.
+     */
+    fun store(key: String, environment: HDREnvironment) {
+        if (isDestroyed) return
+        val skybox = environment.skyboxEnvironment ?: return
+        val reflections = environment.cubemap ?: return
+        val sphericalHarmonics = environment.sphericalHarmonics
+        readCubemap(skybox) { skyboxLevels ->
+            if (reflections == skybox) {
+                write(skyboxFile(key), skybox.getWidth(0), skyboxLevels, sphericalHarmonics)
+            } else {
+                readCubemap(reflections) { reflectionsLevels ->
+                    write(skyboxFile(key), skybox.getWidth(0), skyboxLevels, null)
+                    write(
+                        reflectionsFile(key),
+                        reflections.getWidth(0),
+                        reflectionsLevels,
+                        sphericalHarmonics
+                    )
+                }
+            }
+        }
+    }
+
+    /**
+     * ### Removes every cached environment
+     */
+    fun clear() {
+        directory.listFiles()?.forEach { it.delete() }
+    }
+
+    /**
+     * ### Destroys the renderer used to read back the cubemaps
+     *
+     * The environments being stored are still read back and written, the renderer is destroyed
+     * after them. Must be called on the main thread, before the Filament engine is destroyed.
+     */
+    fun destroy() {
+        isDestroyed = true
+        destroyRendererIfIdle()
+    }
+
+    private fun destroyRendererIfIdle() {
+        if (isDestroyed && pendingReads == 0) {
+            renderer?.let { Filament.engine.destroyRenderer(it) }
+            renderer = null
+        }
+    }
+
+    private fun skyboxFile(key: String) = File(directory, "${key}_skybox.ktx")
+
+    private fun reflectionsFile(key: String) = File(directory, "${key}_ibl.ktx")
+
+    /**
+     * Reads every level of the six faces as RGBA floats. The render targets are destroyed and
+     * [onRead] is called on the main thread once the last face is read.
+     */
+    private fun readCubemap(texture: Texture, onRead: (List<Array<ByteBuffer>>) -> Unit) {
+        val engine = Filament.engine
+        val renderer = renderer ?: engine.createRenderer().also { renderer = it }
+        val size = texture.getWidth(0)
+        val renderTargets = mutableListOf<RenderTarget>()
+        val levels = List(texture.levels) { level ->
+            val levelSize = max(1, size shr level)
+            Array(6) {
+                ByteBuffer.allocateDirect(levelSize * levelSize * 4 * 4)
+                    .order(ByteOrder.nativeOrder())
+            }
+        }
+        var remainingFaces = levels.size * 6
+        pendingReads++
+        levels.forEachIndexed { level, faces ->
+            val levelSize = max(1, size shr level)
+            faces.forEachIndexed { face, buffer ->
+                val renderTarget = RenderTarget.Builder()
+                    .texture(RenderTarget.AttachmentPoint.COLOR, texture)
+                    .mipLevel(RenderTarget.AttachmentPoint.COLOR, level)
+                    .face(RenderTarget.AttachmentPoint.COLOR, Texture.CubemapFace.values()[face])
+                    .build(engine)
+                renderTargets += renderTarget
+                renderer.readPixels(
+                    renderTarget, 0, 0, levelSize, levelSize,
+                    Texture.PixelBufferDescriptor(
+                        buffer, Texture.Format.RGBA, Texture.Type.FLOAT, 1, 0, 0, 0,
+                        ThreadPools.getMainExecutor()
+                    ) {
+                        remainingFaces--
+                        if (remainingFaces == 0) {
+                            renderTargets.forEach { engine.destroyRenderTarget(it) }
+                            // Before the read is done, so that a following read keeps the renderer
+                            onRead(levels)
+                            pendingReads--
+                            destroyRendererIfIdle()
+                        }
+                    })
+            }
+        }
+    }
+
+    /**
+     * Writes a half float RGBA cubemap KTX file, with the spherical harmonics in the "sh" metadata
+     * like cmgen does.
+     */
+    private fun write(
+        file: File,
+        size: Int,
+        levels: List<Array<ByteBuffer>>,
+        sphericalHarmonics: FloatArray?
+    ) = writeScope.launch {
+        try {
+            val metadata = sphericalHarmonics?.let { sh ->
+                keyValue("sh", (0 until sh.size / 3).joinToString("\n") { index ->
+                    "${sh[index * 3]} ${sh[index * 3 + 1]} ${sh[index * 3 + 2]}"
+                })
+            } ?: ByteArray(0)
+
+            directory.mkdirs()
+            // Written next to the final file and renamed so that a cut write is never loaded. Each
+            // write has its own temporary file, the same environment may be stored twice at once.
+            val temporaryFile = File.createTempFile(file.name, ".tmp", directory)
+            FileOutputStream(temporaryFile).channel.use { channel ->
+                val header = ByteBuffer.allocate(KTX_HEADER_SIZE + metadata.size)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .put(KTX_IDENTIFIER)
+                    .putInt(0x04030201)
+                    .putInt(GL_HALF_FLOAT)
+                    .putInt(2)
+                    .putInt(GL_RGBA)
+                    .putInt(GL_RGBA16F)
+                    .putInt(GL_RGBA)
+                    .putInt(size)
+                    .putInt(size)
+                    .putInt(0)
+                    .putInt(0)
+                    .putInt(6)
+                    .putInt(levels.size)
+                    .putInt(metadata.size)
+                    .put(metadata)
+                header.flip()
+                while (header.hasRemaining()) channel.write(header)
+
+                levels.forEachIndexed { level, faces ->
+                    val levelSize = max(1, size shr level)
+                    val faceSize = levelSize * levelSize * 4 * 2
+                    val data = ByteBuffer.allocate(4 + faceSize * faces.size)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .putInt(faceSize)
+                    faces.forEach { face ->
+                        val floats = face.asFloatBuffer()
+                        while (floats.hasRemaining()) {
+                            data.putShort(toHalf(floats.get()))
+                        }
+                    }
+                    data.flip()
+                    while (data.hasRemaining()) channel.write(data)
+                }
+            }
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete()
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Unable to cache the environment in $file", e)
+        }
+    }
+
+    private fun isValidKtx(buffer: ByteBuffer) = buffer.capacity() >= KTX_HEADER_SIZE &&
+            ByteArray(KTX_IDENTIFIER.size).also { buffer.duplicate().get(it) }
+                .contentEquals(KTX_IDENTIFIER)
+
+    /**
+     * KTX key/value pair, padded to 4 bytes
+     */
+    private fun keyValue(key: String, value: String): ByteArray {
+        val keyAndValue = "$key\u0000$value\u0000".toByteArray(Charsets.US_ASCII)
+        return ByteBuffer.allocate(4 + (keyAndValue.size + 3) / 4 * 4)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(keyAndValue.size)
+            .put(keyAndValue)
+            .array()
+    }
+
+    private fun readSphericalHarmonics(buffer: ByteBuffer): FloatArray? {
+        val ktx = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+        val metadataEnd = KTX_HEADER_SIZE + ktx.getInt(KTX_HEADER_SIZE - 4)
+        var offset = KTX_HEADER_SIZE
+        while (offset + 4 <= metadataEnd) {
+            val keyAndValueSize = ktx.getInt(offset)
+            val keyAndValue = ByteArray(keyAndValueSize).also {
+                ktx.position(offset + 4)
+                ktx.get(it)
+            }.toString(Charsets.US_ASCII)
+            val separator = keyAndValue.indexOf('\u0000')
+            if (separator > 0 && keyAndValue.substring(0, separator) == "sh") {
+                return keyAndValue.substring(separator + 1)
+                    .trim('\u0000', ' ', '\n')
+                    .split(Regex("\\s+"))
+                    .map { it.toFloat() }
+                    .toFloatArray()
+            }
+            offset += 4 + (keyAndValueSize + 3) / 4 * 4
+        }
+        return null
+    }
+
+    /**
+     * Converts to a half float, rounding toward zero
+     */
+    private fun toHalf(value: Float): Short {
+        val bits = java.lang.Float.floatToRawIntBits(value)
+        val sign = (bits ushr 16) and 0x8000
+        val exponent = ((bits ushr 23) and 0xFF) - 127 + 15
+        val mantissa = bits and 0x7FFFFF
+        return when {
+            // NaN
+            (bits and 0x7FFFFFFF) > 0x7F800000 -> sign or 0x7E00
+            // Too large, infinity
+            exponent >= 0x1F -> sign or 0x7C00
+            // Too small, zero
+            exponent < -10 -> sign
+            // Subnormal
+            exponent <= 0 -> sign or ((mantissa or 0x800000) shr (14 - exponent))
+            else -> sign or (exponent shl 10) or (mantissa shr 13)
+        }.toShort()
+    }
+}
@@ -51,6 +51,13 @@ open class HDREnvironment(
     }
 ) {
 
+    /**
+     * ### The reflections cubemap
+     *
+     * For the environments made by [HDRLoader.createEnvironment], the prefiltered reflections when
+     * the specular filter is applied, not the cubemap converted from the HDR image, which is the
+     * [skyboxEnvironment].
+     */
     var cubemap: Texture? = cubemap
         internal set
     var intensity: Float? = intensity
@@ -87,6 +94,7 @@ open class HDREnvironment(
  * @param hdrFileLocation the hdr file location
  * [Documentation][com.google.ar.sceneform.util.ResourceLoader.fileBuffer]
  * @param iblFilter [Documentation][HDRLoader.createEnvironment]
+ * @param cache the cache of processed environments, skipping the processing on warm starts
  *
  * @return [Documentation][HDRLoader.createEnvironment]
  */
@@ -94,14 +102,23 @@ open class HDREnvironment(
 suspend fun HDRLoader.loadEnvironment(
     context: Context,
     hdrFileLocation: String,
-    specularFilter: Boolean = defaultSpecularFilter
+    specularFilter: Boolean = defaultSpecularFilter,
+    cache: EnvironmentCache? = EnvironmentCache.default
 ): HDREnvironment? {
     var environment: Environment? = null
     return try {
         context.fileBuffer(hdrFileLocation)?.let { buffer ->
-            withContext(Dispatchers.Main) {
-                createEnvironment(buffer, specularFilter)?.also { environment = it }
+            // Warm starts skip the HDR decoding and the GPU processing
+            val cacheKey = cache?.let {
+                withContext(Dispatchers.Default) { it.key(buffer, specularFilter) }
             }
+            cacheKey?.let { cache.load(it) }?.also { environment = it }
+                ?: withContext(Dispatchers.Main) {
+                    createEnvironment(buffer, specularFilter)?.also {
+                        environment = it
+                        cacheKey?.let { key -> cache.store(key, it) }
+                    }
+                }
         }
     } finally {
         // TODO: See why the finally is called before the onDestroy()
@@ -144,7 +161,10 @@ fun HDRLoader.loadEnvironmentAsync(
  * @param iblFilter A filter to apply to the resulting indirect light reflexions texture.
  * Default generates a specular prefiltered cubemap reflection texture.
  *
- * @return the generated environment indirect light and skybox from the hdr
+ * @return the generated environment indirect light and skybox from the hdr.
+ * With the specular filter, its [HDREnvironment.cubemap] is the prefiltered reflections texture and
+ * the cubemap converted from the HDR image is only its [HDREnvironment.skyboxEnvironment]. Both are
+ * destroyed with the environment.
  *
  * @see HDRLoader.createTexture
  */
@@ -155,7 +175,12 @@ fun HDRLoader.createEnvironment(
 ) = createTexture(Filament.engine, hdrBuffer)?.use { hdrTexture ->
     Filament.iblPrefilter.equirectangularToCubemap(hdrTexture)
 }?.let { cubemap ->
-    HDREnvironment(cubemap = cubemap, skyboxEnvironment = cubemap, specularFilter = specularFilter)
+    // The prefiltered reflections are kept apart from the skybox so that they can be cached
+    HDREnvironment(
+        cubemap = if (specularFilter) Filament.iblPrefilter.specularFilter(cubemap) else cubemap,
+        skyboxEnvironment = cubemap,
+        specularFilter = false
+    )
 }
 
 /**
@@ -6,7 +6,7 @@ import com.google.android.filament.IndirectLight
 import com.google.android.filament.Skybox
 import com.google.android.filament.utils.KTXLoader
 import com.gorisse.thomas.sceneform.Filament
-import com.gorisse.thomas.sceneform.util.fileBuffer
+import com.gorisse.thomas.sceneform.util.mappedFileBuffer
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.nio.Buffer
@@ -41,8 +41,9 @@ suspend fun KTXLoader.loadEnvironment(
 ): Environment? {
     var environment: Environment? = null
     return try {
-        val ibl = context.fileBuffer(iblKtxFileLocation)
-        val skybox = skyboxKtxFileLocation?.let { context.fileBuffer(it) }
+        // Local files are mapped rather than copied, like cached HDR environments
+        val ibl = context.mappedFileBuffer(iblKtxFileLocation)
+        val skybox = skyboxKtxFileLocation?.let { context.mappedFileBuffer(it) }
         withContext(Dispatchers.Main) {
             createEnvironment(ibl, skybox)
                 .also { environment = it }
@@ -0,0 +1,237 @@
+package com.gorisse.thomas.sceneform.light
+
+import com.google.android.filament.Texture
+import com.google.ar.core.ArImage
+import com.google.ar.sceneform.rendering.ThreadPools
+import com.gorisse.thomas.sceneform.Filament
+import com.gorisse.thomas.sceneform.material.destroy
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.ShortBuffer
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+
+/**
+ * ### Environmental HDR reflections cubemap
+ *
+ * ARCore provides the six cubemap faces as half float RGBA images while the reflections texture
+ * is half float RGB. The faces are repacked on a worker thread with bulk [java.nio.ShortBuffer]
+ * copies into pooled buffers, so that the render thread only has to upload them.
+ *
+ * One repack runs at a time. Cubemaps estimated while it runs are skipped and the reflections keep
+ * the last uploaded cubemap until the next one is ready.
+ */
+class EnvironmentalHdrCubemap {
+
+    /**
+     * ### The texture holding the last uploaded cubemap
+     *
+     * Reused by every estimate while the cubemap size doesn't change. When it does, the previous
+     * texture is destroyed by the following update.
+     */
+    var texture: Texture? = null
+        private set
+
+    /**
+     * ### Time spent repacking the last cubemap on the worker thread, in nanoseconds
+     */
+    @Volatile
+    var lastRepackNanos = 0L
+        private set
+
+    /**
+     * ### Time spent uploading the last cubemap on the render thread, in nanoseconds
+     */
+    var lastUploadNanos = 0L
+        private set
+
+    // Replaced by a texture of another size. The environment of the previous estimate still uses
+    // it until the new estimate is applied, so it is destroyed by the next update.
+    private var retiredTexture: Texture? = null
+    private val bufferPool = ArrayDeque<ByteBuffer>()
+    private var pendingRepack: CompletableFuture<RepackedFaces>? = null
+
+    // Only used by the worker thread, one repack runs at a time.
+    private val faceRepacker = HdrCubemapFaceRepacker()
+
+    private class RepackedFaces(
+        val width: Int,
+        val height: Int,
+        val buffer: ByteBuffer,
+        val faceOffsets: IntArray
+    )
+
+    /**
+     * ### Returns true while a cubemap is being repacked
+     */
+    val isRepacking: Boolean
+        get() = pendingRepack?.isDone == false
+
+    /**
+     * ### Starts repacking the ARCore cubemap faces on a worker thread
+     *
+     * The images are closed once copied, or right away if a repack is already running.
+     */
+    fun repack(images: Array<ArImage>) {
+        if (isRepacking) {
+            images.forEach { it.close() }
+            return
+        }
+        pendingRepack = CompletableFuture.supplyAsync(
+            { repackFaces(images) },
+            ThreadPools.getThreadPoolExecutor()
+        )
+    }
+
+    /**
+     * ### Uploads the last repacked cubemap, if a new one is ready
+     *
+     * Must be called on the render thread.
+     *
+     * @return the cubemap texture, updated or not
+     */
+    fun update(withSpecularFilter: Boolean): Texture? {
+        retiredTexture?.destroy()
+        retiredTexture = null
+
+        val repack = pendingRepack?.takeIf { it.isDone } ?: return texture
+        pendingRepack = null
+        val faces = runCatching { repack.join() }.getOrNull() ?: return texture
+
+        val startNanos = System.nanoTime()
+        val texture = texture?.takeIf {
+            it.getWidth(0) == faces.width && it.getHeight(0) == faces.height
+        } ?: Texture.Builder()
+            .width(faces.width)
+            .height(faces.height)
+            .levels(0xff)
+            .sampler(Texture.Sampler.SAMPLER_CUBEMAP)
+            .format(Texture.InternalFormat.R11F_G11F_B10F)
+            .build(Filament.engine)
+            .also {
+                retiredTexture = this.texture
+                this.texture = it
+            }
+        // The buffer returns to the pool once Filament consumed it.
+        val buffer = Texture.PixelBufferDescriptor(
+            faces.buffer,
+            Texture.Format.RGB,
+            Texture.Type.HALF,
+            1, 0, 0, 0,
+            Executor { it.run() },
+            { recycle(faces.buffer) }
+        )
+        // TODO : Remove generatePrefilterMipmap and uncomment specularFilter =
+        //  withReflections &&  withSpecularFilter when Filament move async
+        //  For now, the execution of Filament.iblPrefilter.specularFilter(it) is making
+        //  the rendering too laggy
+        //  https://github.com/google/filament/discussions/4665
+        if (withSpecularFilter) {
+            texture.generatePrefilterMipmap(Filament.engine,
+                buffer,
+                faces.faceOffsets,
+                Texture.PrefilterOptions().apply {
+                    mirror = false
+                })
+        } else {
+            texture.setImage(Filament.engine, 0, buffer, faces.faceOffsets)
+        }
+        lastUploadNanos = System.nanoTime() - startNanos
+        return texture
+    }
+
+    /**
+     * ### Destroys the cubemap texture
+     */
+    fun destroy() {
+        retiredTexture?.destroy()
+        retiredTexture = null
+        texture?.destroy()
+        texture = null
+        pendingRepack = null
+        synchronized(bufferPool) { bufferPool.clear() }
+    }
+
+    private fun repackFaces(images: Array<ArImage>): RepackedFaces {
+        val startNanos = System.nanoTime()
+        try {
+            val width = images[0].width
+            val height = images[0].height
+            val pixelCount = width * height
+            // RGB half floats
+            val buffer = obtainBuffer(pixelCount * images.size * 3 * 2)
+            val rgbBuffer = buffer.asShortBuffer()
+            val faceOffsets = IntArray(images.size)
+
+            images.forEachIndexed { index, image ->
+                faceOffsets[index] = rgbBuffer.position() * 2
+                val plane = image.planes[0]
+                faceRepacker.repack(plane.buffer, plane.rowStride, width, height, rgbBuffer)
+            }
+            buffer.limit(rgbBuffer.position() * 2)
+            return RepackedFaces(width, height, buffer, faceOffsets)
+        } finally {
+            images.forEach { it.close() }
+            lastRepackNanos = System.nanoTime() - startNanos
+        }
+    }
+
+    private fun obtainBuffer(size: Int): ByteBuffer = synchronized(bufferPool) {
+        bufferPool.removeFirstOrNull()?.takeIf { it.capacity() == size }
+    }?.apply { clear() }
+        ?: ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder())
+
+    private fun recycle(buffer: ByteBuffer) {
+        synchronized(bufferPool) {
+            // One buffer being uploaded while the next one is filled
+            if (bufferPool.size < 2) {
+                bufferPool.addLast(buffer)
+            }
+        }
+    }
+}
+
+/**
+ * ### Drops the alpha channel of half float RGBA cubemap faces
+ *
+ * The scratch arrays are kept from face to face, so a repacker must only be used by one thread at
+ * a time.
+ */
+internal class HdrCubemapFaceRepacker {
+
+    private var rgbaFace = ShortArray(0)
+    private var rgbFace = ShortArray(0)
+
+    /**
+     * ### Appends the RGB channels of a face to the output
+     *
+     * @param rgbaBuffer the half float RGBA pixels of the face, left untouched
+     * @param rowStride the number of bytes between the starts of two rows
+     */
+    fun repack(rgbaBuffer: ByteBuffer, rowStride: Int, width: Int, height: Int, output: ShortBuffer) {
+        val pixelCount = width * height
+        if (rgbaFace.size != pixelCount * 4) {
+            rgbaFace = ShortArray(pixelCount * 4)
+            rgbFace = ShortArray(pixelCount * 3)
+        }
+        // Use the device hardware's native byte order
+        val rgba = rgbaBuffer.duplicate().order(ByteOrder.nativeOrder())
+        if (rowStride == width * 8) {
+            rgba.asShortBuffer().get(rgbaFace, 0, pixelCount * 4)
+        } else {
+            for (row in 0 until height) {
+                rgba.position(row * rowStride)
+                rgba.asShortBuffer().get(rgbaFace, row * width * 4, width * 4)
+            }
+        }
+        // Skip the Alpha channel
+        var rgbIndex = 0
+        for (rgbaIndex in 0 until pixelCount * 4 step 4) {
+            rgbFace[rgbIndex] = rgbaFace[rgbaIndex]
+            rgbFace[rgbIndex + 1] = rgbaFace[rgbaIndex + 1]
+            rgbFace[rgbIndex + 2] = rgbaFace[rgbaIndex + 2]
+            rgbIndex += 3
+        }
+        output.put(rgbFace, 0, rgbIndex)
+    }
+}
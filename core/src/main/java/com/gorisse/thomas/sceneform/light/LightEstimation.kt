@@ -1,17 +1,19 @@
 package com.gorisse.thomas.sceneform.light
 
 import com.google.android.filament.IndirectLight
-import com.google.android.filament.Texture
 import com.google.android.filament.utils.max
 import com.google.android.filament.utils.pow
 import com.google.ar.core.Config
 import com.google.ar.core.Frame
 import com.google.ar.core.LightEstimate
+import com.google.ar.core.exceptions.DeadlineExceededException
 import com.gorisse.thomas.sceneform.*
 import com.gorisse.thomas.sceneform.environment.Environment
 import com.gorisse.thomas.sceneform.environment.HDREnvironment
-import java.nio.ByteBuffer
-import java.nio.ByteOrder
+import kotlin.math.abs
+import kotlin.math.acos
+import kotlin.math.exp
+import kotlin.math.sqrt
 
 /**
  * ### ARCore light estimation configuration
@@ -93,7 +95,46 @@ data class LightEstimationConfig @JvmOverloads constructor(
     /**
      * ### Modulate the main directional light (sun) intensity
      */
-    val environmentalHdrMainLightIntensity: Boolean = true
+    val environmentalHdrMainLightIntensity: Boolean = true,
+
+    /**
+     * ### Maximum number of light estimation updates per second
+     *
+     * ARCore provides a new estimate nearly every frame and each update rebuilds the environment,
+     * uploads the reflections cubemap and filters it.
+     * `0` to update on every new estimate.
+     */
+    val maxUpdatesPerSecond: Float = 15.0f,
+
+    /**
+     * ### Minimum relative change of the spherical harmonics or ambient color correction
+     *
+     * Estimates closer than this to the current lighting are skipped.
+     */
+    val sphericalHarmonicsThreshold: Float = 0.02f,
+
+    /**
+     * ### Minimum relative change of the main light intensity or color
+     *
+     * Estimates closer than this to the current lighting are skipped.
+     */
+    val mainLightIntensityThreshold: Float = 0.02f,
+
+    /**
+     * ### Minimum change of the main light direction, in degrees
+     *
+     * Estimates closer than this to the current lighting are skipped.
+     */
+    val mainLightDirectionThreshold: Float = 1.0f,
+
+    /**
+     * ### Time to reach about two thirds of a lighting change, in seconds
+     *
+     * Updates are blended with the current lighting to prevent popping, the lighting keeps on
+     * updating until it gets within the thresholds of the estimate.
+     * `0` to apply estimates as is.
+     */
+    val smoothingDuration: Float = 0.25f
 ) {
 
     companion object {
@@ -174,11 +215,34 @@ class EnvironmentLightsEstimate(
      * positioned specular highlights, and to cast shadows in a direction consistent with other
      * visible real objects.
      */
-    val mainLight: Light? = null
+    val mainLight: Light? = null,
+
+    /**
+     * ### The Environmental HDR reflections cubemap
+     *
+     * Shared by the following estimates. Its repack and upload times measure the per estimate cost
+     * of the reflections.
+     */
+    val hdrCubemap: EnvironmentalHdrCubemap? = null,
+
+    /**
+     * ### The smoothed ARCore values this estimate was built from
+     *
+     * Used to blend and threshold the following estimates.
+     */
+    val estimatedValues: EstimatedValues = EstimatedValues()
 ) {
+    class EstimatedValues(
+        val colorCorrection: FloatArray? = null,
+        val sphericalHarmonics: FloatArray? = null,
+        val mainLightIntensity: FloatArray? = null,
+        val mainLightDirection: FloatArray? = null
+    )
+
     fun destroy() {
         environment.destroy()
         mainLight?.destroy()
+        hdrCubemap?.destroy()
     }
 }
 
@@ -208,18 +272,45 @@ fun Frame.environmentLightsEstimate(
     baseEnvironment: Environment?,
     baseLight: Light?,
     cameraExposureFactor: Float
+): EnvironmentLightsEstimate? = lightEstimate.environmentLightsEstimate(
+    config,
+    previousEstimate,
+    baseEnvironment,
+    baseLight,
+    cameraExposureFactor
+)
+
+/**
+ * ### The estimated environment from a light estimate
+ *
+ * Same as [Frame.environmentLightsEstimate] from a light estimate retrieved beforehand, for
+ * instance on the AR thread.
+ *
+ * @see Frame.environmentLightsEstimate
+ */
+fun LightEstimate?.environmentLightsEstimate(
+    config: LightEstimationConfig,
+    previousEstimate: EnvironmentLightsEstimate?,
+    baseEnvironment: Environment?,
+    baseLight: Light?,
+    cameraExposureFactor: Float
 ): EnvironmentLightsEstimate? =
-    lightEstimate?.takeIf {
+    this?.takeIf {
         it.state == LightEstimate.State.VALID &&
-                it.timestamp != previousEstimate?.timestamp
+                it.timestamp != previousEstimate?.timestamp &&
+                (previousEstimate == null || config.shouldUpdate(it, previousEstimate))
     }
         ?.let { lightEstimate ->
+            val smoothingFactor = previousEstimate?.let {
+                config.smoothingFactor(lightEstimate.timestamp - it.timestamp)
+            } ?: 1.0f
             when (config.mode) {
                 Config.LightEstimationMode.AMBIENT_INTENSITY ->
                     lightEstimate.ambientIntensityEnvironmentLights(
                         previousEstimate,
                         baseEnvironment,
-                        baseLight
+                        baseLight,
+                        smoothingFactor
                     )
                 Config.LightEstimationMode.ENVIRONMENTAL_HDR ->
                     lightEstimate.environmentalHdrEnvironmentLights(
@@ -231,7 +322,8 @@ fun Frame.environmentLightsEstimate(
                         config.environmentalHdrSphericalHarmonics,
                         config.environmentalHdrSpecularFilter,
                         config.environmentalHdrMainLightDirection,
-                        config.environmentalHdrMainLightIntensity
+                        config.environmentalHdrMainLightIntensity,
+                        smoothingFactor
                     )
                 else -> null
             }
@@ -251,16 +343,18 @@ fun Frame.environmentLightsEstimate(
 fun LightEstimate.ambientIntensityEnvironmentLights(
     previousEstimate: EnvironmentLightsEstimate?,
     baseEnvironment: Environment?,
-    baseLight: Light?
+    baseLight: Light?,
+    smoothingFactor: Float = 1.0f
 ): EnvironmentLightsEstimate {
-    val (colorIntensities, pixelIntensity) = FloatArray(4).apply {
+    val colorCorrection = FloatArray(4).apply {
         // A value of a white colorCorrection (r=1.0, g=1.0, b=1.0) and pixelIntensity of 1.0 mean
         // that no changes are made to the light settings.
         // The color correction method uses the green channel as reference baseline and scales the
         // red and blue channels accordingly. In this way the overall intensity will not be
         // significantly changed
         getColorCorrection(this, 0)
-    }
+    }.smoothedWith(previousEstimate?.estimatedValues?.colorCorrection, smoothingFactor)
+    val (colorIntensities, pixelIntensity) = colorCorrection
         // Rendering in linear space
         .toLinearSpace()
         .let { colorCorrections ->
@@ -325,7 +419,14 @@ fun LightEstimate.ambientIntensityEnvironmentLights(
         }
     } else null
 
-    return EnvironmentLightsEstimate(timestamp, environment, mainLight)
+    return EnvironmentLightsEstimate(
+        timestamp,
+        environment,
+        mainLight,
+        estimatedValues = EnvironmentLightsEstimate.EstimatedValues(
+            colorCorrection = colorCorrection
+        )
+    )
 }
 
 /**
@@ -361,15 +462,26 @@ fun LightEstimate.environmentalHdrEnvironmentLights(
     withSphericalHarmonics: Boolean,
     withSpecularFilter: Boolean,
     withDirection: Boolean = true,
-    withIntensity: Boolean = true
+    withIntensity: Boolean = true,
+    smoothingFactor: Float = 1.0f
 ): EnvironmentLightsEstimate {
+    val hdrCubemap = previousEstimate?.hdrCubemap ?: EnvironmentalHdrCubemap()
+    val previousValues = previousEstimate?.estimatedValues
+    val mainLightIntensity = environmentalHdrMainLightIntensity
+        .smoothedWith(previousValues?.mainLightIntensity, smoothingFactor)
+    val mainLightDirection = environmentalHdrMainLightDirection
+        .smoothedWith(previousValues?.mainLightDirection, smoothingFactor)
+        .normalized()
+    val sphericalHarmonics = environmentalHdrAmbientSphericalHarmonics
+        ?.smoothedWith(previousValues?.sphericalHarmonics, smoothingFactor)
+
     // Returns the intensity of the main directional light based on the inferred
     // Environmental HDR Lighting Estimation. All return values are larger or equal to zero.
     // The color correction method uses the green channel as reference baseline and scales the
     // red and blue channels accordingly. In this way the overall intensity will not be
     // significantly changed
     val colorIntensitiesFactors: Color = if (withIntensity) {
-        environmentalHdrMainLightIntensity
+        mainLightIntensity
             // Rendering in linear space
             .toLinearSpace()
             // Scale max r or b or g value and fit in range [0.0, 1.0)
@@ -391,74 +503,20 @@ fun LightEstimate.environmentalHdrEnvironmentLights(
 
     val environment = HDREnvironment(
         cubemap = if (withReflections) {
-            acquireEnvironmentalHdrCubeMap()?.let { arImages ->
-                val width = arImages[0].width
-                val height = arImages[0].height
-                val faceOffsets = IntArray(arImages.size)
-                val buffer = Texture.PixelBufferDescriptor(
-                    ByteBuffer.allocateDirect(
-                        width * height *
-                                arImages.size *
-                                // RGB Bytes per pixel
-                                6 * 2
-                    ).apply {
-                        // Use the device hardware's native byte order
-                        order(ByteOrder.nativeOrder())
-
-                        val rgbaBytes = ByteArray(8) // ARGB Bytes per pixel
-                        arImages.forEachIndexed { index, image ->
-                            faceOffsets[index] = position()
-                            image.planes[0].buffer.let { imageBuffer ->
-                                while (imageBuffer.hasRemaining()) {
-                                    // Only take the RGB channels
-                                    put(rgbaBytes.apply {
-                                        imageBuffer.get(this)
-                                    } // Skip the Alpha channel
-                                        .sliceArray(0..5))
-                                }
-                            }
-                            image.close()
-                        }
-                        flip()
-                    },
-                    Texture.Format.RGB,
-                    Texture.Type.HALF
-                )
-
-                // Reuse the previous texture instead of creating a new one for performance and
-                // memory
-                val texture = (previousEstimate?.environment as? HDREnvironment)?.cubemap?.takeIf {
-                    it.getWidth(0) == width && it.getHeight(0) == height
-                } ?: Texture.Builder()
-                    .width(width)
-                    .height(height)
-                    .levels(0xff)
-                    .sampler(Texture.Sampler.SAMPLER_CUBEMAP)
-                    .format(Texture.InternalFormat.R11F_G11F_B10F)
-                    .build(Filament.engine)
-                texture.apply {
-                    // TODO : Remove generatePrefilterMipmap and uncomment specularFilter =
-                    //  withReflections &&  withSpecularFilter when Filament move async
-                    //  For now, the execution of Filament.iblPrefilter.specularFilter(it) is making
-                    //  the rendering too laggy
-                    //  https://github.com/google/filament/discussions/4665
-                    if (withSpecularFilter) {
-                        generatePrefilterMipmap(Filament.engine,
-                            buffer,
-                            faceOffsets,
-                            Texture.PrefilterOptions().apply {
-                                mirror = false
-                            })
-                    } else {
-                        setImage(Filament.engine, 0, buffer, faceOffsets)
+            // The faces are repacked on a worker thread, the estimate keeps the last uploaded
+            // cubemap until they are ready.
+            hdrCubemap.update(withSpecularFilter).also {
+                if (!hdrCubemap.isRepacking) {
+                    acquireEnvironmentalHdrCubeMapOrNull()?.let { arImages ->
+                        hdrCubemap.repack(arImages)
                     }
                 }
-            }
+            } ?: baseEnvironment?.indirectLight?.reflectionsTexture
         } else {
             baseEnvironment?.indirectLight?.reflectionsTexture
         },
         irradiance = if (withSphericalHarmonics) {
-            environmentalHdrAmbientSphericalHarmonics?.let { sphericalHarmonics ->
+            sphericalHarmonics?.let { sphericalHarmonics ->
                 sphericalHarmonics.mapIndexed { index, sphericalHarmonic ->
                     sphericalHarmonic *
                             // Convert Environmental HDR's spherical harmonics to Filament
@@ -485,7 +543,7 @@ fun LightEstimate.environmentalHdrEnvironmentLights(
     val mainLight = if (baseLight != null) {
         (previousEstimate?.mainLight ?: baseLight.clone()).apply {
             if (withDirection) {
-                environmentalHdrMainLightDirection.let { (x, y, z) ->
+                mainLightDirection.let { (x, y, z) ->
                     direction = Direction(-x, -y, -z)
                 }
             }
@@ -497,7 +555,115 @@ fun LightEstimate.environmentalHdrEnvironmentLights(
         }
     } else null
 
-    return EnvironmentLightsEstimate(timestamp, environment, mainLight)
+    return EnvironmentLightsEstimate(
+        timestamp,
+        environment,
+        mainLight,
+        hdrCubemap,
+        EnvironmentLightsEstimate.EstimatedValues(
+            sphericalHarmonics = sphericalHarmonics,
+            mainLightIntensity = mainLightIntensity,
+            mainLightDirection = mainLightDirection
+        )
+    )
+}
+
+/**
+ * Acquires the HDR cubemap images of the estimate, or returns null if its frame is no longer the
+ * latest one, which happens when the AR thread updated the session since.
+ */
+private fun LightEstimate.acquireEnvironmentalHdrCubeMapOrNull() = try {
+    acquireEnvironmentalHdrCubeMap()
+} catch (e: DeadlineExceededException) {
+    null
+}
+
+/**
+ * ### Whether a new ARCore estimate should update the lighting
+ *
+ * Limits the update rate and skips estimates that are within the thresholds of the current
+ * lighting.
+ */
+fun LightEstimationConfig.shouldUpdate(
+    lightEstimate: LightEstimate,
+    previousEstimate: EnvironmentLightsEstimate
+): Boolean {
+    if (maxUpdatesPerSecond > 0.0f &&
+        lightEstimate.timestamp - previousEstimate.timestamp < 1_000_000_000L / maxUpdatesPerSecond
+    ) {
+        return false
+    }
+    val previousValues = previousEstimate.estimatedValues
+    return when (mode) {
+        Config.LightEstimationMode.AMBIENT_INTENSITY -> {
+            val colorCorrection = FloatArray(4).apply { lightEstimate.getColorCorrection(this, 0) }
+            relativeDelta(colorCorrection, previousValues.colorCorrection) >
+                    sphericalHarmonicsThreshold
+        }
+        Config.LightEstimationMode.ENVIRONMENTAL_HDR -> {
+            val sphericalHarmonicsChanged = environmentalHdrSphericalHarmonics && relativeDelta(
+                lightEstimate.environmentalHdrAmbientSphericalHarmonics,
+                previousValues.sphericalHarmonics
+            ) > sphericalHarmonicsThreshold
+            val intensityChanged = environmentalHdrMainLightIntensity && relativeDelta(
+                lightEstimate.environmentalHdrMainLightIntensity,
+                previousValues.mainLightIntensity
+            ) > mainLightIntensityThreshold
+            val directionChanged = environmentalHdrMainLightDirection && angleDegrees(
+                lightEstimate.environmentalHdrMainLightDirection,
+                previousValues.mainLightDirection
+            ) > mainLightDirectionThreshold
+            // With nothing to compare, the reflections alone update at the max rate.
+            val nothingCompared = !environmentalHdrSphericalHarmonics &&
+                    !environmentalHdrMainLightIntensity && !environmentalHdrMainLightDirection
+            sphericalHarmonicsChanged || intensityChanged || directionChanged || nothingCompared
+        }
+        else -> true
+    }
+}
+
+/**
+ * ### Blend factor of an update happening [elapsedNanos] after the previous one
+ */
+fun LightEstimationConfig.smoothingFactor(elapsedNanos: Long): Float =
+    if (smoothingDuration > 0.0f) {
+        1.0f - exp(-(elapsedNanos / 1_000_000_000.0f) / smoothingDuration)
+    } else 1.0f
+
+/**
+ * Moves the values towards this estimate by [factor], 1 meaning no smoothing
+ */
+private fun FloatArray.smoothedWith(previous: FloatArray?, factor: Float): FloatArray =
+    if (previous == null || previous.size != size || factor >= 1.0f) {
+        this
+    } else {
+        FloatArray(size) { index -> previous[index] + (this[index] - previous[index]) * factor }
+    }
+
+private fun FloatArray.normalized(): FloatArray {
+    val length = sqrt(fold(0.0f) { sum, value -> sum + value * value })
+    return if (length > 0.0f) FloatArray(size) { index -> this[index] / length } else this
+}
+
+/**
+ * Largest difference between the values relative to the largest previous value
+ */
+private fun relativeDelta(values: FloatArray?, previous: FloatArray?): Float {
+    if (values == null || previous == null || values.size != previous.size) {
+        return Float.MAX_VALUE
+    }
+    val scale = previous.maxOf { abs(it) }.takeIf { it > 0.0f } ?: 1.0f
+    return values.indices.maxOf { index -> abs(values[index] - previous[index]) } / scale
+}
+
+private fun angleDegrees(direction: FloatArray?, previous: FloatArray?): Float {
+    if (direction == null || previous == null) {
+        return Float.MAX_VALUE
+    }
+    val (x, y, z) = direction.normalized()
+    val (previousX, previousY, previousZ) = previous
+    val cosine = (x * previousX + y * previousY + z * previousZ).coerceIn(-1.0f, 1.0f)
+    return Math.toDegrees(acos(cosine).toDouble()).toFloat()
 }
 
 /**
@@ -8,8 +8,11 @@ import com.github.kittinunf.fuel.core.*
 import com.github.kittinunf.fuel.coroutines.awaitByteArray
 import kotlinx.coroutines.*
 import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
 import java.io.InputStream
 import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
 
 object ResourceLoader {
 
@@ -64,6 +67,57 @@ object ResourceLoader {
         }
     }
 
+    /**
+     * ### Map a local file content without copying it
+     *
+     * The file location can be a file path or an asset stored uncompressed in the APK (add its
+     * extension to `aaptOptions.noCompress`).
+     *
+     * @return the read only mapped content or null if the location can't be mapped, in which case
+     * it must be loaded with [fileBuffer]
+     */
+    @JvmStatic
+    fun mappedFileBuffer(context: Context, fileLocation: String): ByteBuffer? {
+        val uri = Uri.parse(fileLocation)
+        return try {
+            when (uri.scheme) {
+                ContentResolver.SCHEME_FILE -> if (uri.firstPathSegment == ASSET_FILE_PATH_ROOT) {
+                    mapAsset(context, uri.pathSegments.drop(1).joinToString("/"))
+                } else {
+                    mapFile(File(uri.path!!))
+                }
+                null -> if (fileLocation.startsWith("/")) {
+                    mapFile(File(fileLocation))
+                } else {
+                    mapAsset(context, fileLocation)
+                }
+                else -> null
+            }
+        } catch (e: IOException) {
+            // Compressed assets can't be mapped
+            null
+        }
+    }
+
+    /**
+     * ### Map a file content without copying it
+     */
+    @JvmStatic
+    fun mapFile(file: File): ByteBuffer = FileInputStream(file).use { inputStream ->
+        inputStream.channel.map(FileChannel.MapMode.READ_ONLY, 0, inputStream.channel.size())
+    }
+
+    private fun mapAsset(context: Context, assetLocation: String): ByteBuffer =
+        context.assets.openFd(assetLocation).use { fileDescriptor ->
+            FileInputStream(fileDescriptor.fileDescriptor).use { inputStream ->
+                inputStream.channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.startOffset,
+                    fileDescriptor.declaredLength
+                )
+            }
+        }
+
     @JvmStatic
     private val Uri.firstPathSegment: String?
         get() = pathSegments.firstOrNull()
@@ -77,6 +131,17 @@ object ResourceLoader {
 suspend fun Context.fileBuffer(fileLocation: String): ByteBuffer? =
     ResourceLoader.fileBuffer(this, fileLocation)
 
+/**
+ * ### Map a local file content, or load it if it can't be mapped
+ *
+ * @see ResourceLoader.mappedFileBuffer
+ * @see ResourceLoader.fileBuffer
+ */
+suspend fun Context.mappedFileBuffer(fileLocation: String): ByteBuffer? =
+    withContext(Dispatchers.IO) {
+        ResourceLoader.mappedFileBuffer(this@mappedFileBuffer, fileLocation)
+    } ?: fileBuffer(fileLocation)
+
 /**
  * ### Retrieve a android resource uri from a res id
  */
@@ -0,0 +1,62 @@
+package com.google.ar.sceneform.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.filament.Texture;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+/**
+ * Checks that the per frame work of the camera stream done in Java, updating the camera UVs and
+ * copying the depth image, doesn't allocate once the buffers exist. The Filament uploads need the
+ * native library and aren't covered.
+ */
+public class CameraStreamAllocationTest {
+  private static final int WARM_UP_FRAME_COUNT = 100;
+  private static final int FRAME_COUNT = 1000;
+
+  private final float[] transformedUvs = {0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f};
+  private final CameraUvBuffers uvBuffers = new CameraUvBuffers(transformedUvs);
+  private final DepthImageBuffers depthBuffers = new DepthImageBuffers(null);
+  private final ByteBuffer depthImage = DepthImageBuffersTest.createImage(160 * 90 * 2, (byte) 0);
+
+  @Test
+  public void steadyStateFramesDoNotAllocate() {
+    com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(threadBean.isThreadAllocatedMemorySupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    long threadId = Thread.currentThread().getId();
+
+    for (int i = 0; i < WARM_UP_FRAME_COUNT; i++) {
+      renderFrame();
+    }
+
+    // Reading the counter may allocate by itself, measure it to subtract it.
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    long end = threadBean.getThreadAllocatedBytes(threadId);
+    long measurementBytes = end - start;
+
+    start = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      renderFrame();
+    }
+    end = threadBean.getThreadAllocatedBytes(threadId);
+
+    assertEquals(0, end - start - measurementBytes);
+  }
+
+  private void renderFrame() {
+    FloatBuffer uvs = uvBuffers.next(transformedUvs);
+    CameraUvBuffers.flipVertically(uvs);
+
+    Texture.PixelBufferDescriptor descriptor = depthBuffers.copy(depthImage);
+    assertNotNull(descriptor);
+    // Filament releases the buffer once uploaded.
+    descriptor.callback.run();
+  }
+}
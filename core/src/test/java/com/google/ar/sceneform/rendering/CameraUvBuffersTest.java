@@ -0,0 +1,71 @@
+package com.google.ar.sceneform.rendering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+public class CameraUvBuffersTest {
+  private static final float[] UVS = {0.0f, 0.0f, 0.0f, 2.0f, 2.0f, 0.0f};
+
+  @Test
+  public void buffersAreDirectInNativeOrder() {
+    CameraUvBuffers buffers = new CameraUvBuffers(UVS);
+
+    FloatBuffer buffer = buffers.getCurrent();
+
+    assertTrue(buffer.isDirect());
+    assertEquals(ByteOrder.nativeOrder(), buffer.order());
+    assertArrayEquals(UVS, toArray(buffer), 0.0f);
+  }
+
+  @Test
+  public void nextAlternatesBetweenTwoBuffers() {
+    CameraUvBuffers buffers = new CameraUvBuffers(UVS);
+    FloatBuffer first = buffers.getCurrent();
+
+    FloatBuffer second = buffers.next();
+    assertNotSame(first, second);
+    assertSame(second, buffers.getCurrent());
+
+    assertSame(first, buffers.next());
+    assertSame(second, buffers.next());
+  }
+
+  @Test
+  public void nextWithUvsLeavesThePreviousUploadUntouched() {
+    CameraUvBuffers buffers = new CameraUvBuffers(UVS);
+    float[] firstUvs = {0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f};
+    float[] secondUvs = {0.6f, 0.5f, 0.4f, 0.3f, 0.2f, 0.1f};
+
+    FloatBuffer first = buffers.next(firstUvs);
+    FloatBuffer second = buffers.next(secondUvs);
+
+    assertEquals(0, second.position());
+    assertArrayEquals(secondUvs, toArray(second), 0.0f);
+    assertArrayEquals(firstUvs, toArray(first), 0.0f);
+  }
+
+  @Test
+  public void flipVerticallyOnlyChangesTheVCoordinates() {
+    FloatBuffer buffer = CameraUvBuffers.createBuffer(UVS);
+
+    CameraUvBuffers.flipVertically(buffer);
+
+    assertArrayEquals(new float[] {0.0f, 1.0f, 0.0f, -1.0f, 2.0f, 1.0f}, toArray(buffer), 0.0f);
+    assertEquals(0, buffer.position());
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    float[] values = new float[buffer.capacity()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = buffer.get(i);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,97 @@
+package com.google.ar.sceneform.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.android.filament.Texture;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class DepthImageBuffersTest {
+
+  @Test
+  public void copyHoldsTheImage() {
+    DepthImageBuffers buffers = new DepthImageBuffers(null);
+    ByteBuffer image = createImage(16, (byte) 7);
+
+    Texture.PixelBufferDescriptor descriptor = buffers.copy(image);
+
+    assertNotNull(descriptor);
+    ByteBuffer storage = (ByteBuffer) descriptor.storage;
+    assertEquals(16, storage.remaining());
+    for (int i = 0; i < 16; i++) {
+      assertEquals((byte) (7 + i), storage.get(i));
+    }
+    assertEquals(0, image.position());
+  }
+
+  @Test
+  public void buffersHeldByFilamentAreNotOverwritten() {
+    DepthImageBuffers buffers = new DepthImageBuffers(null);
+
+    Texture.PixelBufferDescriptor first = buffers.copy(createImage(16, (byte) 0));
+    Texture.PixelBufferDescriptor second = buffers.copy(createImage(16, (byte) 0));
+    Texture.PixelBufferDescriptor third = buffers.copy(createImage(16, (byte) 0));
+
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNotNull(third);
+    assertNotSame(first.storage, second.storage);
+    assertNotSame(second.storage, third.storage);
+    assertNotSame(first.storage, third.storage);
+    // All the buffers are held, the image is skipped.
+    assertNull(buffers.copy(createImage(16, (byte) 0)));
+  }
+
+  @Test
+  public void releasedBuffersAreReused() {
+    DepthImageBuffers buffers = new DepthImageBuffers(null);
+    Texture.PixelBufferDescriptor first = buffers.copy(createImage(16, (byte) 0));
+    assertNotNull(first);
+    first.callback.run();
+
+    Texture.PixelBufferDescriptor reused = buffers.copy(createImage(16, (byte) 3));
+
+    assertSame(first, reused);
+    assertEquals((byte) 3, ((ByteBuffer) reused.storage).get(0));
+  }
+
+  @Test
+  public void largerImagesGetALargerBuffer() {
+    DepthImageBuffers buffers = new DepthImageBuffers(null);
+    Texture.PixelBufferDescriptor small = buffers.copy(createImage(16, (byte) 0));
+    assertNotNull(small);
+    small.callback.run();
+
+    Texture.PixelBufferDescriptor large = buffers.copy(createImage(32, (byte) 0));
+
+    assertNotNull(large);
+    assertNotSame(small.storage, large.storage);
+    assertEquals(32, large.storage.remaining());
+  }
+
+  @Test
+  public void smallerImagesReuseTheBuffer() {
+    DepthImageBuffers buffers = new DepthImageBuffers(null);
+    Texture.PixelBufferDescriptor large = buffers.copy(createImage(32, (byte) 0));
+    assertNotNull(large);
+    large.callback.run();
+
+    Texture.PixelBufferDescriptor small = buffers.copy(createImage(16, (byte) 0));
+
+    assertSame(large, small);
+    assertEquals(16, small.storage.remaining());
+  }
+
+  static ByteBuffer createImage(int size, byte firstValue) {
+    ByteBuffer image = ByteBuffer.allocateDirect(size);
+    for (int i = 0; i < size; i++) {
+      image.put((byte) (firstValue + i));
+    }
+    image.rewind();
+    return image;
+  }
+}
@@ -0,0 +1,42 @@
+package com.google.ar.sceneform.rendering;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.android.filament.MaterialInstance;
+
+/**
+ * Material instance backed by mocked Filament objects, which don't need the native library. Every
+ * parameter is supported unless {@link #setUnsupported(String)} says otherwise.
+ */
+final class FakeMaterialInstance implements Material.IMaterialInstance {
+  final com.google.android.filament.Material material =
+      mock(com.google.android.filament.Material.class);
+  final MaterialInstance instance = mock(MaterialInstance.class);
+  private boolean isValid = true;
+
+  FakeMaterialInstance() {
+    when(material.hasParameter(anyString())).thenReturn(true);
+    when(instance.getMaterial()).thenReturn(material);
+  }
+
+  void setUnsupported(String name) {
+    when(material.hasParameter(name)).thenReturn(false);
+  }
+
+  @Override
+  public MaterialInstance getInstance() {
+    return instance;
+  }
+
+  @Override
+  public boolean isValidInstance() {
+    return isValid;
+  }
+
+  @Override
+  public void dispose() {
+    isValid = false;
+  }
+}
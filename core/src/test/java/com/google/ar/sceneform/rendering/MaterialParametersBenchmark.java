@@ -0,0 +1,108 @@
+package com.google.ar.sceneform.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import com.google.android.filament.MaterialInstance;
+import java.util.Locale;
+import org.junit.Test;
+
+/**
+ * Compares applying only the changed material parameters with re-applying all of them, which is
+ * what every parameter update did before. Filament is replaced by stub-only mocks that count the
+ * calls made into the material instance, so the times measure the Java side and the calls stand
+ * for the JNI calls a real instance would receive.
+ *
+ * <p>The full re-apply is measured with the current {@link MaterialParameters#applyTo}, which
+ * caches {@code hasParameter}. The old path also queried it for every parameter on every update,
+ * so the comparison favors the full re-apply.
+ */
+public class MaterialParametersBenchmark {
+  private static final int PARAMETER_COUNT = 16;
+  private static final int WARM_UP_FRAME_COUNT = 1_000;
+  private static final int FRAME_COUNT = 10_000;
+
+  private long setParameterCallCount = 0;
+
+  @Test
+  public void dirtyTrackingVersusFullReapply() {
+    MaterialInstance instance = createCountingInstance();
+    MaterialParameters dirtyParameters = createParameters(instance);
+    MaterialParameters fullParameters = createParameters(instance);
+
+    runFrames(dirtyParameters, instance, true, WARM_UP_FRAME_COUNT);
+    runFrames(fullParameters, instance, false, WARM_UP_FRAME_COUNT);
+
+    setParameterCallCount = 0;
+    long dirtyNanos = runFrames(dirtyParameters, instance, true, FRAME_COUNT);
+    long dirtyCallCount = setParameterCallCount;
+
+    setParameterCallCount = 0;
+    long fullNanos = runFrames(fullParameters, instance, false, FRAME_COUNT);
+    long fullCallCount = setParameterCallCount;
+
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%d parameters, one changed per frame: dirty %.0f ns and %.1f calls per frame,"
+                + " full re-apply %.0f ns and %.1f calls per frame",
+            PARAMETER_COUNT,
+            (double) dirtyNanos / FRAME_COUNT,
+            (double) dirtyCallCount / FRAME_COUNT,
+            (double) fullNanos / FRAME_COUNT,
+            (double) fullCallCount / FRAME_COUNT));
+
+    // Times depend on the machine, only the calls are checked.
+    assertEquals(FRAME_COUNT, dirtyCallCount);
+    assertEquals((long) FRAME_COUNT * PARAMETER_COUNT, fullCallCount);
+  }
+
+  private static MaterialParameters createParameters(MaterialInstance instance) {
+    MaterialParameters parameters = new MaterialParameters();
+    for (int i = 0; i < PARAMETER_COUNT; i++) {
+      parameters.setFloat("parameter" + i, i);
+    }
+    parameters.applyTo(instance);
+    return parameters;
+  }
+
+  private static long runFrames(
+      MaterialParameters parameters, MaterialInstance instance, boolean dirtyOnly, int frameCount) {
+    long start = System.nanoTime();
+    for (int frame = 0; frame < frameCount; frame++) {
+      // One animated parameter changes each frame, like a material fading in.
+      parameters.setFloat("parameter0", frame + 1);
+      if (dirtyOnly) {
+        parameters.applyDirtyTo(instance);
+      } else {
+        parameters.applyTo(instance);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private MaterialInstance createCountingInstance() {
+    com.google.android.filament.Material material =
+        mock(com.google.android.filament.Material.class, withSettings().stubOnly());
+    doReturn(true).when(material).hasParameter(anyString());
+
+    // Stub only, recording every invocation would dominate the measurement.
+    MaterialInstance instance =
+        mock(
+            MaterialInstance.class,
+            withSettings()
+                .stubOnly()
+                .defaultAnswer(
+                    invocation -> {
+                      if (invocation.getMethod().getName().equals("setParameter")) {
+                        setParameterCallCount++;
+                      }
+                      return null;
+                    }));
+    doReturn(material).when(instance).getMaterial();
+    return instance;
+  }
+}
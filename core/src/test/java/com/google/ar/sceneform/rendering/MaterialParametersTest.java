@@ -0,0 +1,117 @@
+package com.google.ar.sceneform.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MaterialParametersTest {
+  private MaterialParameters parameters;
+  private FakeMaterialInstance materialInstance;
+
+  @Before
+  public void setUp() {
+    parameters = new MaterialParameters();
+    materialInstance = new FakeMaterialInstance();
+  }
+
+  @Test
+  public void newParametersAreAppliedOnce() {
+    parameters.setFloat("roughness", 0.5f);
+    parameters.setInt("mode", 2);
+    assertTrue(parameters.hasDirtyParameters());
+
+    parameters.applyDirtyTo(materialInstance.getInstance());
+    parameters.applyDirtyTo(materialInstance.getInstance());
+
+    verify(materialInstance.instance, times(1)).setParameter("roughness", 0.5f);
+    verify(materialInstance.instance, times(1)).setParameter("mode", 2);
+    assertFalse(parameters.hasDirtyParameters());
+  }
+
+  @Test
+  public void settingTheSameValueDoesNotMarkDirty() {
+    parameters.setFloat("roughness", 0.5f);
+    parameters.applyDirtyTo(materialInstance.getInstance());
+
+    parameters.setFloat("roughness", 0.5f);
+
+    assertFalse(parameters.hasDirtyParameters());
+  }
+
+  @Test
+  public void onlyChangedParametersAreApplied() {
+    parameters.setFloat("roughness", 0.5f);
+    parameters.setFloat("metallic", 1.0f);
+    parameters.applyDirtyTo(materialInstance.getInstance());
+    clearInvocations(materialInstance.instance);
+
+    parameters.setFloat("roughness", 0.25f);
+    parameters.setFloat("roughness", 0.75f);
+    parameters.applyDirtyTo(materialInstance.getInstance());
+
+    verify(materialInstance.instance, times(1)).setParameter("roughness", 0.75f);
+    verify(materialInstance.instance, never()).setParameter(eq("roughness"), eq(0.25f));
+    verify(materialInstance.instance, never()).setParameter(eq("metallic"), anyFloat());
+  }
+
+  @Test
+  public void applyToAppliesEveryParameterAndClearsDirty() {
+    parameters.setFloat("roughness", 0.5f);
+    parameters.setFloat("metallic", 1.0f);
+    parameters.applyDirtyTo(materialInstance.getInstance());
+
+    FakeMaterialInstance newInstance = new FakeMaterialInstance();
+    parameters.setFloat("roughness", 0.25f);
+    parameters.applyTo(newInstance.getInstance());
+
+    verify(newInstance.instance).setParameter("roughness", 0.25f);
+    verify(newInstance.instance).setParameter("metallic", 1.0f);
+    assertFalse(parameters.hasDirtyParameters());
+  }
+
+  @Test
+  public void noDirtyParametersSkipsTheInstance() {
+    parameters.applyDirtyTo(materialInstance.getInstance());
+
+    verifyNoInteractions(materialInstance.instance);
+  }
+
+  @Test
+  public void unsupportedParametersAreSkippedAndQueriedOnce() {
+    materialInstance.setUnsupported("missing");
+
+    parameters.setFloat("missing", 0.5f);
+    parameters.applyDirtyTo(materialInstance.getInstance());
+    parameters.setFloat("missing", 0.25f);
+    parameters.applyDirtyTo(materialInstance.getInstance());
+
+    verify(materialInstance.instance, never()).setParameter(eq("missing"), anyFloat());
+    verify(materialInstance.material, times(1)).hasParameter("missing");
+    assertFalse(parameters.hasDirtyParameters());
+  }
+
+  @Test
+  public void replacingAParameterTypeAppliesOnlyTheNewOne() {
+    int structureVersion = parameters.getStructureVersion();
+
+    parameters.setFloat("value", 0.5f);
+    parameters.setInt("value", 3);
+    parameters.applyDirtyTo(materialInstance.getInstance());
+
+    verify(materialInstance.instance).setParameter("value", 3);
+    verify(materialInstance.instance, never()).setParameter(eq("value"), anyFloat());
+    assertEquals(3, parameters.getInt("value"));
+    assertNotEquals(structureVersion, parameters.getStructureVersion());
+  }
+}
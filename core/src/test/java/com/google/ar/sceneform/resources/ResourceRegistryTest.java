@@ -0,0 +1,97 @@
+package com.google.ar.sceneform.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+public class ResourceRegistryTest {
+  private final ResourceRegistry<String> registry = new ResourceRegistry<>();
+  private final QueueExecutor estimatorExecutor = new QueueExecutor();
+
+  @Test
+  public void sizesAreEstimatedOnTheEstimatorExecutor() {
+    registry.setStrongCacheBudget(100, String::length, estimatorExecutor);
+
+    registry.register("a", CompletableFuture.completedFuture("resource"));
+
+    assertEquals(0, registry.getStatistics().getStrongCacheCount());
+    estimatorExecutor.runAll();
+    assertEquals(1, registry.getStatistics().getStrongCacheCount());
+    assertEquals(8, registry.getStatistics().getStrongCacheSizeBytes());
+  }
+
+  @Test
+  public void loadsCompletedOnAnotherThreadAreEstimatedOnTheEstimatorExecutor() throws Exception {
+    registry.setStrongCacheBudget(100, String::length, estimatorExecutor);
+    CompletableFuture<String> load = new CompletableFuture<>();
+    registry.register("a", load);
+
+    Thread loader = new Thread(() -> load.complete("resource"));
+    loader.start();
+    loader.join();
+
+    assertEquals(1, estimatorExecutor.size());
+    estimatorExecutor.runAll();
+    assertEquals(1, registry.getStatistics().getStrongCacheCount());
+  }
+
+  @Test
+  public void reRegisteredIdsDropTheStaleEstimate() {
+    registry.setStrongCacheBudget(100, String::length, estimatorExecutor);
+    registry.register("a", CompletableFuture.completedFuture("old"));
+    String replacement = new String("new resource");
+
+    registry.register("a", CompletableFuture.completedFuture(replacement));
+    estimatorExecutor.runAll();
+
+    assertEquals(1, registry.getStatistics().getStrongCacheCount());
+    assertEquals(12, registry.getStatistics().getStrongCacheSizeBytes());
+    CompletableFuture<String> cached = registry.get("a");
+    assertNotNull(cached);
+    assertSame(replacement, cached.getNow(null));
+  }
+
+  @Test
+  public void leastRecentlyUsedResourcesAreEvicted() {
+    registry.setStrongCacheBudget(10, String::length);
+    registry.register("a", CompletableFuture.completedFuture("aaaa"));
+    registry.register("b", CompletableFuture.completedFuture("bbbb"));
+    registry.get("a");
+
+    registry.register("c", CompletableFuture.completedFuture("cccc"));
+
+    ResourceRegistry.Statistics statistics = registry.getStatistics();
+    assertEquals(2, statistics.getStrongCacheCount());
+    assertEquals(1, statistics.getEvictionCount());
+  }
+
+  /** Runs the tasks when asked to, like a busy main thread. */
+  private static final class QueueExecutor implements Executor {
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public synchronized void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    synchronized int size() {
+      return tasks.size();
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = poll()) != null) {
+        task.run();
+      }
+    }
+
+    private synchronized Runnable poll() {
+      return tasks.poll();
+    }
+  }
+}
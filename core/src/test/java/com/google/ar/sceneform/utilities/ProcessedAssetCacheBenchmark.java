@@ -0,0 +1,112 @@
+package com.google.ar.sceneform.utilities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares loading the pixels of a texture without and with the processed asset cache. A cold
+ * load reads and decodes the PNG source and stores the pixels, a warm load maps the stored pixels
+ * and copies them into a direct buffer, like the pixels of a bitmap, without reading the source.
+ * ImageIO stands in for the Android bitmap decoder.
+ */
+public class ProcessedAssetCacheBenchmark {
+  private static final int IMAGE_SIZE = 1024;
+  private static final int LOAD_COUNT = 10;
+  private static final String OPTIONS = "premultiplied";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void warmLoadsVersusColdLoads() throws IOException {
+    File source = temporaryFolder.newFile("texture.png");
+    ImageIO.write(createImage(), "png", source);
+    String sourceId = source.toURI() + "@" + source.length() + ":" + source.lastModified();
+    ByteBuffer pixels = ByteBuffer.allocateDirect(IMAGE_SIZE * IMAGE_SIZE * 4);
+
+    long coldNanos = 0;
+    long warmNanos = 0;
+    byte[] coldPixels = null;
+    for (int i = 0; i < LOAD_COUNT; i++) {
+      // A new cache directory each time, so that every cold load misses.
+      ProcessedAssetCache cache =
+          new ProcessedAssetCache(temporaryFolder.newFolder(), Long.MAX_VALUE);
+
+      long start = System.nanoTime();
+      coldPixels = loadCold(cache, source, sourceId);
+      coldNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      loadWarm(cache, sourceId, pixels);
+      warmNanos += System.nanoTime() - start;
+
+      assertEquals(1, cache.getHitCount());
+    }
+
+    System.out.println(
+        String.format(
+            Locale.US,
+            "%dx%d texture: cold load %.2f ms, warm load %.2f ms",
+            IMAGE_SIZE,
+            IMAGE_SIZE,
+            coldNanos / 1e6 / LOAD_COUNT,
+            warmNanos / 1e6 / LOAD_COUNT));
+
+    // Times depend on the machine, only the pixels are checked.
+    byte[] warmPixels = new byte[pixels.capacity()];
+    pixels.rewind();
+    pixels.get(warmPixels);
+    assertArrayEquals(coldPixels, warmPixels);
+  }
+
+  private static byte[] loadCold(ProcessedAssetCache cache, File source, String sourceId)
+      throws IOException {
+    byte[] sourceBytes = Files.readAllBytes(source.toPath());
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(sourceBytes));
+    int[] argb = image.getRGB(0, 0, IMAGE_SIZE, IMAGE_SIZE, null, 0, IMAGE_SIZE);
+    byte[] rgba = new byte[argb.length * 4];
+    for (int i = 0; i < argb.length; i++) {
+      rgba[i * 4] = (byte) (argb[i] >> 16);
+      rgba[i * 4 + 1] = (byte) (argb[i] >> 8);
+      rgba[i * 4 + 2] = (byte) argb[i];
+      rgba[i * 4 + 3] = (byte) (argb[i] >> 24);
+    }
+    cache.put(ProcessedAssetCache.computeKey("texture", OPTIONS, sourceId), rgba);
+    return rgba;
+  }
+
+  private static void loadWarm(ProcessedAssetCache cache, String sourceId, ByteBuffer pixels) {
+    ByteBuffer cached = cache.map(ProcessedAssetCache.computeKey("texture", OPTIONS, sourceId));
+    assertNotNull(cached);
+    pixels.clear();
+    pixels.put(cached);
+  }
+
+  private static BufferedImage createImage() {
+    // Noise on top of a gradient, which compresses about as well as a photo.
+    BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_ARGB);
+    Random random = new Random(0);
+    for (int y = 0; y < IMAGE_SIZE; y++) {
+      for (int x = 0; x < IMAGE_SIZE; x++) {
+        int r = (x * 255 / IMAGE_SIZE + random.nextInt(32)) & 0xFF;
+        int g = (y * 255 / IMAGE_SIZE + random.nextInt(32)) & 0xFF;
+        int b = random.nextInt(256);
+        image.setRGB(x, y, 0xFF000000 | (r << 16) | (g << 8) | b);
+      }
+    }
+    return image;
+  }
+}
@@ -0,0 +1,129 @@
+package com.google.ar.sceneform.utilities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProcessedAssetCacheTest {
+  private static final String KEY_A = ProcessedAssetCache.computeKey("test", "", "a");
+  private static final String KEY_B = ProcessedAssetCache.computeKey("test", "", "b");
+  private static final String KEY_C = ProcessedAssetCache.computeKey("test", "", "c");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = temporaryFolder.newFolder("cache");
+  }
+
+  @Test
+  public void mapReturnsTheStoredPayload() {
+    ProcessedAssetCache cache = new ProcessedAssetCache(directory, 1024);
+
+    cache.put(KEY_A, new byte[] {1, 2, 3});
+    ByteBuffer payload = cache.map(KEY_A);
+
+    assertNotNull(payload);
+    assertArrayEquals(new byte[] {1, 2, 3}, toArray(payload));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(3, cache.getSizeInBytes());
+  }
+
+  @Test
+  public void mapCountsMisses() {
+    ProcessedAssetCache cache = new ProcessedAssetCache(directory, 1024);
+
+    assertNull(cache.map(KEY_A));
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void keysDependOnKindOptionsAndSource() {
+    String key = ProcessedAssetCache.computeKey("texture", "premultiplied", new byte[] {1});
+
+    assertEquals(key, ProcessedAssetCache.computeKey("texture", "premultiplied", new byte[] {1}));
+    assertNotEquals(key, ProcessedAssetCache.computeKey("mesh", "premultiplied", new byte[] {1}));
+    assertNotEquals(key, ProcessedAssetCache.computeKey("texture", "", new byte[] {1}));
+    assertNotEquals(key, ProcessedAssetCache.computeKey("texture", "premultiplied", new byte[] {2}));
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreTrimmed() {
+    ProcessedAssetCache cache = new ProcessedAssetCache(directory, 8);
+    cache.put(KEY_A, new byte[4]);
+    cache.put(KEY_B, new byte[4]);
+    new File(directory, KEY_A).setLastModified(1000);
+    new File(directory, KEY_B).setLastModified(2000);
+
+    cache.put(KEY_C, new byte[4]);
+
+    assertFalse(new File(directory, KEY_A).exists());
+    assertTrue(new File(directory, KEY_B).exists());
+    assertTrue(new File(directory, KEY_C).exists());
+    assertEquals(8, cache.getSizeInBytes());
+  }
+
+  @Test
+  public void tempFilesAreNotCountedOrCleared() throws IOException {
+    File tempFile = createTempFile(System.currentTimeMillis());
+    ProcessedAssetCache cache = new ProcessedAssetCache(directory, 1024);
+    cache.put(KEY_A, new byte[4]);
+
+    assertEquals(4, cache.getSizeInBytes());
+    cache.clear();
+
+    assertEquals(0, cache.getSizeInBytes());
+    assertFalse(new File(directory, KEY_A).exists());
+    // A write in progress keeps its file.
+    assertTrue(tempFile.exists());
+  }
+
+  @Test
+  public void staleTempFilesAreDeleted() throws IOException {
+    File staleTempFile = createTempFile(System.currentTimeMillis() - 24L * 60L * 60L * 1000L);
+    ProcessedAssetCache cache = new ProcessedAssetCache(directory, 1024);
+
+    cache.getSizeInBytes();
+
+    assertFalse(staleTempFile.exists());
+  }
+
+  @Test
+  public void writerFillsTheMappedEntry() {
+    ProcessedAssetCache cache = new ProcessedAssetCache(directory, 1024);
+
+    cache.put(KEY_A, 4, buffer -> buffer.putInt(0x01020304));
+
+    ByteBuffer payload = cache.map(KEY_A);
+    assertNotNull(payload);
+    assertArrayEquals(new byte[] {1, 2, 3, 4}, toArray(payload));
+  }
+
+  private File createTempFile(long lastModified) throws IOException {
+    File tempDirectory = new File(directory, "tmp");
+    assertTrue(tempDirectory.mkdirs());
+    File tempFile = File.createTempFile(KEY_B, ".tmp", tempDirectory);
+    assertTrue(tempFile.setLastModified(lastModified));
+    return tempFile;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+}
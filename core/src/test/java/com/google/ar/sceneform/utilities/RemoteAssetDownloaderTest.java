@@ -0,0 +1,212 @@
+package com.google.ar.sceneform.utilities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Runs the downloader against a local HTTP server. */
+public class RemoteAssetDownloaderTest {
+  private static final int BODY_SIZE = 300 * 1024;
+  private static final int TRUNCATED_SIZE = 100 * 1024;
+  private static final String ETAG = "\"v1\"";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final byte[] body = new byte[BODY_SIZE];
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+  private final CountDownLatch releaseResponses = new CountDownLatch(1);
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private RemoteAssetDownloader downloader;
+
+  @Before
+  public void setUp() throws IOException {
+    new Random(0).nextBytes(body);
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/asset", this::serveAsset);
+    server.createContext("/blocked", this::serveBlocked);
+    server.createContext("/truncated", this::serveTruncated);
+    server.createContext("/misreported", this::serveMisreportedRange);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    downloader = new RemoteAssetDownloader(4, 3);
+    downloader.setDownloadDirectory(temporaryFolder.newFolder());
+  }
+
+  @After
+  public void tearDown() {
+    releaseResponses.countDown();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Test
+  public void downloadsTheFullBody() throws IOException {
+    assertArrayEquals(body, readFully(downloader.downloadAndWait(url("/asset"), null)));
+    assertEquals(1, requests.size());
+  }
+
+  @Test
+  public void identicalRequestsShareOneDownload() throws Exception {
+    CompletableFuture<InputStream> first = downloader.download(url("/blocked"), null);
+    CompletableFuture<InputStream> second = downloader.download(url("/blocked"), null);
+    assertEquals(1, downloader.getInFlightDownloadCount());
+    releaseResponses.countDown();
+
+    assertArrayEquals(body, readFully(first.get(10, TimeUnit.SECONDS)));
+    assertArrayEquals(body, readFully(second.get(10, TimeUnit.SECONDS)));
+    assertEquals(1, requests.size());
+    assertEquals(0, downloader.getInFlightDownloadCount());
+  }
+
+  @Test
+  public void truncatedResponseIsResumedWithARange() throws IOException {
+    assertArrayEquals(body, readFully(downloader.downloadAndWait(url("/truncated"), null)));
+
+    assertEquals(2, requests.size());
+    assertNull(requests.get(0));
+    assertEquals("bytes=" + TRUNCATED_SIZE + "-", requests.get(1));
+  }
+
+  @Test
+  public void misreportedRangeRestartsTheDownload() throws IOException {
+    assertArrayEquals(body, readFully(downloader.downloadAndWait(url("/misreported"), null)));
+
+    assertEquals(3, requests.size());
+    assertEquals("bytes=" + TRUNCATED_SIZE + "-", requests.get(1));
+    // The full body was requested again.
+    assertNull(requests.get(2));
+  }
+
+  @Test
+  public void progressIsReportedUpToTheFullSize() throws IOException {
+    List<long[]> progress = new ArrayList<>();
+    downloader.addProgressListener(
+        (url, bytesDownloaded, totalBytes) -> {
+          synchronized (progress) {
+            progress.add(new long[] {bytesDownloaded, totalBytes});
+          }
+        });
+
+    readFully(downloader.downloadAndWait(url("/truncated"), null));
+
+    synchronized (progress) {
+      assertTrue(progress.size() > 2);
+      long previous = 0;
+      for (long[] update : progress) {
+        assertTrue(update[0] >= previous);
+        assertEquals(BODY_SIZE, update[1]);
+        previous = update[0];
+      }
+      assertEquals(BODY_SIZE, previous);
+    }
+  }
+
+  private String url(String path) {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+        + path;
+  }
+
+  private void serveAsset(HttpExchange exchange) throws IOException {
+    requests.add(exchange.getRequestHeaders().getFirst("Range"));
+    sendBody(exchange, 200, 0, body.length);
+  }
+
+  private void serveBlocked(HttpExchange exchange) throws IOException {
+    requests.add(exchange.getRequestHeaders().getFirst("Range"));
+    try {
+      releaseResponses.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    sendBody(exchange, 200, 0, body.length);
+  }
+
+  /** Drops the connection part way through the first response, then honors ranges. */
+  private void serveTruncated(HttpExchange exchange) throws IOException {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    requests.add(range);
+    if (range == null) {
+      sendTruncatedBody(exchange);
+      return;
+    }
+    long start = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+    exchange
+        .getResponseHeaders()
+        .set("Content-Range", "bytes " + start + "-" + (BODY_SIZE - 1) + "/" + BODY_SIZE);
+    sendBody(exchange, 206, (int) start, body.length);
+  }
+
+  /** Like {@link #serveTruncated} but the partial response doesn't start at the requested byte. */
+  private void serveMisreportedRange(HttpExchange exchange) throws IOException {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    requests.add(range);
+    if (requests.size() == 1) {
+      sendTruncatedBody(exchange);
+    } else if (range != null) {
+      exchange
+          .getResponseHeaders()
+          .set("Content-Range", "bytes 0-" + (BODY_SIZE - 1) + "/" + BODY_SIZE);
+      sendBody(exchange, 206, 0, body.length);
+    } else {
+      sendBody(exchange, 200, 0, body.length);
+    }
+  }
+
+  private void sendTruncatedBody(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("ETag", ETAG);
+    exchange.sendResponseHeaders(200, BODY_SIZE);
+    OutputStream output = exchange.getResponseBody();
+    output.write(body, 0, TRUNCATED_SIZE);
+    output.flush();
+    // Closing before the announced length was written drops the connection.
+    exchange.close();
+  }
+
+  private void sendBody(HttpExchange exchange, int code, int start, int end) throws IOException {
+    exchange.getResponseHeaders().set("ETag", ETAG);
+    exchange.sendResponseHeaders(code, end - start);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body, start, end - start);
+    }
+  }
+
+  private static byte[] readFully(InputStream input) throws IOException {
+    try (InputStream stream = input) {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[16 * 1024];
+      int n;
+      while ((n = stream.read(buffer)) > 0) {
+        output.write(buffer, 0, n);
+      }
+      return output.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.gorisse.thomas.sceneform.light
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.Locale
+
+/**
+ * Compares repacking the six cubemap faces of an estimate with [HdrCubemapFaceRepacker] and with
+ * the per pixel loop it replaced, which sliced a [ByteArray] for every pixel and allocated a new
+ * direct buffer for every estimate.
+ */
+class HdrCubemapFaceRepackerBenchmark {
+
+    @Test
+    fun repackerVersusSliceArrayLoop() {
+        for (size in intArrayOf(16, 64)) {
+            val faces = Array(6) { HdrCubemapFaceRepackerTest.createFace(size, size * 8, it) }
+            val repacker = HdrCubemapFaceRepacker()
+            val output = ByteBuffer.allocateDirect(size * size * faces.size * 3 * 2)
+                .order(ByteOrder.nativeOrder())
+
+            repeat(WARM_UP_ESTIMATE_COUNT) {
+                repackWithSliceArray(faces)
+                repack(repacker, faces, size, output)
+            }
+
+            var startNanos = System.nanoTime()
+            var sliceArrayOutput = ByteBuffer.allocate(0)
+            repeat(ESTIMATE_COUNT) {
+                sliceArrayOutput = repackWithSliceArray(faces)
+            }
+            val sliceArrayNanos = System.nanoTime() - startNanos
+
+            startNanos = System.nanoTime()
+            repeat(ESTIMATE_COUNT) {
+                repack(repacker, faces, size, output)
+            }
+            val repackerNanos = System.nanoTime() - startNanos
+
+            println(
+                String.format(
+                    Locale.US,
+                    "%dx%d faces: sliceArray loop %.1f us, repacker %.1f us per estimate",
+                    size, size,
+                    sliceArrayNanos / 1e3 / ESTIMATE_COUNT,
+                    repackerNanos / 1e3 / ESTIMATE_COUNT
+                )
+            )
+
+            // Times depend on the machine, only the output is checked.
+            output.rewind()
+            assertEquals(output, sliceArrayOutput)
+        }
+    }
+
+    private fun repack(
+        repacker: HdrCubemapFaceRepacker,
+        faces: Array<ByteBuffer>,
+        size: Int,
+        output: ByteBuffer
+    ) {
+        output.clear()
+        val rgbBuffer = output.asShortBuffer()
+        faces.forEach { repacker.repack(it, size * 8, size, size, rgbBuffer) }
+    }
+
+    /** The repack done by LightEstimation before [EnvironmentalHdrCubemap]. */
+    private fun repackWithSliceArray(faces: Array<ByteBuffer>): ByteBuffer {
+        val pixelCount = faces[0].capacity() / 8
+        return ByteBuffer.allocateDirect(
+            pixelCount *
+                    faces.size *
+                    // RGB Bytes per pixel
+                    6 * 2
+        ).apply {
+            // Use the device hardware's native byte order
+            order(ByteOrder.nativeOrder())
+
+            val rgbaBytes = ByteArray(8) // ARGB Bytes per pixel
+            faces.forEach { face ->
+                face.duplicate().let { imageBuffer ->
+                    while (imageBuffer.hasRemaining()) {
+                        // Only take the RGB channels
+                        put(rgbaBytes.apply {
+                            imageBuffer.get(this)
+                        } // Skip the Alpha channel
+                            .sliceArray(0..5))
+                    }
+                }
+            }
+            flip()
+        }
+    }
+
+    companion object {
+        private const val WARM_UP_ESTIMATE_COUNT = 1_000
+        private const val ESTIMATE_COUNT = 5_000
+    }
+}
@@ -0,0 +1,62 @@
+package com.gorisse.thomas.sceneform.light
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.ShortBuffer
+
+class HdrCubemapFaceRepackerTest {
+
+    @Test
+    fun dropsTheAlphaChannel() {
+        val face = createFace(height = 2, rowStride = 2 * 8)
+        val output = ShortBuffer.allocate(2 * 2 * 3)
+
+        HdrCubemapFaceRepacker().repack(face, 2 * 8, 2, 2, output)
+
+        assertArrayEquals(
+            shortArrayOf(0, 1, 2, 4, 5, 6, 8, 9, 10, 12, 13, 14),
+            output.array()
+        )
+        assertEquals(0, face.position())
+    }
+
+    @Test
+    fun skipsTheRowPadding() {
+        val face = createFace(height = 2, rowStride = 2 * 8 + 8)
+        val output = ShortBuffer.allocate(2 * 2 * 3)
+
+        HdrCubemapFaceRepacker().repack(face, 2 * 8 + 8, 2, 2, output)
+
+        // The second row starts after the padding pixel.
+        assertArrayEquals(
+            shortArrayOf(0, 1, 2, 4, 5, 6, 12, 13, 14, 16, 17, 18),
+            output.array()
+        )
+    }
+
+    @Test
+    fun appendsFacesOneAfterTheOther() {
+        val repacker = HdrCubemapFaceRepacker()
+        val output = ShortBuffer.allocate(2 * 1 * 1 * 3)
+
+        repacker.repack(createFace(1, 8), 8, 1, 1, output)
+        repacker.repack(createFace(1, 8, firstValue = 10), 8, 1, 1, output)
+
+        assertArrayEquals(shortArrayOf(0, 1, 2, 10, 11, 12), output.array())
+    }
+
+    companion object {
+        /** Returns half float RGBA pixels whose channels count up from [firstValue]. */
+        fun createFace(height: Int, rowStride: Int, firstValue: Int = 0): ByteBuffer {
+            val face = ByteBuffer.allocateDirect(rowStride * height).order(ByteOrder.nativeOrder())
+            val shorts = face.asShortBuffer()
+            for (i in 0 until shorts.capacity()) {
+                shorts.put(i, (firstValue + i).toShort())
+            }
+            return face
+        }
+    }
+}
@@ -674,13 +674,15 @@ public abstract class BaseArFragment extends Fragment
         }
 
         if(onAugmentedImageUpdateListener != null) {
-            for (AugmentedImage augmentedImage : getArSceneView().getUpdatedAugmentedImages()) {
+            for (AugmentedImage augmentedImage : getArSceneView().getTrackableIndex()
+                    .getUpdated(AugmentedImage.class, (TrackingState) null)) {
                 onAugmentedImageUpdateListener.onAugmentedImageTrackingUpdate(augmentedImage);
             }
         }
 
         if(onAugmentedFaceUpdateListener != null) {
-            for (AugmentedFace augmentedFace : getArSceneView().getUpdatedAugmentedFaces()) {
+            for (AugmentedFace augmentedFace : getArSceneView().getTrackableIndex()
+                    .getUpdated(AugmentedFace.class, (TrackingState) null)) {
                 onAugmentedFaceUpdateListener.onAugmentedFaceTrackingUpdate(augmentedFace);
             }
         }